@@ -1,26 +1,49 @@
 package no.uio.aeroscript;
 
-import no.uio.aeroscript.antlr.AeroScriptLexer;
 import no.uio.aeroscript.antlr.AeroScriptParser;
+import no.uio.aeroscript.runtime.Code;
+import no.uio.aeroscript.runtime.Fleet;
+import no.uio.aeroscript.runtime.FlightRecorder;
+import no.uio.aeroscript.runtime.Geofence;
 import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.runtime.MonteCarlo;
+import no.uio.aeroscript.runtime.ObstacleMap;
 import no.uio.aeroscript.runtime.REPL;
+import no.uio.aeroscript.trace.Trace;
 import no.uio.aeroscript.type.Memory;
 import no.uio.aeroscript.type.Point;
+import no.uio.aeroscript.ast.stmt.Action;
 import no.uio.aeroscript.ast.stmt.Execution;
 import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.error.BatteryError;
+import no.uio.aeroscript.error.GeofenceError;
+import no.uio.aeroscript.error.ResolutionError;
 import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.BatteryAnalyzer;
+import no.uio.aeroscript.compiletime.BytecodeCompiler;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.ExecutionPruner;
+import no.uio.aeroscript.compiletime.GeofenceChecker;
+import no.uio.aeroscript.compiletime.Lowering;
+import no.uio.aeroscript.compiletime.MissionCache;
+import no.uio.aeroscript.compiletime.SourceLoader;
+import no.uio.aeroscript.compiletime.Specializer;
+import no.uio.aeroscript.compiletime.TwoStageParser;
 import no.uio.aeroscript.compiletime.TypeChecker;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.jline.reader.LineReader;
 import org.jline.reader.LineReaderBuilder;
 
-import java.nio.file.Files;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Stack;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
 
 public class Main {
     private static void error(String msg) {
@@ -31,16 +54,30 @@ public class Main {
     public static void main(String[] args) {
         System.setProperty("org.jline.terminal.dumb", "true");
         HashMap<Memory, Object> heap = new HashMap<>();
-        Stack<Statement> stack = new Stack<>();
         float batteryLevel = 10000.0f;
         float altitude = 0.0f;
         Point initialPosition = new Point(0.0f, 0.0f);
         boolean yesREPL = false;
+        boolean unbuffered = false;
+        boolean useCache = true;
+        boolean lazy = false;
+        boolean compiled = false;
+        boolean useVM = false;
+        boolean tailChaining = false;
+        int fleetSize = 0;
+        int monteCarloRuns = 0;
+        Long seed = null; // Unseeded unless asked
+        int randomBatch = 0;
+        String threads = "0";
+        String obstaclePath = null;
+        String geofencePath = null;
+        String fenceReaction = "geofence";
+        String recordPath = null;
 
         if (args.length < 1) {
             //String[] arr = {"src\\test\\java\\no\\uio\\aeroscript\\resources\\reactions.aero", "-b", "1000000", "-repl"};
             //args = arr;
-            System.err.println("Usage: java -jar aeroscript.jar <path to file> [-b <battery level>] [-p <x> <y>] [-a <altitude>] [-repl]");
+            System.err.println("Usage: java -jar aeroscript.jar <path to file> [-b <battery level>] [-p <x> <y>] [-a <altitude>] [-repl] [-unbuffered] [-nocache] [-lazy] [-compiled] [-vm] [-chain] [-obstacles <file>] [-geofence <file>] [-fencereaction <message|event|none>] [-record <directory>] [-seed <seed>] [-randombatch <size>] [-fleet <drones> | -montecarlo <runs>] [-threads <count|virtual>] [-trace <off|info|action|debug>] [-tracesink <console|ring|none>]");
             System.exit(1);
         }
         String path = args[0];
@@ -63,6 +100,75 @@ public class Main {
                 case "-repl":
                     yesREPL = true;
                     break;
+                case "-unbuffered":
+                    unbuffered = true;
+                    break;
+                case "-nocache":
+                    useCache = false;
+                    break;
+                case "-lazy":
+                    lazy = true;
+                    break;
+                case "-compiled":
+                    compiled = true;
+                    break;
+                case "-vm":
+                    useVM = true;
+                    break;
+                case "-chain":
+                    tailChaining = true;
+                    break;
+                case "-obstacles":
+                    if (i + 1 < args.length) obstaclePath = args[++i];
+                    else error("-obstacles needs a file");
+                    break;
+                case "-geofence":
+                    if (i + 1 < args.length) geofencePath = args[++i];
+                    else error("-geofence needs a file");
+                    break;
+                case "-fencereaction":
+                    if (i + 1 < args.length) fenceReaction = args[++i];
+                    else error("-fencereaction needs a message or event, or none");
+                    break;
+                case "-record":
+                    if (i + 1 < args.length) recordPath = args[++i];
+                    else error("-record needs a directory");
+                    break;
+                case "-fleet":
+                    if (i + 1 < args.length) fleetSize = Integer.parseInt(args[++i]);
+                    else error("-fleet requires a number of drones");
+                    break;
+                case "-montecarlo":
+                    if (i + 1 < args.length) monteCarloRuns = Integer.parseInt(args[++i]);
+                    else error("-montecarlo requires a number of runs");
+                    break;
+                case "-seed":
+                    if (i + 1 < args.length) seed = Long.parseLong(args[++i]);
+                    else error("-seed requires an integer");
+                    break;
+                case "-randombatch":
+                    if (i + 1 < args.length && args[i + 1].matches("\\d+")) randomBatch = Integer.parseInt(args[++i]);
+                    else error("-randombatch requires a size");
+                    break;
+                case "-threads":
+                    if (i + 1 < args.length && (args[i + 1].equals("virtual") || args[i + 1].matches("\\d+"))) threads = args[++i];
+                    else error("-threads requires a count or virtual");
+                    break;
+                // Trace reads these once, and nothing has touched it before this
+                case "-trace":
+                    if (i + 1 < args.length) {
+                        try {
+                            System.setProperty("aeroscript.trace", Trace.Level.parse(args[++i]).name()); // Doesn't load Trace itself
+                        } catch (IllegalArgumentException e) {
+                            error("Unknown trace level: " + args[i]);
+                        }
+                    } else error("-trace requires a level");
+                    break;
+                case "-tracesink":
+                    if (i + 1 < args.length && List.of("console", "ring", "none").contains(args[i + 1])) {
+                        System.setProperty("aeroscript.trace.sink", args[++i]);
+                    } else error("-tracesink requires console, ring or none");
+                    break;
                 default:
                     error("Unknown argument: " + args[i]);
             }
@@ -78,23 +184,117 @@ public class Main {
         vars.put("altitude", altitude);
 
         heap.put(Memory.VARIABLES, vars);
+        if (lazy && unbuffered) error("-lazy keeps the source of each execution, so it can't be used with -unbuffered");
+        if (lazy && (useVM || fleetSize > 0 || monteCarloRuns > 0)) error("-lazy only builds what is flown, and -vm, -fleet and -montecarlo build every execution up front");
+        if (fleetSize > 0 && yesREPL) error("-fleet can't be used with -repl");
+        if (monteCarloRuns > 0 && (yesREPL || fleetSize > 0)) error("-montecarlo can't be used with -repl or -fleet");
+        if (monteCarloRuns > 0 && threads.equals("virtual")) error("-montecarlo runs on fork-join, so -threads needs a count");
         try {
-            String content = new String(Files.readAllBytes(Paths.get(path)));
+            Path sourcePath = Paths.get(path);
+            Interpreter interpreter = new Interpreter(heap);
+            interpreter.setTailChaining(tailChaining);
+            if (seed != null) interpreter.random.setSeed(seed);
+            interpreter.random.setBatch(randomBatch);
+            ObstacleMap obstacles = obstaclePath != null ? ObstacleMap.load(Paths.get(obstaclePath)) : null;
+            if (obstacles != null && Trace.INFO) Trace.log("Loaded " + obstacles.size() + " obstacles into " + obstacles.getCellCount() + " cells.");
+            interpreter.setObstacleMap(obstacles);
+            Geofence geofence = geofencePath != null ? Geofence.load(Paths.get(geofencePath)) : null;
+            if (geofence != null) {
+                geofence.setReaction(fenceReaction.equals("none") ? null : fenceReaction);
+                if (Trace.INFO) Trace.log("Loaded " + geofence.getAllowedCount() + " allowed areas and " + geofence.getNoFlyCount() + " no-fly zones.");
+            }
+            interpreter.setGeofence(geofence);
+            FlightRecorder recorder = recordPath != null ? new FlightRecorder(Paths.get(recordPath)) : null;
+            interpreter.setRecorder(recorder, 0);
+            Execution program = useCache ? MissionCache.load(sourcePath, interpreter) : null;
             try {
-                AeroScriptLexer lexer = new AeroScriptLexer(CharStreams.fromString(content));
-                CommonTokenStream tokens = new CommonTokenStream(lexer);
-                AeroScriptParser parser = new AeroScriptParser(tokens);
-                AeroScriptParser.ProgramContext programContext = parser.program();
+                if (program != null) {
+                    if (Trace.INFO) Trace.log("Loaded compiled mission from " + MissionCache.cachePath(sourcePath) + ".");
+                } else {
+                    CharStream source = SourceLoader.load(sourcePath);
+                    TwoStageParser parser = new TwoStageParser();
+                    parser.setUnbuffered(unbuffered);
+                    AeroScriptParser.ProgramContext programContext = parser.parseProgram(source);
+                    if (Trace.INFO) Trace.log("Parsed in " + parser.getLastStage() + " mode.");
+
+                    TypeChecker typeChecker = new TypeChecker();
+                    ASTBuilder astBuilder = new ASTBuilder(interpreter);
+                    if (lazy) {
+                        astBuilder.setLazy(true);
+                        astBuilder.setBodyPass(bodyPass(compiled, geofence));
+                    }
+
+                    program = astBuilder.visitProgram(programContext);
+                    ExecutionPruner pruner = new ExecutionPruner();
+                    pruner.prune(program);
+                    if (Trace.INFO) Trace.log("Reachable: " + pruner.getReachableCount() + " executions, dropped " + pruner.getRemoved().size() + ".");
+                    typeChecker.walk(program);
+
+                    ConstantFolder folder = new ConstantFolder();
+                    folder.fold(program);
+                    if (Trace.INFO) Trace.log("Constant folding: " + folder.getNodesBefore() + " -> " + folder.getNodesAfter() + " nodes.");
+
+                    if (useCache && !lazy) { // Storing would build every lazy body
+                        try {
+                            MissionCache.store(sourcePath, program);
+                        } catch (IOException e) {
+                            System.err.println("Could not write compiled mission: " + e.getMessage());
+                        }
+                    }
+                }
+
+                if (geofence != null) {
+                    // Cached missions too, since the geofence may have changed since
+                    GeofenceChecker checker = new GeofenceChecker(geofence);
+                    checker.check(program);
+                    if (Trace.INFO) Trace.log("Geofence: " + checker.getCheckedCount() + " constant targets inside.");
+                }
+
+                if (lazy) {
+                    // It would build every body the analysis reaches, which is what -lazy is there to put off
+                    if (Trace.INFO) Trace.log("Battery: not analyzed, since -lazy only builds what is flown.");
+                } else if (!yesREPL && obstacles == null && (geofence == null || geofence.getReaction() == null)) {
+                    // Only without anything from outside that could take the drone somewhere else
+                    BatteryAnalyzer analyzer = new BatteryAnalyzer(initialPosition, batteryLevel, altitude);
+                    analyzer.check(program);
+                    if (Trace.INFO) Trace.log("Battery: " + analyzer.getVerdict() + ", consumes " + analyzer.getLowest() + " to " + analyzer.getHighest() + ".");
+                }
 
-                TypeChecker typeChecker = new TypeChecker();
-                Interpreter interpreter = new Interpreter(heap, stack);
-                ASTBuilder astBuilder = new ASTBuilder(interpreter);
+                if (fleetSize > 0) {
+                    runFleet(program, fleetSize, threads, initialPosition, batteryLevel, altitude, useVM, compiled, tailChaining, seed != null ? seed : 0, randomBatch, obstacles, geofence, recorder);
+                    return;
+                }
+                if (monteCarloRuns > 0) {
+                    MonteCarlo monteCarlo = new MonteCarlo(new Fleet.Mission(program), initialPosition, batteryLevel, altitude);
+                    monteCarlo.getFleet().setVM(useVM);
+                    monteCarlo.getFleet().setCompiled(compiled);
+                    monteCarlo.getFleet().setTailChaining(tailChaining);
+                    monteCarlo.getFleet().setRandomBatch(randomBatch);
+                    monteCarlo.getFleet().setObstacleMap(obstacles);
+                    monteCarlo.getFleet().setGeofence(geofence);
+                    monteCarlo.getFleet().setRecorder(recorder);
+                    MonteCarlo.Report report = monteCarlo.run(monteCarloRuns, seed != null ? seed : 0, Integer.parseInt(threads));
+                    Trace.flush();
+                    System.out.println(report);
+                    return;
+                }
+
+                Specializer specializer = new Specializer();
+                specializer.specialize(program);
+                if (Trace.INFO) Trace.log("Specialized " + specializer.getSpecializedCount() + " nodes.");
 
-                Execution program = astBuilder.visitProgram(programContext);
-                typeChecker.walk(program);
+                if (compiled) {
+                    // After storing, the cache holds the tree form
+                    BytecodeCompiler compiler = new BytecodeCompiler();
+                    compiler.compile(program);
+                    if (Trace.INFO) Trace.log("Compiled " + compiler.getCompiledCount() + " actions to bytecode.");
+                }
+
+                Code code = useVM ? Lowering.lower(program) : null;
 
                 if (yesREPL) {
-                    interpreter.runProgramREPL(program);
+                    if (code != null) interpreter.runProgramREPL(code);
+                    else interpreter.runProgramREPL(program);
                     REPL repl = new REPL(interpreter);
                     System.out.println("Welcome to the AeroScript REPL!");
                     while(!repl.isTerminating()) {
@@ -110,10 +310,13 @@ public class Main {
                             left = splits.length == 1 ? "" : splits[1].trim();
                         } while (!repl.command(splits[0], left));
                     }
+                } else if (code != null) {
+                    interpreter.runProgram(code);
                 } else {
                     interpreter.runProgram(program);
                 }
                 
+                Trace.flush(); // So the results come after the trace
                 System.out.println("Initial Position: " + initialPosition);
                 System.out.println("Initial Battery level: " + batteryLevel);
                 System.out.println("Final Position: " + interpreter.getCurrentPosition());
@@ -123,9 +326,77 @@ public class Main {
                 System.out.println("Execution complete!");
             } catch (ParseCancellationException e) {
                 System.err.println("Parser error: " + e.getMessage());
+            } catch (GeofenceError e) {
+                System.err.println("Geofence error: " + e.getMessage());
+            } catch (ResolutionError e) {
+                System.err.println("Resolution error: " + e.getMessage());
+            } catch (BatteryError e) {
+                System.err.println("Battery error: " + e.getMessage());
+            } finally {
+                if (recorder != null) {
+                    recorder.close();
+                    if (Trace.INFO) Trace.log("Recorded " + recorder.getRecorded() + " actions in " + recorder.getSegmentCount() + " segments to " + recorder.getDirectory() + ".");
+                    Trace.flush();
+                }
             }
         }  catch (/*IOException e*/Exception e) {
             System.err.println("Error reading file: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    // Every drone flies the same mission, spread out on a grid around the start with its own random seed
+    // What the rest of the program goes through in main, in the same order, for a lazy body built when it first runs.
+    // The geofence check runs on the folded body before it is compiled, since it only sees Actions
+    public static BiFunction<String, Statement[], Statement[]> bodyPass(boolean compiled, Geofence geofence) {
+        return (id, body) -> {
+            TypeChecker checker = new TypeChecker();
+            ConstantFolder folder = new ConstantFolder();
+            for (Statement statement : body) {
+                checker.walk(statement);
+                folder.fold(statement);
+            }
+            if (geofence != null) new GeofenceChecker(geofence).check(id, body); // The check over the program saw it empty
+            Specializer specializer = new Specializer();
+            BytecodeCompiler compiler = compiled ? new BytecodeCompiler() : null;
+            for (int i = 0; i < body.length; i++) {
+                specializer.specialize(body[i]);
+                if (compiler != null && body[i] instanceof Action) body[i] = compiler.compile((Action) body[i]);
+            }
+            return body;
+        };
+    }
+
+    private static void runFleet(Execution program, int size, String threads, Point start, float batteryLevel, float altitude,
+                                 boolean useVM, boolean compiled, boolean tailChaining, long seed, int randomBatch, ObstacleMap obstacles, Geofence geofence, FlightRecorder recorder) throws InterruptedException {
+        Fleet.Mission mission = new Fleet.Mission(program);
+        List<Fleet.Drone> drones = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Point position = new Point(start.getX() + (i % 100) * 10, start.getY() + (i / 100) * 10);
+            drones.add(new Fleet.Drone(i, mission, position, batteryLevel, altitude, seed + i));
+        }
+
+        ExecutorService pool = threads.equals("virtual") ? Fleet.virtualThreads() : Fleet.workStealingPool(Integer.parseInt(threads));
+        if (pool == null) error("Virtual threads need Java 21 or newer");
+        Fleet fleet = new Fleet();
+        fleet.setVM(useVM);
+        fleet.setCompiled(compiled);
+        fleet.setTailChaining(tailChaining);
+        fleet.setRandomBatch(randomBatch);
+        fleet.setObstacleMap(obstacles);
+        fleet.setGeofence(geofence);
+        fleet.setRecorder(recorder);
+        try {
+            fleet.fly(drones, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        Trace.flush();
+        int failed = 0;
+        for (Fleet.Drone drone : drones) {
+            System.out.println(drone);
+            if (drone.failure != null) failed++;
+        }
+        System.out.printf("Flew %d drones (%d failed) in %.3f s: %.0f missions/s%n", size, failed, fleet.getSeconds(), fleet.getMissionsPerSecond());
+    }
+}
@@ -1,18 +1,25 @@
 package no.uio.aeroscript.ast.expr;
 
+import no.uio.aeroscript.runtime.Interpreter;
 import no.uio.aeroscript.type.Point;
 import no.uio.aeroscript.type.ExpressionType;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class BinaryNode extends Node {
     public final Node left;
     public final Node right;
-    private static final Random random = new Random();
+    public final Interpreter interpreter; // Only RANDOM has one, to draw from that drone's random source
+    private final float[] scratch = new float[2]; // For the right operand in point arithmetic
 
     public BinaryNode(ExpressionType type, Node left, Node right) {
+        this(type, left, right, null);
+    }
+
+    public BinaryNode(ExpressionType type, Node left, Node right, Interpreter interpreter) {
         this.type = type;
         this.left = left;
         this.right = right;
+        this.interpreter = interpreter;
     }
     
     @Override
@@ -60,7 +67,7 @@ public class BinaryNode extends Node {
     
             case RANDOM -> {
                 Object re = right.evaluate();
-                yield random.nextFloat((Float) le, (Float) re);
+                yield nextRandom((Float) le, (Float) re);
             }
     
             case POINT -> {
@@ -72,6 +79,82 @@ public class BinaryNode extends Node {
         };
     }
 
+    @Override
+    public float evaluateFloat() {
+        if (resultType != ExpressionType.NUMBER) return super.evaluateFloat();
+        // A NUMBER result means both operands are NUMBERs, see the TypeChecker's table
+        return switch (type) {
+            case PLUS -> left.evaluateFloat() + right.evaluateFloat();
+            case MINUS -> left.evaluateFloat() - right.evaluateFloat();
+            case TIMES -> left.evaluateFloat() * right.evaluateFloat();
+            case RANDOM -> {
+                float low = left.evaluateFloat();
+                yield nextRandom(low, right.evaluateFloat());
+            }
+            default -> super.evaluateFloat();
+        };
+    }
+
+    @Override
+    public void evaluatePoint(float[] out) {
+        if (resultType != ExpressionType.POINT) {
+            super.evaluatePoint(out);
+            return;
+        }
+        switch (type) {
+            case POINT -> {
+                float x = left.evaluateFloat();
+                out[1] = right.evaluateFloat();
+                out[0] = x;
+            }
+            case PLUS, MINUS -> {
+                left.evaluatePoint(out);
+                float rx, ry;
+                if (right.resultType == ExpressionType.POINT) {
+                    right.evaluatePoint(scratch);
+                    rx = scratch[0];
+                    ry = scratch[1];
+                } else {
+                    rx = ry = right.evaluateFloat();
+                }
+                if (type == ExpressionType.PLUS) {
+                    out[0] += rx;
+                    out[1] += ry;
+                } else {
+                    out[0] -= rx;
+                    out[1] -= ry;
+                }
+            }
+            case TIMES -> {
+                if (left.resultType == ExpressionType.POINT) {
+                    left.evaluatePoint(out);
+                    if (right.resultType == ExpressionType.POINT) {
+                        right.evaluatePoint(scratch);
+                        out[0] *= scratch[0];
+                        out[1] *= scratch[1];
+                    } else {
+                        float factor = right.evaluateFloat();
+                        out[0] *= factor;
+                        out[1] *= factor;
+                    }
+                } else {
+                    float factor = left.evaluateFloat();
+                    right.evaluatePoint(out);
+                    out[0] *= factor;
+                    out[1] *= factor;
+                }
+            }
+            default -> super.evaluatePoint(out);
+        }
+    }
+
+    // Shared by every backend, so they all draw from the same sequence. Each interpreter has its own,
+    // so drones running side by side neither contend on it nor change each other's numbers
+    public float nextRandom(float low, float high) {
+        if (interpreter == null) return ThreadLocalRandom.current().nextFloat(low, high); // Hand-built nodes
+        return interpreter.random.nextFloat(low, high);
+    }
+
     @Override
     public String toString() {
         return "BinaryNode " + type + " " + left + " " + right;
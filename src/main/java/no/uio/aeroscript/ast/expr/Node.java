@@ -1,11 +1,25 @@
 package no.uio.aeroscript.ast.expr;
 
 import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
 
 public abstract class Node {
     public ExpressionType type;
+    public ExpressionType resultType; // NUMBER or POINT, set by the TypeChecker. Null on unchecked trees
     public abstract Object evaluate();
 
+    // The unboxed versions. Subclasses only go allocation-free once the tree is type-checked,
+    // before that these fall back to evaluate()
+    public float evaluateFloat() {
+        return ((Number) evaluate()).floatValue();
+    }
+
+    public void evaluatePoint(float[] out) {
+        Point point = (Point) evaluate();
+        out[0] = point.getX();
+        out[1] = point.getY();
+    }
+
     @Override
     public String toString() {
         return "Node";
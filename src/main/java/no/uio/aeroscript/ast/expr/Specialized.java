@@ -0,0 +1,187 @@
+package no.uio.aeroscript.ast.expr;
+
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+
+// Node variants for one combination of operand types each, put in by the Specializer once the
+// TypeChecker knows them. None of them test types when evaluating, and since every class is final
+// and only ever sees one kind of node, the JIT can inline a whole expression.
+// They still are BinaryNodes and UnaryNodes with the same type and data, so every other pass
+// can treat them as the generic ones.
+public final class Specialized {
+    private Specialized() {}
+
+    // NUMBER results
+
+    public static final class FloatLiteral extends UnaryNode {
+        private final float value;
+
+        public FloatLiteral(Float value) {
+            super(ExpressionType.NUMBER, value);
+            this.value = value;
+            this.resultType = ExpressionType.NUMBER;
+        }
+
+        @Override public Object evaluate() { return data; }
+        @Override public float evaluateFloat() { return value; }
+    }
+
+    public static final class FloatVariable extends UnaryNode {
+        private final Variable variable;
+
+        public FloatVariable(Variable variable) {
+            super(ExpressionType.VARIABLE, variable);
+            this.variable = variable;
+            this.resultType = ExpressionType.NUMBER;
+        }
+
+        @Override public Object evaluate() { return variable.get(); }
+        @Override public float evaluateFloat() { return variable.getFloat(); }
+    }
+
+    public static final class FloatNeg extends UnaryNode {
+        private final Node child;
+
+        public FloatNeg(Node child) {
+            super(ExpressionType.NEG, child);
+            this.child = child;
+            this.resultType = ExpressionType.NUMBER;
+        }
+
+        @Override public Object evaluate() { return evaluateFloat(); }
+        @Override public float evaluateFloat() { return child.evaluateFloat() * -1; }
+    }
+
+    public static final class FloatPlus extends BinaryNode {
+        public FloatPlus(Node left, Node right) { super(ExpressionType.PLUS, left, right); resultType = ExpressionType.NUMBER; }
+
+        @Override public Object evaluate() { return evaluateFloat(); }
+        @Override public float evaluateFloat() { return left.evaluateFloat() + right.evaluateFloat(); }
+    }
+
+    public static final class FloatMinus extends BinaryNode {
+        public FloatMinus(Node left, Node right) { super(ExpressionType.MINUS, left, right); resultType = ExpressionType.NUMBER; }
+
+        @Override public Object evaluate() { return evaluateFloat(); }
+        @Override public float evaluateFloat() { return left.evaluateFloat() - right.evaluateFloat(); }
+    }
+
+    public static final class FloatTimes extends BinaryNode {
+        public FloatTimes(Node left, Node right) { super(ExpressionType.TIMES, left, right); resultType = ExpressionType.NUMBER; }
+
+        @Override public Object evaluate() { return evaluateFloat(); }
+        @Override public float evaluateFloat() { return left.evaluateFloat() * right.evaluateFloat(); }
+    }
+
+    public static final class FloatRandom extends BinaryNode {
+        public FloatRandom(Node left, Node right, Interpreter interpreter) { super(ExpressionType.RANDOM, left, right, interpreter); resultType = ExpressionType.NUMBER; }
+
+        @Override public Object evaluate() { return evaluateFloat(); }
+        @Override public float evaluateFloat() {
+            float low = left.evaluateFloat();
+            return nextRandom(low, right.evaluateFloat());
+        }
+    }
+
+    // POINT results. evaluate() makes a Point, like the generic nodes do
+
+    public static final class PointLiteral extends UnaryNode {
+        private final float x;
+        private final float y;
+
+        public PointLiteral(Point point) {
+            super(ExpressionType.POINT, point);
+            this.x = point.getX();
+            this.y = point.getY();
+            this.resultType = ExpressionType.POINT;
+        }
+
+        @Override public Object evaluate() { return data; }
+        @Override public void evaluatePoint(float[] out) {
+            out[0] = x;
+            out[1] = y;
+        }
+    }
+
+    public static final class PointVariable extends UnaryNode {
+        private final Variable variable;
+
+        public PointVariable(Variable variable) {
+            super(ExpressionType.VARIABLE, variable);
+            this.variable = variable;
+            this.resultType = ExpressionType.POINT;
+        }
+
+        @Override public Object evaluate() { return variable.get(); }
+        @Override public void evaluatePoint(float[] out) { variable.getPoint(out); }
+    }
+
+    public static final class PointNeg extends UnaryNode {
+        private final Node child;
+
+        public PointNeg(Node child) {
+            super(ExpressionType.NEG, child);
+            this.child = child;
+            this.resultType = ExpressionType.POINT;
+        }
+
+        @Override public Object evaluate() { return toPoint(this); }
+        @Override public void evaluatePoint(float[] out) {
+            child.evaluatePoint(out);
+            out[0] *= -1;
+            out[1] *= -1;
+        }
+    }
+
+    public static final class PointOf extends BinaryNode {
+        public PointOf(Node x, Node y) { super(ExpressionType.POINT, x, y); resultType = ExpressionType.POINT; }
+
+        @Override public Object evaluate() { return toPoint(this); }
+        @Override public void evaluatePoint(float[] out) {
+            float x = left.evaluateFloat();
+            out[1] = right.evaluateFloat();
+            out[0] = x;
+        }
+    }
+
+    // point (+|-|*) point
+    public static final class PointPointArithmetic extends BinaryNode {
+        private final float[] other = new float[2];
+
+        public PointPointArithmetic(ExpressionType type, Node left, Node right) { super(type, left, right); resultType = ExpressionType.POINT; }
+
+        @Override public Object evaluate() { return toPoint(this); }
+        @Override public void evaluatePoint(float[] out) {
+            left.evaluatePoint(out);
+            right.evaluatePoint(other);
+            switch (type) {
+                case PLUS -> { out[0] += other[0]; out[1] += other[1]; }
+                case MINUS -> { out[0] -= other[0]; out[1] -= other[1]; }
+                default -> { out[0] *= other[0]; out[1] *= other[1]; }
+            }
+        }
+    }
+
+    // point (+|-|*) number
+    public static final class PointFloatArithmetic extends BinaryNode {
+        public PointFloatArithmetic(ExpressionType type, Node left, Node right) { super(type, left, right); resultType = ExpressionType.POINT; }
+
+        @Override public Object evaluate() { return toPoint(this); }
+        @Override public void evaluatePoint(float[] out) {
+            left.evaluatePoint(out);
+            float value = right.evaluateFloat();
+            switch (type) {
+                case PLUS -> { out[0] += value; out[1] += value; }
+                case MINUS -> { out[0] -= value; out[1] -= value; }
+                default -> { out[0] *= value; out[1] *= value; }
+            }
+        }
+    }
+
+    private static Point toPoint(Node node) {
+        float[] out = new float[2]; // Doesn't escape, so the JIT can drop it
+        node.evaluatePoint(out);
+        return new Point(out[0], out[1]);
+    }
+}
@@ -8,10 +8,21 @@ import no.uio.aeroscript.type.Range;
 
 public class UnaryNode extends Node {
     public final Object data;
+    private final float x; // Unboxed copies of a NUMBER or POINT literal
+    private final float y;
 
     public UnaryNode(ExpressionType type, Object data) {
         this.type = type;
         this.data = data;
+        if (data instanceof Number) {
+            x = ((Number) data).floatValue();
+            y = 0;
+        } else if (data instanceof Point) {
+            x = ((Point) data).getX();
+            y = ((Point) data).getY();
+        } else {
+            x = y = 0;
+        }
     }
 
     @Override
@@ -30,7 +41,7 @@ public class UnaryNode extends Node {
                 }
             }
 
-            case NUMBER -> {
+            case NUMBER, POINT -> { // A POINT UnaryNode is a literal made by the ConstantFolder
                 yield data;
             }
 
@@ -42,6 +53,40 @@ public class UnaryNode extends Node {
         };
     }
 
+    @Override
+    public float evaluateFloat() {
+        return switch (type) {
+            case NUMBER -> data instanceof Number ? x : super.evaluateFloat();
+            case NEG -> resultType == ExpressionType.NUMBER ? ((Node) data).evaluateFloat() * -1 : super.evaluateFloat();
+            case VARIABLE -> data instanceof Variable ? ((Variable) data).getFloat() : super.evaluateFloat();
+            default -> super.evaluateFloat();
+        };
+    }
+
+    @Override
+    public void evaluatePoint(float[] out) {
+        switch (type) {
+            case POINT -> {
+                out[0] = x;
+                out[1] = y;
+            }
+            case NEG -> {
+                if (resultType != ExpressionType.POINT) {
+                    super.evaluatePoint(out);
+                    return;
+                }
+                ((Node) data).evaluatePoint(out);
+                out[0] *= -1;
+                out[1] *= -1;
+            }
+            case VARIABLE -> {
+                if (data instanceof Variable) ((Variable) data).getPoint(out);
+                else super.evaluatePoint(out);
+            }
+            default -> super.evaluatePoint(out);
+        }
+    }
+
     @Override
     public String toString() {
         return "UnaryNode " + type + " " + data;
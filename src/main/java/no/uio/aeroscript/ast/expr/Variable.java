@@ -0,0 +1,56 @@
+package no.uio.aeroscript.ast.expr;
+
+import java.util.function.Supplier;
+
+import no.uio.aeroscript.runtime.DroneState;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+
+// Reads a named variable from the interpreter when evaluated.
+// Keeping the name around (instead of an anonymous lambda) lets the AST be written out and rebuilt.
+public class Variable implements Supplier<Object> {
+    public final String name;
+    private final Interpreter interpreter;
+    private final int slot; // In the DroneState, or -1 for anything else on the heap
+
+    public Variable(Interpreter interpreter, String name) {
+        this.interpreter = interpreter;
+        this.name = name;
+        this.slot = DroneState.slotOf(name);
+    }
+
+    @Override
+    public Object get() {
+        if (slot >= 0) return interpreter.state.get(slot);
+        return interpreter.getVariables().get(name);
+    }
+
+    public float getFloat() {
+        if (slot >= 0) return interpreter.state.getFloat(slot);
+        return ((Number) get()).floatValue();
+    }
+
+    public void getPoint(float[] out) {
+        if (slot >= 0) {
+            interpreter.state.getPoint(slot, out);
+            return;
+        }
+        Point point = (Point) get();
+        out[0] = point.getX();
+        out[1] = point.getY();
+    }
+
+    public ExpressionType getType() {
+        return typeOf(name);
+    }
+
+    public static ExpressionType typeOf(String name) {
+        return name.endsWith("position") ? ExpressionType.POINT : ExpressionType.NUMBER;
+    }
+
+    @Override
+    public String toString() {
+        return "Variable " + name;
+    }
+}
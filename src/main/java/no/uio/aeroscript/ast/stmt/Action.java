@@ -1,9 +1,12 @@
 package no.uio.aeroscript.ast.stmt;
 
 import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.runtime.DroneState;
 import no.uio.aeroscript.runtime.Interpreter;
 import no.uio.aeroscript.type.ActionType;
+import no.uio.aeroscript.type.ExpressionType;
 import no.uio.aeroscript.type.Point;
+import no.uio.aeroscript.trace.Trace;
 
 public class Action extends Statement {
     private Interpreter interpreter;
@@ -11,6 +14,7 @@ public class Action extends Statement {
     public Node data;
     public Node speed;
     public Node duration;
+    private final float[] target = new float[2];
 
     public Action(Interpreter interpreter, ActionType action, Node data, Node speed, Node duration) {
         this.interpreter = interpreter;
@@ -22,55 +26,103 @@ public class Action extends Statement {
 
     @Override
     public void execute() {
-        Float evalSpeed = (Float) speed.evaluate();
-        Float evalDuration = (Float) duration.evaluate();
-        Float cost = (evalDuration * 0.1f) + (evalSpeed * 1f); // Makes no sense
-        
-        Object evalData = data.evaluate();
-        System.out.println("Act: " + action + " " + evalData.toString());
+        // Evaluation order matters for random, so keep it as speed, duration, data
+        float evalSpeed = speed.evaluateFloat();
+        float evalDuration = duration.evaluateFloat();
 
         switch (action) {
             case MOVE:
-                Point nPoint;
-                Float distance;
-                if (evalData instanceof Point) {
-                    Float px = ((Point) evalData).getX() - interpreter.getCurrentPosition().getX();
-                    Float py = ((Point) evalData).getY() - interpreter.getCurrentPosition().getY();
-                    distance = (float) Math.sqrt(Math.pow(px,2) + Math.pow(py,2)); // Small float intentional, since type weirdness
-                    cost += distance * 0.7f;
-                    nPoint = (Point) evalData;
+                if (data.resultType == null) { // Not type-checked, so we only know what it is after evaluating it
+                    Object evalData = data.evaluate();
+                    if (evalData instanceof Point) move(((Point) evalData).getX(), ((Point) evalData).getY(), evalSpeed, evalDuration);
+                    else moveBy((Float) evalData, evalSpeed, evalDuration);
+                } else if (data.resultType == ExpressionType.POINT) {
+                    data.evaluatePoint(target);
+                    move(target[0], target[1], evalSpeed, evalDuration);
                 } else {
-                    nPoint = new Point(interpreter.getCurrentPosition().getX() + (Float) evalData, interpreter.getCurrentPosition().getY());
-                    distance = (Float) evalData;
-                    cost += Math.abs((Float) evalData * 0.5f);
+                    moveBy(data.evaluateFloat(), evalSpeed, evalDuration);
                 }
-                testBattery(cost);
-                interpreter.setCurrentPosition(nPoint);
-                interpreter.setDistanceTravelled(interpreter.getDistanceTravelled() + distance);
                 break;
-            case TURN: // But there is no rotation variable to change?
-                cost += Math.abs((Float) evalData * 0.3f); // Getting abs fixes an old bug
-                testBattery(cost);
+            case TURN:
+                turn(data.evaluateFloat(), evalSpeed, evalDuration);
                 break;
             case SCEND:
-                if ((Float) evalData > 0) {
-                    cost += (Float) evalData * 0.6f;
-                } else {
-                    cost += Math.abs((Float) evalData * 0.2f);
-                }
-                testBattery(cost);
-                interpreter.setAltitude(interpreter.getAltitude() + (Float) evalData);
+                scend(data.evaluateFloat(), evalSpeed, evalDuration);
                 break;
             default:
                 throw new IllegalArgumentException("Invalid action: " + action);
         }
-        interpreter.setBatteryLevel(interpreter.getBatteryLevel() - cost);
     }
 
-    private void testBattery(Float cost) {
-        System.out.println("Cost: " + cost);
+    // The actions themselves, on already evaluated values. Also used by the other backends
+
+    public void move(float x, float y, float speed, float duration) {
+        float cost = baseCost(speed, duration);
+        if (Trace.ACTION) Trace.log("Act: " + action + " (" + x + ", " + y + ")");
+
+        DroneState state = interpreter.state;
+        if (interpreter.checkObstacle(state.x, state.y, x, y)) return; // Went to its reaction instead
+        if (interpreter.checkGeofence(state.x, state.y, x, y)) return;
+        float px = x - state.x;
+        float py = y - state.y;
+        float distance = (float) Math.sqrt(Math.pow(px,2) + Math.pow(py,2)); // Small float intentional, since type weirdness
+        cost += distance * 0.7f;
+        testBattery(cost);
+        state.x = x;
+        state.y = y;
+        state.distanceTravelled += distance;
+        state.batteryLevel -= cost;
+        interpreter.acted(this, distance, speed, duration);
+    }
+
+    public void moveBy(float distance, float speed, float duration) {
+        float cost = baseCost(speed, duration);
+        if (Trace.ACTION) Trace.log("Act: " + action + " " + distance);
+
+        DroneState state = interpreter.state;
+        if (interpreter.checkObstacle(state.x, state.y, state.x + distance, state.y)) return;
+        if (interpreter.checkGeofence(state.x, state.y, state.x + distance, state.y)) return;
+        cost += Math.abs(distance * 0.5f);
+        testBattery(cost);
+        state.x += distance;
+        state.distanceTravelled += distance;
+        state.batteryLevel -= cost;
+        interpreter.acted(this, Math.abs(distance), speed, duration);
+    }
+
+    public void turn(float angle, float speed, float duration) { // But there is no rotation variable to change?
+        float cost = baseCost(speed, duration);
+        if (Trace.ACTION) Trace.log("Act: " + action + " " + angle);
+
+        cost += Math.abs(angle * 0.3f); // Getting abs fixes an old bug
+        testBattery(cost);
+        interpreter.state.batteryLevel -= cost;
+        interpreter.acted(this, Math.abs(angle), speed, duration);
+    }
+
+    public void scend(float height, float speed, float duration) {
+        float cost = baseCost(speed, duration);
+        if (Trace.ACTION) Trace.log("Act: " + action + " " + height);
+
+        if (height > 0) {
+            cost += height * 0.6f;
+        } else {
+            cost += Math.abs(height * 0.2f);
+        }
+        testBattery(cost);
+        interpreter.state.altitude += height;
+        interpreter.state.batteryLevel -= cost;
+        interpreter.acted(this, Math.abs(height), speed, duration);
+    }
+
+    private static float baseCost(float speed, float duration) {
+        return (duration * 0.1f) + (speed * 1f); // Makes no sense
+    }
+
+    private void testBattery(float cost) {
+        if (Trace.ACTION) Trace.log("Cost: " + cost);
         interpreter.checkBatteryLevel();
-        if (interpreter.getBatteryLevel() < cost) {
+        if (interpreter.state.batteryLevel < cost) {
             throw new RuntimeException ("Not enough battery to perform action.");
         }
     }
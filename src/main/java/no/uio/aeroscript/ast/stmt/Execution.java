@@ -1,8 +1,10 @@
 package no.uio.aeroscript.ast.stmt;
 
 import java.util.HashMap;
+import java.util.function.Supplier;
 
 import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.trace.Trace;
 
 public class Execution extends Statement {
     private Interpreter interpreter;
@@ -13,6 +15,17 @@ public class Execution extends Statement {
     public HashMap<String, Execution> executions;
     public HashMap<String, String> reactions;
     public HashMap<String, String> messages;
+    // Made once, since they are pushed every time this runs
+    private final Lambda enterModeCommand = new Lambda("Enter Mode", () -> interpreter.pushMode(this));
+    private final Lambda exitModeCommand = new Lambda("Exit Mode", () -> interpreter.getLambda("modeEnd").run());
+    // With tail chaining, the next one is only pushed when this one exits, in its place
+    private Execution nextExecution;
+    // Where a lazy execution's statements come from, until it first runs. See ASTBuilder.setLazy
+    private volatile Supplier<Statement[]> body;
+    private final Lambda exitAndChainCommand = new Lambda("Exit Mode", () -> {
+        interpreter.pushToStack(nextExecution);
+        interpreter.getLambda("modeEnd").run(); // The REPL's pending pop goes on top, like before
+    });
 
     public Execution(Interpreter interpreter, String id, Statement[] statements, Boolean prefix, String next) {
         this.interpreter = interpreter;
@@ -27,21 +40,54 @@ public class Execution extends Statement {
 
     @Override
     public void execute() {
-        System.out.println("Execute: " + id);
+        if (Trace.DEBUG) Trace.log("Execute: " + id);
+        Statement[] statements = materialize();
 
-        if (next != null) {
-            interpreter.pushToStack(interpreter.getModeExecutions().get(next));
+        if (next != null && interpreter.isTailChaining()) {
+            nextExecution = interpreter.getModeExecutions().get(next); // Looked up now, while the parent is the mode
+            interpreter.pushToStack(exitAndChainCommand);
+        } else {
+            if (next != null) {
+                interpreter.pushToStack(interpreter.getModeExecutions().get(next));
+            }
+            interpreter.pushToStack(exitModeCommand);
         }
 
-        Lambda exitModeCommand = new Lambda("Exit Mode", () -> interpreter.getLambda("modeEnd").run());
-        interpreter.pushToStack(exitModeCommand);
-
         interpreter.pushAllToStackReverse(statements);
-        
-        Lambda enterModeCommand = new Lambda("Enter Mode", () -> interpreter.pushMode(this));
         interpreter.pushToStack(enterModeCommand);
     }
 
+    // Statements are empty until then, so passes over the whole program skip the body
+    public void setBody(Supplier<Statement[]> body) {
+        this.statements = new Statement[0];
+        this.body = body;
+    }
+
+    public boolean isMaterialized() { return body == null; }
+
+    // Builds a lazy execution's statements once, on whichever thread gets here first.
+    // Everyone after that sees them through the volatile body
+    public Statement[] materialize() {
+        if (body != null) {
+            synchronized (this) {
+                Supplier<Statement[]> pending = body;
+                if (pending != null) {
+                    if (Trace.DEBUG) Trace.log("Building " + id + " on first entry");
+                    statements = pending.get();
+                    body = null;
+                }
+            }
+        }
+        return statements;
+    }
+
+    // What it pushes around its statements, so snapshots can say which ones are on the stack
+    public Lambda getEnterCommand() { return enterModeCommand; }
+    public Lambda getExitCommand() { return exitModeCommand; }
+    public Lambda getChainCommand() { return exitAndChainCommand; }
+    public Execution getNextExecution() { return nextExecution; }
+    public void setNextExecution(Execution nextExecution) { this.nextExecution = nextExecution; }
+
     @Override
     public String toString() {
         return "Execution " + id;
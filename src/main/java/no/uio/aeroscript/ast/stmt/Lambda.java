@@ -1,5 +1,7 @@
 package no.uio.aeroscript.ast.stmt;
 
+import no.uio.aeroscript.trace.Trace;
+
 public class Lambda extends Statement {
     public final String label;
     private final Runnable action;
@@ -11,7 +13,7 @@ public class Lambda extends Statement {
 
     @Override
     public void execute() {
-        System.out.println("Running Lambda " + label);
+        if (Trace.DEBUG) Trace.log("Running Lambda " + label);
         action.run();
     }
 
@@ -19,4 +21,4 @@ public class Lambda extends Statement {
     public String toString() {
         return label;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
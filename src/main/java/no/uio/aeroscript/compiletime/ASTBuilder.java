@@ -1,8 +1,11 @@
 package no.uio.aeroscript.compiletime;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.function.BiFunction;
 import java.util.function.Supplier;
 
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
 import no.uio.aeroscript.antlr.AeroScriptBaseVisitor;
@@ -12,25 +15,35 @@ import no.uio.aeroscript.antlr.AeroScriptParser.StatementContext;
 import no.uio.aeroscript.ast.expr.Node;
 import no.uio.aeroscript.ast.expr.UnaryNode;
 import no.uio.aeroscript.ast.expr.BinaryNode;
+import no.uio.aeroscript.ast.expr.Variable;
 import no.uio.aeroscript.ast.stmt.Action;
 import no.uio.aeroscript.ast.stmt.Execution;
 import no.uio.aeroscript.ast.stmt.Statement;
 import no.uio.aeroscript.runtime.Interpreter;
 import no.uio.aeroscript.type.ActionType;
 import no.uio.aeroscript.type.ExpressionType;
-import no.uio.aeroscript.type.Point;
+import no.uio.aeroscript.trace.Trace;
 
 public class ASTBuilder extends AeroScriptBaseVisitor<Object> {
     private Interpreter interpreter;
+    private boolean lazy = false;
+    private BiFunction<String, Statement[], Statement[]> bodyPass;
 
     public ASTBuilder(Interpreter interpreter) {
         this.interpreter = interpreter;
     }
 
+    // For libraries where most executions only run on rare events: only names, chains, reactions and
+    // messages are built up front, and an execution's statements when it first runs (see Execution.materialize).
+    // They then go through bodyPass with the execution's id, which should do what the program went through, type checking and all.
+    // Needs a CharStream that keeps its text, so not the unbuffered one
+    public void setLazy(boolean lazy) { this.lazy = lazy; }
+    public void setBodyPass(BiFunction<String, Statement[], Statement[]> bodyPass) { this.bodyPass = bodyPass; }
+
     @Override
     public Execution visitProgram(AeroScriptParser.ProgramContext ctx) {
-        System.out.println("Building AST.");
-        System.out.println(ctx.execution());
+        if (Trace.DEBUG) Trace.log("Building AST.");
+        if (Trace.DEBUG) Trace.log(String.valueOf(ctx.execution()));
         // Program only takes Executions for now
 
         int prefixedExecutions = 0;
@@ -45,7 +58,7 @@ public class ASTBuilder extends AeroScriptBaseVisitor<Object> {
             Execution execution = (Execution) visitExecution(exCtx);
             program.executions.put(execution.id, execution);
             if (execution.prefix) statements[prefixedExecutions++] = execution;
-            System.out.println(exCtx.getText());
+            if (Trace.DEBUG) Trace.log(exCtx.getText());
         }
         
 
@@ -59,11 +72,12 @@ public class ASTBuilder extends AeroScriptBaseVisitor<Object> {
         Statement[] statements = new Statement[ctx.statement().size()];
 
         Execution execution = new Execution(interpreter, id, statements, ctx.prefix != null ? true : false, next != null ? next.getText() : null);
+        if (lazy) execution.setBody(lazyBody(id, ctx));
 
         int i = 0;
         for (StatementContext stmCtx : ctx.statement()) {
             if (stmCtx.action() != null) {
-                statements[i++] = (Statement) visitStatement(stmCtx);
+                if (!lazy) statements[i++] = (Statement) visitStatement(stmCtx);
                 // Remember not to add Executions if not prefixed. If we implement more Executions having Executions
             } else if (stmCtx.reaction() != null) {
                 AeroScriptParser.ReactionContext rctCtx = stmCtx.reaction();
@@ -79,10 +93,24 @@ public class ASTBuilder extends AeroScriptBaseVisitor<Object> {
             // For now, Executions can't hold more Executions, except the Program Execution
 
         }
+        // Reactions don't take a slot, so don't leave nulls at the end
+        if (!lazy && i < statements.length) execution.statements = Arrays.copyOf(statements, i);
 
         return execution;
     }
 
+    // Only the execution's source is kept, not its parse tree, and it is parsed again on first entry.
+    // A builder of its own, so bodies built on different threads share nothing but the interpreter
+    private Supplier<Statement[]> lazyBody(String id, ExecutionContext ctx) {
+        String source = ctx.start.getInputStream().getText(Interval.of(ctx.start.getStartIndex(), ctx.stop.getStopIndex()));
+        BiFunction<String, Statement[], Statement[]> pass = bodyPass;
+        return () -> {
+            ExecutionContext parsed = new TwoStageParser().parseProgram(CharStreams.fromString(source)).execution(0);
+            Statement[] body = ((Execution) new ASTBuilder(interpreter).visitExecution(parsed)).statements;
+            return pass != null ? pass.apply(id, body) : body;
+        };
+    }
+
     @Override
     public Statement visitAction(AeroScriptParser.ActionContext ctx) {
         Node speed = ctx.getText().contains("speed")
@@ -94,8 +122,7 @@ public class ASTBuilder extends AeroScriptBaseVisitor<Object> {
             : new UnaryNode(ExpressionType.NUMBER, 0f);
 
         if (ctx.acDock() != null) {
-            Supplier<Point> positionSupplier = () -> (Point) ((HashMap<String, Object>) interpreter.getVariables()).get("initial position");
-            UnaryNode positionNode = new UnaryNode(ExpressionType.VARIABLE, positionSupplier);
+            UnaryNode positionNode = new UnaryNode(ExpressionType.VARIABLE, new Variable(interpreter, "initial position"));
             return new Action(interpreter, ActionType.MOVE, positionNode, speed, duration);
         }
         else if (ctx.acMove() != null) {
@@ -111,9 +138,8 @@ public class ASTBuilder extends AeroScriptBaseVisitor<Object> {
         }
         else if (ctx.acDescend() != null) {
             if (ctx.acDescend().getText().contains("ground")) {
-                Supplier<Float> altitudeSupplier = () -> interpreter.getAltitude();
-                UnaryNode altitudeNode = new UnaryNode(ExpressionType.VARIABLE, altitudeSupplier);
-                return new Action(interpreter, ActionType.SCEND, new UnaryNode(ExpressionType.NEG, new UnaryNode(ExpressionType.VARIABLE, altitudeNode)), speed, duration);
+                UnaryNode altitudeNode = new UnaryNode(ExpressionType.VARIABLE, new Variable(interpreter, "altitude"));
+                return new Action(interpreter, ActionType.SCEND, new UnaryNode(ExpressionType.NEG, altitudeNode), speed, duration);
             }
             else {
                 Node node = new UnaryNode(ExpressionType.NEG, visitExpression(ctx.acDescend().expression()));
@@ -154,7 +180,7 @@ public class ASTBuilder extends AeroScriptBaseVisitor<Object> {
                 lnode = (Node) visit(ctx.range().expression(0));
                 rnode = (Node) visit(ctx.range().expression(1));
             }
-            return new BinaryNode(ExpressionType.RANDOM, lnode, rnode);
+            return new BinaryNode(ExpressionType.RANDOM, lnode, rnode, interpreter);
         }
         else if (ctx.POINT() != null) {
             return new BinaryNode(
@@ -0,0 +1,400 @@
+package no.uio.aeroscript.compiletime;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import no.uio.aeroscript.ast.expr.BinaryNode;
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.expr.Variable;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.error.BatteryError;
+import no.uio.aeroscript.runtime.DroneState;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+import no.uio.aeroscript.trace.Trace;
+
+// Flies a mission on intervals instead of numbers, to find what it can cost before running it.
+// Every value is a lowest and highest it can be, so random[a, b] is just [a, b], and the costs are
+// the ones in Action worked out on those. The drone's position, altitude and battery are followed too,
+// so "move to" and "descend to ground" get their distances.
+// Where the real run would go one of two ways, the analysis goes both: low battery is below 20, so
+// when the battery might be on either side of that in a mode with "on low battery", it follows the
+// reaction with the battery under 20 and the rest of the mode with it at 20 or more.
+// A mission is INFEASIBLE when every way through runs out of battery, FEASIBLE when none can, and
+// UNKNOWN otherwise, or when it went on longer than MAX_STEPS actions (a loop that doesn't cost anything).
+// Nothing from outside is taken into account: messages, obstacles and geofence reactions can take a
+// drone somewhere else, so with those, only trust FEASIBLE as far as the mission without them.
+public class BatteryAnalyzer {
+    public enum Verdict { FEASIBLE, INFEASIBLE, UNKNOWN }
+
+    public static final int MAX_STEPS = 1_000_000;
+    private static final float LOW_BATTERY = 20; // Interpreter.checkBatteryLevel
+    // The actions run on floats, so every result here is widened by more than they can round
+    private static final double ROUNDING = 1e-6;
+    private static final Interval ANY = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    // A value somewhere in [low, high]
+    private static final class Interval {
+        final double low;
+        final double high;
+
+        Interval(double low, double high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        static Interval of(double value) { return new Interval(value, value); }
+
+        static Interval rounded(double low, double high) {
+            if (Double.isNaN(low)) low = Double.NEGATIVE_INFINITY; // Infinity minus infinity
+            if (Double.isNaN(high)) high = Double.POSITIVE_INFINITY;
+            return new Interval(low - Math.abs(low) * ROUNDING, high + Math.abs(high) * ROUNDING);
+        }
+
+        Interval plus(Interval o) { return rounded(low + o.low, high + o.high); }
+        Interval minus(Interval o) { return rounded(low - o.high, high - o.low); }
+        Interval neg() { return new Interval(-high, -low); }
+
+        Interval times(Interval o) {
+            double a = product(low, o.low), b = product(low, o.high), c = product(high, o.low), d = product(high, o.high);
+            return rounded(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+        }
+
+        Interval times(double factor) { return times(of(factor)); }
+
+        Interval abs() {
+            if (low >= 0) return this;
+            if (high <= 0) return neg();
+            return new Interval(0, Math.max(-low, high));
+        }
+
+        Interval square() {
+            Interval a = abs();
+            return rounded(a.low * a.low, a.high * a.high);
+        }
+
+        Interval sqrt() { return rounded(Math.sqrt(Math.max(low, 0)), Math.sqrt(Math.max(high, 0))); }
+
+        Interval hull(Interval o) { return new Interval(Math.min(low, o.low), Math.max(high, o.high)); }
+
+        private static double product(double a, double b) {
+            double p = a * b;
+            return Double.isNaN(p) ? 0 : p; // Zero times infinity, which is zero here
+        }
+
+        @Override
+        public String toString() {
+            return low == high ? Double.toString(low) : "[" + low + ", " + high + "]";
+        }
+    }
+
+    // One way through the mission, as far as it has got
+    private static final class Path {
+        Interval x, y, altitude, battery, distance;
+        Interval spent = Interval.of(0); // All of it
+        Interval modeSpent; // Since the execution it is in started
+        Execution execution; // Null between prefixed executions
+        int pc;
+        int prefixed; // The next of the program's statements
+        boolean mayFail;
+
+        Path copy() {
+            Path path = new Path();
+            path.x = x;
+            path.y = y;
+            path.altitude = altitude;
+            path.battery = battery;
+            path.distance = distance;
+            path.spent = spent;
+            path.modeSpent = modeSpent;
+            path.execution = execution;
+            path.pc = pc;
+            path.prefixed = prefixed;
+            path.mayFail = mayFail;
+            return path;
+        }
+    }
+
+    private final float initialX, initialY, initialBattery, initialAltitude;
+    private Execution program;
+    private final ArrayDeque<Path> paths = new ArrayDeque<>();
+    private final Map<String, Interval> bounds = new LinkedHashMap<>();
+    private final Set<String> failures = new LinkedHashSet<>();
+    private Interval consumed; // Over the ways that get to the end
+    private int pathCount, finished, failed, uncertain;
+    private long steps;
+    private Verdict verdict;
+
+    public BatteryAnalyzer(Point position, float batteryLevel, float altitude) {
+        initialX = position.getX();
+        initialY = position.getY();
+        initialBattery = batteryLevel;
+        initialAltitude = altitude;
+    }
+
+    // Throws when the mission can't finish, with how every way through it runs out
+    public void check(Execution program) {
+        if (analyze(program) == Verdict.INFEASIBLE) {
+            throw new BatteryError("Mission can't finish with " + initialBattery + " battery:\n" + String.join("\n", failures));
+        }
+    }
+
+    public Verdict analyze(Execution program) {
+        this.program = program;
+        paths.clear();
+        bounds.clear();
+        failures.clear();
+        consumed = null;
+        pathCount = finished = failed = uncertain = 0;
+        steps = 0;
+
+        Path start = new Path();
+        start.x = Interval.of(initialX);
+        start.y = Interval.of(initialY);
+        start.altitude = Interval.of(initialAltitude);
+        start.battery = Interval.of(initialBattery);
+        start.distance = Interval.of(0);
+        paths.push(start);
+        boolean cut = false;
+        while (!paths.isEmpty()) {
+            pathCount++;
+            if (!fly(paths.pop())) {
+                cut = true;
+                break;
+            }
+        }
+
+        if (cut) verdict = Verdict.UNKNOWN;
+        else if (finished == 0 && uncertain == 0) verdict = Verdict.INFEASIBLE;
+        else if (failed == 0 && uncertain == 0) verdict = Verdict.FEASIBLE;
+        else verdict = Verdict.UNKNOWN;
+        if (Trace.INFO) Trace.log("Battery: " + verdict + " after " + steps + " steps on " + pathCount + " paths, consumed " + consumed);
+        return verdict;
+    }
+
+    // Until the path ends. False if it ran out of steps
+    private boolean fly(Path path) {
+        while (true) {
+            if (path.execution == null) {
+                if (path.prefixed >= program.statements.length) {
+                    end(path, path.mayFail);
+                    return true;
+                }
+                Statement statement = program.statements[path.prefixed++];
+                if (statement instanceof Execution) enter(path, (Execution) statement);
+                continue;
+            }
+
+            Execution execution = path.execution;
+            if (path.pc == execution.statements.length) {
+                bounds.merge(execution.id, path.modeSpent, Interval::hull);
+                path.execution = null;
+                if (execution.next != null) {
+                    Execution next = program.executions.get(execution.next);
+                    if (next == null) { // Not something we can tell the outcome of
+                        end(path, true);
+                        return true;
+                    }
+                    enter(path, next);
+                }
+                continue;
+            }
+
+            Statement statement = execution.statements[path.pc++];
+            if (!(statement instanceof Action)) {
+                end(path, true);
+                return true;
+            }
+            if (++steps > MAX_STEPS) return false;
+            if (!act(path, (Action) statement)) return true;
+        }
+    }
+
+    private void enter(Path path, Execution execution) {
+        execution.materialize(); // Only the lazy bodies some way through the mission gets to
+        path.execution = execution;
+        path.pc = 0;
+        path.modeSpent = Interval.of(0);
+    }
+
+    private void end(Path path, boolean mayFail) {
+        if (mayFail) uncertain++;
+        else finished++;
+        consumed = consumed == null ? path.spent : consumed.hull(path.spent);
+    }
+
+    // False if the path ended here
+    private boolean act(Path path, Action action) {
+        Interval cost = number(action.duration, path).times(0.1f).plus(number(action.speed, path).times(1f));
+        Interval x = path.x, y = path.y, altitude = path.altitude, distance = path.distance;
+        switch (action.action) {
+            case MOVE -> {
+                Object data = evaluate(action.data, path);
+                if (data instanceof Interval[]) {
+                    Interval[] target = (Interval[]) data;
+                    Interval length = target[0].minus(x).square().plus(target[1].minus(y).square()).sqrt();
+                    cost = cost.plus(length.times(0.7f));
+                    x = target[0];
+                    y = target[1];
+                    distance = distance.plus(length);
+                } else {
+                    Interval by = (Interval) data;
+                    cost = cost.plus(by.times(0.5f).abs());
+                    x = x.plus(by);
+                    distance = distance.plus(by);
+                }
+            }
+            case TURN -> cost = cost.plus(number(action.data, path).times(0.3f).abs());
+            case SCEND -> {
+                Interval height = number(action.data, path);
+                Interval up = new Interval(Math.max(height.low, 0), Math.max(height.high, 0)).times(0.6f);
+                Interval down = new Interval(Math.min(height.low, 0), Math.min(height.high, 0)).times(0.2f).abs();
+                if (height.low > 0) cost = cost.plus(up);
+                else if (height.high <= 0) cost = cost.plus(down);
+                else cost = cost.plus(new Interval(0, Math.max(up.high, down.high)));
+                altitude = altitude.plus(height);
+            }
+            default -> throw new IllegalArgumentException("Invalid action: " + action.action);
+        }
+
+        // Low battery is checked before the cost, and whatever it reacts with comes after this action
+        String reaction = path.execution.reactions.get("low battery");
+        if (reaction == null || path.battery.low >= LOW_BATTERY) return pay(path, action, cost, x, y, altitude, distance);
+        if (path.battery.high >= LOW_BATTERY) {
+            Path stays = path.copy();
+            stays.battery = new Interval(LOW_BATTERY, path.battery.high);
+            if (pay(stays, action, cost, x, y, altitude, distance)) paths.push(stays);
+            path.battery = new Interval(path.battery.low, LOW_BATTERY);
+        }
+        if (!pay(path, action, cost, x, y, altitude, distance)) return false;
+        Execution diverted = program.executions.get(reaction);
+        if (diverted == null) {
+            fail("No execution " + reaction + " for low battery in " + path.execution.id + ".");
+            return false;
+        }
+        path.prefixed = program.statements.length; // The stack is cleared
+        enter(path, diverted);
+        return true;
+    }
+
+    private boolean pay(Path path, Action action, Interval cost, Interval x, Interval y, Interval altitude, Interval distance) {
+        Interval battery = path.battery;
+        if (battery.high < cost.low) {
+            fail(String.format(Locale.ROOT, "%s %d in %s needs at least %.2f battery, but there is at most %.2f left.", // Without the widening showing
+                action.action, path.pc, path.execution.id, cost.low, battery.high));
+            return false;
+        }
+        if (battery.low < cost.high) {
+            path.mayFail = true;
+            battery = new Interval(Math.max(battery.low, cost.low), battery.high); // As it got past the check
+        }
+        Interval left = battery.minus(cost);
+        path.battery = new Interval(Math.max(left.low, 0), left.high);
+        path.spent = path.spent.plus(cost);
+        path.modeSpent = path.modeSpent.plus(cost);
+        path.x = x;
+        path.y = y;
+        path.altitude = altitude;
+        path.distance = distance;
+        return true;
+    }
+
+    private void fail(String why) {
+        failed++;
+        failures.add(why);
+    }
+
+    private Interval number(Node node, Path path) {
+        Object value = evaluate(node, path);
+        return value instanceof Interval ? (Interval) value : ANY;
+    }
+
+    // An Interval for a number, and two for a point
+    private Object evaluate(Node node, Path path) {
+        switch (node.type) {
+            case NUMBER -> {
+                Object data = ((UnaryNode) node).data;
+                return data instanceof Number ? Interval.of(((Number) data).floatValue()) : ANY;
+            }
+            case POINT -> {
+                if (node instanceof UnaryNode) {
+                    Object data = ((UnaryNode) node).data;
+                    if (!(data instanceof Point)) return new Interval[] { ANY, ANY };
+                    return new Interval[] { Interval.of(((Point) data).getX()), Interval.of(((Point) data).getY()) };
+                }
+                BinaryNode point = (BinaryNode) node;
+                return new Interval[] { number(point.left, path), number(point.right, path) };
+            }
+            case NEG -> {
+                Object value = evaluate((Node) ((UnaryNode) node).data, path);
+                if (value instanceof Interval[]) return new Interval[] { ((Interval[]) value)[0].neg(), ((Interval[]) value)[1].neg() };
+                return ((Interval) value).neg();
+            }
+            case VARIABLE -> {
+                Object data = ((UnaryNode) node).data;
+                if (!(data instanceof Variable)) return ANY;
+                return variable((Variable) data, path);
+            }
+            case PLUS, MINUS, TIMES -> {
+                BinaryNode binary = (BinaryNode) node;
+                Object left = evaluate(binary.left, path);
+                Object right = evaluate(binary.right, path);
+                if (left instanceof Interval && right instanceof Interval) return arithmetic(node, (Interval) left, (Interval) right);
+                Interval[] l = left instanceof Interval[] ? (Interval[]) left : new Interval[] { (Interval) left, (Interval) left };
+                Interval[] r = right instanceof Interval[] ? (Interval[]) right : new Interval[] { (Interval) right, (Interval) right };
+                return new Interval[] { arithmetic(node, l[0], r[0]), arithmetic(node, l[1], r[1]) };
+            }
+            case RANDOM -> {
+                // random draws from [low, high), and throws unless low < high
+                Interval low = number(((BinaryNode) node).left, path);
+                Interval high = number(((BinaryNode) node).right, path);
+                return low.low <= high.high ? new Interval(low.low, high.high) : low.hull(high);
+            }
+            default -> {
+                return ANY;
+            }
+        }
+    }
+
+    private static Interval arithmetic(Node node, Interval left, Interval right) {
+        return switch (node.type) {
+            case PLUS -> left.plus(right);
+            case MINUS -> left.minus(right);
+            default -> left.times(right);
+        };
+    }
+
+    private Object variable(Variable variable, Path path) {
+        return switch (DroneState.slotOf(variable.name)) {
+            case DroneState.CURRENT_POSITION -> new Interval[] { path.x, path.y };
+            case DroneState.INITIAL_POSITION -> new Interval[] { Interval.of(initialX), Interval.of(initialY) };
+            case DroneState.ALTITUDE -> path.altitude;
+            case DroneState.BATTERY_LEVEL -> path.battery;
+            case DroneState.INITIAL_BATTERY_LEVEL -> Interval.of(initialBattery);
+            case DroneState.DISTANCE_TRAVELLED -> path.distance;
+            default -> variable.getType() == ExpressionType.POINT ? new Interval[] { ANY, ANY } : ANY;
+        };
+    }
+
+    public Verdict getVerdict() { return verdict; }
+    public Set<String> getFailures() { return failures; }
+    public int getPathCount() { return pathCount; }
+    public long getStepCount() { return steps; }
+
+    // What the mission can consume on the ways through it that get to the end
+    public float getLowest() { return consumed == null ? Float.NaN : (float) consumed.low; }
+    public float getHighest() { return consumed == null ? Float.NaN : (float) consumed.high; }
+
+    // What one run of an execution's own actions can consume, over every time it ran to its end
+    public float[] getBounds(String execution) {
+        Interval bound = bounds.get(execution);
+        return bound == null ? null : new float[] { (float) bound.low, (float) bound.high };
+    }
+}
@@ -0,0 +1,518 @@
+package no.uio.aeroscript.compiletime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import no.uio.aeroscript.ast.expr.BinaryNode;
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.type.ActionType;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+
+// Compiles every Action of a type-checked program into its own hidden JVM class.
+// The generated execute() is straight-line float arithmetic for speed, duration and data,
+// followed by a direct call to Action.move/moveBy/turn/scend, so HotSpot can inline the whole thing.
+// Only VARIABLE and RANDOM call back into their nodes, so both backends read the same state and
+// draw the same random numbers in the same order.
+// The nodes an action calls back into are passed to the class's constructor, so the class itself only
+// depends on the shape of the action. Compilers given the same Classes define each shape once.
+public class BytecodeCompiler {
+    private static final String CLASS_NAME = "no/uio/aeroscript/compiletime/CompiledAction";
+    private static final String STATEMENT = "no/uio/aeroscript/ast/stmt/Statement";
+    private static final String ACTION = "no/uio/aeroscript/ast/stmt/Action";
+    private static final String NODE = "no/uio/aeroscript/ast/expr/Node";
+    private static final String BINARY_NODE = "no/uio/aeroscript/ast/expr/BinaryNode";
+
+    // Hidden classes already defined, by their bytes. Any thread, so every drone flying a mission can share one
+    public static class Classes {
+        private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        private final ConcurrentHashMap<ByteBuffer, MethodHandle> constructors = new ConcurrentHashMap<>();
+
+        private MethodHandle constructor(byte[] bytes) {
+            return constructors.computeIfAbsent(ByteBuffer.wrap(bytes), key -> {
+                try {
+                    MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytes, true);
+                    return hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class, Object[].class));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Could not define compiled action", e);
+                }
+            });
+        }
+
+        public int size() { return constructors.size(); }
+    }
+
+    private final Classes classes;
+    private final Set<Execution> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int compiled = 0;
+
+    public BytecodeCompiler() {
+        this(new Classes());
+    }
+
+    public BytecodeCompiler(Classes classes) {
+        this.classes = classes;
+    }
+
+    public void compile(Execution program) {
+        if (!visited.add(program)) return;
+        for (int i = 0; i < program.statements.length; i++) {
+            if (program.statements[i] instanceof Action) {
+                program.statements[i] = compile((Action) program.statements[i]);
+            } else if (program.statements[i] instanceof Execution) {
+                compile((Execution) program.statements[i]);
+            }
+        }
+        for (Execution execution : program.executions.values()) {
+            compile(execution);
+        }
+    }
+
+    public Statement compile(Action action) {
+        if (action.data.resultType == null || action.speed.resultType == null || action.duration.resultType == null) {
+            throw new IllegalStateException("Type-check before compiling: " + action);
+        }
+        ClassFile file = new ClassFile();
+        file.constants.add(action);
+        byte[] bytes = file.build(action);
+        try {
+            Object instance = classes.constructor(bytes).invoke((Object) file.constants.toArray());
+            compiled++;
+            return (Statement) instance;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not compile " + action, e);
+        }
+    }
+
+    public int getCompiledCount() { return compiled; }
+    public Classes getClasses() { return classes; }
+
+    // Just enough of the class file format for one class with a constant table, a constructor,
+    // execute() and toString(). There are no branches, so no stack map frames are needed.
+    private static class ClassFile {
+        private final List<Object> constants = new ArrayList<>(); // k[], 0 is the Action itself
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private final DataOutputStream poolOut = new DataOutputStream(pool);
+        private final HashMap<String, Integer> poolIndex = new HashMap<>();
+        private int poolCount = 1;
+
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private int stack = 0;
+        private int maxStack = 0;
+        private int locals = 1; // 0 is this
+
+        byte[] build(Action action) {
+            int thisClass = classRef(CLASS_NAME);
+            int superClass = classRef(STATEMENT);
+            int field = fieldRef(CLASS_NAME, "k", "[Ljava/lang/Object;");
+            int code = utf8("Code");
+
+            byte[] init = constructor(field);
+            int initMaxStack = 2;
+            byte[] execute = execute(action);
+            int executeMaxStack = maxStack;
+            int executeMaxLocals = locals;
+            byte[] toString = toStringMethod();
+
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(61); // Java 17
+                int[] names = { utf8("<init>"), utf8("execute"), utf8("toString") };
+                int[] descriptors = { utf8("([Ljava/lang/Object;)V"), utf8("()V"), utf8("()Ljava/lang/String;") };
+                int fieldName = utf8("k");
+                int fieldDescriptor = utf8("[Ljava/lang/Object;");
+
+                out.writeShort(poolCount);
+                out.write(pool.toByteArray());
+                out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(0); // No interfaces
+
+                out.writeShort(1);
+                out.writeShort(0x0002 | 0x0010); // private final
+                out.writeShort(fieldName);
+                out.writeShort(fieldDescriptor);
+                out.writeShort(0);
+
+                out.writeShort(3);
+                writeMethod(out, names[0], descriptors[0], code, init, initMaxStack, 2);
+                writeMethod(out, names[1], descriptors[1], code, execute, executeMaxStack, executeMaxLocals);
+                writeMethod(out, names[2], descriptors[2], code, toString, 2, 1);
+
+                out.writeShort(0); // No class attributes
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeMethod(DataOutputStream out, int name, int descriptor, int codeName, byte[] body, int maxStack, int maxLocals) throws IOException {
+            out.writeShort(0x0001); // public
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + body.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0); // No exception table
+            out.writeShort(0); // No attributes
+        }
+
+        private byte[] constructor(int field) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            body.write(0x2a); // aload_0
+            body.write(0xb7); // invokespecial Statement.<init>
+            writeShort(body, methodRef(STATEMENT, "<init>", "()V"));
+            body.write(0x2a); // aload_0
+            body.write(0x2b); // aload_1
+            body.write(0xb5); // putfield k
+            writeShort(body, field);
+            body.write(0xb1); // return
+            return body.toByteArray();
+        }
+
+        private byte[] toStringMethod() {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            body.write(0x2a); // aload_0
+            body.write(0xb4); // getfield k
+            writeShort(body, fieldRef(CLASS_NAME, "k", "[Ljava/lang/Object;"));
+            body.write(0x03); // iconst_0
+            body.write(0x32); // aaload
+            body.write(0xb6); // invokevirtual Object.toString
+            writeShort(body, methodRef("java/lang/Object", "toString", "()Ljava/lang/String;"));
+            body.write(0xb0); // areturn
+            return body.toByteArray();
+        }
+
+        private byte[] execute(Action action) {
+            // Same evaluation order as Action.execute: speed, duration, data
+            int speed = newLocal();
+            scalar(action.speed);
+            store(speed);
+            int duration = newLocal();
+            scalar(action.duration);
+            store(duration);
+
+            String method;
+            int[] arguments;
+            if (action.action == ActionType.MOVE && action.data.resultType == ExpressionType.POINT) {
+                int[] target = point(action.data);
+                method = "move";
+                arguments = new int[] { target[0], target[1], speed, duration };
+            } else {
+                int value = newLocal();
+                scalar(action.data);
+                store(value);
+                method = switch (action.action) {
+                    case MOVE -> "moveBy";
+                    case TURN -> "turn";
+                    case SCEND -> "scend";
+                };
+                arguments = new int[] { value, speed, duration };
+            }
+
+            constant(0, ACTION);
+            for (int argument : arguments) load(argument);
+            op(0xb6, -1 - arguments.length); // invokevirtual
+            writeShort(code, methodRef(ACTION, method, "(" + "F".repeat(arguments.length) + ")V"));
+            op(0xb1, 0); // return
+            return code.toByteArray();
+        }
+
+        // Leaves a float on the stack
+        private void scalar(Node node) {
+            if (node.resultType != ExpressionType.NUMBER) throw new IllegalStateException("Not a number: " + node);
+            switch (node.type) {
+                case NUMBER -> push(((Number) ((UnaryNode) node).data).floatValue());
+                case NEG -> {
+                    scalar((Node) ((UnaryNode) node).data);
+                    push(-1f);
+                    op(0x6a, -1); // fmul
+                }
+                case VARIABLE -> {
+                    constant(addConstant(node), NODE);
+                    op(0xb6, 0); // invokevirtual Node.evaluateFloat
+                    writeShort(code, methodRef(NODE, "evaluateFloat", "()F"));
+                }
+                case PLUS, MINUS, TIMES -> {
+                    scalar(((BinaryNode) node).left);
+                    scalar(((BinaryNode) node).right);
+                    op(arithmetic(node.type), -1);
+                }
+                case RANDOM -> {
+                    constant(addConstant(node), BINARY_NODE);
+                    scalar(((BinaryNode) node).left);
+                    scalar(((BinaryNode) node).right);
+                    op(0xb6, -2); // invokevirtual BinaryNode.nextRandom
+                    writeShort(code, methodRef(BINARY_NODE, "nextRandom", "(FF)F"));
+                }
+                default -> throw new IllegalStateException("Cannot compile " + node);
+            }
+        }
+
+        // Puts the x and y of a point into two locals and returns them
+        private int[] point(Node node) {
+            if (node.resultType != ExpressionType.POINT) throw new IllegalStateException("Not a point: " + node);
+            int[] result;
+            switch (node.type) {
+                case POINT -> {
+                    result = new int[] { newLocal(), newLocal() };
+                    if (node instanceof UnaryNode) {
+                        Point point = (Point) ((UnaryNode) node).data;
+                        push(point.getX());
+                        store(result[0]);
+                        push(point.getY());
+                        store(result[1]);
+                    } else {
+                        scalar(((BinaryNode) node).left);
+                        store(result[0]);
+                        scalar(((BinaryNode) node).right);
+                        store(result[1]);
+                    }
+                }
+                case NEG -> {
+                    result = point((Node) ((UnaryNode) node).data);
+                    for (int local : result) {
+                        load(local);
+                        push(-1f);
+                        op(0x6a, -1); // fmul
+                        store(local);
+                    }
+                }
+                case VARIABLE -> {
+                    result = new int[] { newLocal(), newLocal() };
+                    int array = addConstant(new float[2]);
+                    constant(addConstant(node), NODE);
+                    constant(array, "[F");
+                    op(0xb6, -2); // invokevirtual Node.evaluatePoint
+                    writeShort(code, methodRef(NODE, "evaluatePoint", "([F)V"));
+                    for (int i = 0; i < 2; i++) {
+                        constant(array, "[F");
+                        push(i);
+                        op(0x30, -1); // faload
+                        store(result[i]);
+                    }
+                }
+                case PLUS, MINUS, TIMES -> {
+                    Node left = ((BinaryNode) node).left;
+                    Node right = ((BinaryNode) node).right;
+                    int operation = arithmetic(node.type);
+                    if (left.resultType == ExpressionType.POINT) {
+                        result = point(left);
+                        if (right.resultType == ExpressionType.POINT) {
+                            int[] other = point(right);
+                            combine(result, other[0], other[1], operation);
+                        } else {
+                            int factor = newLocal();
+                            scalar(right);
+                            store(factor);
+                            combine(result, factor, factor, operation);
+                        }
+                    } else { // Only number * point gets through the TypeChecker, but the tree backend allows it
+                        int factor = newLocal();
+                        scalar(left);
+                        store(factor);
+                        result = point(right);
+                        combine(result, factor, factor, operation);
+                    }
+                }
+                default -> throw new IllegalStateException("Cannot compile " + node);
+            }
+            return result;
+        }
+
+        private void combine(int[] target, int x, int y, int operation) {
+            int[] others = { x, y };
+            for (int i = 0; i < 2; i++) {
+                load(target[i]);
+                load(others[i]);
+                op(operation, -1);
+                store(target[i]);
+            }
+        }
+
+        private static int arithmetic(ExpressionType type) {
+            return switch (type) {
+                case PLUS -> 0x62; // fadd
+                case MINUS -> 0x66; // fsub
+                case TIMES -> 0x6a; // fmul
+                default -> throw new IllegalStateException("Not arithmetic: " + type);
+            };
+        }
+
+        private int addConstant(Object value) {
+            constants.add(value);
+            return constants.size() - 1;
+        }
+
+        // k[index], cast to the given class
+        private void constant(int index, String type) {
+            op(0x2a, 1); // aload_0
+            op(0xb4, 0); // getfield k
+            writeShort(code, fieldRef(CLASS_NAME, "k", "[Ljava/lang/Object;"));
+            push(index);
+            op(0x32, -1); // aaload
+            op(0xc0, 0); // checkcast
+            writeShort(code, classRef(type));
+        }
+
+        private void push(int value) {
+            if (value <= 5) {
+                op(0x03 + value, 1); // iconst_n
+            } else if (value <= Byte.MAX_VALUE) {
+                op(0x10, 1); // bipush
+                code.write(value);
+            } else {
+                op(0x11, 1); // sipush
+                writeShort(code, value);
+            }
+        }
+
+        private void push(float value) {
+            int bits = Float.floatToRawIntBits(value);
+            if (bits == Float.floatToRawIntBits(0f)) {
+                op(0x0b, 1); // fconst_0
+            } else if (bits == Float.floatToRawIntBits(1f)) {
+                op(0x0c, 1); // fconst_1
+            } else if (bits == Float.floatToRawIntBits(2f)) {
+                op(0x0d, 1); // fconst_2
+            } else {
+                int index = floatConstant(value);
+                if (index < 256) {
+                    op(0x12, 1); // ldc
+                    code.write(index);
+                } else {
+                    op(0x13, 1); // ldc_w
+                    writeShort(code, index);
+                }
+            }
+        }
+
+        private int newLocal() {
+            return locals++;
+        }
+
+        private void load(int local) {
+            localOp(0x17, local); // fload
+            stack++;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void store(int local) {
+            localOp(0x38, local); // fstore
+            stack--;
+        }
+
+        private void localOp(int opcode, int local) {
+            if (local < 256) {
+                code.write(opcode);
+                code.write(local);
+            } else {
+                code.write(0xc4); // wide
+                code.write(opcode);
+                writeShort(code, local);
+            }
+        }
+
+        private void op(int opcode, int stackChange) {
+            code.write(opcode);
+            stack += stackChange;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private static void writeShort(ByteArrayOutputStream out, int value) {
+            out.write(value >>> 8);
+            out.write(value);
+        }
+
+        private int utf8(String value) {
+            return entry("U" + value, () -> {
+                poolOut.writeByte(1);
+                poolOut.writeUTF(value);
+            });
+        }
+
+        private int classRef(String name) {
+            int nameIndex = utf8(name);
+            return entry("C" + name, () -> {
+                poolOut.writeByte(7);
+                poolOut.writeShort(nameIndex);
+            });
+        }
+
+        private int floatConstant(float value) {
+            return entry("F" + Float.floatToRawIntBits(value), () -> {
+                poolOut.writeByte(4);
+                poolOut.writeFloat(value);
+            });
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            return entry("N" + name + ":" + descriptor, () -> {
+                poolOut.writeByte(12);
+                poolOut.writeShort(nameIndex);
+                poolOut.writeShort(descriptorIndex);
+            });
+        }
+
+        private int fieldRef(String owner, String name, String descriptor) {
+            return memberRef(9, owner, name, descriptor);
+        }
+
+        private int methodRef(String owner, String name, String descriptor) {
+            return memberRef(10, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameAndTypeIndex = nameAndType(name, descriptor);
+            return entry(tag + owner + "." + name + ":" + descriptor, () -> {
+                poolOut.writeByte(tag);
+                poolOut.writeShort(ownerIndex);
+                poolOut.writeShort(nameAndTypeIndex);
+            });
+        }
+
+        private interface PoolWriter {
+            void write() throws IOException;
+        }
+
+        private int entry(String key, PoolWriter writer) {
+            Integer index = poolIndex.get(key);
+            if (index != null) return index;
+            try {
+                writer.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            poolIndex.put(key, poolCount);
+            return poolCount++;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package no.uio.aeroscript.compiletime;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import no.uio.aeroscript.ast.expr.BinaryNode;
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+
+// Runs after the TypeChecker, so it can assume every expression is well-typed.
+// Folds everything not depending on RANDOM or VARIABLE into NUMBER and POINT literals, and drops
+// double negation and the identities x*1, 1*x, x+0, 0+x and x-0.
+// Folding evaluates the subtree the same way runtime would, so the results are bit-identical.
+public class ConstantFolder {
+    private final Set<Execution> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int nodesBefore = 0;
+    private int nodesAfter = 0;
+
+    public void fold(Statement statement) {
+        if (statement instanceof Action) {
+            Action action = (Action) statement;
+            action.data = foldCounted(action.data);
+            action.speed = foldCounted(action.speed);
+            action.duration = foldCounted(action.duration);
+        }
+        else if (statement instanceof Execution) {
+            Execution execution = (Execution) statement;
+            if (!visited.add(execution)) return; // The prefixed ones are both statements and executions of program
+            for (Statement statement2 : execution.statements) {
+                fold(statement2);
+            }
+            for (Execution execution2 : execution.executions.values()) {
+                fold(execution2);
+            }
+        }
+    }
+
+    private Node foldCounted(Node node) {
+        nodesBefore += count(node);
+        Node folded = fold(node);
+        nodesAfter += count(folded);
+        return folded;
+    }
+
+    public Node fold(Node node) {
+        Node folded = simplify(node);
+        // New nodes have the same static type as the one they replace
+        if (folded.resultType == null) folded.resultType = node.resultType;
+        return folded;
+    }
+
+    private Node simplify(Node node) {
+        return switch (node.type) {
+            case NUMBER, VARIABLE, RANGE -> node;
+
+            case NEG -> {
+                if (!(((UnaryNode) node).data instanceof Node)) yield node;
+                Node child = fold((Node) ((UnaryNode) node).data);
+                if (child.type == ExpressionType.NEG) yield (Node) ((UnaryNode) child).data; // --(--x) = x
+                UnaryNode negated = new UnaryNode(ExpressionType.NEG, child);
+                yield isLiteral(child) ? literal(negated.evaluate()) : negated;
+            }
+
+            case POINT -> {
+                if (node instanceof UnaryNode) yield node; // Already a literal
+                Node left = fold(((BinaryNode) node).left);
+                Node right = fold(((BinaryNode) node).right);
+                BinaryNode point = new BinaryNode(ExpressionType.POINT, left, right);
+                yield isLiteral(left) && isLiteral(right) ? literal(point.evaluate()) : point;
+            }
+
+            case PLUS, MINUS, TIMES -> {
+                Node left = fold(((BinaryNode) node).left);
+                Node right = fold(((BinaryNode) node).right);
+                if (isLiteral(left) && isLiteral(right)) yield literal(new BinaryNode(node.type, left, right).evaluate());
+
+                if (node.type == ExpressionType.TIMES) {
+                    if (isNumber(right, 1f)) yield left;
+                    if (isNumber(left, 1f)) yield right;
+                } else {
+                    if (isNumber(right, 0f)) yield left;
+                    if (node.type == ExpressionType.PLUS && isNumber(left, 0f)) yield right;
+                }
+                yield new BinaryNode(node.type, left, right);
+            }
+
+            // Never folded, since it has to give a new value every time, but its bounds can be
+            case RANDOM -> new BinaryNode(ExpressionType.RANDOM, fold(((BinaryNode) node).left), fold(((BinaryNode) node).right), ((BinaryNode) node).interpreter);
+        };
+    }
+
+    private static boolean isLiteral(Node node) {
+        if (!(node instanceof UnaryNode)) return false;
+        Object data = ((UnaryNode) node).data;
+        return (node.type == ExpressionType.NUMBER && data instanceof Float)
+            || (node.type == ExpressionType.POINT && data instanceof Point);
+    }
+
+    private static boolean isNumber(Node node, float value) {
+        return node.type == ExpressionType.NUMBER && isLiteral(node) && (Float) ((UnaryNode) node).data == value;
+    }
+
+    private static Node literal(Object value) {
+        if (value instanceof Point) return new UnaryNode(ExpressionType.POINT, value);
+        return new UnaryNode(ExpressionType.NUMBER, value);
+    }
+
+    public static int count(Node node) {
+        if (node instanceof BinaryNode) return 1 + count(((BinaryNode) node).left) + count(((BinaryNode) node).right);
+        if (node.type == ExpressionType.NEG && ((UnaryNode) node).data instanceof Node) return 1 + count((Node) ((UnaryNode) node).data);
+        return 1;
+    }
+
+    public int getNodesBefore() { return nodesBefore; }
+    public int getNodesAfter() { return nodesAfter; }
+}
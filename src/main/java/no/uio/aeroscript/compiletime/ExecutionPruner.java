@@ -0,0 +1,73 @@
+package no.uio.aeroscript.compiletime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.error.ResolutionError;
+import no.uio.aeroscript.trace.Trace;
+
+// Runs right after the ASTBuilder. Finds every execution that can run, going from the prefixed ones
+// along "-> Next", reactions and messages, and drops the rest from the program, so the TypeChecker
+// and everything after it only see what can fly. Names are looked up in the program, like the
+// Interpreter does, and one that isn't there is an error now instead of when the drone gets to it.
+// Only reachable executions are checked for that, since the others are gone anyway.
+public class ExecutionPruner {
+    private final Set<Execution> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, List<String>> graph = new LinkedHashMap<>(); // By name, in the order found
+    private final List<String> unresolved = new ArrayList<>();
+    private final List<String> removed = new ArrayList<>();
+
+    // Throws with every unresolved name found
+    public void prune(Execution program) {
+        ArrayDeque<Execution> queue = new ArrayDeque<>();
+        for (Statement statement : program.statements) {
+            if (statement instanceof Execution && reachable.add((Execution) statement)) queue.add((Execution) statement);
+        }
+        while (!queue.isEmpty()) {
+            Execution execution = queue.poll();
+            List<String> edges = new ArrayList<>();
+            graph.put(execution.id, edges);
+            if (execution.next != null) follow(program, execution.next, execution.id + " chains to " + execution.next, edges, queue);
+            for (Map.Entry<String, String> reaction : execution.reactions.entrySet()) {
+                follow(program, reaction.getValue(), execution.id + " reacts to " + reaction.getKey() + " with " + reaction.getValue(), edges, queue);
+            }
+            for (Map.Entry<String, String> message : execution.messages.entrySet()) {
+                follow(program, message.getValue(), execution.id + " reacts to message [" + message.getKey() + "] with " + message.getValue(), edges, queue);
+            }
+        }
+        if (!unresolved.isEmpty()) throw new ResolutionError(String.join("\n", unresolved));
+
+        Iterator<Execution> executions = program.executions.values().iterator();
+        while (executions.hasNext()) {
+            Execution execution = executions.next();
+            if (reachable.contains(execution)) continue;
+            if (Trace.DEBUG) Trace.log("Pruning unreachable " + execution);
+            removed.add(execution.id);
+            executions.remove();
+        }
+    }
+
+    private void follow(Execution program, String name, String what, List<String> edges, ArrayDeque<Execution> queue) {
+        Execution target = program.executions.get(name);
+        if (target == null) {
+            unresolved.add(what + ", which is not defined.");
+            return;
+        }
+        edges.add(name);
+        if (reachable.add(target)) queue.add(target);
+    }
+
+    public Map<String, List<String>> getGraph() { return graph; }
+    public List<String> getUnresolved() { return unresolved; }
+    public List<String> getRemoved() { return removed; }
+    public int getReachableCount() { return reachable.size(); }
+}
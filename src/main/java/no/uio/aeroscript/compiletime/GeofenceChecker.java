@@ -0,0 +1,78 @@
+package no.uio.aeroscript.compiletime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.error.GeofenceError;
+import no.uio.aeroscript.runtime.Geofence;
+import no.uio.aeroscript.type.ActionType;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+import no.uio.aeroscript.trace.Trace;
+
+// Runs after the ConstantFolder, so every "move to point" with a constant target has a POINT literal.
+// Those targets are checked against the geofence before flying, and a mission with any of them
+// outside it is rejected with all of them listed. Only the targets, since where a move starts from
+// depends on what ran before it. The whole path is still checked while flying.
+// A lazy body is empty when the program is checked, so it is checked on its own when it is built.
+public class GeofenceChecker {
+    private final Geofence geofence;
+    private final Set<Execution> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<String> violations = new ArrayList<>();
+    private int checkedCount = 0;
+
+    public GeofenceChecker(Geofence geofence) {
+        this.geofence = geofence;
+    }
+
+    // Throws with every violation found
+    public void check(Statement program) {
+        walk(program, null);
+        if (!violations.isEmpty()) throw new GeofenceError(String.join("\n", violations));
+    }
+
+    // A lazy body, once it is built and folded. Throws like check, when the drone is about to enter it
+    public void check(String executionId, Statement[] body) {
+        for (Statement statement : body) walk(statement, executionId);
+        if (!violations.isEmpty()) throw new GeofenceError(String.join("\n", violations));
+    }
+
+    private void walk(Statement statement, String executionId) {
+        if (statement instanceof Action) {
+            Action action = (Action) statement;
+            if (action.action != ActionType.MOVE) return;
+            Point target = constantPoint(action.data);
+            if (target == null) return;
+            checkedCount++;
+            String violation = geofence.checkPoint(target.getX(), target.getY());
+            if (Trace.DEBUG) Trace.log("Geofence: " + target + " in " + executionId + (violation == null ? " is fine" : " " + violation));
+            if (violation != null) violations.add("Move to " + target + " in " + executionId + " " + violation + ".");
+        }
+        else if (statement instanceof Execution) {
+            Execution execution = (Execution) statement;
+            if (!visited.add(execution)) return; // The prefixed ones are both statements and executions of program
+            for (Statement statement2 : execution.statements) {
+                walk(statement2, execution.id);
+            }
+            for (Execution execution2 : execution.executions.values()) {
+                walk(execution2, execution2.id);
+            }
+        }
+    }
+
+    private static Point constantPoint(Node node) {
+        if (node.type == ExpressionType.POINT && node instanceof UnaryNode && ((UnaryNode) node).data instanceof Point) return (Point) ((UnaryNode) node).data;
+        return null;
+    }
+
+    public List<String> getViolations() { return violations; }
+    public int getCheckedCount() { return checkedCount; }
+}
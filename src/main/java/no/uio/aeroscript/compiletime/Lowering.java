@@ -0,0 +1,158 @@
+package no.uio.aeroscript.compiletime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.runtime.Code;
+import no.uio.aeroscript.type.ActionType;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+
+// Lowers a program to a Code instruction stream for the VM. Every execution becomes
+//   ENTER e, its statements, EXIT, then CHAIN next or RET
+// where prefixed executions in the program are CALLs. Actions whose operands are all literals
+// (most of them after constant folding) get their own opcode with the values in the constant pool,
+// the rest run through ACTION, which also covers the bytecode backend's statements.
+// "-> Next" is looked up in the program's executions, since that is the only mode it can be found in.
+// The instructions and constants don't depend on which tree they were lowered from, so another copy of
+// the same program (like another drone's) can be relinked to them: only its statements and executions are new.
+public class Lowering {
+    private final List<Execution> executions = new ArrayList<>();
+    private final IdentityHashMap<Execution, Integer> indices = new IdentityHashMap<>();
+    private final List<Statement> statements = new ArrayList<>();
+    private int[] code = new int[64];
+    private int length = 0;
+    private float[] constants = new float[64];
+    private int constantCount = 0;
+    private final Code template; // When relinking, what is emitted is only counted
+
+    private Lowering(Code template) {
+        this.template = template;
+    }
+
+    public static Code lower(Execution program) {
+        return new Lowering(null).lowerProgram(program);
+    }
+
+    // The same instructions and constants as template, on program's statements. Program has to be shaped
+    // exactly like the one template was lowered from, with its executions in the same order
+    public static Code relink(Code template, Execution program) {
+        return new Lowering(template).lowerProgram(program);
+    }
+
+    private Code lowerProgram(Execution program) {
+        index(program);
+        for (Execution execution : program.executions.values()) index(execution);
+
+        int[] entries = new int[executions.size()];
+        for (int i = 0; i < executions.size(); i++) {
+            entries[i] = length;
+            lowerExecution(executions.get(i), program);
+        }
+        if (template != null) {
+            if (length != template.code.length || constantCount != template.constants.length || statements.size() != template.statements.length
+                    || executions.size() != template.executions.length) {
+                throw new IllegalArgumentException("Program is not shaped like the one the code was lowered from");
+            }
+            return new Code(template.code, template.constants, statements.toArray(new Statement[0]), executions.toArray(new Execution[0]), template.entries);
+        }
+        return new Code(Arrays.copyOf(code, length), Arrays.copyOf(constants, constantCount),
+            statements.toArray(new Statement[0]), executions.toArray(new Execution[0]), entries);
+    }
+
+    private int index(Execution execution) {
+        Integer index = indices.get(execution);
+        if (index != null) return index;
+        indices.put(execution, executions.size());
+        executions.add(execution);
+        return executions.size() - 1;
+    }
+
+    private void lowerExecution(Execution execution, Execution program) {
+        emit(Code.ENTER, indices.get(execution));
+        for (Statement statement : execution.materialize()) { // The VM runs the lowered body, so lazy ones are built now
+            if (statement instanceof Execution) {
+                emit(Code.CALL, index((Execution) statement));
+            } else {
+                lowerStatement(statement);
+            }
+        }
+        emit(Code.EXIT);
+
+        Execution next = execution.next == null ? null : program.executions.get(execution.next);
+        if (next != null) {
+            emit(Code.CHAIN, indices.get(next));
+        } else {
+            emit(Code.RET); // An unknown next is ignored, like pushing null to the stack was
+        }
+    }
+
+    private void lowerStatement(Statement statement) {
+        statements.add(statement);
+        int index = statements.size() - 1;
+        if (!(statement instanceof Action) || !isLiteral(((Action) statement))) {
+            emit(Code.ACTION, index);
+            return;
+        }
+
+        Action action = (Action) statement;
+        int constant = constantCount;
+        if (action.action == ActionType.MOVE && action.data.type == ExpressionType.POINT) {
+            Point point = (Point) ((UnaryNode) action.data).data;
+            constant(point.getX());
+            constant(point.getY());
+            emit(Code.MOVE_TO, index, constant);
+        } else {
+            constant(value(action.data));
+            emit(switch (action.action) {
+                case MOVE -> Code.MOVE_BY;
+                case TURN -> Code.TURN;
+                case SCEND -> Code.SCEND;
+            }, index, constant);
+        }
+        constant(value(action.speed));
+        constant(value(action.duration));
+    }
+
+    private static boolean isLiteral(Action action) {
+        return isLiteral(action.data) && isNumber(action.speed) && isNumber(action.duration);
+    }
+
+    private static boolean isLiteral(Node node) {
+        return isNumber(node) || (node.type == ExpressionType.POINT && node instanceof UnaryNode && ((UnaryNode) node).data instanceof Point);
+    }
+
+    private static boolean isNumber(Node node) {
+        return node.type == ExpressionType.NUMBER && node instanceof UnaryNode && ((UnaryNode) node).data instanceof Float;
+    }
+
+    private static float value(Node node) {
+        return (Float) ((UnaryNode) node).data;
+    }
+
+    private void constant(float value) {
+        if (template != null) {
+            constantCount++;
+            return;
+        }
+        if (constantCount == constants.length) constants = Arrays.copyOf(constants, constantCount * 2);
+        constants[constantCount++] = value;
+    }
+
+    private void emit(int... instruction) {
+        if (template != null) {
+            length += instruction.length;
+            return;
+        }
+        while (length + instruction.length > code.length) code = Arrays.copyOf(code, code.length * 2);
+        System.arraycopy(instruction, 0, code, length, instruction.length);
+        length += instruction.length;
+    }
+}
@@ -0,0 +1,288 @@
+package no.uio.aeroscript.compiletime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import no.uio.aeroscript.ast.expr.BinaryNode;
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.expr.Variable;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.type.ActionType;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+
+// Compiled missions (.aeroc), so unchanged sources can skip lexing, parsing, AST-building and type-checking.
+// A cache file is only used if the SHA-256 of the source matches the one it was written for.
+//
+// Layout: magic, version, source hash, executions, ids of the prefixed executions in order.
+// Nodes are written prefix-order as their ExpressionType ordinal and checked type, followed by their payload.
+// POINT has a flag first, since it can be either a literal or a BinaryNode.
+// Counts and ordinals are checked as they are read, so any damage past the hash is an IOException (a miss).
+public class MissionCache {
+    private static final int MAGIC = 0x41455243; // "AERC"
+    private static final int VERSION = 3;
+    private static final int HASH_LENGTH = 32;
+
+    private MissionCache() {}
+
+    public static Path cachePath(Path source) {
+        return source.resolveSibling(source.getFileName() + "c"); // mission.aero -> mission.aeroc
+    }
+
+    public static byte[] hash(Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            MessageDigest digest = sha256();
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            return digest.digest();
+        }
+    }
+
+    public static byte[] hash(byte[] source) {
+        return sha256().digest(source);
+    }
+
+    // Returns null on a cache miss (no cache file, stale hash, unknown version or a damaged file)
+    public static Execution load(Path source, Interpreter interpreter) throws IOException {
+        byte[] sourceHash = hash(source);
+        try (InputStream in = Files.newInputStream(cachePath(source))) {
+            return read(in, sourceHash, interpreter);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            if (Trace.INFO) Trace.log("Ignoring damaged mission cache: " + e);
+            return null;
+        }
+    }
+
+    public static void store(Path source, Execution program) throws IOException {
+        Path cache = cachePath(source);
+        // Write next to the target and move it in place, so a concurrent reader never sees half a file
+        Path temp = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                write(program, hash(source), out);
+            }
+            Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static void write(Execution program, byte[] sourceHash, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.write(sourceHash);
+
+        out.writeInt(program.executions.size());
+        for (Execution execution : program.executions.values()) {
+            writeExecution(execution, out);
+        }
+
+        out.writeInt(program.statements.length);
+        for (Statement statement : program.statements) {
+            out.writeUTF(((Execution) statement).id);
+        }
+        out.flush();
+    }
+
+    public static Execution read(InputStream stream, byte[] sourceHash, Interpreter interpreter) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readShort() != VERSION) return null;
+        byte[] hash = new byte[HASH_LENGTH];
+        in.readFully(hash);
+        if (!Arrays.equals(hash, sourceHash)) return null;
+
+        int executionCount = readCount(in);
+        List<Execution> executions = new ArrayList<>(Math.min(executionCount, 1024));
+        for (int i = 0; i < executionCount; i++) {
+            executions.add(readExecution(in, interpreter));
+        }
+
+        Statement[] statements = new Statement[readCount(in, executionCount)];
+        Execution program = new Execution(interpreter, "program", statements, false, null);
+        for (Execution execution : executions) {
+            program.executions.put(execution.id, execution);
+        }
+        for (int i = 0; i < statements.length; i++) {
+            String id = in.readUTF();
+            statements[i] = program.executions.get(id);
+            if (statements[i] == null) throw new IOException("Corrupt mission cache, unknown execution " + id);
+        }
+        return program;
+    }
+
+    private static void writeExecution(Execution execution, DataOutputStream out) throws IOException {
+        out.writeUTF(execution.id);
+        out.writeBoolean(execution.prefix);
+        out.writeBoolean(execution.next != null);
+        if (execution.next != null) out.writeUTF(execution.next);
+
+        Statement[] statements = execution.materialize(); // A lazy body is cached built
+        int count = 0;
+        for (Statement statement : statements) {
+            if (statement != null) count++;
+        }
+        out.writeInt(count);
+        for (Statement statement : statements) {
+            if (statement == null) continue;
+            if (!(statement instanceof Action)) throw new IllegalArgumentException("Cannot cache statement: " + statement);
+            Action action = (Action) statement;
+            out.writeByte(action.action.ordinal());
+            writeNode(action.data, out);
+            writeNode(action.speed, out);
+            writeNode(action.duration, out);
+        }
+
+        writeTable(execution.reactions, out);
+        writeTable(execution.messages, out);
+    }
+
+    private static Execution readExecution(DataInputStream in, Interpreter interpreter) throws IOException {
+        String id = in.readUTF();
+        boolean prefix = in.readBoolean();
+        String next = in.readBoolean() ? in.readUTF() : null;
+
+        int count = readCount(in);
+        List<Statement> statements = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            ActionType type = readOrdinal(ActionType.values(), in.readByte());
+            Node data = readNode(in, interpreter);
+            Node speed = readNode(in, interpreter);
+            Node duration = readNode(in, interpreter);
+            statements.add(new Action(interpreter, type, data, speed, duration));
+        }
+
+        Execution execution = new Execution(interpreter, id, statements.toArray(new Statement[0]), prefix, next);
+        readTable(execution.reactions, in);
+        readTable(execution.messages, in);
+        return execution;
+    }
+
+    private static void writeNode(Node node, DataOutputStream out) throws IOException {
+        out.writeByte(node.type.ordinal());
+        out.writeByte(node.resultType != null ? node.resultType.ordinal() : -1);
+        switch (node.type) {
+            case NUMBER -> out.writeFloat(((Number) ((UnaryNode) node).data).floatValue());
+            case VARIABLE -> {
+                Object data = ((UnaryNode) node).data;
+                if (!(data instanceof Variable)) throw new IllegalArgumentException("Cannot cache variable: " + data);
+                out.writeUTF(((Variable) data).name);
+            }
+            case NEG -> writeNode((Node) ((UnaryNode) node).data, out);
+            case POINT -> {
+                out.writeBoolean(node instanceof UnaryNode);
+                if (node instanceof UnaryNode) {
+                    Point point = (Point) ((UnaryNode) node).data;
+                    out.writeFloat(point.getX());
+                    out.writeFloat(point.getY());
+                } else {
+                    writeNode(((BinaryNode) node).left, out);
+                    writeNode(((BinaryNode) node).right, out);
+                }
+            }
+            case PLUS, MINUS, TIMES, RANDOM -> {
+                writeNode(((BinaryNode) node).left, out);
+                writeNode(((BinaryNode) node).right, out);
+            }
+            default -> throw new IllegalArgumentException("Cannot cache node: " + node);
+        }
+    }
+
+    private static Node readNode(DataInputStream in, Interpreter interpreter) throws IOException {
+        ExpressionType type = readOrdinal(ExpressionType.values(), in.readByte());
+        byte resultType = in.readByte();
+        Node node = readNodeData(type, in, interpreter);
+        node.resultType = resultType != -1 ? readOrdinal(ExpressionType.values(), resultType) : null;
+        return node;
+    }
+
+    private static Node readNodeData(ExpressionType type, DataInputStream in, Interpreter interpreter) throws IOException {
+        return switch (type) {
+            case NUMBER -> new UnaryNode(type, in.readFloat());
+            case VARIABLE -> new UnaryNode(type, new Variable(interpreter, in.readUTF()));
+            case NEG -> new UnaryNode(type, readNode(in, interpreter));
+            case POINT -> {
+                if (in.readBoolean()) {
+                    float x = in.readFloat();
+                    yield new UnaryNode(type, new Point(x, in.readFloat()));
+                }
+                Node left = readNode(in, interpreter);
+                Node right = readNode(in, interpreter);
+                yield new BinaryNode(type, left, right);
+            }
+            case PLUS, MINUS, TIMES -> {
+                Node left = readNode(in, interpreter);
+                Node right = readNode(in, interpreter);
+                yield new BinaryNode(type, left, right);
+            }
+            case RANDOM -> {
+                Node left = readNode(in, interpreter);
+                Node right = readNode(in, interpreter);
+                yield new BinaryNode(type, left, right, interpreter);
+            }
+            default -> throw new IOException("Corrupt mission cache, unexpected node " + type);
+        };
+    }
+
+    private static void writeTable(Map<String, String> table, DataOutputStream out) throws IOException {
+        out.writeInt(table.size());
+        for (Map.Entry<String, String> entry : table.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    private static void readTable(Map<String, String> table, DataInputStream in) throws IOException {
+        int size = readCount(in);
+        for (int i = 0; i < size; i++) {
+            table.put(in.readUTF(), in.readUTF());
+        }
+    }
+
+    // Lists are grown as they are read, so a huge count runs into the end of the file instead of the heap
+    private static int readCount(DataInputStream in) throws IOException {
+        return readCount(in, Integer.MAX_VALUE);
+    }
+
+    private static int readCount(DataInputStream in, int max) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > max) throw new IOException("Corrupt mission cache, count " + count);
+        return count;
+    }
+
+    private static <E extends Enum<E>> E readOrdinal(E[] values, int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= values.length) throw new IOException("Corrupt mission cache, ordinal " + ordinal + " of " + values.length);
+        return values[ordinal];
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JVM is required to have SHA-256
+        }
+    }
+}
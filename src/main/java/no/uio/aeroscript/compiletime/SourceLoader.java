@@ -0,0 +1,107 @@
+package no.uio.aeroscript.compiletime;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+// Loads source files without the readAllBytes -> String -> CharStream copies.
+// ASCII files (which is every mission we generate) are read straight out of a memory-mapped buffer,
+// so the source never lands on the heap. Anything else is decoded from the channel once.
+public class SourceLoader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private SourceLoader() {}
+
+    public static CharStream load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("File too large: " + path);
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            // The mapping stays valid after the channel is closed
+            if (isAscii(buffer)) return new MappedCharStream(buffer, path.toString());
+
+            channel.position(0);
+            return CharStreams.fromChannel(channel, StandardCharsets.UTF_8, BUFFER_SIZE, CodingErrorAction.REPLACE, path.toString(), size);
+        }
+    }
+
+    private static boolean isAscii(MappedByteBuffer buffer) {
+        for (int i = 0, size = buffer.limit(); i < size; i++) {
+            if (buffer.get(i) < 0) return false;
+        }
+        return true;
+    }
+
+    // A CharStream over a byte buffer holding only ASCII, where every byte is exactly one character
+    static class MappedCharStream implements CharStream {
+        private final MappedByteBuffer buffer;
+        private final String name;
+        private final int size;
+        private int position = 0;
+
+        MappedCharStream(MappedByteBuffer buffer, String name) {
+            this.buffer = buffer;
+            this.name = name;
+            this.size = buffer.limit();
+        }
+
+        @Override
+        public String getText(Interval interval) {
+            int start = Math.min(interval.a, size);
+            int stop = Math.min(interval.b, size - 1);
+            if (stop < start) return "";
+            byte[] bytes = new byte[stop - start + 1];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public void consume() {
+            if (position >= size) throw new IllegalStateException("cannot consume EOF");
+            position++;
+        }
+
+        @Override
+        public int LA(int i) {
+            int offset;
+            if (i > 0) offset = position + i - 1;
+            else if (i < 0) offset = position + i;
+            else return 0; // Undefined
+
+            if (offset < 0 || offset >= size) return IntStream.EOF;
+            return buffer.get(offset);
+        }
+
+        // The whole file is always available, so marks are free
+        @Override
+        public int mark() { return -1; }
+
+        @Override
+        public void release(int marker) {}
+
+        @Override
+        public int index() { return position; }
+
+        @Override
+        public void seek(int index) { position = Math.min(index, size); }
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public String getSourceName() { return name != null && !name.isEmpty() ? name : IntStream.UNKNOWN_SOURCE_NAME; }
+
+        @Override
+        public String toString() { return getText(Interval.of(0, size - 1)); }
+    }
+}
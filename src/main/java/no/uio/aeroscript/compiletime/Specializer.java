@@ -0,0 +1,104 @@
+package no.uio.aeroscript.compiletime;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import no.uio.aeroscript.ast.expr.BinaryNode;
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.ast.expr.Specialized;
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.expr.Variable;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+
+// Swaps generic BinaryNodes and UnaryNodes for the Specialized variant matching their checked types.
+// This is done ahead of time from the TypeChecker's results instead of on first evaluation, since
+// operand types can't change after checking. Anything unchecked or unusual is left as it is.
+public class Specializer {
+    private final Set<Execution> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int specialized = 0;
+
+    public void specialize(Statement statement) {
+        if (statement instanceof Action) {
+            Action action = (Action) statement;
+            action.data = specialize(action.data);
+            action.speed = specialize(action.speed);
+            action.duration = specialize(action.duration);
+        }
+        else if (statement instanceof Execution) {
+            Execution execution = (Execution) statement;
+            if (!visited.add(execution)) return;
+            for (Statement statement2 : execution.statements) {
+                specialize(statement2);
+            }
+            for (Execution execution2 : execution.executions.values()) {
+                specialize(execution2);
+            }
+        }
+    }
+
+    public Node specialize(Node node) {
+        if (node.resultType == null || node.getClass().getEnclosingClass() == Specialized.class) return node;
+        Node result = node instanceof BinaryNode ? binary((BinaryNode) node) : unary((UnaryNode) node);
+        if (result != node) specialized++;
+        return result;
+    }
+
+    private Node unary(UnaryNode node) {
+        boolean number = node.resultType == ExpressionType.NUMBER;
+        return switch (node.type) {
+            case NUMBER -> node.data instanceof Float ? new Specialized.FloatLiteral((Float) node.data) : node;
+            case POINT -> node.data instanceof Point ? new Specialized.PointLiteral((Point) node.data) : node;
+            case VARIABLE -> {
+                if (!(node.data instanceof Variable)) yield node;
+                yield number ? new Specialized.FloatVariable((Variable) node.data) : new Specialized.PointVariable((Variable) node.data);
+            }
+            case NEG -> {
+                if (!(node.data instanceof Node)) yield node;
+                Node child = specialize((Node) node.data);
+                if (child.resultType != node.resultType) yield node; // Negated ranges and such
+                yield number ? new Specialized.FloatNeg(child) : new Specialized.PointNeg(child);
+            }
+            default -> node;
+        };
+    }
+
+    private Node binary(BinaryNode node) {
+        Node left = specialize(node.left);
+        Node right = specialize(node.right);
+        ExpressionType leftType = left.resultType;
+        ExpressionType rightType = right.resultType;
+        if (leftType == null || rightType == null) return node;
+        boolean numbers = leftType == ExpressionType.NUMBER && rightType == ExpressionType.NUMBER;
+
+        if (node.resultType == ExpressionType.NUMBER) {
+            if (!numbers) return node;
+            return switch (node.type) {
+                case PLUS -> new Specialized.FloatPlus(left, right);
+                case MINUS -> new Specialized.FloatMinus(left, right);
+                case TIMES -> new Specialized.FloatTimes(left, right);
+                case RANDOM -> new Specialized.FloatRandom(left, right, node.interpreter);
+                default -> node;
+            };
+        }
+
+        return switch (node.type) {
+            case POINT -> numbers ? new Specialized.PointOf(left, right) : node;
+            case PLUS, MINUS, TIMES -> {
+                if (leftType == ExpressionType.POINT && rightType == ExpressionType.POINT) {
+                    yield new Specialized.PointPointArithmetic(node.type, left, right);
+                } else if (leftType == ExpressionType.POINT && rightType == ExpressionType.NUMBER) {
+                    yield new Specialized.PointFloatArithmetic(node.type, left, right);
+                }
+                yield node;
+            }
+            default -> node;
+        };
+    }
+
+    public int getSpecializedCount() { return specialized; }
+}
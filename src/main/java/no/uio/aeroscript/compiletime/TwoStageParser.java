@@ -0,0 +1,143 @@
+package no.uio.aeroscript.compiletime;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import no.uio.aeroscript.antlr.AeroScriptLexer;
+import no.uio.aeroscript.antlr.AeroScriptParser;
+import no.uio.aeroscript.error.ThrowingErrorListener;
+
+// Parses with the cheap SLL prediction first and only falls back to full LL if SLL bails.
+// The lexer and parser are kept between calls, so one instance should be reused for many files.
+// Not thread-safe, use one per thread.
+// In unbuffered mode the SLL stage only keeps a lookahead window of tokens instead of the whole file.
+// The LL fallback is always buffered, since error reporting needs to look back at old tokens.
+public class TwoStageParser {
+    public enum Stage { SLL, LL }
+
+    private final AeroScriptLexer lexer;
+    private final CommonTokenStream tokens;
+    private final AeroScriptParser parser;
+    private final BailErrorStrategy bailStrategy = new BailErrorStrategy();
+    private final DefaultErrorStrategy defaultStrategy = new DefaultErrorStrategy();
+    private final TokenSource onChannel;
+    private boolean unbuffered = false;
+    private Stage lastStage;
+    private int sllCount = 0;
+    private int llCount = 0;
+
+    public TwoStageParser() {
+        lexer = new AeroScriptLexer(null);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(ThrowingErrorListener.INSTANCE);
+        tokens = new CommonTokenStream(lexer);
+        parser = new AeroScriptParser(tokens);
+        onChannel = new OnChannelTokenSource(lexer);
+    }
+
+    public void setUnbuffered(boolean unbuffered) { this.unbuffered = unbuffered; }
+
+    public AeroScriptParser.ProgramContext parseProgram(CharStream input) {
+        resetForSLL(input);
+        try {
+            useSLL();
+            AeroScriptParser.ProgramContext ctx = parser.program();
+            lastStage = Stage.SLL;
+            sllCount++;
+            return ctx;
+        } catch (ParseCancellationException e) {
+            // SLL gave up (or the input really is wrong), so retry with full LL and proper error reporting
+            reset(input);
+            useLL();
+            AeroScriptParser.ProgramContext ctx = parser.program();
+            lastStage = Stage.LL;
+            llCount++;
+            return ctx;
+        }
+    }
+
+    public AeroScriptParser.ExpressionContext parseExpression(CharStream input) {
+        resetForSLL(input);
+        try {
+            useSLL();
+            AeroScriptParser.ExpressionContext ctx = parser.expression();
+            lastStage = Stage.SLL;
+            sllCount++;
+            return ctx;
+        } catch (ParseCancellationException e) {
+            reset(input);
+            useLL();
+            AeroScriptParser.ExpressionContext ctx = parser.expression();
+            lastStage = Stage.LL;
+            llCount++;
+            return ctx;
+        }
+    }
+
+    private void resetForSLL(CharStream input) {
+        if (!unbuffered) {
+            reset(input);
+            return;
+        }
+        input.seek(0);
+        lexer.setInputStream(input);
+        parser.setTokenStream(new UnbufferedTokenStream<>(onChannel));
+    }
+
+    private void reset(CharStream input) {
+        input.seek(0);
+        lexer.setInputStream(input); // Also resets the lexer
+        tokens.setTokenSource(lexer); // Drops the buffered tokens
+        parser.setTokenStream(tokens); // Also resets the parser
+    }
+
+    private void useSLL() {
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(bailStrategy);
+        parser.removeErrorListeners();
+    }
+
+    private void useLL() {
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.setErrorHandler(defaultStrategy);
+        parser.removeErrorListeners();
+        parser.addErrorListener(ThrowingErrorListener.INSTANCE);
+    }
+
+    // The unbuffered stream hands the parser every token, so the hidden channel has to be dropped here instead
+    private static class OnChannelTokenSource implements TokenSource {
+        private final TokenSource source;
+
+        OnChannelTokenSource(TokenSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public Token nextToken() {
+            Token token = source.nextToken();
+            while (token.getChannel() != Token.DEFAULT_CHANNEL && token.getType() != Token.EOF) {
+                token = source.nextToken();
+            }
+            return token;
+        }
+
+        @Override public int getLine() { return source.getLine(); }
+        @Override public int getCharPositionInLine() { return source.getCharPositionInLine(); }
+        @Override public CharStream getInputStream() { return source.getInputStream(); }
+        @Override public String getSourceName() { return source.getSourceName(); }
+        @Override public void setTokenFactory(TokenFactory<?> factory) { source.setTokenFactory(factory); }
+        @Override public TokenFactory<?> getTokenFactory() { return source.getTokenFactory(); }
+    }
+
+    public Stage getLastStage() { return lastStage; }
+    public int getSLLCount() { return sllCount; }
+    public int getLLCount() { return llCount; }
+}
@@ -6,11 +6,13 @@ import java.util.stream.Collectors;
 import no.uio.aeroscript.ast.expr.BinaryNode;
 import no.uio.aeroscript.ast.expr.Node;
 import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.expr.Variable;
 import no.uio.aeroscript.ast.stmt.Action;
 import no.uio.aeroscript.ast.stmt.Execution;
 import no.uio.aeroscript.ast.stmt.Statement;
 import no.uio.aeroscript.error.TypeError;
 import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.trace.Trace;
 
 public class TypeChecker {
     private ExpressionType[][] compatibilityTable = {
@@ -21,9 +23,20 @@ public class TypeChecker {
     };
 
     public ExpressionType walk(Node node) {
-        System.out.println("Checking type for: " + node);
+        ExpressionType result = check(node);
+        node.resultType = result; // Lets the evaluation skip boxing, see Node.evaluateFloat
+        return result;
+    }
+
+    private ExpressionType check(Node node) {
+        if (Trace.DEBUG) Trace.log("Checking type for: " + node);
         return switch (node.type) { // A visitor pattern is probably better though
-            case NUMBER, VARIABLE -> ExpressionType.NUMBER;
+            case NUMBER -> ExpressionType.NUMBER;
+
+            case VARIABLE -> {
+                Object data = ((UnaryNode) node).data;
+                yield data instanceof Variable ? ((Variable) data).getType() : ExpressionType.NUMBER;
+            }
 
             case NEG -> {
                 yield walk((Node) ((UnaryNode) node).data);
@@ -40,6 +53,7 @@ public class TypeChecker {
             }
 
             case POINT -> {
+                if (node instanceof UnaryNode) yield ExpressionType.POINT; // Folded literal
                 ExpressionType leftType = walk(((BinaryNode) node).left);
                 ExpressionType rightType = walk(((BinaryNode) node).right);
                 if (leftType == ExpressionType.POINT || rightType == ExpressionType.POINT) {
@@ -65,7 +79,7 @@ public class TypeChecker {
     private void checkType(Node node, ExpressionType... expectedTypes) {
         ExpressionType actualType = walk(node);
         String expectedStr = Arrays.stream(expectedTypes).map(Enum::name).collect(Collectors.joining(" or "));
-        System.out.println("Expected types: " + expectedStr + " vs. Actual type: " + actualType);
+        if (Trace.DEBUG) Trace.log("Expected types: " + expectedStr + " vs. Actual type: " + actualType);
         for (ExpressionType expected : expectedTypes) {
             if (actualType == expected) return;
         }
@@ -73,7 +87,7 @@ public class TypeChecker {
     }
 
     public ExpressionType walk(Statement statement) {
-        System.out.println("Checking type for: " + statement);
+        if (Trace.DEBUG) Trace.log("Checking type for: " + statement);
         if (statement instanceof Action) {
             Action action = (Action) statement;
             checkType((Node) action.speed, ExpressionType.NUMBER);
@@ -96,4 +110,4 @@ public class TypeChecker {
 
         return null;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,7 @@
+package no.uio.aeroscript.error;
+
+public class BatteryError extends RuntimeException {
+    public BatteryError(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,7 @@
+package no.uio.aeroscript.error;
+
+public class GeofenceError extends RuntimeException {
+    public GeofenceError(String msg) {
+        super(msg);
+    }
+}
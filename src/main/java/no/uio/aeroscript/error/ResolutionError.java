@@ -0,0 +1,7 @@
+package no.uio.aeroscript.error;
+
+public class ResolutionError extends RuntimeException {
+    public ResolutionError(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,9 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.stmt.Action;
+
+// Told about every action once it has been applied, by every backend. amount is how far it went:
+// the distance moved, the height climbed or dropped, or the angle turned, never negative.
+public interface ActionListener {
+    void acted(Action action, float amount, float speed, float duration);
+}
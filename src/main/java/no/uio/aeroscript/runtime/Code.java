@@ -0,0 +1,50 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+
+// A program lowered to a flat instruction stream, see Lowering for how it is laid out.
+// Each instruction is an opcode followed by its int operands in code.
+public class Code {
+    public static final int HALT = 0;
+    public static final int ENTER = 1;    // execution: push it as the mode
+    public static final int EXIT = 2;     // pop the mode, or pause first in the REPL
+    public static final int CALL = 3;     // execution: run it, then come back
+    public static final int CHAIN = 4;    // execution: run it instead of returning, for "-> Next"
+    public static final int RET = 5;
+    public static final int ACTION = 6;   // statement: anything that isn't a literal action
+    public static final int MOVE_TO = 7;  // statement, constant: x, y, speed, duration
+    public static final int MOVE_BY = 8;  // statement, constant: distance, speed, duration
+    public static final int TURN = 9;     // statement, constant: angle, speed, duration
+    public static final int SCEND = 10;   // statement, constant: height, speed, duration
+
+    public final int[] code;
+    public final float[] constants;
+    public final Statement[] statements; // The literal ones too, since they do the acting
+    public final Execution[] executions; // 0 is the program
+    public final int[] entries;          // Where each execution starts in code
+
+    public Code(int[] code, float[] constants, Statement[] statements, Execution[] executions, int[] entries) {
+        this.code = code;
+        this.constants = constants;
+        this.statements = statements;
+        this.executions = executions;
+        this.entries = entries;
+    }
+
+    public int indexOf(Execution execution) {
+        for (int i = 0; i < executions.length; i++) {
+            if (executions[i] == execution) return i;
+        }
+        return -1;
+    }
+
+    public static int length(int opcode) {
+        return switch (opcode) {
+            case HALT, EXIT, RET -> 1;
+            case ENTER, CALL, CHAIN, ACTION -> 2;
+            case MOVE_TO, MOVE_BY, TURN, SCEND -> 3;
+            default -> throw new IllegalArgumentException("Invalid opcode: " + opcode);
+        };
+    }
+}
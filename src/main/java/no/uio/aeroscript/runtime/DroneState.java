@@ -0,0 +1,101 @@
+package no.uio.aeroscript.runtime;
+
+import java.util.Map;
+
+import no.uio.aeroscript.type.Point;
+
+// The drone's variables as primitive fields, so actions don't go through the String-keyed heap.
+// The heap's VARIABLES map is filled from this with writeTo, for the REPL and anyone else reading it.
+public class DroneState {
+    // Slots for Variable, so it can skip the name lookup
+    public static final int CURRENT_POSITION = 0;
+    public static final int INITIAL_POSITION = 1;
+    public static final int ALTITUDE = 2;
+    public static final int BATTERY_LEVEL = 3;
+    public static final int INITIAL_BATTERY_LEVEL = 4;
+    public static final int DISTANCE_TRAVELLED = 5;
+    private static final String[] names = {
+        "current position", "initial position", "altitude", "battery level", "initial battery level", "distance travelled"
+    };
+
+    public float x;
+    public float y;
+    public float initialX;
+    public float initialY;
+    public float altitude;
+    public float batteryLevel;
+    public float initialBatteryLevel;
+    public float distanceTravelled;
+
+    public static int slotOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public void copyFrom(DroneState other) {
+        x = other.x;
+        y = other.y;
+        initialX = other.initialX;
+        initialY = other.initialY;
+        altitude = other.altitude;
+        batteryLevel = other.batteryLevel;
+        initialBatteryLevel = other.initialBatteryLevel;
+        distanceTravelled = other.distanceTravelled;
+    }
+
+    public float getFloat(int slot) {
+        return switch (slot) {
+            case ALTITUDE -> altitude;
+            case BATTERY_LEVEL -> batteryLevel;
+            case INITIAL_BATTERY_LEVEL -> initialBatteryLevel;
+            case DISTANCE_TRAVELLED -> distanceTravelled;
+            default -> throw new IllegalArgumentException("Not a number: " + names[slot]);
+        };
+    }
+
+    public void getPoint(int slot, float[] out) {
+        switch (slot) {
+            case CURRENT_POSITION -> {
+                out[0] = x;
+                out[1] = y;
+            }
+            case INITIAL_POSITION -> {
+                out[0] = initialX;
+                out[1] = initialY;
+            }
+            default -> throw new IllegalArgumentException("Not a point: " + names[slot]);
+        }
+    }
+
+    public Object get(int slot) {
+        return switch (slot) {
+            case CURRENT_POSITION -> new Point(x, y);
+            case INITIAL_POSITION -> new Point(initialX, initialY);
+            default -> getFloat(slot);
+        };
+    }
+
+    // Missing variables keep their current value, like the heap did
+    public void readFrom(Map<String, Object> vars) {
+        if (vars.get("current position") instanceof Point) {
+            x = ((Point) vars.get("current position")).getX();
+            y = ((Point) vars.get("current position")).getY();
+        }
+        if (vars.get("initial position") instanceof Point) {
+            initialX = ((Point) vars.get("initial position")).getX();
+            initialY = ((Point) vars.get("initial position")).getY();
+        }
+        if (vars.get("altitude") instanceof Number) altitude = ((Number) vars.get("altitude")).floatValue();
+        if (vars.get("battery level") instanceof Number) batteryLevel = ((Number) vars.get("battery level")).floatValue();
+        if (vars.get("initial battery level") instanceof Number) initialBatteryLevel = ((Number) vars.get("initial battery level")).floatValue();
+        if (vars.get("distance travelled") instanceof Number) distanceTravelled = ((Number) vars.get("distance travelled")).floatValue();
+    }
+
+    public void writeTo(Map<String, Object> vars) {
+        for (int i = 0; i < names.length; i++) {
+            vars.put(names[i], get(i));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package no.uio.aeroscript.runtime;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// What a Simulator's drones got from outside their programs, in the order they got it: messages,
+// obstacles and low battery, each with its simulated time. Along with where each drone started and
+// its seed, that is all a Replay needs to fly the same thing again. Saved as text, one line each:
+//     drone <id> <x> <y> <battery> <altitude> <seed> <start>
+//     <time> <flight> <message>
+// where flight is the drone's place among the drone lines. Numbers are written so they read back exactly.
+public class EventLog {
+    public static class Start {
+        public final int id;
+        public final float x;
+        public final float y;
+        public final float batteryLevel;
+        public final float altitude;
+        public final long seed;
+        public final double time;
+
+        public Start(int id, float x, float y, float batteryLevel, float altitude, long seed, double time) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.batteryLevel = batteryLevel;
+            this.altitude = altitude;
+            this.seed = seed;
+            this.time = time;
+        }
+    }
+
+    private final List<Start> drones = new ArrayList<>();
+    private double[] times = new double[64];
+    private int[] flights = new int[64];
+    private String[] messages = new String[64];
+    private int size = 0;
+
+    public void addDrone(Fleet.Drone drone, double time) {
+        drones.add(new Start(drone.id, drone.position.getX(), drone.position.getY(), drone.batteryLevel, drone.altitude, drone.seed, time));
+    }
+
+    public void add(double time, int flight, String message) {
+        if (flight < 0 || flight >= drones.size()) throw new IllegalArgumentException("No drone " + flight + " in the log");
+        if (size > 0 && time < times[size - 1]) throw new IllegalArgumentException("Events go in time order: " + time + " after " + times[size - 1]);
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            flights = Arrays.copyOf(flights, size * 2);
+            messages = Arrays.copyOf(messages, size * 2);
+        }
+        times[size] = time;
+        flights[size] = flight;
+        messages[size] = message;
+        size++;
+    }
+
+    public int size() { return size; }
+    public double getTime(int i) { return times[i]; }
+    public int getFlight(int i) { return flights[i]; }
+    public String getMessage(int i) { return messages[i]; }
+    public List<Start> getDrones() { return drones; }
+
+    public void save(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            for (Start d : drones) {
+                writer.write("drone " + d.id + " " + d.x + " " + d.y + " " + d.batteryLevel + " " + d.altitude + " " + d.seed + " " + d.time);
+                writer.newLine();
+            }
+            for (int i = 0; i < size; i++) {
+                writer.write(times[i] + " " + flights[i] + " " + messages[i]);
+                writer.newLine();
+            }
+        }
+    }
+
+    public static EventLog load(Path path) throws IOException {
+        EventLog log = new EventLog();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.isBlank()) continue;
+                try {
+                    if (line.startsWith("drone ")) {
+                        String[] parts = line.trim().split("\\s+");
+                        if (parts.length != 8) throw new IllegalArgumentException("A drone needs id, x, y, battery, altitude, seed and start");
+                        log.drones.add(new Start(Integer.parseInt(parts[1]), Float.parseFloat(parts[2]), Float.parseFloat(parts[3]),
+                            Float.parseFloat(parts[4]), Float.parseFloat(parts[5]), Long.parseLong(parts[6]), Double.parseDouble(parts[7])));
+                    } else {
+                        String[] parts = line.split(" ", 3); // The message can have spaces, like "low battery"
+                        if (parts.length != 3) throw new IllegalArgumentException("An event needs time, flight and message");
+                        log.add(Double.parseDouble(parts[0]), Integer.parseInt(parts[1]), parts[2]);
+                    }
+                } catch (IllegalArgumentException e) { // NumberFormatException too
+                    throw new IOException(path + ":" + number + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return log;
+    }
+}
@@ -0,0 +1,273 @@
+package no.uio.aeroscript.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.BytecodeCompiler;
+import no.uio.aeroscript.compiletime.Lowering;
+import no.uio.aeroscript.compiletime.MissionCache;
+import no.uio.aeroscript.compiletime.Specializer;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+
+// Flies many drones at once, each with its own Interpreter, heap, stack and random source.
+// A mission is checked once and kept as MissionCache bytes. The nodes point at their interpreter, so an
+// AST can't be shared between threads, but building one is most of a short flight: a Pilot is an
+// interpreter with the mission built on it, and each worker keeps the ones it built and resets them for
+// its next drone. What does carry over between threads lives on the Mission: the compiled action classes
+// and the lowered code, which don't depend on the tree. A pilot is only ever flown by one thread at a time.
+public class Fleet {
+    private static final byte[] NO_SOURCE = new byte[32]; // The bytes never go stale, so any hash will do
+
+    // A type-checked and folded program, ready to be given to drones
+    public static class Mission {
+        private final byte[] bytes;
+        final BytecodeCompiler.Classes classes = new BytecodeCompiler.Classes();
+        private final AtomicReferenceArray<Code> lowered = new AtomicReferenceArray<>(2); // Plain, compiled
+
+        public Mission(Execution program) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                MissionCache.write(program, NO_SOURCE, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Can't happen in memory
+            }
+            bytes = out.toByteArray();
+        }
+
+        Execution instantiate(Interpreter interpreter) {
+            try {
+                return MissionCache.read(new ByteArrayInputStream(bytes), NO_SOURCE, interpreter);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Lowered by the first copy to get here, and relinked on everyone else's
+        Code lower(Execution program, boolean compiled) {
+            int slot = compiled ? 1 : 0;
+            Code template = lowered.get(slot);
+            if (template != null) return Lowering.relink(template, program);
+            Code code = Lowering.lower(program);
+            lowered.compareAndSet(slot, null, code); // Whoever lost has lowered an equal one, so it can fly that
+            return code;
+        }
+    }
+
+    // A mission built on an interpreter, ready to fly. See reset for flying it again
+    static class Pilot {
+        final Mission mission;
+        final Interpreter interpreter;
+        final Execution program;
+        final Code code; // Null unless on the VM
+
+        Pilot(Mission mission, Interpreter interpreter, Execution program, Code code) {
+            this.mission = mission;
+            this.interpreter = interpreter;
+            this.program = program;
+            this.code = code;
+        }
+    }
+
+    // The pilots nobody is flying, by mission. One of these lives as long as a fly or a MonteCarlo run,
+    // so there are about as many pilots as there were workers, and they go when it does
+    static class Pilots {
+        private final ConcurrentHashMap<Mission, ConcurrentLinkedQueue<Pilot>> free = new ConcurrentHashMap<>();
+
+        Pilot take(Mission mission) {
+            ConcurrentLinkedQueue<Pilot> pilots = free.get(mission);
+            return pilots == null ? null : pilots.poll();
+        }
+
+        void put(Pilot pilot) {
+            free.computeIfAbsent(pilot.mission, m -> new ConcurrentLinkedQueue<>()).add(pilot);
+        }
+
+        int size() {
+            int size = 0;
+            for (ConcurrentLinkedQueue<Pilot> pilots : free.values()) size += pilots.size();
+            return size;
+        }
+    }
+
+    public static class Drone {
+        public final int id;
+        public final Mission mission;
+        public final Point position;
+        public final float batteryLevel;
+        public final float altitude;
+        public final long seed;
+        // Set once it has flown
+        public DroneState state;
+        public String failure; // Null if it finished
+        public long executed;
+
+        public Drone(int id, Mission mission, Point position, float batteryLevel, float altitude, long seed) {
+            this.id = id;
+            this.mission = mission;
+            this.position = position;
+            this.batteryLevel = batteryLevel;
+            this.altitude = altitude;
+            this.seed = seed;
+        }
+
+        @Override
+        public String toString() {
+            if (state == null) return "Drone " + id + ": not flown";
+            return "Drone " + id + ": position (" + state.x + ", " + state.y + "), altitude " + state.altitude
+                + ", battery " + state.batteryLevel + ", distance " + state.distanceTravelled
+                + (failure != null ? ", failed: " + failure : "");
+        }
+    }
+
+    private boolean useVM = false;
+    private boolean compiled = false;
+    private boolean tailChaining = false;
+    private int randomBatch = 0;
+    private ObstacleMap obstacles; // Built, so it's shared by every drone
+    private Geofence geofence; // Same
+    private FlightRecorder recorder; // Shared too, the drones write their own slots
+    private long nanos = 0;
+    private int flown = 0;
+
+    public void setVM(boolean useVM) { this.useVM = useVM; }
+    public void setCompiled(boolean compiled) { this.compiled = compiled; }
+    public void setTailChaining(boolean tailChaining) { this.tailChaining = tailChaining; }
+    public void setRandomBatch(int randomBatch) { this.randomBatch = randomBatch; }
+    public void setObstacleMap(ObstacleMap obstacles) { this.obstacles = obstacles; }
+    public void setGeofence(Geofence geofence) { this.geofence = geofence; }
+    public void setRecorder(FlightRecorder recorder) { this.recorder = recorder; }
+
+    // Flies every drone on the pool and waits for all of them. The pool is left running
+    public List<Drone> fly(List<Drone> drones, ExecutorService pool) throws InterruptedException {
+        long start = System.nanoTime();
+        Pilots pilots = new Pilots();
+        List<Future<Drone>> pending = new ArrayList<>(drones.size());
+        for (Drone drone : drones) {
+            pending.add(pool.submit(() -> fly(drone, pilots)));
+        }
+        try {
+            for (Future<Drone> future : pending) future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Drone crashed the fleet", e.getCause()); // Only for bugs, failed missions are kept in the drone
+        }
+        nanos = System.nanoTime() - start;
+        flown = drones.size();
+        return drones;
+    }
+
+    // One drone on the calling thread, on a pilot of its own
+    Drone fly(Drone drone) {
+        return fly(drone, new Pilots());
+    }
+
+    // One drone on the calling thread, on a free pilot for its mission if there is one. MonteCarlo uses this from its own tasks
+    Drone fly(Drone drone, Pilots pilots) {
+        Pilot pilot = pilots.take(drone.mission);
+        if (pilot == null) pilot = pilot(drone);
+        else reset(pilot, drone);
+        Interpreter interpreter = pilot.interpreter;
+        try {
+            if (pilot.code != null) interpreter.runProgram(pilot.code);
+            else interpreter.runProgram(pilot.program);
+        } catch (RuntimeException e) {
+            drone.failure = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        drone.state = new DroneState(); // The pilot's goes on to the next drone
+        drone.state.copyFrom(interpreter.state);
+        drone.executed = interpreter.getExecutedCount();
+        pilots.put(pilot);
+        return drone;
+    }
+
+    Pilot pilot(Drone drone) {
+        Interpreter interpreter = newInterpreter(drone);
+        Execution program = instantiate(drone, interpreter);
+        return new Pilot(drone.mission, interpreter, program, lower(drone, program));
+    }
+
+    // Back to the start of the mission, as drone
+    private void reset(Pilot pilot, Drone drone) {
+        Interpreter interpreter = pilot.interpreter;
+        DroneState start = new DroneState();
+        start.readFrom(vars(drone));
+        interpreter.reset(start);
+        interpreter.random.setSeed(drone.seed);
+        interpreter.random.setBatch(randomBatch); // Or it goes on with the last drone's numbers
+        interpreter.setRecorder(recorder, drone.id);
+    }
+
+    // The drone's own interpreter, at its start and with its seed. The Simulator uses these three as well
+    Interpreter newInterpreter(Drone drone) {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        heap.put(Memory.VARIABLES, vars(drone));
+
+        Interpreter interpreter = new Interpreter(heap);
+        interpreter.random.setSeed(drone.seed);
+        interpreter.random.setBatch(randomBatch);
+        interpreter.setTailChaining(tailChaining);
+        interpreter.setObstacleMap(obstacles);
+        interpreter.setGeofence(geofence);
+        interpreter.setRecorder(recorder, drone.id);
+        return interpreter;
+    }
+
+    private static HashMap<String, Object> vars(Drone drone) {
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", drone.position);
+        vars.put("current position", drone.position);
+        vars.put("battery level", drone.batteryLevel);
+        vars.put("initial battery level", drone.batteryLevel);
+        vars.put("distance travelled", 0.0f);
+        vars.put("altitude", drone.altitude);
+        return vars;
+    }
+
+    Execution instantiate(Drone drone, Interpreter interpreter) {
+        Execution program = drone.mission.instantiate(interpreter);
+        new Specializer().specialize(program);
+        if (compiled) new BytecodeCompiler(drone.mission.classes).compile(program);
+        return program;
+    }
+
+    // The mission's code on the drone's program, or null when it isn't flown on the VM
+    Code lower(Drone drone, Execution program) {
+        return useVM ? drone.mission.lower(program, compiled) : null;
+    }
+
+    public boolean isVM() { return useVM; }
+
+    public double getMissionsPerSecond() {
+        return nanos == 0 ? 0 : flown / (nanos / 1e9);
+    }
+
+    public double getSeconds() { return nanos / 1e9; }
+
+    // Work-stealing over all cores, since missions are pure computation
+    public static ExecutorService workStealingPool(int threads) {
+        return threads > 0 ? Executors.newWorkStealingPool(threads) : Executors.newWorkStealingPool();
+    }
+
+    // One virtual thread per drone. They came in Java 21 and we build for 17, so it's looked up
+    // reflectively, and null when the JVM doesn't have them
+    public static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
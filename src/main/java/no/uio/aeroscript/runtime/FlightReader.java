@@ -0,0 +1,115 @@
+package no.uio.aeroscript.runtime;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import no.uio.aeroscript.type.ActionType;
+
+// Goes through a FlightRecorder recording one record at a time, segment after segment. The reader
+// itself is the current record, so scanning allocates nothing:
+//     while (reader.next()) total += reader.getDistance();
+// Slots that were claimed but never finished are skipped.
+public class FlightReader implements AutoCloseable {
+    static final String MODES = "modes.txt";
+    private static final ActionType[] ACTIONS = ActionType.values();
+
+    private final Path directory;
+    private final String[] modes;
+    private int segmentIndex = -1;
+    private MappedByteBuffer buffer;
+    private int end; // Slots in the current segment
+    private int slot;
+    private int at = -1; // Offset of the current record
+    private long skipped = 0;
+
+    public FlightReader(Path directory) throws IOException {
+        this.directory = directory;
+        Path modeFile = directory.resolve(MODES);
+        modes = Files.exists(modeFile) ? Files.readAllLines(modeFile, StandardCharsets.UTF_8).toArray(new String[0]) : new String[0];
+    }
+
+    // Moves to the next record, false when there are no more
+    public boolean next() throws IOException {
+        while (true) {
+            if (buffer != null) {
+                while (slot < end) {
+                    int offset = FlightRecorder.HEADER_SIZE + slot++ * FlightRecorder.RECORD_SIZE;
+                    if (buffer.get(offset + FlightRecorder.ACTION) != 0) {
+                        at = offset;
+                        return true;
+                    }
+                    skipped++;
+                }
+            }
+            if (!openSegment(segmentIndex + 1)) {
+                at = -1;
+                return false;
+            }
+        }
+    }
+
+    private boolean openSegment(int index) throws IOException {
+        Path path = FlightRecorder.segmentPath(directory, index);
+        if (!Files.exists(path)) return false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < FlightRecorder.HEADER_SIZE) throw new IOException(path + " is too short to be a flight recording");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(FlightRecorder.HEADER_MAGIC) != FlightRecorder.MAGIC) throw new IOException(path + " is not a flight recording");
+        if (buffer.getInt(FlightRecorder.HEADER_VERSION) != FlightRecorder.VERSION) throw new IOException(path + " is version " + buffer.getInt(FlightRecorder.HEADER_VERSION) + ", not " + FlightRecorder.VERSION);
+        if (buffer.getInt(FlightRecorder.HEADER_RECORD_SIZE) != FlightRecorder.RECORD_SIZE) throw new IOException(path + " has records of the wrong size");
+        int count = buffer.getInt(FlightRecorder.HEADER_COUNT);
+        int room = (buffer.capacity() - FlightRecorder.HEADER_SIZE) / FlightRecorder.RECORD_SIZE;
+        end = count > 0 ? Math.min(count, room) : room; // No count if it never got closed, so look at all of it
+        segmentIndex = index;
+        slot = 0;
+        return true;
+    }
+
+    private void check() {
+        if (at < 0) throw new IllegalStateException("No current record, call next first");
+    }
+
+    // Seconds since the recorder was opened
+    public double getTime() { check(); return buffer.getLong(at + FlightRecorder.TIME) / 1e9; }
+    public int getDrone() { check(); return buffer.getInt(at + FlightRecorder.DRONE); }
+    public int getSequence() { check(); return buffer.getInt(at + FlightRecorder.SEQUENCE); }
+    public float getX() { check(); return buffer.getFloat(at + FlightRecorder.X); }
+    public float getY() { check(); return buffer.getFloat(at + FlightRecorder.Y); }
+    public float getAltitude() { check(); return buffer.getFloat(at + FlightRecorder.ALTITUDE); }
+    public float getBatteryLevel() { check(); return buffer.getFloat(at + FlightRecorder.BATTERY); }
+    public float getDistance() { check(); return buffer.getFloat(at + FlightRecorder.DISTANCE); }
+    public float getAmount() { check(); return buffer.getFloat(at + FlightRecorder.AMOUNT); }
+    public float getSpeed() { check(); return buffer.getFloat(at + FlightRecorder.SPEED); }
+    public float getDuration() { check(); return buffer.getFloat(at + FlightRecorder.DURATION); }
+    public ActionType getAction() { check(); return ACTIONS[buffer.get(at + FlightRecorder.ACTION) - 1]; }
+    public int getModeNumber() { check(); return buffer.getInt(at + FlightRecorder.MODE); }
+
+    public String getMode() {
+        int number = getModeNumber();
+        return number >= 0 && number < modes.length ? modes[number] : null;
+    }
+
+    public int getSegment() { return segmentIndex; }
+    public long getSkipped() { return skipped; }
+
+    @Override
+    public String toString() {
+        if (at < 0) return "No record";
+        return String.format("%.6f drone %d #%d %s %s: (%s, %s) altitude %s battery %s distance %s",
+            getTime(), getDrone(), getSequence(), getAction(), getMode(), getX(), getY(), getAltitude(), getBatteryLevel(), getDistance());
+    }
+
+    @Override
+    public void close() {
+        buffer = null; // Unmapped when collected
+        at = -1;
+    }
+}
@@ -0,0 +1,216 @@
+package no.uio.aeroscript.runtime;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import no.uio.aeroscript.type.ActionType;
+
+// Every action every drone takes, as fixed-size binary records in memory-mapped segment files.
+// A writer claims a slot with one atomic increment and fills it with absolute puts, so any number
+// of drones on any threads can record at once, and nothing is allocated per record. A full segment
+// is swapped for a new file, and once its last writer is done it is flushed and let go, so only the
+// current segment stays mapped however long the recording runs. The action byte is written last and is never 0 in a finished record,
+// so a reader can tell records that were claimed but not yet written, or lost in a crash.
+// Mode names go in a side file the first time each one is seen, and records hold their number.
+// FlightReader reads the recording back.
+public class FlightRecorder implements AutoCloseable {
+    public static final int MAGIC = 0x41455246; // AERF
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = 56;
+    public static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE; // A mapping is indexed by int
+    // Offsets in a record
+    static final int TIME = 0;       // long, nanoseconds since the recorder was opened
+    static final int DRONE = 8;      // int
+    static final int SEQUENCE = 12;  // int, the drone's action count
+    static final int X = 16;         // floats, the state after the action
+    static final int Y = 20;
+    static final int ALTITUDE = 24;
+    static final int BATTERY = 28;
+    static final int DISTANCE = 32;
+    static final int AMOUNT = 36;    // floats, what the action was asked to do
+    static final int SPEED = 40;
+    static final int DURATION = 44;
+    static final int MODE = 48;      // int, line in the modes file, -1 outside any mode
+    static final int ACTION = 52;    // byte, ActionType ordinal + 1. Written last
+    // Offsets in a segment header
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_RECORD_SIZE = 8;
+    static final int HEADER_CAPACITY = 12;
+    static final int HEADER_SEGMENT = 16;
+    static final int HEADER_COUNT = 20; // Set when the segment is done with, 0 until then
+    static final int HEADER_START = 24; // long, epoch milliseconds when the recorder was opened
+
+    private static class Segment {
+        final int index;
+        final MappedByteBuffer buffer;
+        final AtomicInteger claimed = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger(); // Records finished, capacity once it is full and done
+
+        Segment(int index, MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path directory;
+    private final int capacity; // Records per segment
+    private final long startNanos = System.nanoTime();
+    private final long startMillis = System.currentTimeMillis();
+    private final List<Segment> segments = new ArrayList<>(); // Still mapped: the current one, and full ones still being written
+    private volatile Segment current;
+    private volatile boolean closed = false;
+    private final ConcurrentHashMap<String, Integer> modes = new ConcurrentHashMap<>();
+    private final Writer modeFile;
+    private final AtomicInteger dropped = new AtomicInteger(); // Recorded after close
+
+    public FlightRecorder(Path directory) throws IOException {
+        this(directory, 1 << 18);
+    }
+
+    public FlightRecorder(Path directory, int capacity) throws IOException {
+        if (capacity < 1 || capacity > MAX_CAPACITY) throw new IllegalArgumentException("Segments hold 1 to " + MAX_CAPACITY + " records: " + capacity);
+        this.directory = directory;
+        this.capacity = capacity;
+        Files.createDirectories(directory);
+        try (var old = Files.newDirectoryStream(directory, "flight-*.rec")) {
+            if (old.iterator().hasNext()) throw new IOException("There is already a recording in " + directory);
+        }
+        modeFile = Files.newBufferedWriter(directory.resolve(FlightReader.MODES), StandardCharsets.UTF_8);
+        current = open(0);
+    }
+
+    public static Path segmentPath(Path directory, int index) {
+        return directory.resolve(String.format("flight-%06d.rec", index));
+    }
+
+    private Segment open(int index) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, index), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE); // Stays mapped after the channel closes
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(HEADER_MAGIC, MAGIC);
+        buffer.putInt(HEADER_VERSION, VERSION);
+        buffer.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+        buffer.putInt(HEADER_CAPACITY, capacity);
+        buffer.putInt(HEADER_SEGMENT, index);
+        buffer.putLong(HEADER_START, startMillis);
+        Segment segment = new Segment(index, buffer);
+        segments.add(segment);
+        return segment;
+    }
+
+    // One finished action. Any thread, no allocation unless the mode hasn't been seen before
+    public void record(int drone, int sequence, ActionType action, String mode, DroneState state, float amount, float speed, float duration) {
+        long time = System.nanoTime() - startNanos;
+        int modeNumber = mode == null ? -1 : modeNumber(mode);
+        while (true) {
+            Segment segment = current;
+            if (closed) {
+                dropped.incrementAndGet();
+                return;
+            }
+            int slot = segment.claimed.getAndIncrement();
+            if (slot >= capacity) {
+                rotate(segment);
+                continue;
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            int at = HEADER_SIZE + slot * RECORD_SIZE;
+            buffer.putLong(at + TIME, time);
+            buffer.putInt(at + DRONE, drone);
+            buffer.putInt(at + SEQUENCE, sequence);
+            buffer.putFloat(at + X, state.x);
+            buffer.putFloat(at + Y, state.y);
+            buffer.putFloat(at + ALTITUDE, state.altitude);
+            buffer.putFloat(at + BATTERY, state.batteryLevel);
+            buffer.putFloat(at + DISTANCE, state.distanceTravelled);
+            buffer.putFloat(at + AMOUNT, amount);
+            buffer.putFloat(at + SPEED, speed);
+            buffer.putFloat(at + DURATION, duration);
+            buffer.putInt(at + MODE, modeNumber);
+            buffer.put(at + ACTION, (byte) (action.ordinal() + 1));
+            if (segment.written.incrementAndGet() == capacity && current != segment) retire(segment);
+            return;
+        }
+    }
+
+    private int modeNumber(String mode) {
+        Integer number = modes.get(mode);
+        if (number != null) return number;
+        synchronized (modes) {
+            number = modes.get(mode);
+            if (number != null) return number;
+            try {
+                modeFile.write(mode);
+                modeFile.write('\n');
+                modeFile.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            number = modes.size();
+            modes.put(mode, number); // Only after it's in the file, so the reader always finds it
+            return number;
+        }
+    }
+
+    // The first writer to find the segment full opens the next, the rest wait for it
+    private void rotate(Segment full) {
+        synchronized (this) {
+            if (current != full || closed) return;
+            full.buffer.putInt(HEADER_COUNT, capacity);
+            try {
+                current = open(full.index + 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (full.written.get() == capacity) retire(full); // Its last writer finished before it was swapped out
+    }
+
+    // Flushes a full segment nobody is writing to any more and drops it. Java can't unmap a buffer,
+    // so the mapping goes when the buffer is collected. Either the last writer or rotate may get here
+    // first, and doing it twice is harmless
+    private void retire(Segment full) {
+        full.buffer.force();
+        synchronized (this) {
+            segments.remove(full);
+        }
+    }
+
+    // Writes the count of the last segment and flushes everything to disk. Records made after are dropped
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        Segment last = current;
+        last.buffer.putInt(HEADER_COUNT, Math.min(capacity, last.claimed.get()));
+        for (Segment segment : segments) segment.buffer.force();
+        modeFile.close();
+    }
+
+    public Path getDirectory() { return directory; }
+    public int getCapacity() { return capacity; }
+    public int getSegmentCount() { return current.index + 1; }
+    public int getDropped() { return dropped.get(); }
+    public synchronized int getMappedCount() { return segments.size(); }
+
+    public long getRecorded() {
+        Segment last = current;
+        return (long) last.index * capacity + Math.min(capacity, last.claimed.get());
+    }
+}
@@ -0,0 +1,329 @@
+package no.uio.aeroscript.runtime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Where drones may fly: inside the allowed areas, if there are any, and never into a no-fly zone.
+// Both are simple polygons, loaded once. Their edges are bucketed in a uniform grid, each edge in the
+// cells it passes through, so a move only looks at the edges near its own segment. For points, every
+// cell also knows how many polygons its corner is in, and only the edges between the corner and the
+// point are counted. Big polygons with thousands of edges cost no more per check than small ones.
+// Once built it is never written again, so every drone in a fleet can share one.
+public class Geofence {
+    // The edges of one kind of polygon, in a grid
+    private static class Zones {
+        private float[] edges = new float[64]; // ax, ay, bx, by per edge
+        private int[] polygonOf = new int[16];
+        private int edgeCount = 0;
+        private int polygons = 0;
+
+        private float minX, minY, cellSize; // minX and minY are half a cell out from the polygons
+        private int width, height;
+        private int[] cells; // The edges in cell c are ids[cells[c]] up to ids[cells[c + 1]]
+        private int[] ids;
+        private int[] depth; // How many polygons the bottom left corner of each cell is in
+
+        void add(float[] vertices) {
+            if (vertices.length < 6 || vertices.length % 2 != 0) throw new IllegalArgumentException("A zone needs at least three x, y pairs");
+            int n = vertices.length / 2;
+            double area = 0;
+            for (int v = 0; v < n; v++) {
+                int w = (v + 1) % n;
+                area += (double) vertices[2 * v] * vertices[2 * w + 1] - (double) vertices[2 * w] * vertices[2 * v + 1];
+            }
+            if (area < 0) { // Counter-clockwise, so the inside is always left of an edge
+                float[] reversed = new float[vertices.length];
+                for (int v = 0; v < n; v++) {
+                    reversed[2 * v] = vertices[2 * (n - 1 - v)];
+                    reversed[2 * v + 1] = vertices[2 * (n - 1 - v) + 1];
+                }
+                vertices = reversed;
+            }
+            if ((edgeCount + n) * 4 > edges.length) edges = Arrays.copyOf(edges, Math.max(edges.length * 2, (edgeCount + n) * 4));
+            if (edgeCount + n > polygonOf.length) polygonOf = Arrays.copyOf(polygonOf, Math.max(polygonOf.length * 2, edgeCount + n));
+            for (int v = 0; v < n; v++) {
+                int w = (v + 1) % n; // Closes by itself
+                int e = edgeCount++;
+                edges[4 * e] = vertices[2 * v];
+                edges[4 * e + 1] = vertices[2 * v + 1];
+                edges[4 * e + 2] = vertices[2 * w];
+                edges[4 * e + 3] = vertices[2 * w + 1];
+                polygonOf[e] = polygons;
+            }
+            polygons++;
+        }
+
+        void build() {
+            if (edgeCount == 0) return;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            minX = minY = Float.POSITIVE_INFINITY;
+            for (int i = 0; i < edgeCount * 4; i += 2) {
+                minX = Math.min(minX, edges[i]);
+                minY = Math.min(minY, edges[i + 1]);
+                maxX = Math.max(maxX, edges[i]);
+                maxY = Math.max(maxY, edges[i + 1]);
+            }
+            float spanX = Math.max(maxX - minX, 1e-3f);
+            float spanY = Math.max(maxY - minY, 1e-3f);
+            cellSize = (float) Math.sqrt(spanX * spanY / Math.max(1, edgeCount / 4)); // A few edges per cell
+            cellSize = Math.max(cellSize, (float) Math.sqrt(spanX * spanY / ObstacleMap.MAX_CELLS));
+            minX -= cellSize / 2; // So the first corners are outside everything
+            minY -= cellSize / 2;
+            width = (int) Math.ceil(spanX / cellSize) + 2;
+            height = (int) Math.ceil(spanY / cellSize) + 2;
+
+            // Counted first, then filled, so the buckets are one array
+            cells = new int[width * height + 1];
+            for (int e = 0; e < edgeCount; e++) walk(edges[4 * e], edges[4 * e + 1], edges[4 * e + 2], edges[4 * e + 3], c -> { cells[c + 1]++; return false; });
+            for (int c = 0; c < width * height; c++) cells[c + 1] += cells[c];
+            ids = new int[cells[width * height]];
+            int[] fill = Arrays.copyOf(cells, width * height);
+            for (int e = 0; e < edgeCount; e++) {
+                int edge = e;
+                walk(edges[4 * e], edges[4 * e + 1], edges[4 * e + 2], edges[4 * e + 3], c -> { ids[fill[c]++] = edge; return false; });
+            }
+            edges = Arrays.copyOf(edges, edgeCount * 4);
+
+            // Along each row of corners from the left, where it's outside everything
+            depth = new int[width * height];
+            for (int cy = 0; cy < height; cy++) {
+                int inside = 0;
+                float y = minY + cy * cellSize;
+                for (int cx = 0; cx < width; cx++) {
+                    depth[cy * width + cx] = inside;
+                    inside += crossedRight(cy * width + cx, minX + cx * cellSize, minX + (cx + 1) * cellSize, y);
+                }
+            }
+        }
+
+        // Polygons entered minus left going right from x0 up to x1 at y, over the edges in cell c
+        private int crossedRight(int c, float x0, float x1, float y) {
+            int crossed = 0;
+            for (int k = cells[c]; k < cells[c + 1]; k++) {
+                int e = ids[k];
+                float ay = edges[4 * e + 1], by = edges[4 * e + 3];
+                if ((ay > y) == (by > y)) continue; // A vertex on the line counts as above it
+                float ax = edges[4 * e];
+                double x = ax + (y - ay) * (double) (edges[4 * e + 2] - ax) / (by - ay);
+                if (x >= x0 && x < x1) crossed += by > ay ? -1 : 1; // Going up the inside is left, so that's leaving
+            }
+            return crossed;
+        }
+
+        // Same going up from y0 to y1 at x
+        private int crossedUp(int c, float x, float y0, float y1) {
+            int crossed = 0;
+            for (int k = cells[c]; k < cells[c + 1]; k++) {
+                int e = ids[k];
+                float ax = edges[4 * e], bx = edges[4 * e + 2];
+                if ((ax > x) == (bx > x)) continue;
+                float ay = edges[4 * e + 1];
+                double y = ay + (x - ax) * (double) (edges[4 * e + 3] - ay) / (bx - ax);
+                if (y >= y0 && y < y1) crossed += bx > ax ? 1 : -1;
+            }
+            return crossed;
+        }
+
+        private interface CellVisitor {
+            boolean visit(int cell); // True to stop
+        }
+
+        // Every cell the segment passes through, in order. Through a corner it visits both cells beside it
+        // as well, so an edge and a segment meeting there always share a cell
+        private boolean walk(float x0, float y0, float x1, float y1, CellVisitor visitor) {
+            // Only the part over the grid
+            double t0 = 0, t1 = 1;
+            double dx = x1 - x0, dy = y1 - y0;
+            double[] p = { -dx, dx, -dy, dy };
+            double[] q = { x0 - minX, minX + width * cellSize - x0, y0 - minY, minY + height * cellSize - y0 };
+            for (int k = 0; k < 4; k++) {
+                if (p[k] == 0) {
+                    if (q[k] < 0) return false;
+                } else {
+                    double t = q[k] / p[k];
+                    if (p[k] < 0) t0 = Math.max(t0, t);
+                    else t1 = Math.min(t1, t);
+                }
+            }
+            if (t0 > t1) return false;
+
+            double ax = (x0 + t0 * dx - minX) / cellSize, ay = (y0 + t0 * dy - minY) / cellSize;
+            double bx = (x0 + t1 * dx - minX) / cellSize, by = (y0 + t1 * dy - minY) / cellSize;
+            int cx = clamp(ax, width), cy = clamp(ay, height);
+            int ex = clamp(bx, width), ey = clamp(by, height);
+            int stepX = ex > cx ? 1 : -1, stepY = ey > cy ? 1 : -1;
+            double gx = bx - ax, gy = by - ay;
+            double deltaX = gx != 0 ? Math.abs(1 / gx) : Double.POSITIVE_INFINITY;
+            double deltaY = gy != 0 ? Math.abs(1 / gy) : Double.POSITIVE_INFINITY;
+            double nextX = gx != 0 ? ((stepX > 0 ? cx + 1 : cx) - ax) / gx : Double.POSITIVE_INFINITY;
+            double nextY = gy != 0 ? ((stepY > 0 ? cy + 1 : cy) - ay) / gy : Double.POSITIVE_INFINITY;
+            int steps = Math.abs(ex - cx) + Math.abs(ey - cy);
+            for (int s = 0; ; s++) {
+                if (visitor.visit(cy * width + cx)) return true;
+                if (s == steps) return false;
+                if (cx != ex && cy != ey && Math.abs(nextX - nextY) < 1e-9) {
+                    if (visitor.visit(cy * width + cx + stepX) || visitor.visit((cy + stepY) * width + cx)) return true;
+                }
+                if ((nextX < nextY && cx != ex) || cy == ey) {
+                    cx += stepX;
+                    nextX += deltaX;
+                } else {
+                    cy += stepY;
+                    nextY += deltaY;
+                }
+            }
+        }
+
+        private static int clamp(double cell, int cells) {
+            return Math.min(cells - 1, Math.max(0, (int) Math.floor(cell)));
+        }
+
+        boolean isEmpty() {
+            return edgeCount == 0;
+        }
+
+        // Inside any of the polygons: from the cell's corner, right to below the point, then up to it
+        boolean contains(float px, float py) {
+            if (edgeCount == 0) return false;
+            double gx = (px - minX) / cellSize, gy = (py - minY) / cellSize;
+            if (gx < 0 || gy < 0 || gx >= width || gy >= height) return false;
+            int cx = (int) gx, cy = (int) gy;
+            int c = cy * width + cx;
+            float cornerY = minY + cy * cellSize;
+            return depth[c] + crossedRight(c, minX + cx * cellSize, px, cornerY) + crossedUp(c, px, cornerY, py) > 0;
+        }
+
+        // Where along the segment it meets an edge, from 0 at its start to 1 at its end, in no
+        // particular order and maybe more than once. Stops at the first when first is set
+        double[] crossings(float x0, float y0, float x1, float y1, boolean first) {
+            if (edgeCount == 0) return new double[0];
+            double[][] found = { new double[4] };
+            int[] count = { 0 };
+            walk(x0, y0, x1, y1, c -> {
+                for (int k = cells[c]; k < cells[c + 1]; k++) {
+                    int e = ids[k];
+                    double t = meet(x0, y0, x1, y1, edges[4 * e], edges[4 * e + 1], edges[4 * e + 2], edges[4 * e + 3]);
+                    if (Double.isNaN(t)) continue;
+                    if (count[0] == found[0].length) found[0] = Arrays.copyOf(found[0], count[0] * 2);
+                    found[0][count[0]++] = t;
+                    if (first) return true;
+                }
+                return false;
+            });
+            return Arrays.copyOf(found[0], count[0]);
+        }
+    }
+
+    // Along p0 to p1, where it meets the edge a to b, or NaN. Touching counts, and running along the
+    // edge meets it where the overlap starts
+    static double meet(float px0, float py0, float px1, float py1, float ax, float ay, float bx, float by) {
+        double rx = px1 - px0, ry = py1 - py0;
+        double sx = bx - ax, sy = by - ay;
+        double qx = ax - px0, qy = ay - py0;
+        double denominator = rx * sy - ry * sx;
+        if (denominator == 0) {
+            if (qx * ry - qy * rx != 0) return Double.NaN; // Parallel
+            double length = rx * rx + ry * ry;
+            if (length == 0) return Double.NaN; // Standing still
+            double t0 = (qx * rx + qy * ry) / length;
+            double t1 = t0 + (sx * rx + sy * ry) / length;
+            double low = Math.max(0, Math.min(t0, t1)), high = Math.min(1, Math.max(t0, t1));
+            return low <= high ? low : Double.NaN;
+        }
+        double t = (qx * sy - qy * sx) / denominator;
+        double u = (qx * ry - qy * rx) / denominator;
+        return t < 0 || t > 1 || u < 0 || u > 1 ? Double.NaN : t;
+    }
+
+    private final Zones allowed = new Zones();
+    private final Zones noFly = new Zones();
+    private boolean built = false;
+    private String reaction = "geofence"; // Tried as a message, then as an event. Null for always failing
+
+    public void addAllowed(float... vertices) {
+        if (built) throw new IllegalStateException("Geofence is already built");
+        allowed.add(vertices);
+    }
+
+    public void addNoFly(float... vertices) {
+        if (built) throw new IllegalStateException("Geofence is already built");
+        noFly.add(vertices);
+    }
+
+    public Geofence build() {
+        if (built) return this;
+        built = true;
+        allowed.build();
+        noFly.build();
+        return this;
+    }
+
+    // What is wrong with flying straight from (x0, y0) to (x1, y1), or null if nothing is
+    public String check(float x0, float y0, float x1, float y1) {
+        if (!built) throw new IllegalStateException("Geofence is not built");
+        if (!noFly.isEmpty() && (noFly.crossings(x0, y0, x1, y1, true).length > 0 || noFly.contains(x0, y0))) return "enters a no-fly zone";
+        if (allowed.isEmpty()) return null;
+        // Between two crossings it's all in or all out, so one point in each stretch tells
+        double[] ts = allowed.crossings(x0, y0, x1, y1, false);
+        Arrays.sort(ts);
+        double last = 0;
+        boolean tested = false;
+        for (int i = 0; i <= ts.length; i++) {
+            double t = i < ts.length ? ts[i] : 1;
+            if (t - last > 1e-6) {
+                double middle = (last + t) / 2;
+                if (!allowed.contains((float) (x0 + middle * (x1 - x0)), (float) (y0 + middle * (y1 - y0)))) return "leaves the allowed area";
+                tested = true;
+            }
+            last = Math.max(last, t);
+        }
+        if (!tested && !allowed.contains(x1, y1)) return "leaves the allowed area"; // Too short to have a middle
+        return null;
+    }
+
+    // What is wrong with being at (x, y), or null if nothing is
+    public String checkPoint(float x, float y) {
+        if (!built) throw new IllegalStateException("Geofence is not built");
+        if (noFly.contains(x, y)) return "is in a no-fly zone";
+        if (!allowed.isEmpty() && !allowed.contains(x, y)) return "is outside the allowed area";
+        return null;
+    }
+
+    public void setReaction(String reaction) { this.reaction = reaction; }
+    public String getReaction() { return reaction; }
+    public boolean isBuilt() { return built; }
+    public int getAllowedCount() { return allowed.polygons; }
+    public int getNoFlyCount() { return noFly.polygons; }
+
+    // One zone per line: "allowed x0 y0 x1 y1 x2 y2 ..." or "nofly ...". # starts a comment
+    public static Geofence load(Path path) throws IOException {
+        Geofence geofence = new Geofence();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) line = line.substring(0, comment);
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                String[] parts = line.split("\\s+");
+                try {
+                    float[] numbers = new float[parts.length - 1];
+                    for (int k = 1; k < parts.length; k++) numbers[k - 1] = Float.parseFloat(parts[k]);
+                    switch (parts[0]) {
+                        case "allowed" -> geofence.addAllowed(numbers);
+                        case "nofly" -> geofence.addNoFly(numbers);
+                        default -> throw new IllegalArgumentException("Unknown zone " + parts[0]);
+                    }
+                } catch (IllegalArgumentException e) { // NumberFormatException too
+                    throw new IOException(path + ":" + number + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return geofence.build();
+    }
+}
@@ -1,40 +1,123 @@
 package no.uio.aeroscript.runtime;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Stack;
 import java.util.function.Predicate;
 
+import no.uio.aeroscript.ast.stmt.Action;
 import no.uio.aeroscript.ast.stmt.Execution;
 import no.uio.aeroscript.ast.stmt.Lambda;
 import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.error.GeofenceError;
 import no.uio.aeroscript.type.Memory;
 import no.uio.aeroscript.type.Point;
+import no.uio.aeroscript.trace.Trace;
 
 @SuppressWarnings("unchecked")
 
 public class Interpreter {
     public HashMap<Memory, Object> heap;
-    private Stack<Statement> stack;
-    private Stack<Execution> modeStack = new Stack<Execution>();
-    public boolean running = false;
+    // Persistent, so a snapshot is just the two references. See Snapshot
+    private PersistentStack<Statement> stack = PersistentStack.empty();
+    private PersistentStack<Execution> modeStack = PersistentStack.empty();
+    private Execution program; // What the stack's statements are numbered against in a written snapshot
+    private Lambda popModeCommand; // The REPL's, so a snapshot can point at it
+    public volatile boolean running = false; // Another thread may pause us
+    private VM vm; // Set when running lowered Code instead of the Statement stack
+    public final DroneState state = new DroneState(); // Where the variables live while running
+    public final RandomSource random = new RandomSource(); // What "random" draws from. Seed it to repeat a run
+    // For missions that loop forever: "-> Next" is pushed by the exit instead of waiting under the body,
+    // and only the last CHAINED_HISTORY executions are returned from a run
+    private boolean tailChaining = false;
+    public static final int CHAINED_HISTORY = 64;
+    private long executedCount = 0;
+    private MessageQueue messages; // Drained between instructions, when there is one
+    private ActionListener actionListener;
+    private ObstacleMap obstacles; // Checked on every move, when there is one
+    private Geofence geofence; // Same
+    private FlightRecorder recorder; // Gets every action, when there is one
+    private int droneId;
+    private int recordedCount = 0;
+
+    // Everything a run has got to, so it can be put back there with restore. Taking one copies the state's
+    // floats and keeps references to the rest: the stacks are persistent, and the random batch and the
+    // VM's return stack are copied the next time they are written instead. So a snapshot is a fork that
+    // costs the same however deep the run is, and every branch run from it shares what it hasn't changed.
+    // Only for the interpreter it came from, since the statements on the stack point at it. writeSnapshot
+    // makes bytes that another interpreter flying the same mission can read. Queued messages aren't kept
+    public static class Snapshot {
+        private final PersistentStack<Statement> stack;
+        private final PersistentStack<Execution> modes;
+        private final DroneState state = new DroneState();
+        private final RandomSource.Mark random;
+        private final boolean running;
+        private final long executedCount;
+        private final int recordedCount;
+        private final VM vm;
+        private final VM.Registers registers;
+        private final Execution[][] chained; // Executions and where they chain to, only when read from bytes
+
+        private Snapshot(Interpreter interpreter) {
+            stack = interpreter.stack;
+            modes = interpreter.modeStack;
+            state.copyFrom(interpreter.state);
+            random = interpreter.random.mark();
+            running = interpreter.running;
+            executedCount = interpreter.executedCount;
+            recordedCount = interpreter.recordedCount;
+            vm = interpreter.vm;
+            registers = vm == null ? null : vm.save();
+            chained = null;
+        }
+
+        private Snapshot(PersistentStack<Statement> stack, PersistentStack<Execution> modes, DroneState state, RandomSource.Mark random, boolean running,
+                long executedCount, int recordedCount, VM vm, VM.Registers registers, Execution[][] chained) {
+            this.stack = stack;
+            this.modes = modes;
+            this.state.copyFrom(state);
+            this.random = random;
+            this.running = running;
+            this.executedCount = executedCount;
+            this.recordedCount = recordedCount;
+            this.vm = vm;
+            this.registers = registers;
+            this.chained = chained;
+        }
+
+        public int getStackDepth() { return stack.size(); }
+        public int getModeDepth() { return modes.size(); }
+        public DroneState getState() { return state; }
+    }
 
-    public Interpreter(HashMap<Memory, Object> heap, Stack<Statement> stack) {
+    private static final int SNAPSHOT_MAGIC = 0x41455253; // "AERS"
+    private static final int SNAPSHOT_VERSION = 1;
+    private ProgramIndex index; // Made the first time a snapshot is written or read
+
+    // The stack starts empty and is the interpreter's own, since it is persistent. getStackDepth says how deep it is
+    public Interpreter(HashMap<Memory, Object> heap) {
         this.heap = heap;
-        this.stack = stack;
+        if (heap != null && heap.get(Memory.VARIABLES) != null) state.readFrom(getVariables());
     }
 
-    public void pause() { System.out.println("Pausing..."); running = false; }
-    public void resume() { System.out.println("Resuming..."); running = true; }
+    public void pause() { if (Trace.DEBUG) Trace.log("Pausing..."); running = false; }
+    public void resume() { if (Trace.DEBUG) Trace.log("Resuming..."); running = true; }
 
     public ArrayList<Execution> runProgram(Execution program) {
-        System.out.println("Running program.");
+        if (Trace.INFO) Trace.log("Running program.");
         //pushAllToStackReverse(program.statements, s -> ((Execution) s).pending);
 
         HashMap<String, Runnable> lambdas = new HashMap<>();
         lambdas.put("modeEnd", () -> popMode());
         heap.put(Memory.LAMBDAS, lambdas);
+        this.program = program;
 
         resume();
         program.execute();
@@ -52,11 +135,13 @@ public class Interpreter {
     }
 
     public ArrayList<Execution> runProgramREPL(Execution program) {
-        System.out.println("Running program for REPL.");
+        if (Trace.INFO) Trace.log("Running program for REPL.");
 
         HashMap<String, Runnable> lambdas = new HashMap<>();
-        lambdas.put("modeEnd", () -> { pause(); pushToStack(new Lambda("popmode", () -> popMode())); });
+        popModeCommand = new Lambda("popmode", () -> popMode());
+        lambdas.put("modeEnd", () -> { pause(); pushToStack(popModeCommand); });
         heap.put(Memory.LAMBDAS, lambdas);
+        this.program = program;
         resume();
         program.execute();
         
@@ -72,21 +157,196 @@ public class Interpreter {
         return executeStack();
     }
 
+    public ArrayList<Execution> runProgram(Code code) {
+        if (Trace.INFO) Trace.log("Running lowered program.");
+        return runCode(code, false);
+    }
+
+    public ArrayList<Execution> runProgramREPL(Code code) {
+        if (Trace.INFO) Trace.log("Running lowered program for REPL.");
+        return runCode(code, true);
+    }
+
+    // Gets ready to go on from a snapshot, written by another interpreter flying the same mission, instead of
+    // starting over: restore it, then executeStack
+    public void load(Execution program) {
+        HashMap<String, Runnable> lambdas = new HashMap<>();
+        lambdas.put("modeEnd", () -> popMode());
+        heap.put(Memory.LAMBDAS, lambdas);
+        this.program = program;
+        vm = null;
+    }
+
+    public void load(Code code) {
+        program = code.executions[0];
+        vm = new VM(this, code, false);
+    }
+
+    private ArrayList<Execution> runCode(Code code, boolean repl) {
+        program = code.executions[0];
+        vm = new VM(this, code, repl);
+        resume();
+        Execution first = null;
+        for (Statement stm : code.executions[0].statements) {
+            if (stm instanceof Execution) {
+                first = (Execution) stm;
+                break;
+            }
+        }
+        setFirstExecution(first);
+        return vm.run();
+    }
+
     public ArrayList<Execution> executeStack() {
-        ArrayList<Execution> executions = new ArrayList<Execution>();
-        System.out.println(stack);
-        while(!stack.isEmpty() && running) {
-            Statement stm = stack.pop();
-            if (stm instanceof Execution) executions.add((Execution) stm);
-            stm.execute();
+        try {
+            if (vm != null) return vm.run();
+            ArrayList<Execution> executions = new ArrayList<Execution>();
+            if (Trace.DEBUG) Trace.log(String.valueOf(stack));
+            while(!stack.isEmpty() && running) {
+                if (messages != null && !messages.isEmpty() && isAction(stack.peek())) drainMessages();
+                Statement stm = stack.peek();
+                stack = stack.pop();
+                if (stm instanceof Execution) recordExecution(executions, (Execution) stm);
+                stm.execute();
+            }
+            return trimHistory(executions); // There is no need to keep track of these in my opinion, but you asked for it
+        } finally {
+            syncHeap();
+        }
+    }
+
+    void recordExecution(ArrayList<Execution> history, Execution execution) {
+        executedCount++;
+        if (tailChaining && history.size() >= 2 * CHAINED_HISTORY) history.subList(0, CHAINED_HISTORY).clear();
+        history.add(execution);
+    }
+
+    ArrayList<Execution> trimHistory(ArrayList<Execution> history) {
+        if (tailChaining && history.size() > CHAINED_HISTORY) history.subList(0, history.size() - CHAINED_HISTORY).clear();
+        return history;
+    }
+
+    // Needs a seeded random source, so the numbers after a restore are the ones that came after the snapshot
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    // As often as you like: the snapshot isn't changed by running on from it
+    public void restore(Snapshot snapshot) {
+        stack = snapshot.stack;
+        modeStack = snapshot.modes;
+        state.copyFrom(snapshot.state);
+        random.reset(snapshot.random);
+        running = snapshot.running;
+        executedCount = snapshot.executedCount;
+        recordedCount = snapshot.recordedCount;
+        vm = snapshot.vm;
+        if (vm != null) vm.load(snapshot.registers);
+        if (snapshot.chained != null) {
+            for (Execution[] chain : snapshot.chained) chain[0].setNextExecution(chain[1]);
+        }
+        syncHeap();
+    }
+
+    // Back to before any run, at start, so the program built on this interpreter can be flown again by another
+    // drone instead of building it anew. The settings stay, and the random source is left to be seeded
+    public void reset(DroneState start) {
+        stack = PersistentStack.empty();
+        modeStack = PersistentStack.empty();
+        state.copyFrom(start);
+        running = false;
+        executedCount = 0;
+        recordedCount = 0;
+        vm = null;
+        syncHeap();
+    }
+
+    // Statements go in as their place in the program, so the program has to be the same one, and lowered
+    // the same way if it was running on the VM
+    public void writeSnapshot(Snapshot snapshot, OutputStream stream) throws IOException {
+        ProgramIndex index = index();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeShort(SNAPSHOT_VERSION);
+        ProgramIndex.writeVarint(out, index.size());
+        out.writeBoolean(snapshot.running);
+        DroneState state = snapshot.state;
+        for (float f : new float[] { state.x, state.y, state.initialX, state.initialY, state.altitude, state.batteryLevel, state.initialBatteryLevel, state.distanceTravelled }) {
+            out.writeFloat(f);
         }
-        return executions; // There is no need to keep track of these in my opinion, but you asked for it
+        ProgramIndex.writeVarint(out, snapshot.executedCount);
+        ProgramIndex.writeVarint(out, snapshot.recordedCount);
+        snapshot.random.write(out);
+
+        ProgramIndex.writeVarint(out, snapshot.stack.size());
+        for (Object stm : snapshot.stack.toArray()) index.writeStatement((Statement) stm, popModeCommand, out);
+        ProgramIndex.writeVarint(out, snapshot.modes.size());
+        for (Object mode : snapshot.modes.toArray()) ProgramIndex.writeVarint(out, index.number((Execution) mode));
+        index.writeChains(out);
+
+        out.writeBoolean(snapshot.vm != null);
+        if (snapshot.vm != null) snapshot.registers.write(out);
+        out.flush();
+    }
+
+    // For this interpreter, once it has run or loaded the same program the snapshot was written from
+    public Snapshot readSnapshot(InputStream stream) throws IOException {
+        ProgramIndex index = index();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException("Not an interpreter snapshot");
+        int version = in.readShort();
+        if (version != SNAPSHOT_VERSION) throw new IOException("Snapshot is version " + version + ", not " + SNAPSHOT_VERSION);
+        int size = ProgramIndex.readVarint(in);
+        if (size != index.size()) throw new IOException("Snapshot is of a program with " + size + " executions, not " + index.size());
+        boolean running = in.readBoolean();
+        DroneState state = new DroneState();
+        state.x = in.readFloat();
+        state.y = in.readFloat();
+        state.initialX = in.readFloat();
+        state.initialY = in.readFloat();
+        state.altitude = in.readFloat();
+        state.batteryLevel = in.readFloat();
+        state.initialBatteryLevel = in.readFloat();
+        state.distanceTravelled = in.readFloat();
+        long executedCount = ProgramIndex.readVarlong(in);
+        int recordedCount = ProgramIndex.readVarint(in);
+        RandomSource.Mark random = RandomSource.Mark.read(in);
+
+        PersistentStack<Statement> stack = PersistentStack.empty();
+        for (int i = ProgramIndex.readVarint(in); i > 0; i--) stack = stack.push(index.readStatement(popModeCommand, in));
+        PersistentStack<Execution> modes = PersistentStack.empty();
+        for (int i = ProgramIndex.readVarint(in); i > 0; i--) modes = modes.push(index.execution(ProgramIndex.readVarint(in)));
+        Execution[][] chained = index.readChains(in);
+
+        VM.Registers registers = null;
+        if (in.readBoolean()) {
+            if (vm == null) throw new IOException("Snapshot is from the VM, load the lowered program first");
+            registers = VM.Registers.read(in);
+        }
+        return new Snapshot(stack, modes, state, random, running, executedCount, recordedCount, registers == null ? null : vm, registers, chained);
+    }
+
+    private ProgramIndex index() {
+        if (program == null) throw new IllegalStateException("No program to number the stack against, run or load one first");
+        if (index == null || index.program != program) index = new ProgramIndex(program);
+        return index;
+    }
+
+    public void setTailChaining(boolean tailChaining) { this.tailChaining = tailChaining; }
+    public boolean isTailChaining() { return tailChaining; }
+    public long getExecutedCount() { return executedCount; }
+    public int getModeDepth() { return modeStack.size(); }
+    public int getStackDepth() { return stack.size(); }
+
+    // Puts the state back in the heap, so it shows up in there between runs
+    public void syncHeap() {
+        if (heap != null && heap.get(Memory.VARIABLES) != null) state.writeTo(getVariables());
     }
 
     public void pushToStack(Statement stm) {
         if (stm == null) return;
-        System.out.println("pushed: " + stm.toString());
-        stack.push(stm);
+        if (Trace.DEBUG) Trace.log("pushed: " + stm.toString());
+        stack = stack.push(stm);
     }
 
     public void pushAllToStackReverse(Statement[] statements) {
@@ -102,14 +362,52 @@ public class Interpreter {
     }
 
     public void checkBatteryLevel() {
-        if (getBatteryLevel() < 20) {
-            System.out.println("Low battery. Triggering low battery reaction");
+        if (state.batteryLevel < 20) {
+            if (Trace.INFO) Trace.log("Low battery. Triggering low battery reaction");
             reactToKey("low battery", getModeReactions());
         }
     }
 
+    // Before a move from (x0, y0) to (x1, y1). True if the mode reacted to the obstacle, and the move
+    // shouldn't happen. Without an "on obstacle" the drone flies on like before
+    public boolean checkObstacle(float x0, float y0, float x1, float y1) {
+        if (obstacles == null || !obstacles.blocks(x0, y0, x1, y1)) return false;
+        if (Trace.INFO) Trace.log("Obstacle between (" + x0 + ", " + y0 + ") and (" + x1 + ", " + y1 + ")");
+        return reactToKey("obstacle", getModeReactions());
+    }
+
+    // Before a move, after the obstacles. True if the mode reacted to the violation, and the move
+    // shouldn't happen. Without a reaction for it the mission fails
+    public boolean checkGeofence(float x0, float y0, float x1, float y1) {
+        if (geofence == null) return false;
+        String violation = geofence.check(x0, y0, x1, y1);
+        if (violation == null) return false;
+        if (Trace.INFO) Trace.log("Geofence: move to (" + x1 + ", " + y1 + ") " + violation);
+        if (geofence.getReaction() != null && react(geofence.getReaction())) return true;
+        throw new GeofenceError("Move from (" + x0 + ", " + y0 + ") to (" + x1 + ", " + y1 + ") " + violation + (modeStack.isEmpty() ? "" : " in " + getMode().id));
+    }
+
+    // The drone id goes in every record, so one recorder can take a whole fleet
+    public void setRecorder(FlightRecorder recorder, int droneId) {
+        this.recorder = recorder;
+        this.droneId = droneId;
+    }
+    public FlightRecorder getRecorder() { return recorder; }
+
+    public void setGeofence(Geofence geofence) {
+        if (geofence != null && !geofence.isBuilt()) throw new IllegalArgumentException("Geofence is not built");
+        this.geofence = geofence;
+    }
+    public Geofence getGeofence() { return geofence; }
+
+    public void setObstacleMap(ObstacleMap obstacles) {
+        if (obstacles != null && !obstacles.isBuilt()) throw new IllegalArgumentException("Obstacle map is not built");
+        this.obstacles = obstacles;
+    }
+    public ObstacleMap getObstacleMap() { return obstacles; }
+
     public void clearStack() {
-        stack.clear();
+        stack = PersistentStack.empty();
     }
 
     private void executionInterrupt(String executionName) {
@@ -117,23 +415,28 @@ public class Interpreter {
         Map<String, Execution> executions = getModeExecutions();
         if (!executions.containsKey(executionName)) throw new IllegalArgumentException("Execution " + executionName + " not found in " + getMode());
         Execution execution = executions.get(executionName);
+        if (vm != null) {
+            vm.interrupt(execution);
+            return;
+        }
         clearStack();
         execution.execute();
     }
 
     public void pushMode(Execution mode) {
-        System.out.println("Pushing " + mode + " to ModeStack.");
-        modeStack.push(mode);
+        if (Trace.DEBUG) Trace.log("Pushing " + mode + " to ModeStack.");
+        modeStack = modeStack.push(mode);
     }
 
     public void popMode() {
-        Execution mode = modeStack.pop();
-        System.out.println("Exiting mode " + mode + ".");
+        Execution mode = modeStack.peek();
+        modeStack = modeStack.pop();
+        if (Trace.DEBUG) Trace.log("Exiting mode " + mode + ".");
     }
 
     private boolean reactToKey(String key, Map<String, String> map) {
         if (map.containsKey(key)) {
-            System.out.println("Reacting to " + key);
+            if (Trace.INFO) Trace.log("Reacting to " + key);
             String executionName = map.get(key);
             executionInterrupt(executionName);
             return true;
@@ -141,8 +444,64 @@ public class Interpreter {
         return false;
     }
 
+    public void setMessageQueue(MessageQueue messages) { this.messages = messages; }
+    public MessageQueue getMessageQueue() { return messages; }
+
+    boolean hasMessages() {
+        return messages != null && !messages.isEmpty();
+    }
+
+    // Messages are only taken right before an action. In between, like when chaining, the mode on top
+    // is the parent, which would drop a message meant for the execution flying
+    private static boolean isAction(Statement stm) {
+        return !(stm instanceof Execution) && !(stm instanceof Lambda);
+    }
+
+    // Before an action, on our own thread. Reacts like receiveMessage, except the loop that called
+    // this goes on running, and messages the mode doesn't know are counted instead of thrown
+    void drainMessages() {
+        String message;
+        while ((message = messages.poll()) != null) {
+            if (deliver(message)) return; // The rest wait for the next action, in the mode it reacted into
+        }
+    }
+
+    private boolean deliver(String message) {
+        if (Trace.INFO) Trace.log("Received message: " + message);
+        if (react(message)) return true;
+        if (Trace.INFO) Trace.log("Message " + message + " not found in " + (modeStack.isEmpty() ? "any mode" : getMode()) + ", dropping it");
+        messages.recordUnmatched();
+        return false;
+    }
+
+    // Switches to the execution the current mode has for a message or event, without running anything yet.
+    // False if the mode has none
+    public boolean react(String message) {
+        return !modeStack.isEmpty() && (reactToKey(message, getModeMessages()) || reactToKey(message, getModeReactions()));
+    }
+
+    public void setActionListener(ActionListener actionListener) { this.actionListener = actionListener; }
+    public ActionListener getActionListener() { return actionListener; }
+
+    // After every action, from whichever backend ran it
+    public void acted(Action action, float amount, float speed, float duration) {
+        if (recorder != null) recorder.record(droneId, recordedCount++, action.action, modeStack.isEmpty() ? null : modeStack.peek().id, state, amount, speed, duration);
+        if (actionListener != null) actionListener.acted(action, amount, speed, duration);
+    }
+
+    // For a mission waiting on messages, like the REPL but fed by the queue. Returns once it is closed
+    public void serveMessages() {
+        String message;
+        while ((message = messages.take()) != null) {
+            if (deliver(message)) {
+                resume();
+                executeStack();
+            }
+        }
+    }
+
     public void receiveMessage(String message) {
-        System.out.println("Received message: " + message);
+        if (Trace.INFO) Trace.log("Received message: " + message);
         if (!reactToKey(message, getModeMessages()) && !reactToKey(message, getModeReactions())) {
             throw new IllegalArgumentException("Message " + message + " not found in " + getMode());
         }
@@ -188,36 +547,37 @@ public class Interpreter {
         ((HashMap<String, Object>) heap.get(Memory.VARIABLES)).put("first execution", firstExecution);
     }
 
-    // All the below could probably be simplified to a "varGet" and "varSet"
+    // These make boxes, so the actions use state directly
     public Point getCurrentPosition() {
-        return (Point) ((HashMap<String, Object>) heap.get(Memory.VARIABLES)).get("current position");
+        return new Point(state.x, state.y);
     }
 
     public Float getAltitude() {
-        return (Float) ((HashMap<String, Object>) heap.get(Memory.VARIABLES)).get("altitude");
+        return state.altitude;
     }
 
     public Float getDistanceTravelled() {
-        return (Float) ((HashMap<String, Object>) heap.get(Memory.VARIABLES)).get("distance travelled");
+        return state.distanceTravelled;
     }
 
     public Float getBatteryLevel() {
-        return (Float) ((HashMap<String, Object>) heap.get(Memory.VARIABLES)).get("battery level");
+        return state.batteryLevel;
     }
 
     public void setCurrentPosition(Point position) {
-        ((HashMap<String, Object>) heap.get(Memory.VARIABLES)).put("current position", position);
+        state.x = position.getX();
+        state.y = position.getY();
     }
 
     public void setAltitude(Float altitude) {
-        ((HashMap<String, Object>) heap.get(Memory.VARIABLES)).put("altitude", altitude);
+        state.altitude = altitude;
     }
 
     public void setDistanceTravelled(Float distance) {
-        ((HashMap<String, Object>) heap.get(Memory.VARIABLES)).put("distance travelled", distance);
+        state.distanceTravelled = distance;
     }
 
     public void setBatteryLevel(Float batteryLevel) {
-        ((HashMap<String, Object>) heap.get(Memory.VARIABLES)).put("battery level", batteryLevel);
+        state.batteryLevel = batteryLevel;
     }
 }
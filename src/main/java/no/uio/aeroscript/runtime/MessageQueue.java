@@ -0,0 +1,150 @@
+package no.uio.aeroscript.runtime;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Messages for an interpreter from any number of threads, like a ground control feed. Producers claim
+// slots in a fixed ring with a CAS, and only the interpreter's thread takes them out, between two
+// instructions. Nothing is locked.
+// A message that is already waiting is not queued again, so a burst of the same one reacts once.
+// When the ring is full offer says no right away, and post waits for room up to a timeout.
+public class MessageQueue {
+    private final AtomicReferenceArray<String> slots;
+    private final long[] postedAt; // Written before the slot, so the consumer sees it once it sees the message
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // Next slot to claim
+    private final AtomicLong tail = new AtomicLong(); // Next slot to take, only moved by the consumer
+    // For coalescing. Only holds a message while a slot with it is claimed and not yet taken
+    private final Set<String> waiting = ConcurrentHashMap.newKeySet();
+    private final boolean coalescing;
+    private volatile Thread consumer; // Set while take is parked
+    private volatile boolean closed = false;
+
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    // Only the consumer writes these
+    private volatile long drained = 0;
+    private volatile long unmatched = 0;
+    private volatile long totalLatency = 0;
+    private volatile long maxLatency = 0;
+
+    public MessageQueue(int capacity) {
+        this(capacity, true);
+    }
+
+    public MessageQueue(int capacity, boolean coalescing) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity has to be a power of two: " + capacity);
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.postedAt = new long[capacity];
+        this.mask = capacity - 1;
+        this.coalescing = coalescing;
+    }
+
+    // Any thread. False if the queue is full or closed
+    public boolean offer(String message) {
+        if (tryOffer(message)) return true;
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    // Any thread. Waits for room while the interpreter catches up, false if it didn't get any in time
+    public boolean post(String message, long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!tryOffer(message)) {
+            if (closed || System.nanoTime() - deadline >= 0) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            LockSupport.parkNanos(10_000);
+        }
+        return true;
+    }
+
+    private boolean tryOffer(String message) {
+        if (closed) return false;
+        if (coalescing && waiting.contains(message)) {
+            coalesced.incrementAndGet();
+            return true;
+        }
+        while (true) {
+            long claimed = head.get();
+            if (claimed - tail.get() >= slots.length()) return false;
+            if (head.compareAndSet(claimed, claimed + 1)) {
+                // Marked only once it has a slot, so a coalesced offer always rides on one that gets delivered.
+                // Still before the slot is written, so the consumer's remove comes after this add.
+                // Two at once may both get a slot, which delivers it twice instead of losing one
+                if (coalescing) waiting.add(message);
+                postedAt[(int) claimed & mask] = System.nanoTime();
+                slots.lazySet((int) claimed & mask, message);
+                posted.incrementAndGet();
+                Thread waiter = consumer;
+                if (waiter != null) LockSupport.unpark(waiter);
+                return true;
+            }
+        }
+    }
+
+    // The interpreter's thread only. Null if nothing is ready
+    public String poll() {
+        long next = tail.get();
+        int slot = (int) next & mask;
+        String message = slots.get(slot);
+        if (message == null) return null; // Empty, or claimed but not written yet
+        long latency = System.nanoTime() - postedAt[slot];
+        if (coalescing) waiting.remove(message); // From here on the same message queues again. Before the slot is let go, so none are lost
+        slots.lazySet(slot, null);
+        tail.lazySet(next + 1);
+        drained++;
+        totalLatency += latency;
+        if (latency > maxLatency) maxLatency = latency;
+        return message;
+    }
+
+    // The interpreter's thread only. Waits for a message, null once the queue is closed and empty
+    public String take() {
+        while (true) {
+            String message = poll();
+            if (message != null) return message;
+            if (closed && isEmpty()) return null;
+            consumer = Thread.currentThread();
+            if (isEmpty()) LockSupport.parkNanos(1_000_000); // A producer unparks us, the timeout is for close
+            consumer = null;
+        }
+    }
+
+    // Cheap enough to ask between every two instructions
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public void close() {
+        closed = true;
+        Thread waiter = consumer;
+        if (waiter != null) LockSupport.unpark(waiter);
+    }
+
+    public boolean isClosed() { return closed; }
+
+    void recordUnmatched() { unmatched++; }
+
+    public int getCapacity() { return slots.length(); }
+    public long getDepth() { return Math.max(0, head.get() - tail.get()); }
+    public long getPosted() { return posted.get(); }
+    public long getCoalesced() { return coalesced.get(); }
+    public long getRejected() { return rejected.get(); }
+    public long getDrained() { return drained; }
+    public long getUnmatched() { return unmatched; }
+    public long getMaxLatencyNanos() { return maxLatency; }
+    public double getMeanLatencyNanos() { return drained == 0 ? 0 : (double) totalLatency / drained; }
+
+    @Override
+    public String toString() {
+        return String.format("Messages: %d posted, %d coalesced, %d rejected, %d drained, %d unmatched, depth %d, latency mean %.1f us max %.1f us",
+            getPosted(), getCoalesced(), getRejected(), getDrained(), getUnmatched(), getDepth(), getMeanLatencyNanos() / 1e3, getMaxLatencyNanos() / 1e3);
+    }
+}
@@ -0,0 +1,187 @@
+package no.uio.aeroscript.runtime;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import no.uio.aeroscript.type.Point;
+
+// Flies one mission many times with different random numbers, to see how often it fails and how
+// spread out the results are. Every run gets its own stream split off one SplittableRandom before
+// anything starts, and writes its results to its own index. The report depends only on the seed
+// and the number of runs, however many workers there are and however the work is stolen.
+public class MonteCarlo {
+    private static final int LEAF = 16; // Runs per task before splitting stops
+
+    // One measure over all runs
+    public static class Distribution {
+        public final String name;
+        private final float[] sorted;
+        public final double mean;
+        public final double stddev;
+
+        Distribution(String name, float[] values) {
+            this.name = name;
+            this.sorted = values.clone();
+            Arrays.sort(sorted);
+            double sum = 0;
+            for (float value : sorted) sum += value;
+            mean = sorted.length == 0 ? 0 : sum / sorted.length;
+            double squares = 0;
+            for (float value : sorted) squares += (value - mean) * (value - mean);
+            stddev = sorted.length < 2 ? 0 : Math.sqrt(squares / (sorted.length - 1));
+        }
+
+        // Nearest rank, so it's always one of the values
+        public float percentile(double p) {
+            if (sorted.length == 0) return Float.NaN;
+            int rank = (int) Math.ceil(p / 100 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+
+        public float min() { return percentile(0); }
+        public float max() { return percentile(100); }
+
+        @Override
+        public String toString() {
+            return String.format("%-10s %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f",
+                name, mean, stddev, min(), percentile(5), percentile(50), percentile(95), max());
+        }
+    }
+
+    public static class Report {
+        public final int runs;
+        public final long seed;
+        public final Distribution battery;
+        public final Distribution distance;
+        public final Distribution altitude;
+        public final Map<String, Integer> failures; // By message, sorted so the report is stable
+        public final int failed;
+        public final double seconds;
+
+        Report(int runs, long seed, Distribution battery, Distribution distance, Distribution altitude, Map<String, Integer> failures, int failed, double seconds) {
+            this.runs = runs;
+            this.seed = seed;
+            this.battery = battery;
+            this.distance = distance;
+            this.altitude = altitude;
+            this.failures = failures;
+            this.failed = failed;
+            this.seconds = seconds;
+        }
+
+        public double getFailureRate() {
+            return runs == 0 ? 0 : (double) failed / runs;
+        }
+
+        // Everything but the timing, so two reports can be compared as strings
+        public String summary() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d runs, seed %d, failure rate %.2f%% (%d)%n", runs, seed, getFailureRate() * 100, failed));
+            for (Map.Entry<String, Integer> failure : failures.entrySet()) {
+                sb.append("  ").append(failure.getValue()).append(" x ").append(failure.getKey()).append(System.lineSeparator());
+            }
+            sb.append(String.format("%-10s %10s %10s %10s %10s %10s %10s %10s%n", "", "mean", "stddev", "min", "p5", "p50", "p95", "max"));
+            sb.append(battery).append(System.lineSeparator());
+            sb.append(distance).append(System.lineSeparator());
+            sb.append(altitude).append(System.lineSeparator());
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return summary() + String.format("%.3f s, %.0f runs/s", seconds, seconds == 0 ? 0 : runs / seconds);
+        }
+    }
+
+    private final Fleet fleet = new Fleet(); // Its settings decide the backend
+    private final Fleet.Mission mission;
+    private final Point position;
+    private final float batteryLevel;
+    private final float altitude;
+
+    public MonteCarlo(Fleet.Mission mission, Point position, float batteryLevel, float altitude) {
+        this.mission = mission;
+        this.position = position;
+        this.batteryLevel = batteryLevel;
+        this.altitude = altitude;
+    }
+
+    public Fleet getFleet() { return fleet; }
+
+    public Report run(int runs, long seed, int workers) {
+        // Split up front, in order, so run i always gets the same stream
+        SplittableRandom root = new SplittableRandom(seed);
+        long[] seeds = new long[runs];
+        for (int i = 0; i < runs; i++) seeds[i] = root.split().nextLong();
+
+        float[] battery = new float[runs];
+        float[] distance = new float[runs];
+        float[] altitudes = new float[runs];
+        String[] failures = new String[runs];
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = workers > 0 ? new ForkJoinPool(workers) : new ForkJoinPool();
+        try {
+            // Each worker builds the mission once, and flies it again for every run it gets after that
+            pool.invoke(new Runs(0, runs, seeds, battery, distance, altitudes, failures, new Fleet.Pilots()));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Integer> failed = new TreeMap<>();
+        int failedCount = 0;
+        for (String failure : failures) {
+            if (failure == null) continue;
+            failed.merge(failure, 1, Integer::sum);
+            failedCount++;
+        }
+        return new Report(runs, seed, new Distribution("battery", battery), new Distribution("distance", distance),
+            new Distribution("altitude", altitudes), failed, failedCount, seconds);
+    }
+
+    // Halves the range until it is small, then flies those runs one after another
+    private class Runs extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final long[] seeds;
+        private final float[] battery;
+        private final float[] distance;
+        private final float[] altitudes;
+        private final String[] failures;
+        private final transient Fleet.Pilots pilots; // Never serialized, tasks only go between threads
+
+        Runs(int from, int to, long[] seeds, float[] battery, float[] distance, float[] altitudes, String[] failures, Fleet.Pilots pilots) {
+            this.from = from;
+            this.to = to;
+            this.seeds = seeds;
+            this.battery = battery;
+            this.distance = distance;
+            this.altitudes = altitudes;
+            this.failures = failures;
+            this.pilots = pilots;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Runs(from, middle, seeds, battery, distance, altitudes, failures, pilots),
+                    new Runs(middle, to, seeds, battery, distance, altitudes, failures, pilots));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                Fleet.Drone drone = fleet.fly(new Fleet.Drone(i, mission, position, batteryLevel, altitude, seeds[i]), pilots);
+                battery[i] = drone.state.batteryLevel;
+                distance[i] = drone.state.distanceTravelled;
+                altitudes[i] = drone.state.altitude;
+                failures[i] = drone.failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package no.uio.aeroscript.runtime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Obstacles on the ground plane, checked against every move. An obstacle is a point with a radius,
+// a wall (two vertices) or a polygon (three or more). They go in flat arrays and are bucketed in a
+// uniform grid, so a move only looks at the obstacles in the cells its segment crosses, which is
+// about the length of the move over the cell size, however many obstacles there are.
+// Once built it is never written again, so every drone in a fleet can share one.
+public class ObstacleMap {
+    // Obstacle i has the vertices from start[i] up to start[i + 1]
+    private float[] xs = new float[64];
+    private float[] ys = new float[64];
+    private int vertexCount = 0;
+    private int[] start = new int[65];
+    private float[] radius = new float[64];
+    private int count = 0;
+
+    // The grid, once built: the obstacles in cell c are ids[cells[c]] up to ids[cells[c + 1]]
+    private boolean built = false;
+    private float cellSize;
+    private float minX, minY, maxX, maxY;
+    private int width, height;
+    private int[] cells;
+    private int[] ids;
+
+    public static final int MAX_CELLS = 1 << 22;
+
+    public void addPoint(float x, float y, float radius) {
+        if (radius < 0) throw new IllegalArgumentException("Negative radius: " + radius);
+        addVertices(new float[] { x, y }, radius);
+    }
+
+    // x0, y0, x1, y1, ... Two vertices make a wall, more make a polygon that closes by itself
+    public void addPolygon(float... vertices) {
+        if (vertices.length < 4 || vertices.length % 2 != 0) throw new IllegalArgumentException("A polygon needs at least two x, y pairs");
+        addVertices(vertices, 0f);
+    }
+
+    private void addVertices(float[] vertices, float r) {
+        if (built) throw new IllegalStateException("Obstacle map is already built");
+        int n = vertices.length / 2;
+        if (vertexCount + n > xs.length) {
+            int size = Math.max(xs.length * 2, vertexCount + n);
+            xs = Arrays.copyOf(xs, size);
+            ys = Arrays.copyOf(ys, size);
+        }
+        if (count + 1 == radius.length) {
+            radius = Arrays.copyOf(radius, radius.length * 2);
+            start = Arrays.copyOf(start, start.length * 2);
+        }
+        for (int v = 0; v < n; v++) {
+            xs[vertexCount + v] = vertices[2 * v];
+            ys[vertexCount + v] = vertices[2 * v + 1];
+        }
+        vertexCount += n;
+        radius[count] = r;
+        start[++count] = vertexCount;
+    }
+
+    // Picks a cell size that gives a couple of obstacles per cell
+    public ObstacleMap build() {
+        return build(0f);
+    }
+
+    public ObstacleMap build(float cellSize) {
+        if (built) return this;
+        built = true;
+        if (count == 0) return this;
+
+        minX = minY = Float.POSITIVE_INFINITY;
+        maxX = maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            for (int v = start[i]; v < start[i + 1]; v++) {
+                minX = Math.min(minX, xs[v] - radius[i]);
+                minY = Math.min(minY, ys[v] - radius[i]);
+                maxX = Math.max(maxX, xs[v] + radius[i]);
+                maxY = Math.max(maxY, ys[v] + radius[i]);
+            }
+        }
+        float spanX = Math.max(maxX - minX, 1e-3f);
+        float spanY = Math.max(maxY - minY, 1e-3f);
+        if (cellSize <= 0) cellSize = (float) Math.sqrt(spanX * spanY / Math.max(1, count / 2));
+        cellSize = Math.max(cellSize, (float) Math.sqrt(spanX * spanY / MAX_CELLS)); // Keeps the grid in memory
+        this.cellSize = cellSize;
+        width = Math.max(1, (int) Math.ceil(spanX / cellSize));
+        height = Math.max(1, (int) Math.ceil(spanY / cellSize));
+
+        // Counted first, then filled, so the buckets are one array
+        cells = new int[width * height + 1];
+        for (int i = 0; i < count; i++) forCells(i, c -> cells[c + 1]++);
+        for (int c = 0; c < width * height; c++) cells[c + 1] += cells[c];
+        ids = new int[cells[width * height]];
+        int[] fill = Arrays.copyOf(cells, width * height);
+        for (int i = 0; i < count; i++) {
+            int id = i;
+            forCells(i, c -> ids[fill[c]++] = id);
+        }
+
+        // Not needed past here
+        xs = Arrays.copyOf(xs, vertexCount);
+        ys = Arrays.copyOf(ys, vertexCount);
+        return this;
+    }
+
+    private interface CellVisitor {
+        void visit(int cell);
+    }
+
+    // Every cell the obstacle's bounding box touches
+    private void forCells(int i, CellVisitor visitor) {
+        float lowX = Float.POSITIVE_INFINITY, lowY = Float.POSITIVE_INFINITY;
+        float highX = Float.NEGATIVE_INFINITY, highY = Float.NEGATIVE_INFINITY;
+        for (int v = start[i]; v < start[i + 1]; v++) {
+            lowX = Math.min(lowX, xs[v] - radius[i]);
+            lowY = Math.min(lowY, ys[v] - radius[i]);
+            highX = Math.max(highX, xs[v] + radius[i]);
+            highY = Math.max(highY, ys[v] + radius[i]);
+        }
+        int x0 = cellX(lowX), x1 = cellX(highX);
+        int y0 = cellY(lowY), y1 = cellY(highY);
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) visitor.visit(cy * width + cx);
+        }
+    }
+
+    private int cellX(double x) {
+        return Math.min(width - 1, Math.max(0, (int) Math.floor((x - minX) / cellSize)));
+    }
+
+    private int cellY(double y) {
+        return Math.min(height - 1, Math.max(0, (int) Math.floor((y - minY) / cellSize)));
+    }
+
+    // True if flying straight from (x0, y0) to (x1, y1) touches an obstacle
+    public boolean blocks(float x0, float y0, float x1, float y1) {
+        if (!built) throw new IllegalStateException("Obstacle map is not built");
+        if (count == 0) return false;
+
+        // Only the part of the segment over the grid can hit anything
+        double t0 = 0, t1 = 1;
+        double dx = x1 - x0, dy = y1 - y0;
+        double[] p = { -dx, dx, -dy, dy };
+        double[] q = { x0 - minX, maxX - x0, y0 - minY, maxY - y0 };
+        for (int k = 0; k < 4; k++) {
+            if (p[k] == 0) {
+                if (q[k] < 0) return false;
+            } else {
+                double t = q[k] / p[k];
+                if (p[k] < 0) t0 = Math.max(t0, t);
+                else t1 = Math.min(t1, t);
+            }
+        }
+        if (t0 > t1) return false;
+
+        // Walks the cells along the segment in order, so a hit near the start returns early
+        double ax = (x0 + t0 * dx - minX) / cellSize, ay = (y0 + t0 * dy - minY) / cellSize;
+        double bx = (x0 + t1 * dx - minX) / cellSize, by = (y0 + t1 * dy - minY) / cellSize;
+        int cx = Math.min(width - 1, (int) ax), cy = Math.min(height - 1, (int) ay);
+        int ex = Math.min(width - 1, (int) bx), ey = Math.min(height - 1, (int) by);
+        int stepX = ex > cx ? 1 : -1, stepY = ey > cy ? 1 : -1;
+        double gx = bx - ax, gy = by - ay;
+        double deltaX = gx != 0 ? Math.abs(1 / gx) : Double.POSITIVE_INFINITY;
+        double deltaY = gy != 0 ? Math.abs(1 / gy) : Double.POSITIVE_INFINITY;
+        double nextX = gx != 0 ? ((stepX > 0 ? cx + 1 : cx) - ax) / gx : Double.POSITIVE_INFINITY;
+        double nextY = gy != 0 ? ((stepY > 0 ? cy + 1 : cy) - ay) / gy : Double.POSITIVE_INFINITY;
+        int steps = Math.abs(ex - cx) + Math.abs(ey - cy); // Fixed up front, so rounding can't walk off the end
+        for (int s = 0; ; s++) {
+            int c = cy * width + cx;
+            for (int k = cells[c]; k < cells[c + 1]; k++) {
+                if (hits(ids[k], x0, y0, x1, y1)) return true;
+            }
+            if (s == steps) return false;
+            if ((nextX < nextY && cx != ex) || cy == ey) {
+                cx += stepX;
+                nextX += deltaX;
+            } else {
+                cy += stepY;
+                nextY += deltaY;
+            }
+        }
+    }
+
+    private boolean hits(int i, float x0, float y0, float x1, float y1) {
+        int first = start[i], last = start[i + 1];
+        if (last - first == 1) return distanceSquared(xs[first], ys[first], x0, y0, x1, y1) <= radius[i] * radius[i];
+        boolean closed = last - first > 2;
+        for (int v = first; v < last; v++) {
+            int w = v + 1 < last ? v + 1 : first;
+            if (w == first && !closed) break;
+            if (crosses(xs[v], ys[v], xs[w], ys[w], x0, y0, x1, y1)) return true;
+        }
+        return closed && inside(i, x0, y0); // Not crossing an edge, so it's all inside or all outside
+    }
+
+    private static double distanceSquared(float px, float py, float x0, float y0, float x1, float y1) {
+        double dx = x1 - x0, dy = y1 - y0;
+        double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0 : Math.max(0, Math.min(1, ((px - x0) * dx + (py - y0) * dy) / length));
+        double ex = x0 + t * dx - px, ey = y0 + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    private static double cross(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    // Touching counts
+    private static boolean crosses(float ax, float ay, float bx, float by, float cx, float cy, float dx, float dy) {
+        double d1 = cross(cx, cy, dx, dy, ax, ay);
+        double d2 = cross(cx, cy, dx, dy, bx, by);
+        double d3 = cross(ax, ay, bx, by, cx, cy);
+        double d4 = cross(ax, ay, bx, by, dx, dy);
+        if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) return true;
+        return (d1 == 0 && within(cx, cy, dx, dy, ax, ay)) || (d2 == 0 && within(cx, cy, dx, dy, bx, by))
+            || (d3 == 0 && within(ax, ay, bx, by, cx, cy)) || (d4 == 0 && within(ax, ay, bx, by, dx, dy));
+    }
+
+    // For a point already on the line through a and b
+    private static boolean within(float ax, float ay, float bx, float by, float px, float py) {
+        return Math.min(ax, bx) <= px && px <= Math.max(ax, bx) && Math.min(ay, by) <= py && py <= Math.max(ay, by);
+    }
+
+    private boolean inside(int i, float px, float py) {
+        boolean in = false;
+        int first = start[i], last = start[i + 1];
+        for (int v = first, w = last - 1; v < last; w = v++) {
+            if ((ys[v] > py) != (ys[w] > py) && px < (xs[w] - xs[v]) * (py - ys[v]) / (ys[w] - ys[v]) + xs[v]) in = !in;
+        }
+        return in;
+    }
+
+    // One obstacle per line: "point x y [radius]" or "polygon x0 y0 x1 y1 ...". # starts a comment
+    public static ObstacleMap load(Path path) throws IOException {
+        ObstacleMap map = new ObstacleMap();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) line = line.substring(0, comment);
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                String[] parts = line.split("\\s+");
+                try {
+                    float[] numbers = new float[parts.length - 1];
+                    for (int k = 1; k < parts.length; k++) numbers[k - 1] = Float.parseFloat(parts[k]);
+                    switch (parts[0]) {
+                        case "point" -> {
+                            if (numbers.length != 2 && numbers.length != 3) throw new IllegalArgumentException("A point is x y [radius]");
+                            map.addPoint(numbers[0], numbers[1], numbers.length == 3 ? numbers[2] : 0f);
+                        }
+                        case "polygon" -> map.addPolygon(numbers);
+                        default -> throw new IllegalArgumentException("Unknown obstacle " + parts[0]);
+                    }
+                } catch (IllegalArgumentException e) { // NumberFormatException too
+                    throw new IOException(path + ":" + number + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return map.build();
+    }
+
+    public int size() { return count; }
+    public boolean isBuilt() { return built; }
+    public float getCellSize() { return cellSize; }
+    public int getCellCount() { return width * height; }
+}
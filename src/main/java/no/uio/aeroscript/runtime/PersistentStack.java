@@ -0,0 +1,59 @@
+package no.uio.aeroscript.runtime;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+// An immutable stack as a linked list: push and pop make a new top and leave the old one as it was.
+// Keeping a stack is keeping a reference, so Interpreter snapshots cost nothing, and every branch
+// run from a snapshot shares the frames underneath with the others.
+final class PersistentStack<T> {
+    private static final PersistentStack<?> EMPTY = new PersistentStack<>(null, null, 0);
+
+    private final T top;
+    private final PersistentStack<T> rest;
+    private final int size;
+
+    private PersistentStack(T top, PersistentStack<T> rest, int size) {
+        this.top = top;
+        this.rest = rest;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentStack<T> empty() {
+        return (PersistentStack<T>) EMPTY;
+    }
+
+    PersistentStack<T> push(T value) {
+        return new PersistentStack<>(value, this, size + 1);
+    }
+
+    PersistentStack<T> pop() {
+        if (size == 0) throw new EmptyStackException(); // Like java.util.Stack
+        return rest;
+    }
+
+    T peek() {
+        if (size == 0) throw new EmptyStackException(); // Like java.util.Stack
+        return top;
+    }
+
+    int size() { return size; }
+    boolean isEmpty() { return size == 0; }
+
+    // Bottom first, like java.util.Stack
+    Object[] toArray() {
+        Object[] values = new Object[size];
+        PersistentStack<T> at = this;
+        for (int i = size - 1; i >= 0; i--) {
+            values[i] = at.top;
+            at = at.rest;
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
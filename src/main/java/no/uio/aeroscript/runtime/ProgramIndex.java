@@ -0,0 +1,164 @@
+package no.uio.aeroscript.runtime;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Lambda;
+import no.uio.aeroscript.ast.stmt.Statement;
+
+// Numbers a program's executions, and everything that can be on an interpreter's stack, the same way
+// for every copy of the program: breadth first from the program, statements in order, then the
+// executions it knows by name in name order. A written snapshot says which statement it means with
+// these numbers, so another interpreter with its own copy of the mission can read it.
+// A stack entry is one varint of execution * KINDS + kind, and a second with the place for a statement.
+final class ProgramIndex {
+    private static final int EXECUTION = 0;
+    private static final int STATEMENT = 1;
+    private static final int ENTER = 2;
+    private static final int EXIT = 3;
+    private static final int CHAIN = 4;
+    private static final int POP_MODE = 5; // The REPL's, which belongs to the interpreter
+    private static final int KINDS = 6;
+
+    final Execution program;
+    private final Execution[] executions;
+    private final IdentityHashMap<Statement, long[]> places = new IdentityHashMap<>(); // kind, execution, place
+
+    ProgramIndex(Execution program) {
+        this.program = program;
+        List<Execution> found = new ArrayList<>();
+        IdentityHashMap<Execution, Integer> numbers = new IdentityHashMap<>();
+        ArrayDeque<Execution> queue = new ArrayDeque<>();
+        numbers.put(program, 0);
+        found.add(program);
+        queue.add(program);
+        while (!queue.isEmpty()) {
+            Execution execution = queue.poll();
+            List<Execution> next = new ArrayList<>();
+            for (Statement stm : execution.materialize()) { // Lazy bodies too, so every copy numbers the same
+                if (stm instanceof Execution) next.add((Execution) stm);
+            }
+            next.addAll(new TreeMap<>(execution.executions).values());
+            for (Execution child : next) {
+                if (child == null || numbers.containsKey(child)) continue;
+                numbers.put(child, found.size());
+                found.add(child);
+                queue.add(child);
+            }
+        }
+        executions = found.toArray(new Execution[0]);
+
+        for (int k = executions.length - 1; k >= 0; k--) { // Backwards, so an execution's own number wins over its place in another
+            Execution execution = executions[k];
+            for (int j = 0; j < execution.statements.length; j++) {
+                if (execution.statements[j] != null) places.put(execution.statements[j], new long[] { STATEMENT, k, j });
+            }
+        }
+        for (int k = 0; k < executions.length; k++) {
+            places.put(executions[k], new long[] { EXECUTION, k, 0 });
+            places.put(executions[k].getEnterCommand(), new long[] { ENTER, k, 0 });
+            places.put(executions[k].getExitCommand(), new long[] { EXIT, k, 0 });
+            places.put(executions[k].getChainCommand(), new long[] { CHAIN, k, 0 });
+        }
+    }
+
+    int size() { return executions.length; }
+
+    int number(Execution execution) {
+        long[] place = places.get(execution);
+        if (place == null || place[0] != EXECUTION) throw new IllegalArgumentException(execution + " is not in the program");
+        return (int) place[1];
+    }
+
+    Execution execution(int number) throws IOException {
+        if (number < 0 || number >= executions.length) throw new IOException("No execution " + number + " in the program");
+        return executions[number];
+    }
+
+    void writeStatement(Statement stm, Lambda popModeCommand, DataOutputStream out) throws IOException {
+        if (stm == popModeCommand && stm != null) {
+            writeVarint(out, POP_MODE);
+            return;
+        }
+        long[] place = places.get(stm);
+        if (place == null) throw new IllegalArgumentException("Can't write " + stm + ", it is not in the program");
+        writeVarint(out, place[1] * KINDS + place[0]);
+        if (place[0] == STATEMENT) writeVarint(out, place[2]);
+    }
+
+    Statement readStatement(Lambda popModeCommand, DataInputStream in) throws IOException {
+        long code = readVarlong(in);
+        int kind = (int) (code % KINDS);
+        Execution execution = execution((int) (code / KINDS));
+        switch (kind) {
+            case EXECUTION: return execution;
+            case STATEMENT: {
+                int place = readVarint(in);
+                if (place < 0 || place >= execution.statements.length || execution.statements[place] == null) throw new IOException("No statement " + place + " in " + execution);
+                return execution.statements[place];
+            }
+            case ENTER: return execution.getEnterCommand();
+            case EXIT: return execution.getExitCommand();
+            case CHAIN: return execution.getChainCommand();
+            case POP_MODE: {
+                if (popModeCommand == null) throw new IOException("Snapshot is from the REPL");
+                return popModeCommand;
+            }
+            default: throw new IOException("Bad stack entry " + code);
+        }
+    }
+
+    // With tail chaining, an execution finds where it chains to when it starts, and its chain command
+    // uses that when it exits. They are written as they are now, so a reader's copy chains the same way
+    void writeChains(DataOutputStream out) throws IOException {
+        int count = 0;
+        for (Execution execution : executions) {
+            if (execution.getNextExecution() != null) count++;
+        }
+        writeVarint(out, count);
+        for (int k = 0; k < executions.length; k++) {
+            if (executions[k].getNextExecution() == null) continue;
+            writeVarint(out, k);
+            writeVarint(out, number(executions[k].getNextExecution()));
+        }
+    }
+
+    Execution[][] readChains(DataInputStream in) throws IOException {
+        Execution[][] chains = new Execution[readVarint(in)][];
+        for (int i = 0; i < chains.length; i++) chains[i] = new Execution[] { execution(readVarint(in)), execution(readVarint(in)) };
+        return chains;
+    }
+
+    // Seven bits at a time, low first, with the top bit set when more follow
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        if (value < 0) throw new IllegalArgumentException("Varints are not negative: " + value);
+        while (value >= 0x80) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarlong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Varint is too long");
+    }
+
+    static int readVarint(DataInputStream in) throws IOException {
+        long value = readVarlong(in);
+        if (value > Integer.MAX_VALUE) throw new IOException("Varint is too big for an int: " + value);
+        return (int) value;
+    }
+}
@@ -112,6 +112,7 @@ public class REPL {
             return true;
         }, "Send a message to the listener", true, "The message to send"));
         commands.put("info", new Command("info", this, (param) -> {
+            interpreter.syncHeap();
             printRepl("Heap: " + interpreter.heap);
             return true;
         }, "Prints the information on the heap", false, ""));
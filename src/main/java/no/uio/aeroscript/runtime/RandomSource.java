@@ -0,0 +1,133 @@
+package no.uio.aeroscript.runtime;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+// Where an interpreter's "random" expressions get their numbers. Any RandomGenerator can be
+// plugged in, and it's a SplittableRandom unless told otherwise, which needs no atomics since
+// only the interpreter's own thread uses it.
+// Batched mode draws numbers from the generator a buffer at a time, for simulations with generators
+// that are slow per call. SplittableRandom is faster without it, see RandomBenchmark. It gives the same
+// numbers in the same order as unbatched, so it can be turned on for any run.
+// A seeded source can be marked and reset to the mark, for Interpreter snapshots.
+public class RandomSource {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L; // What SplittableRandom adds to its seed per number
+    private RandomGenerator generator;
+    private float[] batch; // Null when not batching
+    private boolean batchShared = false; // With a mark, so it's replaced instead of refilled
+    private int next;
+    private boolean seeded = false;
+    private long seed;
+    private long drawn = 0; // Numbers taken from the generator since it was seeded
+
+    // Where a seeded source had got to
+    public static class Mark {
+        private final long seed;
+        private final long drawn;
+        private final float[] batch; // Shared with the source until it refills
+        private final int next;
+
+        private Mark(long seed, long drawn, float[] batch, int next) {
+            this.seed = seed;
+            this.drawn = drawn;
+            this.batch = batch;
+            this.next = next;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(seed);
+            out.writeLong(drawn);
+            out.writeInt(batch == null ? 0 : batch.length);
+            if (batch == null) return;
+            out.writeInt(next);
+            for (int i = next; i < batch.length; i++) out.writeFloat(batch[i]); // The rest were used
+        }
+
+        static Mark read(DataInputStream in) throws IOException {
+            long seed = in.readLong();
+            long drawn = in.readLong();
+            int size = in.readInt();
+            if (size == 0) return new Mark(seed, drawn, null, 0);
+            if (size < 0) throw new IOException("Bad random batch size " + size);
+            float[] batch = new float[size];
+            int next = in.readInt();
+            if (next < 0 || next > size) throw new IOException("Bad random batch position " + next);
+            for (int i = next; i < size; i++) batch[i] = in.readFloat();
+            return new Mark(seed, drawn, batch, next);
+        }
+    }
+
+    public RandomSource() {
+        this(new SplittableRandom());
+    }
+
+    public RandomSource(RandomGenerator generator) {
+        this.generator = generator;
+    }
+
+    public void setGenerator(RandomGenerator generator) {
+        this.generator = generator;
+        next = batch == null ? 0 : batch.length; // Drop what the old one made
+        seeded = false;
+    }
+
+    public RandomGenerator getGenerator() { return generator; }
+
+    // Starts over, so a run can be repeated
+    public void setSeed(long seed) {
+        setGenerator(new SplittableRandom(seed));
+        this.seed = seed;
+        seeded = true;
+        drawn = 0;
+    }
+
+    public Mark mark() {
+        if (!seeded) throw new IllegalStateException("Only a seeded random source can be marked");
+        batchShared = batch != null;
+        return new Mark(seed, drawn, batch, next);
+    }
+
+    // Back to the mark, seed and all. A SplittableRandom's seed goes up by GOLDEN_GAMMA for every number,
+    // so it is made at the same point directly instead of drawing its way there
+    public void reset(Mark mark) {
+        generator = new SplittableRandom(mark.seed + mark.drawn * GOLDEN_GAMMA);
+        seed = mark.seed;
+        seeded = true;
+        drawn = mark.drawn;
+        batch = mark.batch;
+        batchShared = batch != null;
+        next = mark.next;
+    }
+
+    public void setBatch(int size) {
+        if (size < 0) throw new IllegalArgumentException("Batch size can't be negative: " + size);
+        batch = size == 0 ? null : new float[size];
+        batchShared = false;
+        next = size;
+    }
+
+    public int getBatch() { return batch == null ? 0 : batch.length; }
+
+    // In [low, high), like RandomGenerator.nextFloat(low, high), and the same bounds check
+    public float nextFloat(float low, float high) {
+        if (batch == null) {
+            drawn++;
+            return generator.nextFloat(low, high);
+        }
+        if (!(low < high && high - low < Float.POSITIVE_INFINITY)) throw new IllegalArgumentException("bound must be greater than origin");
+        if (next == batch.length) {
+            if (batchShared) {
+                batch = new float[batch.length];
+                batchShared = false;
+            }
+            for (int i = 0; i < batch.length; i++) batch[i] = generator.nextFloat();
+            drawn += batch.length;
+            next = 0;
+        }
+        float r = batch[next++] * (high - low) + low;
+        return r >= high ? Math.nextDown(high) : r;
+    }
+}
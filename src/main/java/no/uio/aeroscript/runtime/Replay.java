@@ -0,0 +1,69 @@
+package no.uio.aeroscript.runtime;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import no.uio.aeroscript.type.Point;
+
+// Flies an EventLog again: the same drones, from the same places with the same seeds, get the same
+// messages, obstacles and low battery at the same simulated times, so they do exactly what they did
+// when it was recorded. It runs on the Simulator's clock, as fast as the events can be handled.
+// The first time it gets to each multiple of interval it takes a snapshot, unless nothing happened
+// since the last one. seek starts from the last snapshot before the time asked for, when that's
+// closer than where it is, so going back or jumping ahead only flies the bit after the snapshot.
+// The fleet decides the backend, and needs the obstacles and geofence the recorded one had.
+public class Replay {
+    private final Simulator simulator;
+    private final double interval;
+    private final TreeMap<Double, Simulator.Snapshot> snapshots = new TreeMap<>();
+    private long reached = -1; // The last multiple of interval it has been to
+    private long handledAtSnapshot = -1;
+    private int restores = 0;
+
+    public Replay(Fleet fleet, Fleet.Mission mission, EventLog log, double interval) {
+        if (!(interval > 0)) throw new IllegalArgumentException("Snapshot interval has to be positive: " + interval);
+        this.interval = interval;
+        simulator = new Simulator(fleet);
+        for (EventLog.Start start : log.getDrones()) {
+            simulator.add(new Fleet.Drone(start.id, mission, new Point(start.x, start.y), start.batteryLevel, start.altitude, start.seed), start.time);
+        }
+        simulator.replay(log);
+        advance(0);
+    }
+
+    // Everything up to and including time has happened, whichever way it had to go to get there
+    public void seek(double time) {
+        if (time < 0) throw new IllegalArgumentException("Can't seek to before the start: " + time);
+        Map.Entry<Double, Simulator.Snapshot> closest = snapshots.floorEntry(time);
+        if (time < simulator.getTime() || closest.getKey() > simulator.getTime()) {
+            simulator.restore(closest.getValue());
+            restores++;
+        }
+        advance(time);
+    }
+
+    // To the end of the log and every mission
+    public void run() {
+        while (!simulator.isIdle()) advance((reached + 1) * interval);
+    }
+
+    private void advance(double time) {
+        while ((reached + 1) * interval <= time) {
+            double boundary = ++reached * interval;
+            simulator.run(boundary);
+            if (simulator.getHandled() != handledAtSnapshot) {
+                snapshots.put(boundary, simulator.snapshot());
+                handledAtSnapshot = simulator.getHandled();
+            }
+        }
+        simulator.run(time);
+    }
+
+    public double getTime() { return simulator.getTime(); }
+    public List<Simulator.Flight> getFlights() { return simulator.getFlights(); }
+    public Simulator getSimulator() { return simulator; }
+    public int getSnapshotCount() { return snapshots.size(); }
+    public int getRestores() { return restores; }
+    public boolean isFinished() { return simulator.isIdle(); }
+}
@@ -0,0 +1,165 @@
+package no.uio.aeroscript.runtime;
+
+import java.util.Arrays;
+
+// Finds drones closer to each other than the separation distance, without looking at every pair.
+// Drones are hashed by the ground cell they are over, with cells as wide as the separation, so
+// anything too close is in the same cell or a neighbouring one. Each hash bucket is a linked list
+// through the drones' own next/prev slots, so moving a drone to another cell is an unlink and a
+// link, and moving within its cell only stores the new position.
+// Altitude is only compared for drones that are close on the ground.
+public class SeparationMonitor {
+    public interface Conflicts {
+        void conflict(int a, int b, float distance);
+    }
+
+    private final float separation;
+    private final float cellSize;
+
+    // Per drone id
+    private float[] xs = new float[0];
+    private float[] ys = new float[0];
+    private float[] zs = new float[0];
+    private long[] keys = new long[0];
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private boolean[] present = new boolean[0];
+    private int size = 0; // Ids are below this
+    private int count = 0; // Present ones
+
+    private int[] table = new int[16]; // Hash bucket to its first drone
+    private int bits = 4;
+
+    private long updates = 0;
+    private long moves = 0; // Updates that changed cell
+    private long tests = 0; // Pairs close enough in the hash to be measured
+    private long conflicts = 0;
+
+    public SeparationMonitor(float separation) {
+        if (!(separation > 0)) throw new IllegalArgumentException("Separation has to be positive: " + separation);
+        this.separation = separation;
+        this.cellSize = separation;
+        Arrays.fill(table, -1);
+    }
+
+    // Where drone id is now. The first update adds it
+    public void update(int id, float x, float y, float altitude) {
+        if (id < 0) throw new IllegalArgumentException("Negative drone id: " + id);
+        if (id >= size) grow(id + 1);
+        updates++;
+        xs[id] = x;
+        ys[id] = y;
+        zs[id] = altitude;
+        long key = key(cell(x), cell(y));
+        if (present[id]) {
+            if (keys[id] == key) return;
+            unlink(id);
+            moves++;
+            keys[id] = key;
+            link(id);
+            return;
+        }
+        present[id] = true;
+        keys[id] = key;
+        if (++count > table.length / 2) rehash(table.length * 2); // Links it with the rest
+        else link(id);
+    }
+
+    // Landed, or otherwise out of the air
+    public void remove(int id) {
+        if (id >= size || !present[id]) return;
+        unlink(id);
+        present[id] = false;
+        count--;
+    }
+
+    // Every pair closer than the separation, once each with a < b. Returns how many there were
+    public int check(Conflicts listener) {
+        int found = 0;
+        float limit = separation * separation;
+        for (int a = 0; a < size; a++) {
+            if (!present[a]) continue;
+            int cx = (int) (keys[a] >> 32), cy = (int) keys[a];
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    long key = key(cx + dx, cy + dy);
+                    for (int b = table[bucket(key)]; b != -1; b = next[b]) {
+                        if (b <= a || keys[b] != key) continue; // Other cells can share the bucket
+                        tests++;
+                        float ex = xs[a] - xs[b], ey = ys[a] - ys[b], ez = zs[a] - zs[b];
+                        float squared = ex * ex + ey * ey + ez * ez;
+                        if (squared < limit) {
+                            found++;
+                            if (listener != null) listener.conflict(a, b, (float) Math.sqrt(squared));
+                        }
+                    }
+                }
+            }
+        }
+        conflicts += found;
+        return found;
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private int bucket(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+
+    private void link(int id) {
+        int b = bucket(keys[id]);
+        int first = table[b];
+        next[id] = first;
+        prev[id] = -1;
+        if (first != -1) prev[first] = id;
+        table[b] = id;
+    }
+
+    private void unlink(int id) {
+        if (prev[id] != -1) next[prev[id]] = next[id];
+        else table[bucket(keys[id])] = next[id];
+        if (next[id] != -1) prev[next[id]] = prev[id];
+    }
+
+    private void grow(int needed) {
+        if (needed > xs.length) {
+            int capacity = Math.max(needed, Math.max(16, xs.length * 2));
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            zs = Arrays.copyOf(zs, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            present = Arrays.copyOf(present, capacity);
+        }
+        size = needed;
+    }
+
+    private void rehash(int buckets) {
+        table = new int[buckets];
+        bits = Integer.numberOfTrailingZeros(buckets);
+        Arrays.fill(table, -1);
+        for (int id = 0; id < size; id++) {
+            if (present[id]) link(id);
+        }
+    }
+
+    public float getSeparation() { return separation; }
+    public int getCount() { return count; }
+    public long getUpdates() { return updates; }
+    public long getMoves() { return moves; }
+    public long getTests() { return tests; }
+    public long getConflicts() { return conflicts; }
+
+    @Override
+    public String toString() {
+        return String.format("Separation %.1f: %d drones, %d updates (%d changed cell), %d pairs measured, %d conflicts",
+            separation, count, updates, moves, tests, conflicts);
+    }
+}
@@ -0,0 +1,447 @@
+package no.uio.aeroscript.runtime;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.type.ActionType;
+
+// Flies drones on a simulated clock. Actions still happen instantly in the interpreter, but the
+// ActionListener pauses it after each one and schedules when the action is done: "for N seconds" takes
+// N seconds, "at speed S" takes the distance over S, and without either the drone goes at cruiseSpeed,
+// or turnRate when turning. The drone carries on once its completion comes up in the event queue.
+// A message, or the battery crossing low mid-flight, can arrive before that. If the mode reacts to it,
+// the drone is put where it had got to on the way and the rest of the action is dropped.
+// One thread runs everything in time order, so it's repeatable, and thousands of drones waiting on
+// their actions cost nothing until their time comes.
+// With a SeparationMonitor, every tick puts the drones in the air where they have got to, and a pair
+// that has come too close gets "obstacle" sent to both, once, until they have been apart for a tick.
+// Everything sent to the drones can go in an EventLog, and a Replay feeds a log back in instead.
+public class Simulator {
+    public float cruiseSpeed = 5f; // Units per second
+    public float turnRate = 45f;   // Degrees per second
+    public static final float LOW_BATTERY = 20f; // Same as Interpreter.checkBatteryLevel
+
+    private static final int START = 0;
+    private static final int DONE = 1;
+    private static final int MESSAGE = 2;
+    private static final int LOW = 3;
+    private static final int TICK = 4;
+
+    private static class Event implements Comparable<Event> {
+        final double time;
+        final long sequence; // Ties go in the order they were scheduled
+        final Flight flight;
+        final int kind;
+        final long generation; // Stale once the flight has moved on to another action
+        final String message;
+
+        Event(double time, long sequence, Flight flight, int kind, long generation, String message) {
+            this.time = time;
+            this.sequence = sequence;
+            this.flight = flight;
+            this.kind = kind;
+            this.generation = generation;
+            this.message = message;
+        }
+
+        // What comes from outside the drones goes after their own events at the same time, so it's handled
+        // in the same place whether it was made here or fed back in from a log
+        private int phase() {
+            return kind >= MESSAGE ? 1 : 0;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int byTime = Double.compare(time, other.time);
+            if (byTime != 0) return byTime;
+            int byPhase = Integer.compare(phase(), other.phase());
+            return byPhase != 0 ? byPhase : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // One drone's mission on the clock
+    public class Flight implements ActionListener {
+        public final Fleet.Drone drone;
+        public final Interpreter interpreter;
+        public final int index; // In getFlights, and the id for the SeparationMonitor
+        private final Execution program;
+        private final Code code;
+        private final DroneState from = new DroneState(); // Where the current action started
+        private final DroneState to = new DroneState();   // Where it ends
+        private double actionStart;
+        private double actionEnd;
+        private long generation = 0;
+        private boolean flying = false;
+        private boolean started = false;
+        public boolean finished = false;
+        public double finishedAt = Double.NaN;
+        public String failure;
+        public int actions = 0;
+        public int interrupted = 0;
+        public int conflicts = 0;
+
+        Flight(int index, Fleet.Drone drone, Interpreter interpreter, Execution program, Code code) {
+            this.index = index;
+            this.drone = drone;
+            this.interpreter = interpreter;
+            this.program = program;
+            this.code = code;
+            interpreter.setActionListener(this);
+        }
+
+        @Override
+        public void acted(Action action, float amount, float speed, float duration) {
+            interpreter.pause(); // Picked up again when it's done
+            float seconds;
+            if (duration > 0) seconds = duration;
+            else if (speed > 0) seconds = amount / speed;
+            else seconds = amount / (action.action == ActionType.TURN ? turnRate : cruiseSpeed);
+
+            to.copyFrom(interpreter.state);
+            actionStart = now;
+            actionEnd = now + seconds;
+            flying = true;
+            generation++;
+            actions++;
+            schedule(actionEnd, this, DONE, null);
+            // When replaying, the log says when the battery got low
+            if (inputs == null && from.batteryLevel >= LOW_BATTERY && to.batteryLevel < LOW_BATTERY && seconds > 0) {
+                double at = (from.batteryLevel - LOW_BATTERY) / (from.batteryLevel - to.batteryLevel);
+                schedule(now + at * seconds, this, LOW, null);
+            }
+        }
+
+        // Where it is now, on the way through its action
+        public DroneState position() {
+            DroneState state = new DroneState();
+            state.copyFrom(interpreter.state);
+            if (flying) interpolate(state, progress());
+            return state;
+        }
+
+        private float progress() {
+            return actionEnd > actionStart ? (float) ((now - actionStart) / (actionEnd - actionStart)) : 1f;
+        }
+
+        private void interpolate(DroneState state, float f) {
+            state.x = from.x + (to.x - from.x) * f;
+            state.y = from.y + (to.y - from.y) * f;
+            state.altitude = from.altitude + (to.altitude - from.altitude) * f;
+            state.batteryLevel = from.batteryLevel + (to.batteryLevel - from.batteryLevel) * f;
+            state.distanceTravelled = from.distanceTravelled + (to.distanceTravelled - from.distanceTravelled) * f;
+        }
+
+        // Same as position, without making a new state every tick
+        private void locate(SeparationMonitor monitor) {
+            DroneState state = interpreter.state;
+            if (!flying) {
+                monitor.update(index, state.x, state.y, state.altitude);
+                return;
+            }
+            float f = progress();
+            monitor.update(index, from.x + (to.x - from.x) * f, from.y + (to.y - from.y) * f, from.altitude + (to.altitude - from.altitude) * f);
+        }
+
+        private void start() {
+            started = true;
+            from.copyFrom(interpreter.state);
+            advance(() -> {
+                if (code != null) interpreter.runProgram(code);
+                else interpreter.runProgram(program);
+            });
+        }
+
+        private void done() {
+            flying = false;
+            from.copyFrom(to);
+            interpreter.resume();
+            advance(interpreter::executeStack);
+        }
+
+        private void react(String message) {
+            if (log != null) log.add(now, index, message);
+            if (!interpreter.react(message)) return; // Not for this mode, the action goes on
+            if (flying) {
+                interpolate(interpreter.state, progress());
+                from.copyFrom(interpreter.state);
+                flying = false;
+                generation++; // Drops its completion
+                interrupted++;
+            }
+            interpreter.resume();
+            advance(interpreter::executeStack);
+        }
+
+        // Runs until the next action pauses it, or the mission is over
+        private void advance(Runnable step) {
+            try {
+                step.run();
+            } catch (RuntimeException e) {
+                failure = e.getMessage() != null ? e.getMessage() : e.toString();
+                end();
+                return;
+            }
+            if (interpreter.running) end(); // Nothing paused it, so nothing is left
+        }
+
+        private void end() {
+            finished = true;
+            flying = false;
+            generation++;
+            finishedAt = now;
+            landed++;
+            if (separation != null) separation.remove(index);
+            interpreter.setActionListener(null);
+            drone.state = interpreter.state;
+            drone.failure = failure;
+            drone.executed = interpreter.getExecutedCount();
+            if (Trace.INFO) Trace.log("Drone " + drone.id + " done at " + now + (failure != null ? ": " + failure : ""));
+        }
+    }
+
+    // Where a flight had got to, for Snapshot
+    private static class FlightState {
+        final DroneState from = new DroneState();
+        final DroneState to = new DroneState();
+        final double actionStart;
+        final double actionEnd;
+        final long generation;
+        final boolean flying;
+        final boolean started;
+        final boolean finished;
+        final double finishedAt;
+        final String failure;
+        final int actions;
+        final int interrupted;
+        final int conflicts;
+        final DroneState droneState;
+        final String droneFailure;
+        final long droneExecuted;
+        final Interpreter.Snapshot interpreter;
+
+        FlightState(Flight flight) {
+            from.copyFrom(flight.from);
+            to.copyFrom(flight.to);
+            actionStart = flight.actionStart;
+            actionEnd = flight.actionEnd;
+            generation = flight.generation;
+            flying = flight.flying;
+            started = flight.started;
+            finished = flight.finished;
+            finishedAt = flight.finishedAt;
+            failure = flight.failure;
+            actions = flight.actions;
+            interrupted = flight.interrupted;
+            conflicts = flight.conflicts;
+            droneState = flight.drone.state;
+            droneFailure = flight.drone.failure;
+            droneExecuted = flight.drone.executed;
+            interpreter = flight.interpreter.snapshot();
+        }
+
+        void restore(Flight flight) {
+            flight.from.copyFrom(from);
+            flight.to.copyFrom(to);
+            flight.actionStart = actionStart;
+            flight.actionEnd = actionEnd;
+            flight.generation = generation;
+            flight.flying = flying;
+            flight.started = started;
+            flight.finished = finished;
+            flight.finishedAt = finishedAt;
+            flight.failure = failure;
+            flight.actions = actions;
+            flight.interrupted = interrupted;
+            flight.conflicts = conflicts;
+            flight.drone.state = droneState;
+            flight.drone.failure = droneFailure;
+            flight.drone.executed = droneExecuted;
+            flight.interpreter.restore(interpreter);
+            flight.interpreter.setActionListener(finished ? null : flight);
+        }
+    }
+
+    // The whole simulation at one time: the clock, the queue, and every flight with its interpreter
+    public static class Snapshot {
+        private final double time;
+        private final long sequence;
+        private final long handled;
+        private final int landed;
+        private final int nextInput;
+        private final PriorityQueue<Event> events;
+        private final FlightState[] flights;
+
+        private Snapshot(Simulator simulator) {
+            time = simulator.now;
+            sequence = simulator.sequence;
+            handled = simulator.handled;
+            landed = simulator.landed;
+            nextInput = simulator.nextInput;
+            events = new PriorityQueue<>(simulator.events); // The events themselves never change
+            flights = new FlightState[simulator.flights.size()];
+            for (int i = 0; i < flights.length; i++) flights[i] = new FlightState(simulator.flights.get(i));
+        }
+
+        public double getTime() { return time; }
+    }
+
+    private final Fleet fleet;
+    private PriorityQueue<Event> events = new PriorityQueue<>();
+    private final List<Flight> flights = new ArrayList<>();
+    private double now = 0;
+    private long sequence = 0;
+    private long handled = 0;
+    private int landed = 0;
+    private SeparationMonitor separation;
+    private double tick;
+    private HashSet<Long> conflicting = new HashSet<>(); // Pairs that were too close last tick
+    private EventLog log; // Gets everything sent to the drones, when there is one
+    private EventLog inputs; // Fed in as the clock gets to them, when replaying
+    private int nextInput = 0;
+
+    // The fleet's settings decide the backend, chaining and random batching
+    public Simulator(Fleet fleet) {
+        this.fleet = fleet;
+    }
+
+    public Flight add(Fleet.Drone drone) {
+        return add(drone, now);
+    }
+
+    public Flight add(Fleet.Drone drone, double start) {
+        Interpreter interpreter = fleet.newInterpreter(drone);
+        Execution program = fleet.instantiate(drone, interpreter);
+        Flight flight = new Flight(flights.size(), drone, interpreter, program, fleet.lower(drone, program));
+        flights.add(flight);
+        if (log != null) log.addDrone(drone, Math.max(start, now));
+        schedule(start, flight, START, null);
+        return flight;
+    }
+
+    // Checks the drones in the air against each other every tick seconds of simulated time
+    public void setSeparation(SeparationMonitor separation, double tick) {
+        if (!(tick > 0)) throw new IllegalArgumentException("Tick has to be positive: " + tick);
+        if (inputs != null && separation != null) throw new IllegalStateException("A replay gets its obstacles from the log");
+        boolean ticking = this.separation != null;
+        this.separation = separation;
+        this.tick = tick;
+        if (!ticking && separation != null) schedule(now, null, TICK, null);
+    }
+
+    public SeparationMonitor getSeparation() { return separation; }
+
+    // Writes down every message and trigger the drones get from here on, with where each one started
+    public void setEventLog(EventLog log) {
+        if (!flights.isEmpty()) throw new IllegalStateException("The log needs every drone, so set it before adding any");
+        this.log = log;
+    }
+
+    public EventLog getEventLog() { return log; }
+
+    // Sends the log's events to the flights at their times instead of working out low battery and
+    // separation here. The flights have to be the ones in the log, in the same order
+    void replay(EventLog inputs) {
+        if (separation != null) throw new IllegalStateException("A replay gets its obstacles from the log");
+        this.inputs = inputs;
+        nextInput = 0;
+    }
+
+    public Snapshot snapshot() {
+        if (separation != null) throw new IllegalStateException("Snapshots don't cover the SeparationMonitor");
+        return new Snapshot(this);
+    }
+
+    // Back to a snapshot of this simulator, with the drones it had then
+    public void restore(Snapshot snapshot) {
+        if (snapshot.flights.length != flights.size()) throw new IllegalArgumentException("Snapshot has " + snapshot.flights.length + " flights, not " + flights.size());
+        now = snapshot.time;
+        sequence = snapshot.sequence;
+        handled = snapshot.handled;
+        landed = snapshot.landed;
+        nextInput = snapshot.nextInput;
+        events = new PriorityQueue<>(snapshot.events);
+        for (int i = 0; i < snapshot.flights.length; i++) snapshot.flights[i].restore(flights.get(i));
+    }
+
+    // A message for the drone at a simulated time, as if sent from the REPL
+    public void post(double time, Flight flight, String message) {
+        schedule(time, flight, MESSAGE, message);
+    }
+
+    private void schedule(double time, Flight flight, int kind, String message) {
+        events.add(new Event(Math.max(time, now), sequence++, flight, kind, flight != null ? flight.generation : 0, message));
+    }
+
+    // Handles events until there are none left, or the next one is after until
+    public void run(double until) {
+        while (true) {
+            if (inputs != null) feed(until);
+            if (events.isEmpty() || events.peek().time > until) break;
+            Event event = events.poll();
+            Flight flight = event.flight;
+            if (flight != null && flight.finished) continue;
+            now = event.time;
+            handled++;
+            switch (event.kind) {
+                case START -> flight.start();
+                case DONE -> {
+                    if (event.generation == flight.generation) flight.done();
+                }
+                case LOW -> {
+                    if (event.generation == flight.generation) flight.react("low battery");
+                }
+                case MESSAGE -> flight.react(event.message);
+                case TICK -> tick();
+                default -> throw new IllegalStateException("Unknown event " + event.kind);
+            }
+        }
+        if (until != Double.POSITIVE_INFINITY && until > now) now = until;
+    }
+
+    // Queues the logged events that come before anything else, one at a time, so the queue stays small
+    private void feed(double until) {
+        while (nextInput < inputs.size()) {
+            double time = inputs.getTime(nextInput);
+            if (time > until || (!events.isEmpty() && time > events.peek().time)) return;
+            schedule(time, flights.get(inputs.getFlight(nextInput)), MESSAGE, inputs.getMessage(nextInput));
+            nextInput++;
+        }
+    }
+
+    private void tick() {
+        if (separation == null) return; // Turned off, so no more ticks
+        for (Flight flight : flights) {
+            if (flight.started && !flight.finished) flight.locate(separation);
+        }
+        HashSet<Long> close = new HashSet<>();
+        List<Flight> reacting = new ArrayList<>();
+        separation.check((a, b, distance) -> {
+            long pair = ((long) a << 32) | b;
+            close.add(pair);
+            if (conflicting.contains(pair)) return; // Already told
+            if (Trace.INFO) Trace.log("Drones " + flights.get(a).drone.id + " and " + flights.get(b).drone.id + " are " + distance + " apart");
+            reacting.add(flights.get(a));
+            reacting.add(flights.get(b));
+        });
+        conflicting = close;
+        for (Flight flight : reacting) { // After the check, since reacting moves them
+            flight.conflicts++;
+            if (!flight.finished) flight.react("obstacle");
+        }
+        if (landed < flights.size()) schedule(now + tick, null, TICK, null);
+    }
+
+    public void run() {
+        run(Double.POSITIVE_INFINITY);
+    }
+
+    public double getTime() { return now; }
+    public long getHandled() { return handled; }
+    public List<Flight> getFlights() { return flights; }
+    public boolean isIdle() { return events.isEmpty() && (inputs == null || nextInput == inputs.size()); }
+}
@@ -0,0 +1,157 @@
+package no.uio.aeroscript.runtime;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.trace.Trace;
+
+// Runs a lowered program. It does what the Statement stack did, with a pc and a return stack of
+// ints instead: nothing is allocated per instruction, and a reaction just moves the pc.
+public class VM {
+    private final Interpreter interpreter;
+    private final Code code;
+    private final boolean repl;
+    private int pc;
+    private int[] returns = new int[8];
+    private boolean returnsShared = false; // With saved Registers, so it's copied before the next call writes it
+    private int depth = 0;
+    private boolean pendingPop = false; // The REPL leaves a mode on exit until it runs again
+
+    public VM(Interpreter interpreter, Code code, boolean repl) {
+        this.interpreter = interpreter;
+        this.code = code;
+        this.repl = repl;
+        this.pc = code.entries[0];
+    }
+
+    public ArrayList<Execution> run() {
+        ArrayList<Execution> executions = new ArrayList<Execution>();
+        if (pendingPop) {
+            pendingPop = false;
+            interpreter.popMode();
+        }
+        int[] ops = code.code;
+        float[] k = code.constants;
+        while (pc >= 0 && interpreter.running) {
+            int op = ops[pc];
+            if (op >= Code.ACTION && interpreter.hasMessages()) { // Only before actions, where the mode is the one flying
+                interpreter.drainMessages();
+                op = ops[pc]; // A reaction moves the pc
+            }
+            int at = pc;
+            pc += Code.length(op); // Before executing, since a reaction can move it
+            switch (op) {
+                case Code.HALT -> pc = -1;
+                case Code.ENTER -> {
+                    Execution execution = code.executions[ops[at + 1]];
+                    if (Trace.DEBUG) Trace.log("Execute: " + execution.id);
+                    interpreter.pushMode(execution);
+                }
+                case Code.EXIT -> {
+                    if (repl) {
+                        interpreter.pause();
+                        pendingPop = true;
+                    } else {
+                        interpreter.popMode();
+                    }
+                }
+                case Code.CALL -> {
+                    if (depth == returns.length || returnsShared) {
+                        returns = Arrays.copyOf(returns, depth == returns.length ? depth * 2 : returns.length);
+                        returnsShared = false;
+                    }
+                    returns[depth++] = pc;
+                    interpreter.recordExecution(executions, code.executions[ops[at + 1]]);
+                    pc = code.entries[ops[at + 1]];
+                }
+                case Code.CHAIN -> {
+                    interpreter.recordExecution(executions, code.executions[ops[at + 1]]);
+                    pc = code.entries[ops[at + 1]];
+                }
+                case Code.RET -> pc = depth == 0 ? -1 : returns[--depth];
+                case Code.ACTION -> code.statements[ops[at + 1]].execute();
+                case Code.MOVE_TO -> {
+                    int c = ops[at + 2];
+                    ((Action) code.statements[ops[at + 1]]).move(k[c], k[c + 1], k[c + 2], k[c + 3]);
+                }
+                case Code.MOVE_BY -> {
+                    int c = ops[at + 2];
+                    ((Action) code.statements[ops[at + 1]]).moveBy(k[c], k[c + 1], k[c + 2]);
+                }
+                case Code.TURN -> {
+                    int c = ops[at + 2];
+                    ((Action) code.statements[ops[at + 1]]).turn(k[c], k[c + 1], k[c + 2]);
+                }
+                case Code.SCEND -> {
+                    int c = ops[at + 2];
+                    ((Action) code.statements[ops[at + 1]]).scend(k[c], k[c + 1], k[c + 2]);
+                }
+                default -> throw new IllegalStateException("Invalid opcode " + op + " at " + at);
+            }
+        }
+        return interpreter.trimHistory(executions);
+    }
+
+    // Instead of clearing the stack and pushing the execution, forget where we were and jump to it
+    public void interrupt(Execution execution) {
+        int index = code.indexOf(execution);
+        if (index < 0) throw new IllegalArgumentException("Execution " + execution.id + " was not lowered");
+        depth = 0;
+        pendingPop = false;
+        pc = code.entries[index];
+    }
+
+    // Where it had got to, for Interpreter snapshots
+    static final class Registers {
+        private final int pc;
+        private final int depth;
+        private final boolean pendingPop;
+        private final int[] returns; // Shared with the VM until it calls again
+
+        private Registers(int pc, int depth, boolean pendingPop, int[] returns) {
+            this.pc = pc;
+            this.depth = depth;
+            this.pendingPop = pendingPop;
+            this.returns = returns;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(pc);
+            out.writeBoolean(pendingPop);
+            out.writeInt(depth);
+            for (int i = 0; i < depth; i++) out.writeInt(returns[i]);
+        }
+
+        static Registers read(DataInputStream in) throws IOException {
+            int pc = in.readInt();
+            boolean pendingPop = in.readBoolean();
+            int depth = in.readInt();
+            if (depth < 0) throw new IOException("Bad return stack depth " + depth);
+            int[] returns = new int[Math.max(depth, 8)];
+            for (int i = 0; i < depth; i++) returns[i] = in.readInt();
+            return new Registers(pc, depth, pendingPop, returns);
+        }
+    }
+
+    Registers save() {
+        returnsShared = true;
+        return new Registers(pc, depth, pendingPop, returns);
+    }
+
+    void load(Registers registers) {
+        pc = registers.pc;
+        depth = registers.depth;
+        pendingPop = registers.pendingPop;
+        returns = registers.returns;
+        returnsShared = true;
+    }
+
+    public boolean isHalted() {
+        return pc < 0;
+    }
+}
@@ -0,0 +1,14 @@
+package no.uio.aeroscript.trace;
+
+// The old behaviour: one println per line, on whatever System.out is at the time
+public class ConsoleSink implements TraceSink {
+    @Override
+    public void write(String line) {
+        System.out.println(line);
+    }
+
+    @Override
+    public void flush() {
+        System.out.flush();
+    }
+}
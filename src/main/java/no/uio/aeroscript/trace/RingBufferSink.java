@@ -0,0 +1,108 @@
+package no.uio.aeroscript.trace;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Hands lines to a background thread through a fixed ring, so tracing never waits on the console.
+// Any number of threads can write. When the ring is full the line is dropped and counted instead
+// of blocking the interpreter.
+public class RingBufferSink implements TraceSink {
+    private final AtomicReferenceArray<String> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // Next slot to claim
+    private final AtomicLong tail = new AtomicLong(); // Next slot to write out
+    private final AtomicLong dropped = new AtomicLong();
+    private final Writer out;
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    public RingBufferSink(OutputStream out, int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity has to be a power of two: " + capacity);
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        this.writer = new Thread(this::drain, "aeroscript-trace");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void write(String line) {
+        while (true) {
+            long claimed = head.get();
+            if (claimed - tail.get() >= slots.length()) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (head.compareAndSet(claimed, claimed + 1)) {
+                slots.lazySet((int) claimed & mask, line);
+                return;
+            }
+        }
+    }
+
+    private void drain() {
+        int idle = 0;
+        while (true) {
+            long next = tail.get();
+            String line = slots.get((int) next & mask);
+            if (line == null) { // Nothing there, or claimed but not written yet
+                if (closed && next == head.get()) return;
+                try {
+                    if (idle++ == 0) out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                LockSupport.parkNanos(idle < 100 ? 10_000 : 1_000_000);
+                continue;
+            }
+            idle = 0;
+            slots.lazySet((int) next & mask, null);
+            tail.lazySet(next + 1);
+            try {
+                out.write(line);
+                out.write(System.lineSeparator());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        long target = head.get();
+        while (tail.get() < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            Thread.onSpinWait();
+        }
+        try {
+            out.flush(); // BufferedWriter locks itself, so this is safe next to the writer thread
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+            out.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getDropped() { return dropped.get(); }
+}
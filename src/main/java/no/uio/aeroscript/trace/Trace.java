@@ -0,0 +1,62 @@
+package no.uio.aeroscript.trace;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.util.Locale;
+
+// Tracing for the compiler and interpreter. Call sites guard with the level flags:
+//   if (Trace.ACTION) Trace.log("Act: " + action);
+// The flags are static finals read from -Daeroscript.trace, so the JIT drops disabled call sites
+// entirely and the line is never even built. The sink (-Daeroscript.trace.sink) can be swapped at runtime.
+// Both properties are read when this class is first used, so set them before that.
+public final class Trace {
+    public enum Level {
+        OFF,    // Nothing
+        INFO,   // Compiler passes, messages, reactions
+        ACTION, // Every action and its cost
+        DEBUG;  // The stack, modes and lambdas, and the compiler's inner workings
+
+        public static Level parse(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public static final Level LEVEL = Level.parse(System.getProperty("aeroscript.trace", "debug")); // Everything, like before
+    public static final boolean INFO = LEVEL.compareTo(Level.INFO) >= 0;
+    public static final boolean ACTION = LEVEL.compareTo(Level.ACTION) >= 0;
+    public static final boolean DEBUG = LEVEL.compareTo(Level.DEBUG) >= 0;
+
+    private static volatile TraceSink sink = sink(System.getProperty("aeroscript.trace.sink", "console"));
+
+    private Trace() {}
+
+    public static TraceSink sink(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "console" -> new ConsoleSink();
+            case "ring" -> {
+                // Straight to the file descriptor, so System.setOut doesn't matter to the writer thread
+                RingBufferSink ring = new RingBufferSink(new FileOutputStream(FileDescriptor.out), 1 << 14);
+                Runtime.getRuntime().addShutdownHook(new Thread(ring::close));
+                yield ring;
+            }
+            case "none", "null" -> new NullSink();
+            default -> throw new IllegalArgumentException("Unknown trace sink: " + name);
+        };
+    }
+
+    public static void log(String line) {
+        sink.write(line);
+    }
+
+    public static void flush() {
+        sink.flush();
+    }
+
+    public static TraceSink getSink() { return sink; }
+
+    public static TraceSink setSink(TraceSink newSink) {
+        TraceSink old = sink;
+        sink = newSink;
+        return old;
+    }
+}
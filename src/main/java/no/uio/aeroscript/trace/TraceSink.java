@@ -0,0 +1,11 @@
+package no.uio.aeroscript.trace;
+
+// Where trace lines end up
+public interface TraceSink {
+    void write(String line);
+
+    // Blocks until everything written so far is out
+    default void flush() {}
+
+    default void close() { flush(); }
+}
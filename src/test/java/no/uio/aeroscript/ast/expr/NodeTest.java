@@ -1,9 +1,12 @@
 package no.uio.aeroscript.ast.expr;
 
+import no.uio.aeroscript.compiletime.TypeChecker;
 import no.uio.aeroscript.type.ExpressionType;
 import no.uio.aeroscript.type.Point;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class NodeTest {
@@ -123,4 +126,51 @@ class NodeTest {
         float value = (Float) node.evaluate();
         assertTrue(value >= -3.0f && value <= 6.0f);
     }
+
+    @Test
+    void evaluateUnboxed() {
+        Node point = new BinaryNode(ExpressionType.POINT, left, right);
+        Node node = new UnaryNode(ExpressionType.NEG, new BinaryNode(ExpressionType.TIMES, new BinaryNode(ExpressionType.PLUS, point, point), left));
+        new TypeChecker().walk(node);
+        float[] out = new float[2];
+        node.evaluatePoint(out);
+        Point boxed = (Point) node.evaluate();
+        assertEquals(boxed.getX(), out[0]);
+        assertEquals(boxed.getY(), out[1]);
+
+        Node number = new BinaryNode(ExpressionType.MINUS, new BinaryNode(ExpressionType.TIMES, left, right), new UnaryNode(ExpressionType.NEG, right));
+        new TypeChecker().walk(number);
+        assertEquals(number.evaluate(), number.evaluateFloat());
+    }
+
+    @Test
+    void evaluateWithoutAllocating() {
+        // point (2 * 3 + random[2, 3], --3) * 2 - point (2, 3) + 3
+        Node x = new BinaryNode(ExpressionType.PLUS, new BinaryNode(ExpressionType.TIMES, left, right), new BinaryNode(ExpressionType.RANDOM, left, right));
+        Node point = new BinaryNode(ExpressionType.POINT, x, new UnaryNode(ExpressionType.NEG, right));
+        Node scaled = new BinaryNode(ExpressionType.TIMES, point, left);
+        Node node = new BinaryNode(ExpressionType.PLUS, new BinaryNode(ExpressionType.MINUS, scaled, new UnaryNode(ExpressionType.POINT, new Point(2f, 3f))), right);
+        new TypeChecker().walk(node);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        float[] out = new float[2];
+        float sink = 0;
+        for (int i = 0; i < 200_000; i++) { // Steady state
+            node.evaluatePoint(out);
+            sink += out[0] + x.evaluateFloat();
+        }
+
+        int evaluations = 1_000_000;
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < evaluations; i++) {
+            node.evaluatePoint(out);
+            sink += out[0] + x.evaluateFloat();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(sink != 0);
+        // Boxing a single Float per evaluation would be 16 MB here, allow a little for the measuring itself
+        assertTrue(allocated < 64 * 1024, "Allocated " + allocated + " bytes for " + evaluations + " evaluations");
+    }
 }
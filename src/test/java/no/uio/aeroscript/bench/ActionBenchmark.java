@@ -0,0 +1,58 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.type.ActionType;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+
+// Cost of the actions themselves, on already evaluated values: reading and writing the drone state
+public class ActionBenchmark {
+    public static void main(String[] args) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Every action prints
+
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", Float.MAX_VALUE);
+        vars.put("battery level", Float.MAX_VALUE);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        Interpreter interpreter = new Interpreter(heap);
+
+        UnaryNode zero = new UnaryNode(ExpressionType.NUMBER, 0f);
+        Action move = new Action(interpreter, ActionType.MOVE, zero, zero, zero);
+        Action turn = new Action(interpreter, ActionType.TURN, zero, zero, zero);
+        Action scend = new Action(interpreter, ActionType.SCEND, zero, zero, zero);
+
+        int rounds = 2_000_000;
+        out.printf("%-8s %10s%n", "action", "ns/action");
+        for (int i = 0; i < 3; i++) { // The first ones are warm-up
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) move.move(r & 63, r & 31, 0f, 0f);
+            out.printf("%-8s %10.2f%n", "move", (double) (System.nanoTime() - start) / rounds);
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) move.moveBy(r & 7, 0f, 0f);
+            out.printf("%-8s %10.2f%n", "move by", (double) (System.nanoTime() - start) / rounds);
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) turn.turn(r & 15, 0f, 0f);
+            out.printf("%-8s %10.2f%n", "turn", (double) (System.nanoTime() - start) / rounds);
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) scend.scend((r & 1) == 0 ? 5f : -5f, 0f, 0f);
+            out.printf("%-8s %10.2f%n", "scend", (double) (System.nanoTime() - start) / rounds);
+        }
+        System.setOut(out);
+    }
+}
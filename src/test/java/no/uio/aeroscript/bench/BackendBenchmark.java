@@ -0,0 +1,73 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.BytecodeCompiler;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// Actions per second on the tree walker against the bytecode backend.
+// The actions are executed directly, so the stack and mode handling don't get in the way.
+public class BackendBenchmark {
+    public static void main(String[] args) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Every action prints
+        String source = ParseBenchmark.synthetic(200);
+
+        int rounds = 200;
+        out.printf("%-10s %12s%n", "backend", "ns/action");
+        for (int i = 0; i < 3; i++) { // The first one is warm-up
+            for (boolean compiled : new boolean[] { false, true }) {
+                List<Statement> actions = actions(source, compiled);
+                long start = System.nanoTime();
+                for (int r = 0; r < rounds; r++) {
+                    for (Statement action : actions) action.execute();
+                }
+                double time = (double) (System.nanoTime() - start) / rounds / actions.size();
+                out.printf("%-10s %12.2f%n", compiled ? "compiled" : "tree", time);
+            }
+        }
+        System.setOut(out);
+    }
+
+    private static List<Statement> actions(String source, boolean compiled) {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", Float.MAX_VALUE);
+        vars.put("battery level", Float.MAX_VALUE);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        Interpreter interpreter = new Interpreter(heap);
+
+        Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        if (compiled) new BytecodeCompiler().compile(program);
+
+        List<Statement> actions = new ArrayList<>();
+        for (Execution execution : program.executions.values()) {
+            for (Statement statement : execution.statements) {
+                if (!(statement instanceof Execution)) actions.add(statement);
+            }
+        }
+        if (!compiled && !(actions.get(0) instanceof Action)) throw new IllegalStateException("Expected the tree form");
+        return actions;
+    }
+}
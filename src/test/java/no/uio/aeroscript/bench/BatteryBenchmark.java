@@ -0,0 +1,51 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.BatteryAnalyzer;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Fleet;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.runtime.MonteCarlo;
+import no.uio.aeroscript.trace.NullSink;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStreams;
+
+// How long the battery analysis takes to judge a mission, next to finding out with Monte Carlo runs.
+// Without the low battery reaction, so too little battery means every run fails
+public class BatteryBenchmark {
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        Trace.setSink(new NullSink());
+
+        System.out.printf("%-6s %10s %-11s %12s %14s %10s%n", "legs", "battery", "verdict", "analysis us", "monte carlo ms", "failed");
+        for (int round = 0; round < 2; round++) { // The first round is warm-up
+            for (int legs : new int[] { 10, 100, 1000 }) {
+                String source = ParseBenchmark.synthetic(legs).replace("    on low battery -> Land\n", "");
+                Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+                new TypeChecker().walk(program);
+                new ConstantFolder().fold(program);
+                Fleet.Mission mission = new Fleet.Mission(program);
+
+                for (float battery : new float[] { legs * 20f, legs * 200f }) {
+                    BatteryAnalyzer analyzer = new BatteryAnalyzer(new Point(0f, 0f), battery, 0f);
+                    int repeats = 100_000 / legs;
+                    long start = System.nanoTime();
+                    for (int i = 0; i < repeats; i++) analyzer.analyze(program);
+                    double micros = (System.nanoTime() - start) / 1e3 / repeats;
+
+                    MonteCarlo monteCarlo = new MonteCarlo(mission, new Point(0f, 0f), battery, 0f);
+                    MonteCarlo.Report report = monteCarlo.run(runs, 1, 1);
+                    if (round > 0) {
+                        System.out.printf("%-6d %10.0f %-11s %12.1f %14.1f %9.1f%%%n", legs, battery, analyzer.getVerdict(), micros,
+                            report.seconds * 1e3, 100 * report.getFailureRate());
+                    }
+                }
+            }
+        }
+    }
+}
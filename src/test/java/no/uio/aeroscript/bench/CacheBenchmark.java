@@ -0,0 +1,78 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.MissionCache;
+import no.uio.aeroscript.compiletime.SourceLoader;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Interpreter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Cold (lex, parse, build, check) against warm (.aeroc hit) startup, side by side.
+// The first column is the very first load in a fresh JVM, the second the average once warmed up.
+public class CacheBenchmark {
+    private static final Path resources = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources");
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("aeroc");
+        List<Path> files = new ArrayList<>();
+        for (String name : new String[] { "program.aero", "fancytypes.aero", "reactions.aero" }) {
+            files.add(Files.copy(resources.resolve(name), dir.resolve(name)));
+        }
+        Path synthetic = dir.resolve("synthetic.aero");
+        Files.writeString(synthetic, ParseBenchmark.synthetic(5000));
+        files.add(synthetic);
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // The compiler passes are chatty
+        try {
+            out.printf("%-18s %14s %14s %14s %14s%n", "file", "cold first ms", "warm first ms", "cold avg ms", "warm avg ms");
+            for (Path file : files) {
+                double coldFirst = time(() -> compile(file));
+                MissionCache.store(file, compile(file));
+                double warmFirst = time(() -> MissionCache.load(file, new Interpreter(null)));
+
+                int rounds = file == synthetic ? 10 : 500;
+                double cold = 0;
+                double warm = 0;
+                for (int i = 0; i < rounds; i++) {
+                    cold += time(() -> compile(file));
+                    warm += time(() -> MissionCache.load(file, new Interpreter(null)));
+                }
+                out.printf("%-18s %14.3f %14.3f %14.3f %14.3f%n", file.getFileName(), coldFirst, warmFirst, cold / rounds, warm / rounds);
+            }
+        } finally {
+            System.setOut(out);
+            for (Path file : files) {
+                Files.deleteIfExists(MissionCache.cachePath(file));
+                Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    private static Execution compile(Path file) throws IOException {
+        Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(SourceLoader.load(file)));
+        new TypeChecker().walk(program);
+        return program;
+    }
+
+    private interface Load {
+        Object run() throws IOException;
+    }
+
+    private static double time(Load load) throws IOException {
+        long start = System.nanoTime();
+        if (load.run() == null) throw new IllegalStateException("Nothing loaded");
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
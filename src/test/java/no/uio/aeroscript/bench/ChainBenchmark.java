@@ -0,0 +1,59 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.Lowering;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Code;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+
+// A long chained mission on the Statement stack against the lowered VM
+public class ChainBenchmark {
+    public static void main(String[] args) {
+        int legs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String source = ParseBenchmark.synthetic(legs);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        out.printf("%-6s %10s %14s%n", "", "ms/run", "actions/s");
+        for (int i = 0; i < 5; i++) { // The first ones are warm-up
+            for (boolean vm : new boolean[] { false, true }) {
+                Interpreter interpreter = newInterpreter();
+                Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+                new TypeChecker().walk(program);
+                new ConstantFolder().fold(program);
+                Code code = vm ? Lowering.lower(program) : null;
+
+                long start = System.nanoTime();
+                if (vm) interpreter.runProgram(code);
+                else interpreter.runProgram(program);
+                double ms = (System.nanoTime() - start) / 1e6;
+                out.printf("%-6s %10.2f %14.0f%n", vm ? "vm" : "stack", ms, (legs * 4 + 1) / (ms / 1000));
+            }
+        }
+        System.setOut(out);
+    }
+
+    private static Interpreter newInterpreter() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", 1e9f);
+        vars.put("battery level", 1e9f);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        return new Interpreter(heap);
+    }
+}
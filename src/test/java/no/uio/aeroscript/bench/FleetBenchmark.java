@@ -0,0 +1,49 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Fleet;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.trace.NullSink;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+// Missions per second for a fleet of drones, on one thread against all of them
+public class FleetBenchmark {
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int legs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Trace.setSink(new NullSink());
+        Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(ParseBenchmark.synthetic(legs))));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        Fleet.Mission mission = new Fleet.Mission(program);
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%d drones, %d legs each, %d cores%n", size, legs, cores);
+        System.out.printf("%-10s %10s %14s%n", "threads", "s", "missions/s");
+        for (int i = 0; i < 3; i++) { // The first round is warm-up
+            for (int threads : cores > 1 ? new int[] { 1, cores } : new int[] { 1 }) {
+                for (boolean vm : new boolean[] { false, true }) {
+                    List<Fleet.Drone> drones = new ArrayList<>(size);
+                    for (int d = 0; d < size; d++) drones.add(new Fleet.Drone(d, mission, new Point((float) d, 0f), 1e9f, 0f, d));
+                    Fleet fleet = new Fleet();
+                    fleet.setVM(vm);
+                    ExecutorService pool = Fleet.workStealingPool(threads);
+                    fleet.fly(drones, pool);
+                    pool.shutdown();
+                    System.out.printf("%-10s %10.3f %14.0f%n", threads + (vm ? " vm" : ""), fleet.getSeconds(), fleet.getMissionsPerSecond());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// Node count and evaluation time of some expressions before and after constant folding
+public class FoldBenchmark {
+    private static final String[] expressions = {
+        "point (10*3, 5+5) - 2",
+        "2 + (14 - (-- 3 + 5))",
+        "point (2, 5.2133)*10",
+        "--point (3+51, 9+random[77, 100])",
+        "(2*3)+(3*1) * 1 + 0",
+        "point (--random[0, 100], random[0, 100]) * (2 * 1)",
+    };
+
+    public static void main(String[] args) {
+        TwoStageParser parser = new TwoStageParser();
+        ASTBuilder astBuilder = new ASTBuilder(null);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // TypeChecker is chatty
+
+        int rounds = 5_000_000;
+        out.printf("%-52s %6s %6s %10s %10s%n", "expression", "nodes", "folded", "ns/eval", "folded");
+        for (String source : expressions) {
+            Node node = astBuilder.visitExpression(parser.parseExpression(CharStreams.fromString(source)));
+            new TypeChecker().walk(node);
+            Node folded = new ConstantFolder().fold(node);
+
+            time(node, rounds);
+            time(folded, rounds); // Warm-up
+            double before = time(node, rounds);
+            double after = time(folded, rounds);
+            out.printf("%-52s %6d %6d %10.2f %10.2f%n", source, ConstantFolder.count(node), ConstantFolder.count(folded), before, after);
+        }
+        System.setOut(out);
+    }
+
+    private static double time(Node node, int rounds) {
+        int sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += node.evaluate().hashCode();
+        }
+        long time = System.nanoTime() - start;
+        if (sink == 42) System.out.println(); // Keep the loop alive
+        return (double) time / rounds;
+    }
+}
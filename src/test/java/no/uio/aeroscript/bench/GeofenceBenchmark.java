@@ -0,0 +1,54 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.runtime.Geofence;
+
+import java.util.SplittableRandom;
+
+// Move checks per second against an allowed area with many edges and a scatter of no-fly zones
+public class GeofenceBenchmark {
+    public static void main(String[] args) {
+        int edges = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int zones = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        float radius = 10_000;
+
+        long start = System.nanoTime();
+        Geofence geofence = new Geofence();
+        float[] border = new float[2 * edges];
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < edges; i++) { // A wobbly circle, like a coastline
+            double r = radius * (1 + 0.02 * Math.sin(i * 0.37) + random.nextDouble(0.01));
+            border[2 * i] = (float) (r * Math.cos(2 * Math.PI * i / edges));
+            border[2 * i + 1] = (float) (r * Math.sin(2 * Math.PI * i / edges));
+        }
+        geofence.addAllowed(border);
+        for (int z = 0; z < zones; z++) {
+            float x = (float) random.nextDouble(-radius, radius), y = (float) random.nextDouble(-radius, radius);
+            geofence.addNoFly(x, y, x + 20, y, x + 20, y + 20, x, y + 20);
+        }
+        geofence.build();
+        System.out.printf("%d border edges, %d no-fly zones, built in %.3f s%n", edges, zones, (System.nanoTime() - start) / 1e9);
+
+        System.out.printf("%-8s %14s %12s%n", "move", "checks/s", "violations");
+        for (int round = 0; round < 3; round++) { // The first round is warm-up
+            for (float length : new float[] { 10, 100, 1000 }) {
+                float[] moves = new float[queries * 4];
+                for (int q = 0; q < moves.length; q += 4) {
+                    double angle = random.nextDouble(2 * Math.PI), r = random.nextDouble(radius * 1.1);
+                    moves[q] = (float) (r * Math.cos(angle));
+                    moves[q + 1] = (float) (r * Math.sin(angle));
+                    double heading = random.nextDouble(2 * Math.PI);
+                    moves[q + 2] = moves[q] + (float) (Math.cos(heading) * length);
+                    moves[q + 3] = moves[q + 1] + (float) (Math.sin(heading) * length);
+                }
+                int violations = 0;
+                start = System.nanoTime();
+                for (int q = 0; q < moves.length; q += 4) {
+                    if (geofence.check(moves[q], moves[q + 1], moves[q + 2], moves[q + 3]) != null) violations++;
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (round > 0) System.out.printf("%-8.0f %14.0f %11.1f%%%n", length, queries / seconds, 100.0 * violations / queries);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.BatteryAnalyzer;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.ExecutionPruner;
+import no.uio.aeroscript.compiletime.Specializer;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.trace.NullSink;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.util.HashMap;
+
+// A mission with a handler for each of thousands of messages, of which one arrives:
+// how long until it can fly, and how much of the heap it keeps, built eagerly and lazily.
+// Startup is what Main does before flying, so eagerly that includes the battery analysis, which it skips with -lazy
+public class LazyBenchmark {
+    public static void main(String[] args) {
+        int handlers = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        Trace.setSink(new NullSink());
+        StringBuilder sb = new StringBuilder("-> Patrol {\n    ascend by 10\n    move by random [5, 15]\n");
+        for (int i = 0; i < handlers; i++) sb.append("    on message [m").append(i).append("] -> Handler").append(i).append("\n");
+        sb.append("}\n");
+        for (int i = 0; i < handlers; i++) {
+            sb.append("Handler").append(i).append(" {\n");
+            sb.append("    ascend by ").append(i % 7 + 1).append(" * 2\n");
+            sb.append("    move to point (").append(i % 100).append(" * 2, random[0, ").append(i % 50 + 1).append("]) at speed 10\n");
+            sb.append("    turn left by --").append(i % 360).append(" + 1\n");
+            sb.append("    on low battery -> Handler").append((i + 1) % handlers).append("\n");
+            sb.append("    descend by (2 * 3) + (3 - 1) for 2 seconds\n");
+            sb.append("    move by random [1, 5] - 3\n");
+            sb.append("}\n");
+        }
+        String source = sb.toString();
+
+        System.out.printf("%d handlers, %d KB of source%n", handlers, source.length() / 1024);
+        System.out.printf("%-6s %12s %10s %12s %10s%n", "lazy", "startup ms", "heap KB", "flying ms", "built");
+        for (int round = 0; round < 3; round++) { // The first round is warm-up
+            for (boolean lazy : new boolean[] { false, true }) {
+                long before = usedHeap();
+                long start = System.nanoTime();
+                Interpreter interpreter = new Interpreter(heap());
+                ASTBuilder builder = new ASTBuilder(interpreter);
+                builder.setLazy(lazy);
+                int[] built = { 0 };
+                builder.setBodyPass((id, body) -> {
+                    built[0]++;
+                    for (Statement statement : body) {
+                        new TypeChecker().walk(statement);
+                        new ConstantFolder().fold(statement);
+                        new Specializer().specialize(statement);
+                    }
+                    return body;
+                });
+                Execution program = builder.visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+                new ExecutionPruner().prune(program);
+                new TypeChecker().walk(program);
+                new ConstantFolder().fold(program);
+                if (!lazy) new BatteryAnalyzer(new Point(0f, 0f), 1e9f, 0f).check(program);
+                new Specializer().specialize(program);
+                double startup = (System.nanoTime() - start) / 1e6;
+                long kept = usedHeap() - before;
+
+                start = System.nanoTime();
+                interpreter.runProgramREPL(program);
+                interpreter.receiveMessage("m" + handlers / 2);
+                double flying = (System.nanoTime() - start) / 1e6;
+                if (round > 0) System.out.printf("%-6s %12.1f %10d %12.1f %10d%n", lazy, startup, kept / 1024, flying, lazy ? built[0] : program.executions.size());
+                if (program.statements.length == 0) System.out.println(); // Keep it alive until here
+            }
+        }
+    }
+
+    private static HashMap<Memory, Object> heap() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", 1e9f);
+        vars.put("battery level", 1e9f);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        return heap;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
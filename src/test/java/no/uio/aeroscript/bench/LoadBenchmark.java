@@ -0,0 +1,84 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.compiletime.SourceLoader;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Peak heap of the old readAllBytes path against the memory-mapped loader, with and without unbuffered tokens.
+// Run each mode in its own JVM for clean numbers:
+//   gradle bench -PbenchClass=no.uio.aeroscript.bench.LoadBenchmark
+public class LoadBenchmark {
+    public static void main(String[] args) throws IOException {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+        Path file = Files.createTempFile("survey", ".aero");
+        try {
+            writeSurvey(file, lines);
+            System.out.printf("Survey mission: %d move lines, %.1f MB%n", lines, Files.size(file) / 1e6);
+
+            String[] modes = args.length > 1 ? new String[] { args[1] } : new String[] { "string", "mapped", "unbuffered" };
+            for (String mode : modes) {
+                measure(file, mode, false);
+                measure(file, mode, true);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void measure(Path file, String mode, boolean parse) throws IOException {
+        System.gc();
+        resetPeaks();
+        long start = System.nanoTime();
+        Object kept = switch (mode) {
+            case "string" -> {
+                String content = new String(Files.readAllBytes(file));
+                yield parse ? new TwoStageParser().parseProgram(CharStreams.fromString(content)) : CharStreams.fromString(content);
+            }
+            case "mapped" -> parse ? new TwoStageParser().parseProgram(SourceLoader.load(file)) : SourceLoader.load(file);
+            case "unbuffered" -> {
+                TwoStageParser parser = new TwoStageParser();
+                parser.setUnbuffered(true);
+                yield parse ? parser.parseProgram(SourceLoader.load(file)) : SourceLoader.load(file);
+            }
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        };
+        long time = System.nanoTime() - start;
+        System.out.printf("%-10s %-12s peak heap: %8.1f MB   time: %8.1f ms%n",
+            mode, parse ? "load+parse" : "load", peakHeap() / 1e6, time / 1e6);
+        if (kept == null) System.out.println();
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static void writeSurvey(Path file, int lines) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("-> Survey {\n    ascend by 50\n");
+            for (int i = 0; i < lines; i++) {
+                writer.write("    move to point (" + (i % 1000) + ", " + (i / 1000) + ")\n");
+            }
+            writer.write("    on low battery -> Land\n} -> Land\nLand { descend to ground }\n");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.Lowering;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.runtime.MessageQueue;
+import no.uio.aeroscript.trace.NullSink;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+// Producers hammering a patrolling drone with messages it reacts to, with and without coalescing
+public class MessageBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        Trace.setSink(new NullSink());
+        String source = "-> Patrol { turn by 1 on message [ping] -> Patrol on message [pong] -> Patrol } -> Patrol";
+
+        for (boolean coalescing : new boolean[] { false, true, false, true }) { // The first two are warm-up
+            Interpreter interpreter = newInterpreter();
+            interpreter.setTailChaining(true);
+            MessageQueue queue = new MessageQueue(1 << 10, coalescing);
+            interpreter.setMessageQueue(queue);
+            Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+            new TypeChecker().walk(program);
+
+            Thread[] threads = new Thread[producers];
+            for (int p = 0; p < producers; p++) {
+                String message = p % 2 == 0 ? "ping" : "pong";
+                threads[p] = new Thread(() -> {
+                    while (queue.post(message, 1, TimeUnit.SECONDS)) Thread.onSpinWait();
+                });
+                threads[p].start();
+            }
+            Thread stopper = new Thread(() -> {
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                interpreter.pause(); // running is volatile, so this gets through
+                queue.close();
+            });
+            stopper.start();
+            long start = System.nanoTime();
+            interpreter.runProgram(Lowering.lower(program));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            for (Thread thread : threads) thread.join();
+
+            System.out.printf("coalescing %-5s %10.0f drained/s %12.0f offered/s%n  %s%n", coalescing,
+                queue.getDrained() / seconds, (queue.getPosted() + queue.getCoalesced()) / seconds, queue);
+        }
+    }
+
+    private static Interpreter newInterpreter() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", 1e9f);
+        vars.put("battery level", 1e9f);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        return new Interpreter(heap);
+    }
+}
@@ -0,0 +1,70 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.runtime.ObstacleMap;
+
+import java.util.SplittableRandom;
+
+// Move checks per second against maps of growing size, with the same density of obstacles, and
+// against a single cell (every obstacle looked at) for scale
+public class ObstacleBenchmark {
+    public static void main(String[] args) {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        System.out.printf("%-10s %-6s %10s %10s %14s %8s%n", "obstacles", "moves", "build s", "cells", "checks/s", "hits");
+        for (int round = 0; round < 2; round++) { // The first round is warm-up
+            for (int n = largest / 100; n <= largest; n *= 10) {
+                float side = (float) Math.sqrt(n) * 10; // One obstacle per 100 square units
+                SplittableRandom random = new SplittableRandom(n);
+                long start = System.nanoTime();
+                ObstacleMap map = new ObstacleMap();
+                for (int i = 0; i < n; i++) {
+                    float x = (float) random.nextDouble(side), y = (float) random.nextDouble(side);
+                    if (i % 2 == 0) {
+                        map.addPoint(x, y, 0.5f);
+                    } else {
+                        map.addPolygon(x, y, x + 1, y, x + 1, y + 1, x, y + 1);
+                    }
+                }
+                map.build();
+                double build = (System.nanoTime() - start) / 1e9;
+
+                for (float length : new float[] { 5, 50 }) {
+                    float[] moves = moves(queries, side, length, random);
+                    run(map, moves, n, length, build);
+                }
+            }
+        }
+
+        // Looking at every obstacle, to see what the grid saves
+        int n = largest / 100;
+        float side = (float) Math.sqrt(n) * 10;
+        SplittableRandom random = new SplittableRandom(1);
+        ObstacleMap all = new ObstacleMap();
+        for (int i = 0; i < n; i++) all.addPoint((float) random.nextDouble(side), (float) random.nextDouble(side), 0.5f);
+        all.build(side * 2);
+        run(all, moves(Math.max(1000, queries / 1000), side, 5, random), n, 5, 0);
+    }
+
+    private static float[] moves(int count, float side, float length, SplittableRandom random) {
+        float[] moves = new float[count * 4];
+        for (int q = 0; q < moves.length; q += 4) {
+            moves[q] = (float) random.nextDouble(side);
+            moves[q + 1] = (float) random.nextDouble(side);
+            double angle = random.nextDouble(2 * Math.PI);
+            moves[q + 2] = moves[q] + (float) (Math.cos(angle) * length);
+            moves[q + 3] = moves[q + 1] + (float) (Math.sin(angle) * length);
+        }
+        return moves;
+    }
+
+    private static void run(ObstacleMap map, float[] moves, int n, float length, double build) {
+        int hits = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < moves.length; q += 4) {
+            if (map.blocks(moves[q], moves[q + 1], moves[q + 2], moves[q + 3])) hits++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-10d %-6.0f %10.3f %10d %14.0f %7.1f%%%n", n, length, build, map.getCellCount(), moves.length / 4 / seconds, 100.0 * hits / (moves.length / 4));
+    }
+}
@@ -0,0 +1,91 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.antlr.AeroScriptLexer;
+import no.uio.aeroscript.antlr.AeroScriptParser;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compares the old "new lexer and parser in LL mode per file" path against TwoStageParser.
+// Run with: gradle bench -PbenchClass=no.uio.aeroscript.bench.ParseBenchmark
+public class ParseBenchmark {
+    private static final Path resources = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources");
+
+    public static void main(String[] args) throws IOException {
+        List<String> bundled = new ArrayList<>();
+        try (var files = Files.list(resources)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".aero")).sorted().toList()) {
+                bundled.add(Files.readString(file));
+            }
+        }
+
+        run("bundled resources", bundled, 2000);
+        run("synthetic 1k executions", List.of(synthetic(1000)), 20);
+        run("synthetic 20k executions", List.of(synthetic(20000)), 3);
+    }
+
+    private static void run(String label, List<String> sources, int rounds) {
+        List<CharStream> streams = new ArrayList<>();
+        for (String source : sources) streams.add(CharStreams.fromString(source));
+
+        // Warm up both paths, so the JIT and the shared DFA cache are in the same state for both
+        for (int i = 0; i < Math.max(1, rounds / 10); i++) {
+            parseFresh(streams);
+            parseReused(new TwoStageParser(), streams);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) parseFresh(streams);
+        long fresh = System.nanoTime() - start;
+
+        TwoStageParser parser = new TwoStageParser();
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) parseReused(parser, streams);
+        long reused = System.nanoTime() - start;
+
+        System.out.printf("%-26s fresh LL: %8.2f ms   two-stage: %8.2f ms   speedup: %5.2fx   (SLL %d, LL %d)%n",
+            label, fresh / 1e6, reused / 1e6, (double) fresh / reused, parser.getSLLCount(), parser.getLLCount());
+    }
+
+    private static void parseFresh(List<CharStream> streams) {
+        for (CharStream stream : streams) {
+            stream.seek(0);
+            AeroScriptLexer lexer = new AeroScriptLexer(stream);
+            AeroScriptParser parser = new AeroScriptParser(new CommonTokenStream(lexer));
+            lexer.removeErrorListeners();
+            parser.removeErrorListeners();
+            parser.program();
+        }
+    }
+
+    private static void parseReused(TwoStageParser parser, List<CharStream> streams) {
+        for (CharStream stream : streams) parser.parseProgram(stream);
+    }
+
+    // A long mission in the style of the generated survey missions
+    static String synthetic(int executions) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < executions; i++) {
+            if (i == 0) sb.append("-> ");
+            sb.append("Leg").append(i).append(" {\n");
+            sb.append("    ascend by ").append(i % 7 + 1).append("\n");
+            sb.append("    move to point (").append(i % 100).append(" * 2, random[0, ").append(i % 50 + 1).append("]) at speed 10\n");
+            sb.append("    turn left by --").append(i % 360).append(" + 1\n");
+            sb.append("    on low battery -> Land\n");
+            sb.append("    descend by (2 * 3) + (3 - 1) for 2 seconds\n");
+            sb.append("}");
+            sb.append(i + 1 < executions ? " -> Leg" + (i + 1) : " -> Land").append("\n");
+        }
+        sb.append("Land { descend to ground }\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.ExecutionPruner;
+import no.uio.aeroscript.compiletime.MissionCache;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Fleet;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.trace.NullSink;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+// A short mission at the top of a generated library it mostly doesn't use: checking, folding and
+// flying it with and without the executions it can't reach
+public class PruneBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int library = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int drones = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Trace.setSink(new NullSink());
+        // The legs chain to each other, so only the last one and Land are reached
+        String source = "-> Start { ascend by 10 on low battery -> Land } -> Leg" + (library - 1) + "\n" + ParseBenchmark.synthetic(library).substring(3);
+
+        System.out.printf("%d library executions, %d drones%n", library, drones);
+        System.out.printf("%-8s %10s %12s %10s %12s%n", "pruned", "kept", "compile ms", "KB", "fly ms");
+        for (int round = 0; round < 3; round++) { // The first round is warm-up
+            for (boolean prune : new boolean[] { false, true }) {
+                CharStream chars = CharStreams.fromString(source);
+                Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(chars));
+                long start = System.nanoTime();
+                if (prune) new ExecutionPruner().prune(program);
+                new TypeChecker().walk(program);
+                new ConstantFolder().fold(program);
+                Fleet.Mission mission = new Fleet.Mission(program);
+                double compile = (System.nanoTime() - start) / 1e6;
+
+                List<Fleet.Drone> fleet = new ArrayList<>();
+                for (int d = 0; d < drones; d++) fleet.add(new Fleet.Drone(d, mission, new Point(0f, 0f), 1e9f, 0f, d));
+                start = System.nanoTime();
+                new Fleet().fly(fleet, Executors.newSingleThreadExecutor());
+                double fly = (System.nanoTime() - start) / 1e6;
+                if (round > 0) System.out.printf("%-8s %10d %12.1f %10d %12.1f%n", prune, program.executions.size(), compile, missionBytes(program) / 1024, fly);
+            }
+        }
+    }
+
+    private static int missionBytes(Execution program) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            MissionCache.write(program, new byte[32], out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,71 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.runtime.RandomSource;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+// Draws per second across threads: one static Random for everyone, like BinaryNode used to have,
+// against a RandomSource per thread, unbatched and batched
+public class RandomBenchmark {
+    private static final Random shared = new Random(1);
+    private static volatile float sink;
+
+    interface Draw {
+        float next();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int draws = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d draws per thread, %d cores%n", draws, cores);
+        System.out.printf("%-8s %16s %16s %16s%n", "threads", "static Random", "RandomSource", "batched (256)");
+        for (int round = 0; round < 2; round++) { // The first is warm-up
+            for (int threads = 1; threads <= Math.max(4, cores); threads *= 2) {
+                double old = run(threads, draws, t -> () -> shared.nextFloat(0f, 100f));
+                double plain = run(threads, draws, t -> {
+                    RandomSource source = new RandomSource(new SplittableRandom(t));
+                    return () -> source.nextFloat(0f, 100f);
+                });
+                double batched = run(threads, draws, t -> {
+                    RandomSource source = new RandomSource(new SplittableRandom(t));
+                    source.setBatch(256);
+                    return () -> source.nextFloat(0f, 100f);
+                });
+                System.out.printf("%-8d %14.1fM/s %14.1fM/s %14.1fM/s%n", threads, old / 1e6, plain / 1e6, batched / 1e6);
+            }
+        }
+    }
+
+    interface DrawFactory {
+        Draw make(int thread);
+    }
+
+    // Total draws per second over all threads
+    private static double run(int threads, int draws, DrawFactory factory) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Draw draw = factory.make(t);
+            workers[t] = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                float sum = 0;
+                for (int i = 0; i < draws; i++) sum += draw.next();
+                sink = sum;
+            });
+            workers[t].start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) worker.join();
+        return (double) threads * draws / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,68 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.runtime.DroneState;
+import no.uio.aeroscript.runtime.FlightReader;
+import no.uio.aeroscript.runtime.FlightRecorder;
+import no.uio.aeroscript.type.ActionType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Records per second from several writer threads, then the same recording read back
+public class RecorderBenchmark {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int each = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        String[] modes = { "Takeoff", "Survey", "Return", "Land" };
+
+        System.out.printf("%d threads, %d records each%n", threads, each);
+        System.out.printf("%-6s %14s %14s %10s%n", "round", "written/s", "read/s", "segments");
+        for (int round = 0; round < 4; round++) { // The first round is warm-up
+            Path dir = Files.createTempDirectory("recorder");
+            try {
+                FlightRecorder recorder = new FlightRecorder(dir);
+                Thread[] writers = new Thread[threads];
+                for (int t = 0; t < threads; t++) {
+                    int drone = t;
+                    writers[t] = new Thread(() -> {
+                        DroneState state = new DroneState();
+                        for (int i = 0; i < each; i++) {
+                            state.x = i;
+                            state.distanceTravelled += 1;
+                            recorder.record(drone, i, ActionType.MOVE, modes[i & 3], state, 1, 0, 0);
+                        }
+                    });
+                }
+                long start = System.nanoTime();
+                for (Thread writer : writers) writer.start();
+                for (Thread writer : writers) writer.join();
+                double writing = (System.nanoTime() - start) / 1e9;
+                recorder.close();
+
+                start = System.nanoTime();
+                long read = 0;
+                double distance = 0;
+                try (FlightReader reader = new FlightReader(dir)) {
+                    while (reader.next()) {
+                        read++;
+                        distance += reader.getDistance();
+                    }
+                }
+                double reading = (System.nanoTime() - start) / 1e9;
+                if (read != (long) threads * each || distance == 0) throw new IllegalStateException("Read " + read + " records");
+                if (round > 0) System.out.printf("%-6d %14.0f %14.0f %10d%n", round, read / writing, read / reading, recorder.getSegmentCount());
+            } finally {
+                delete(dir);
+            }
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.EventLog;
+import no.uio.aeroscript.runtime.Fleet;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.runtime.Replay;
+import no.uio.aeroscript.runtime.Simulator;
+import no.uio.aeroscript.trace.NullSink;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.util.SplittableRandom;
+
+// Records a fleet with messages, then replays it: simulated seconds per wall-clock second for the whole
+// thing, and how long random seeks take with snapshots every so often against none at all
+public class ReplayBenchmark {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int legs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int seeks = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        Trace.setSink(new NullSink());
+        String source = ParseBenchmark.synthetic(legs).replace("on low battery -> Land", "on low battery -> Land on message [hold] -> Hold") + "Hold { ascend by 1 }\n";
+        Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        Fleet.Mission mission = new Fleet.Mission(program);
+
+        EventLog log = new EventLog();
+        Simulator recording = new Simulator(new Fleet());
+        recording.setEventLog(log);
+        SplittableRandom random = new SplittableRandom(1);
+        for (int d = 0; d < size; d++) recording.add(new Fleet.Drone(d, mission, new Point((float) d, 0f), 1e9f, 0f, d), d % 60);
+        for (int d = 0; d < size; d += 3) recording.post(random.nextDouble(100), recording.getFlights().get(d), "hold");
+        recording.run();
+        double end = recording.getTime();
+        System.out.printf("%d drones, %d legs each, %d events in the log, %.0f simulated seconds%n", size, legs, log.size(), end);
+
+        System.out.printf("%-8s %10s %10s %12s %14s %12s%n", "backend", "interval", "snapshots", "full run s", "speedup", "ms/seek");
+        for (int round = 0; round < 2; round++) { // The first round is warm-up
+            for (boolean vm : new boolean[] { false, true }) {
+                for (double interval : new double[] { Double.POSITIVE_INFINITY, 60, 10 }) {
+                    Fleet fleet = new Fleet();
+                    fleet.setVM(vm);
+                    long start = System.nanoTime();
+                    Replay replay = new Replay(fleet, mission, log, interval == Double.POSITIVE_INFINITY ? 1e18 : interval);
+                    replay.run();
+                    double full = (System.nanoTime() - start) / 1e9;
+
+                    SplittableRandom at = new SplittableRandom(2);
+                    start = System.nanoTime();
+                    for (int s = 0; s < seeks; s++) replay.seek(at.nextDouble(end));
+                    double perSeek = (System.nanoTime() - start) / 1e6 / seeks;
+                    if (round > 0) System.out.printf("%-8s %10s %10d %12.3f %14.0f %12.3f%n", vm ? "vm" : "stack",
+                        interval == Double.POSITIVE_INFINITY ? "none" : String.valueOf((int) interval), replay.getSnapshotCount(), full, end / full, perSeek);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.runtime.SeparationMonitor;
+
+import java.util.SplittableRandom;
+
+// Time per tick for drones wandering at the same density as the fleet grows, with the spatial hash
+// and with every pair
+public class SeparationBenchmark {
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        float separation = 5;
+
+        System.out.printf("%-8s %-10s %12s %14s %12s%n", "drones", "check", "ms/tick", "drones/s", "conflicts");
+        for (int round = 0; round < 2; round++) { // The first round is warm-up
+            for (int n : new int[] { 1_000, 10_000, 100_000 }) {
+                float side = (float) Math.sqrt(n) * 20; // One drone per 400 square units
+                float[][] drones = new float[n][3];
+                SplittableRandom random = new SplittableRandom(n);
+                for (float[] drone : drones) {
+                    drone[0] = (float) random.nextDouble(side);
+                    drone[1] = (float) random.nextDouble(side);
+                    drone[2] = (float) random.nextDouble(10);
+                }
+
+                SeparationMonitor monitor = new SeparationMonitor(separation);
+                long conflicts = 0;
+                long start = System.nanoTime();
+                for (int t = 0; t < ticks; t++) {
+                    step(drones, random);
+                    for (int i = 0; i < n; i++) monitor.update(i, drones[i][0], drones[i][1], drones[i][2]);
+                    conflicts += monitor.check(null);
+                }
+                report(n, "hash", ticks, System.nanoTime() - start, conflicts);
+
+                if (n > 10_000) continue; // Would take minutes
+                int pairTicks = Math.max(1, ticks * 1_000 / n / 2);
+                conflicts = 0;
+                start = System.nanoTime();
+                for (int t = 0; t < pairTicks; t++) {
+                    step(drones, random);
+                    conflicts += everyPair(drones, separation);
+                }
+                report(n, "all pairs", pairTicks, System.nanoTime() - start, conflicts);
+            }
+        }
+    }
+
+    private static void step(float[][] drones, SplittableRandom random) {
+        for (float[] drone : drones) {
+            drone[0] += (float) random.nextDouble(-1, 1);
+            drone[1] += (float) random.nextDouble(-1, 1);
+        }
+    }
+
+    private static int everyPair(float[][] drones, float separation) {
+        int found = 0;
+        for (int a = 0; a < drones.length; a++) {
+            for (int b = a + 1; b < drones.length; b++) {
+                float ex = drones[a][0] - drones[b][0], ey = drones[a][1] - drones[b][1], ez = drones[a][2] - drones[b][2];
+                if (ex * ex + ey * ey + ez * ez < separation * separation) found++;
+            }
+        }
+        return found;
+    }
+
+    private static void report(int n, String check, int ticks, long nanos, long conflicts) {
+        double perTick = nanos / 1e6 / ticks;
+        System.out.printf("%-8d %-10s %12.3f %14.0f %12.1f%n", n, check, perTick, n / (perTick / 1e3), (double) conflicts / ticks);
+    }
+}
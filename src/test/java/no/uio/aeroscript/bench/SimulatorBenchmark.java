@@ -0,0 +1,47 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Fleet;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.runtime.Simulator;
+import no.uio.aeroscript.trace.NullSink;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStreams;
+
+// Simulated seconds per wall-clock second for a fleet flying timed missions side by side
+public class SimulatorBenchmark {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int legs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Trace.setSink(new NullSink());
+        Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(ParseBenchmark.synthetic(legs))));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        Fleet.Mission mission = new Fleet.Mission(program);
+
+        System.out.printf("%d drones, %d legs each%n", size, legs);
+        System.out.printf("%-8s %10s %12s %14s %16s %14s%n", "backend", "wall s", "simulated s", "speedup", "drone-s/s", "events/s");
+        for (int i = 0; i < 3; i++) { // The first round is warm-up
+            for (boolean vm : new boolean[] { false, true }) {
+                Fleet fleet = new Fleet();
+                fleet.setVM(vm);
+                Simulator simulator = new Simulator(fleet);
+                for (int d = 0; d < size; d++) simulator.add(new Fleet.Drone(d, mission, new Point((float) d, 0f), 1e9f, 0f, d), d % 60); // Staggered over a minute
+
+                long start = System.nanoTime();
+                simulator.run();
+                double wall = (System.nanoTime() - start) / 1e9;
+                double flown = 0;
+                for (Simulator.Flight flight : simulator.getFlights()) flown += flight.finishedAt - flight.drone.id % 60;
+                System.out.printf("%-8s %10.3f %12.0f %14.0f %16.0f %14.0f%n", vm ? "vm" : "stack", wall, simulator.getTime(),
+                    simulator.getTime() / wall, flown / wall, simulator.getHandled() / wall);
+            }
+        }
+    }
+}
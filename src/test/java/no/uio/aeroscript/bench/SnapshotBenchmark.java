@@ -0,0 +1,87 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.trace.NullSink;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Stack;
+
+// Snapshot and restore against copying a java.util.Stack as deep as the interpreter's, with the stack
+// getting deeper, and what a written snapshot costs in bytes and time
+public class SnapshotBenchmark {
+    public static void main(String[] args) throws IOException {
+        int forks = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Trace.setSink(new NullSink());
+
+        System.out.printf("%-8s %14s %14s %10s %12s %12s%n", "depth", "ns/fork", "ns/copy", "bytes", "us/write", "us/read");
+        for (int round = 0; round < 2; round++) { // The first round is warm-up
+            for (int depth : new int[] { 10, 1_000, 100_000 }) {
+                Interpreter interpreter = newInterpreter();
+                StringBuilder source = new StringBuilder("-> A {");
+                for (int i = 0; i < depth; i++) source.append(" turn by 1");
+                Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source + " }")));
+                new TypeChecker().walk(program);
+                interpreter.setActionListener((action, amount, speed, duration) -> interpreter.pause());
+                interpreter.runProgram(program); // Stops after the first turn, with the rest on the stack
+
+                long start = System.nanoTime();
+                for (int f = 0; f < forks; f++) {
+                    Interpreter.Snapshot snapshot = interpreter.snapshot();
+                    interpreter.restore(snapshot);
+                }
+                double fork = (System.nanoTime() - start) / (double) forks;
+
+                Stack<Statement> stack = new Stack<>();
+                for (int i = 0; i < interpreter.getStackDepth(); i++) stack.push(program);
+                int copies = Math.max(10, forks / Math.max(1, depth));
+                start = System.nanoTime();
+                int sink = 0;
+                for (int c = 0; c < copies; c++) sink += ((Stack<?>) stack.clone()).size();
+                double copy = (System.nanoTime() - start) / (double) copies;
+
+                int writes = Math.max(10, 100_000 / depth);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                start = System.nanoTime();
+                for (int w = 0; w < writes; w++) {
+                    out.reset();
+                    interpreter.writeSnapshot(interpreter.snapshot(), out);
+                }
+                double write = (System.nanoTime() - start) / 1e3 / writes;
+                byte[] bytes = out.toByteArray();
+                start = System.nanoTime();
+                for (int r = 0; r < writes; r++) interpreter.readSnapshot(new ByteArrayInputStream(bytes));
+                double read = (System.nanoTime() - start) / 1e3 / writes;
+
+                if (round > 0 && sink > 0) System.out.printf("%-8d %14.1f %14.1f %10d %12.2f %12.2f%n", interpreter.getStackDepth(), fork, copy, bytes.length, write, read);
+            }
+        }
+    }
+
+    private static Interpreter newInterpreter() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", 1e9f);
+        vars.put("battery level", 1e9f);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        Interpreter interpreter = new Interpreter(heap);
+        interpreter.random.setSeed(1);
+        return interpreter;
+    }
+}
@@ -0,0 +1,102 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.Specializer;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.type.ExpressionType;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// Generic against specialized nodes on deep expressions, boxed and unboxed.
+// Random leaves keep the ConstantFolder out of it, so this is only about dispatch.
+public class SpecializeBenchmark {
+    public static void main(String[] args) {
+        TwoStageParser parser = new TwoStageParser();
+        ASTBuilder astBuilder = new ASTBuilder(null);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // TypeChecker is chatty
+
+        int rounds = 1_000_000;
+        out.printf("%-24s %12s %12s %12s %12s%n", "expression", "generic", "specialized", "unboxed", "specialized");
+        for (int depth : new int[] { 8, 32, 128 }) {
+            for (boolean points : new boolean[] { false, true }) {
+                String source = points ? points(depth) : numbers(depth);
+                Node generic = build(parser, astBuilder, source);
+                Node specialized = new Specializer().specialize(build(parser, astBuilder, source));
+
+                for (int i = 0; i < 3; i++) { // Warm-up
+                    boxed(generic, rounds);
+                    boxed(specialized, rounds);
+                    unboxed(generic, rounds);
+                    unboxed(specialized, rounds);
+                }
+                out.printf("%-24s %12.2f %12.2f %12.2f %12.2f%n", (points ? "points" : "numbers") + ", depth " + depth,
+                    boxed(generic, rounds), boxed(specialized, rounds), unboxed(generic, rounds), unboxed(specialized, rounds));
+            }
+        }
+        System.setOut(out);
+    }
+
+    private static Node build(TwoStageParser parser, ASTBuilder astBuilder, String source) {
+        Node node = astBuilder.visitExpression(parser.parseExpression(CharStreams.fromString(source)));
+        new TypeChecker().walk(node);
+        return node;
+    }
+
+    // random[0, 1] + (random[0, 2] * (random[0, 3] - (...)))
+    static String numbers(int depth) {
+        String[] operators = { " + ", " * ", " - " };
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("(random[0, ").append(i % 9 + 1).append("]").append(operators[i % 3]);
+        }
+        sb.append("--random");
+        sb.append(")".repeat(depth));
+        return sb.toString();
+    }
+
+    // point (random, 1) + (point (random, 2) - (... * 3))
+    static String points(int depth) {
+        String[] operators = { " + ", " - ", " * " };
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("(point (random, ").append(i % 9 + 1).append(")").append(operators[i % 3]);
+        }
+        sb.append("--point (random, random)");
+        sb.append(")".repeat(depth));
+        return sb.toString();
+    }
+
+    private static double boxed(Node node, int rounds) {
+        int sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += node.evaluate().hashCode();
+        }
+        long time = System.nanoTime() - start;
+        if (sink == 42) System.out.println(); // Keep the loop alive
+        return (double) time / rounds;
+    }
+
+    private static double unboxed(Node node, int rounds) {
+        float[] point = new float[2];
+        float sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            if (node.resultType == ExpressionType.POINT) {
+                node.evaluatePoint(point);
+                sink += point[0];
+            } else {
+                sink += node.evaluateFloat();
+            }
+        }
+        long time = System.nanoTime() - start;
+        if (sink == 42) System.out.println();
+        return (double) time / rounds;
+    }
+}
@@ -0,0 +1,75 @@
+package no.uio.aeroscript.bench;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.trace.ConsoleSink;
+import no.uio.aeroscript.trace.NullSink;
+import no.uio.aeroscript.trace.RingBufferSink;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.trace.TraceSink;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+// A long chained mission with each sink, written to a temporary file like a batch run would.
+// The level is fixed per JVM, so run it again with -Daeroscript.trace=off to see the cost of no tracing at all.
+public class TraceBenchmark {
+    public static void main(String[] args) throws IOException {
+        String source = ParseBenchmark.synthetic(2000);
+        Path file = Files.createTempFile("trace", ".log");
+        PrintStream out = System.out;
+        try (PrintStream log = new PrintStream(new FileOutputStream(file.toFile()), false)) {
+            System.setOut(log);
+            out.printf("level %s%n%-10s %10s%n", Trace.LEVEL, "sink", "ms/run");
+            for (int i = 0; i < 4; i++) { // The first ones are warm-up
+                for (String name : new String[] { "console", "ring", "none" }) {
+                    TraceSink sink = switch (name) {
+                        case "console" -> new ConsoleSink();
+                        case "ring" -> new RingBufferSink(new FileOutputStream(file.toFile(), true), 1 << 16);
+                        default -> new NullSink();
+                    };
+                    TraceSink old = Trace.setSink(sink);
+                    long start = System.nanoTime();
+                    run(source);
+                    double ms = (System.nanoTime() - start) / 1e6;
+                    Trace.setSink(old);
+                    sink.close();
+                    out.printf("%-10s %10.2f%n", name, ms);
+                }
+            }
+        } finally {
+            System.setOut(out);
+            Files.delete(file);
+        }
+    }
+
+    private static void run(String source) {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", 1e9f);
+        vars.put("battery level", 1e9f);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        Interpreter interpreter = new Interpreter(heap);
+        Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        interpreter.runProgram(program);
+    }
+}
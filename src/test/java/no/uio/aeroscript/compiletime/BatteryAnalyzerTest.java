@@ -0,0 +1,121 @@
+package no.uio.aeroscript.compiletime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.error.BatteryError;
+import no.uio.aeroscript.runtime.Fleet;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Point;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class BatteryAnalyzerTest {
+    private Execution program(String source) {
+        Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        return program;
+    }
+
+    private static BatteryAnalyzer analyzer(float battery) {
+        return new BatteryAnalyzer(new Point(3f, 4f), battery, 0f);
+    }
+
+    @Test
+    void bounds() {
+        // 5 + 27 + 6, then [5, 10], 2.1 for turning 7 left, [14, 21] back to the start and 2 down
+        Execution program = program("-> A { move by 10 turn by 90 ascend by 10 } -> B\n"
+            + "B { move by random [10, 20] turn by -- 10 + 3 return to base descend to ground }");
+        BatteryAnalyzer analyzer = analyzer(1000f);
+        assertEquals(BatteryAnalyzer.Verdict.FEASIBLE, analyzer.analyze(program));
+        assertArrayEquals(new float[] { 38f, 38f }, analyzer.getBounds("A"), 1e-3f);
+        float[] b = analyzer.getBounds("B");
+        assertEquals(5f + 2.1f + 14f + 2f, b[0], 1e-3f); // Back from somewhere between 20 and 30 away
+        assertEquals(10f + 2.1f + 21f + 2f, b[1], 1e-3f);
+        assertEquals(38f + b[0], analyzer.getLowest(), 1e-3f);
+        assertEquals(38f + b[1], analyzer.getHighest(), 1e-3f);
+        assertEquals(1, analyzer.getPathCount());
+    }
+
+    @Test
+    void rejects() {
+        Execution program = program("-> A { move by 100 ascend by 50 } -> B\nB { turn by 10 }");
+        assertEquals(BatteryAnalyzer.Verdict.FEASIBLE, analyzer(84f).analyze(program));
+        assertEquals(BatteryAnalyzer.Verdict.UNKNOWN, analyzer(40f).analyze(program("-> A { move by random [0, 100] }")));
+        BatteryAnalyzer analyzer = analyzer(79f);
+        BatteryError e = assertThrows(BatteryError.class, () -> analyzer.check(program));
+        assertTrue(e.getMessage().contains("SCEND 2 in A needs at least 30.00 battery, but there is at most 29.00 left."), e.getMessage());
+        assertNull(analyzer.getBounds("A")); // Never got to the end of it
+    }
+
+    @Test
+    void followsLowBattery() {
+        // 50 - 35 leaves 15, so the turn sets off the reaction, and lands instead of the last move
+        String source = "-> A { move by 70 turn by 10 move by 70 %s } -> B\nB { move by 1 }\nLand { descend to ground }";
+        assertEquals(BatteryAnalyzer.Verdict.INFEASIBLE, analyzer(50f).analyze(program(String.format(source, ""))));
+        BatteryAnalyzer analyzer = analyzer(50f);
+        assertEquals(BatteryAnalyzer.Verdict.FEASIBLE, analyzer.analyze(program(String.format(source, "on low battery -> Land"))));
+        assertArrayEquals(new float[] { 0f, 0f }, analyzer.getBounds("Land"));
+        assertNull(analyzer.getBounds("B"));
+
+        // Might or might not be low after a random move, so both
+        analyzer = analyzer(50f);
+        analyzer.analyze(program("-> A { move by random [20, 120] turn by 10 on low battery -> Land } -> B\nB { move by 1 }\nLand { descend to ground }"));
+        assertEquals(BatteryAnalyzer.Verdict.UNKNOWN, analyzer.getVerdict()); // Over 100 away it can't make the move
+        assertNotNull(analyzer.getBounds("B"));
+        assertNotNull(analyzer.getBounds("Land"));
+        assertTrue(analyzer.getPathCount() > 1);
+    }
+
+    @Test
+    void loops() {
+        assertEquals(BatteryAnalyzer.Verdict.INFEASIBLE, analyzer(100f).analyze(program("-> A { move by 10 } -> A")));
+        assertEquals(BatteryAnalyzer.Verdict.FEASIBLE, analyzer(100f).analyze(program("-> A { move by 10 on low battery -> Land } -> A\nLand { descend to ground }")));
+        BatteryAnalyzer analyzer = analyzer(100f);
+        assertEquals(BatteryAnalyzer.Verdict.UNKNOWN, analyzer.analyze(program("-> A { turn by 0 } -> A")));
+        assertEquals(BatteryAnalyzer.MAX_STEPS + 1, analyzer.getStepCount());
+    }
+
+    // Whatever it says, flying it has to agree
+    @Test
+    void agreesWithFlying() throws InterruptedException {
+        String[] missions = {
+            "-> A { move by random [5, 40] turn by random [-90, 90] ascend by random [1, 20] at speed 2 } -> B\nB { move to point (random [-30, 30], 10) return to base descend to ground }",
+            "-> A { move by random [10, 30] at speed random [0, 3] ascend by random [0, 10] descend to ground on low battery -> Land } -> A\nLand { descend to ground move by 1 }",
+            "-> A { ascend by 40 move by random [-50, 50] * 2 turn by random [0, 360] } -> B\n-> B { move to point (random [0, 100], random [0, 100]) }\nB { descend by random [0, 40] return to base }",
+            "-> A { move by 30 for 20 seconds turn by random [0, 200] on low battery -> B } -> A\nB { move by 5 } -> A",
+        };
+        for (String source : missions) {
+            Execution program = program(source);
+            Fleet.Mission mission = new Fleet.Mission(program);
+            for (float battery : new float[] { 15f, 40f, 80f, 130f, 250f, 600f }) {
+                BatteryAnalyzer analyzer = analyzer(battery);
+                BatteryAnalyzer.Verdict verdict = analyzer.analyze(program);
+                for (int backend = 0; backend < 3; backend++) {
+                    Fleet fleet = new Fleet();
+                    fleet.setCompiled(backend == 1);
+                    fleet.setVM(backend == 2);
+                    List<Fleet.Drone> drones = new ArrayList<>();
+                    for (int i = 0; i < 200; i++) drones.add(new Fleet.Drone(i, mission, new Point(3f, 4f), battery, 0f, i));
+                    fleet.fly(drones, Executors.newSingleThreadExecutor());
+                    for (Fleet.Drone drone : drones) {
+                        String what = source + " with " + battery + " on backend " + backend + ": " + verdict + ", " + drone.failure;
+                        if (verdict == BatteryAnalyzer.Verdict.INFEASIBLE) assertNotNull(drone.failure, what);
+                        if (verdict == BatteryAnalyzer.Verdict.FEASIBLE) assertNull(drone.failure, what);
+                        if (drone.failure != null) continue;
+                        float used = battery - drone.state.batteryLevel;
+                        assertTrue(used >= analyzer.getLowest() && used <= analyzer.getHighest(), used + " outside " + analyzer.getLowest() + " to " + analyzer.getHighest() + " for " + what);
+                    }
+                }
+            }
+        }
+    }
+}
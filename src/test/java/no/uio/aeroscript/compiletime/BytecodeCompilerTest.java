@@ -0,0 +1,96 @@
+package no.uio.aeroscript.compiletime;
+
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Differential tests: every program has to end in exactly the same state on both backends
+class BytecodeCompilerTest {
+    private static final Path resources = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources");
+
+    private Interpreter newInterpreter() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(3f, 7f));
+        vars.put("current position", new Point(3f, 7f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", 10000f);
+        vars.put("battery level", 10000f);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        return new Interpreter(heap);
+    }
+
+    private String run(String name, boolean compiled, String... messages) throws IOException {
+        Interpreter interpreter = newInterpreter();
+        Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(SourceLoader.load(resources.resolve(name))));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        if (compiled) new BytecodeCompiler().compile(program);
+
+        interpreter.random.setSeed(42);
+        String failure = "";
+        try {
+            if (messages.length == 0) {
+                interpreter.runProgram(program);
+            } else {
+                interpreter.runProgramREPL(program);
+                for (String message : messages) interpreter.receiveMessage(message);
+            }
+        } catch (RuntimeException e) {
+            failure = e.getMessage();
+        }
+        return interpreter.getCurrentPosition() + " " + interpreter.getAltitude() + " "
+            + interpreter.getBatteryLevel() + " " + interpreter.getDistanceTravelled() + " " + failure;
+    }
+
+    private void assertSameResult(String name, String... messages) throws IOException {
+        assertEquals(run(name, false, messages), run(name, true, messages), name);
+    }
+
+    @Test
+    void matchesTreeWalker() throws IOException {
+        assertSameResult("program.aero");
+        assertSameResult("fancytypes.aero");
+        assertSameResult("recursetocrash.aero");
+        assertSameResult("reactions.aero", "go_short", "go_short", "go_home");
+        assertSameResult("test.aero", "launch");
+        assertSameResult("test2.aero", "start_tour", "end_tour");
+    }
+
+    @Test
+    void replacesActions() throws IOException {
+        Execution program = new ASTBuilder(newInterpreter()).visitProgram(new TwoStageParser().parseProgram(SourceLoader.load(resources.resolve("fancytypes.aero"))));
+        new TypeChecker().walk(program);
+        String before = program.executions.get("TakeOff").statements[1].toString();
+
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        compiler.compile(program);
+        assertTrue(compiler.getCompiledCount() > 0);
+        for (Execution execution : program.executions.values()) {
+            for (Statement statement : execution.statements) {
+                assertFalse(statement instanceof Action, statement.toString());
+            }
+        }
+        Statement compiled = program.executions.get("TakeOff").statements[1];
+        assertTrue(compiled.getClass().isHidden());
+        assertEquals(before, compiled.toString());
+    }
+
+    @Test
+    void needsTypes() throws IOException {
+        Execution program = new ASTBuilder(newInterpreter()).visitProgram(new TwoStageParser().parseProgram(SourceLoader.load(resources.resolve("program.aero"))));
+        assertThrows(IllegalStateException.class, () -> new BytecodeCompiler().compile(program));
+    }
+}
@@ -0,0 +1,92 @@
+package no.uio.aeroscript.compiletime;
+
+import no.uio.aeroscript.ast.expr.BinaryNode;
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.expr.Variable;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstantFolderTest {
+    private final TwoStageParser parser = new TwoStageParser();
+    private final ASTBuilder astBuilder = new ASTBuilder(null);
+
+    private Node expression(String source) {
+        Node node = astBuilder.visitExpression(parser.parseExpression(CharStreams.fromString(source)));
+        new TypeChecker().walk(node);
+        return node;
+    }
+
+    @Test
+    void foldsNumbers() {
+        Node folded = new ConstantFolder().fold(expression("2 + (14 - (-- 3 + 5))"));
+        assertEquals(ExpressionType.NUMBER, folded.type);
+        assertEquals(14.0f, folded.evaluate());
+    }
+
+    @Test
+    void foldsPoints() {
+        Node folded = new ConstantFolder().fold(expression("point (10*3, 5+5) - 2"));
+        assertInstanceOf(UnaryNode.class, folded);
+        assertEquals(ExpressionType.POINT, folded.type);
+        Point point = (Point) folded.evaluate();
+        assertEquals(28f, point.getX());
+        assertEquals(8f, point.getY());
+    }
+
+    @Test
+    void keepsRandom() {
+        Node folded = new ConstantFolder().fold(expression("point (--random[0, 2*50], 3+4)"));
+        assertEquals(ExpressionType.POINT, folded.type);
+        BinaryNode point = (BinaryNode) folded;
+        assertEquals(ExpressionType.NEG, point.left.type);
+        BinaryNode random = (BinaryNode) ((UnaryNode) point.left).data;
+        assertEquals(ExpressionType.RANDOM, random.type);
+        assertEquals(100f, random.right.evaluate());
+        assertEquals(7f, point.right.evaluate());
+    }
+
+    @Test
+    void simplifiesIdentities() {
+        Node variable = new UnaryNode(ExpressionType.VARIABLE, new Variable(null, "altitude"));
+        Node one = new UnaryNode(ExpressionType.NUMBER, 1f);
+        Node zero = new UnaryNode(ExpressionType.NUMBER, 0f);
+        ConstantFolder folder = new ConstantFolder();
+
+        assertSame(variable, folder.fold(new BinaryNode(ExpressionType.TIMES, variable, one)));
+        assertSame(variable, folder.fold(new BinaryNode(ExpressionType.TIMES, one, variable)));
+        assertSame(variable, folder.fold(new BinaryNode(ExpressionType.PLUS, variable, zero)));
+        assertSame(variable, folder.fold(new BinaryNode(ExpressionType.PLUS, zero, variable)));
+        assertSame(variable, folder.fold(new BinaryNode(ExpressionType.MINUS, variable, zero)));
+        assertEquals(ExpressionType.MINUS, folder.fold(new BinaryNode(ExpressionType.MINUS, zero, variable)).type);
+        assertSame(variable, folder.fold(new UnaryNode(ExpressionType.NEG, new UnaryNode(ExpressionType.NEG, variable))));
+        assertSame(variable, folder.fold(new BinaryNode(ExpressionType.TIMES, variable, new BinaryNode(ExpressionType.MINUS, one, zero))));
+    }
+
+    @Test
+    void foldsProgram() throws IOException {
+        Execution program = astBuilder.visitProgram(parser.parseProgram(SourceLoader.load(Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources", "fancytypes.aero"))));
+        TypeChecker typeChecker = new TypeChecker();
+        typeChecker.walk(program);
+
+        ConstantFolder folder = new ConstantFolder();
+        folder.fold(program);
+        assertTrue(folder.getNodesAfter() < folder.getNodesBefore());
+        typeChecker.walk(program); // Still well-typed
+
+        Action move = (Action) program.executions.get("TakeOff").statements[1];
+        assertEquals(ExpressionType.POINT, move.data.type);
+        assertEquals(20f, ((Point) move.data.evaluate()).getX());
+        Action descend = (Action) program.executions.get("Explore").statements[7];
+        assertEquals(-14f, descend.data.evaluate());
+    }
+}
@@ -0,0 +1,79 @@
+package no.uio.aeroscript.compiletime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.error.ResolutionError;
+import no.uio.aeroscript.error.TypeError;
+import no.uio.aeroscript.runtime.Fleet;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Point;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class ExecutionPrunerTest {
+    private Execution build(String source) {
+        return new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+    }
+
+    private static final String LIBRARY = "-> A { move by 10 on low battery -> Land } -> B\n"
+        + "B { turn by 90 on message [home] -> Home }\n"
+        + "-> C { ascend by 5 }\n"
+        + "Land { descend to ground }\n"
+        + "Home { return to base } -> Land\n"
+        + "Unused { turn by point (1, 2) on message [x] -> AlsoUnused } -> Missing\n" // Wouldn't type check
+        + "AlsoUnused { move by 1 } -> Unused";
+
+    @Test
+    void dropsUnreachable() {
+        Execution program = build(LIBRARY);
+        assertThrows(TypeError.class, () -> new TypeChecker().walk(program));
+
+        ExecutionPruner pruner = new ExecutionPruner();
+        pruner.prune(program);
+        assertEquals(Set.of("A", "B", "C", "Land", "Home"), program.executions.keySet());
+        assertEquals(Set.of("Unused", "AlsoUnused"), Set.copyOf(pruner.getRemoved()));
+        assertEquals(5, pruner.getReachableCount());
+        assertEquals(List.of("B", "Land"), pruner.getGraph().get("A"));
+        assertEquals(List.of("Land"), pruner.getGraph().get("Home"));
+        assertFalse(pruner.getGraph().containsKey("Unused"));
+        new TypeChecker().walk(program);
+    }
+
+    @Test
+    void reportsUnresolved() {
+        Execution program = build("-> A { move by 1 on low battery -> Gone on message [x] -> Lost } -> Nowhere\nNowhere2 { move by 1 } -> Also");
+        ResolutionError e = assertThrows(ResolutionError.class, () -> new ExecutionPruner().prune(program));
+        assertTrue(e.getMessage().contains("A chains to Nowhere, which is not defined."), e.getMessage());
+        assertTrue(e.getMessage().contains("A reacts to low battery with Gone, which is not defined."), e.getMessage());
+        assertTrue(e.getMessage().contains("A reacts to message [x] with Lost, which is not defined."), e.getMessage());
+        assertFalse(e.getMessage().contains("Also"), e.getMessage()); // Can't run, so it doesn't matter
+        assertEquals(2, program.executions.size()); // Nothing dropped when it fails
+    }
+
+    // Flies the same with and without what can't be reached
+    @Test
+    void sameFlight() throws InterruptedException {
+        String source = LIBRARY.replace("turn by point (1, 2)", "turn by 1");
+        List<String> flights = new ArrayList<>();
+        for (boolean prune : new boolean[] { false, true }) {
+            Execution program = build(source);
+            if (prune) new ExecutionPruner().prune(program);
+            new TypeChecker().walk(program);
+            Fleet.Mission mission = new Fleet.Mission(program);
+            List<Fleet.Drone> drones = new ArrayList<>();
+            for (float battery : new float[] { 10f, 25f, 100f }) drones.add(new Fleet.Drone(drones.size(), mission, new Point(1f, 2f), battery, 0f, 1));
+            new Fleet().fly(drones, Executors.newSingleThreadExecutor());
+            flights.add(drones.toString());
+        }
+        assertEquals(flights.get(0), flights.get(1));
+    }
+}
@@ -0,0 +1,205 @@
+package no.uio.aeroscript.compiletime;
+
+import no.uio.aeroscript.Main;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.error.GeofenceError;
+import no.uio.aeroscript.error.TypeError;
+import no.uio.aeroscript.runtime.Fleet;
+import no.uio.aeroscript.runtime.Geofence;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class LazyExecutionTest {
+    private static final Path resources = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources");
+
+    private static final String MISSION = "-> Out { ascend by 10 move by random [5, 15] turn by 2 * 5 on message [abort] -> Home on low battery -> Land } -> Back\n"
+        + "Back { move by --10 descend by 5 }\n"
+        + "Home { return to base descend to ground }\n"
+        + "Land { descend to ground }";
+
+    private Interpreter newInterpreter(float battery) {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(3f, 7f));
+        vars.put("current position", new Point(3f, 7f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", battery);
+        vars.put("battery level", battery);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        return new Interpreter(heap);
+    }
+
+    // Checked and folded like Main does, for the lazy bodies when they are built
+    private Execution build(Interpreter interpreter, String source, boolean lazy, AtomicInteger built) {
+        ASTBuilder builder = new ASTBuilder(interpreter);
+        builder.setLazy(lazy);
+        builder.setBodyPass((id, body) -> {
+            built.incrementAndGet();
+            for (Statement statement : body) {
+                new TypeChecker().walk(statement);
+                new ConstantFolder().fold(statement);
+            }
+            return body;
+        });
+        Execution program = builder.visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        return program;
+    }
+
+    private String run(Execution program, Interpreter interpreter, String... messages) {
+        interpreter.random.setSeed(42);
+        String failure = "";
+        try {
+            if (messages.length == 0) {
+                interpreter.runProgram(program);
+            } else {
+                interpreter.runProgramREPL(program);
+                for (String message : messages) interpreter.receiveMessage(message);
+            }
+        } catch (RuntimeException e) {
+            failure = e.getMessage();
+        }
+        return interpreter.getCurrentPosition() + " " + interpreter.getAltitude() + " "
+            + interpreter.getBatteryLevel() + " " + interpreter.getDistanceTravelled() + " " + failure;
+    }
+
+    @Test
+    void buildsOnFirstEntry() {
+        for (float battery : new float[] { 1000f, 25f }) { // Low right after going up
+            Interpreter eager = newInterpreter(battery);
+            String expected = run(build(eager, MISSION, false, new AtomicInteger()), eager);
+
+            Interpreter interpreter = newInterpreter(battery);
+            AtomicInteger built = new AtomicInteger();
+            Execution program = build(interpreter, MISSION, true, built);
+            assertEquals(0, built.get());
+            for (Execution execution : program.executions.values()) {
+                assertFalse(execution.isMaterialized());
+                assertEquals(0, execution.statements.length);
+            }
+            assertEquals("Home", program.executions.get("Out").messages.get("abort")); // The tables are there already
+            assertEquals("Land", program.executions.get("Out").reactions.get("low battery"));
+
+            assertEquals(expected, run(program, interpreter));
+            assertTrue(program.executions.get("Out").isMaterialized());
+            assertFalse(program.executions.get("Home").isMaterialized()); // Never told to abort
+            assertEquals(2, built.get()); // Out, then Back or Land
+            assertEquals(battery > 100, program.executions.get("Back").isMaterialized());
+            assertEquals(battery <= 100, program.executions.get("Land").isMaterialized());
+        }
+    }
+
+    @Test
+    void sameWithMessages() throws IOException {
+        for (String[] messages : new String[][] { {}, { "go_short" }, { "go_short", "go_short", "go_home" } }) {
+            String source = Files.readString(resources.resolve("reactions.aero"));
+            Interpreter eager = newInterpreter(10000f);
+            Interpreter lazy = newInterpreter(10000f);
+            assertEquals(run(build(eager, source, false, new AtomicInteger()), eager, messages),
+                run(build(lazy, source, true, new AtomicInteger()), lazy, messages), String.join(", ", messages));
+        }
+    }
+
+    @Test
+    void checksOnEntry() {
+        Interpreter interpreter = newInterpreter(1000f);
+        Execution program = build(interpreter, "-> A { ascend by 1 on message [x] -> Bad }\nBad { turn by point (1, 2) }", true, new AtomicInteger());
+        Execution bad = program.executions.get("Bad");
+        assertThrows(TypeError.class, bad::materialize); // Not before
+        assertFalse(bad.isMaterialized()); // And again next time
+        assertThrows(TypeError.class, bad::materialize);
+    }
+
+    // The check over the program sees lazy bodies empty, so Main checks each one as it is built,
+    // before compiling it: compiled statements aren't Actions any more
+    @Test
+    void fencesOnEntry() {
+        Geofence geofence = new Geofence();
+        geofence.addAllowed(0, 0, 100, 0, 100, 100, 0, 100);
+        geofence.addNoFly(40, 40, 60, 40, 60, 60, 40, 60);
+        geofence.build();
+        for (boolean compiled : new boolean[] { false, true }) {
+            ASTBuilder builder = new ASTBuilder(newInterpreter(1000f));
+            builder.setLazy(true);
+            builder.setBodyPass(Main.bodyPass(compiled, geofence));
+            Execution program = builder.visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(
+                "-> A { move to point (10, 10) on message [x] -> Far }\nFar { move to point (2 * 25, 50) }")));
+            new TypeChecker().walk(program);
+            new ConstantFolder().fold(program);
+            new GeofenceChecker(geofence).check(program); // Nothing to see yet
+
+            program.executions.get("A").materialize();
+            GeofenceError error = assertThrows(GeofenceError.class, program.executions.get("Far")::materialize);
+            assertEquals("Move to (50.0, 50.0) in Far is in a no-fly zone.", error.getMessage(), "compiled " + compiled);
+        }
+    }
+
+    // Everyone waits for the one building it, and gets the same statements
+    @Test
+    void buildsOnce() throws Exception {
+        Interpreter interpreter = newInterpreter(1000f);
+        AtomicInteger built = new AtomicInteger();
+        Execution program = build(interpreter, MISSION, true, built);
+        Execution home = program.executions.get("Home");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<Statement[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> {
+                    go.await();
+                    return home.materialize();
+                }));
+            }
+            go.countDown();
+            for (Future<Statement[]> result : results) {
+                assertSame(results.get(0).get(), result.get());
+                assertEquals(2, result.get().length);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, built.get());
+    }
+
+    // Anything that needs the whole program builds what's left
+    @Test
+    void flyingCopiesBuildEverything() throws InterruptedException {
+        Execution program = build(newInterpreter(1000f), MISSION, true, new AtomicInteger());
+        Fleet.Mission mission = new Fleet.Mission(program);
+        for (Execution execution : program.executions.values()) assertTrue(execution.isMaterialized(), execution.id);
+
+        List<String> flights = new ArrayList<>();
+        for (Fleet.Mission flown : new Fleet.Mission[] { mission, new Fleet.Mission(build(newInterpreter(1000f), MISSION, false, new AtomicInteger())) }) {
+            List<Fleet.Drone> drones = new ArrayList<>();
+            for (int i = 0; i < 4; i++) drones.add(new Fleet.Drone(i, flown, new Point(0f, 0f), 30f + 20 * i, 0f, i));
+            new Fleet().fly(drones, Executors.newSingleThreadExecutor());
+            flights.add(drones.toString());
+        }
+        assertEquals(flights.get(1), flights.get(0));
+    }
+}
@@ -0,0 +1,144 @@
+package no.uio.aeroscript.compiletime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MissionCacheTest {
+    private static final Path resources = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources");
+
+    private Interpreter newInterpreter() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", 10000f);
+        vars.put("battery level", 10000f);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        return new Interpreter(heap);
+    }
+
+    private Execution build(Path file, Interpreter interpreter) throws IOException {
+        Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(SourceLoader.load(file)));
+        new TypeChecker().walk(program);
+        return program;
+    }
+
+    private Execution roundTrip(Execution program, byte[] hash, Interpreter interpreter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MissionCache.write(program, hash, out);
+        return MissionCache.read(new ByteArrayInputStream(out.toByteArray()), hash, interpreter);
+    }
+
+    private void assertSameProgram(Execution expected, Execution actual) {
+        assertEquals(expected.executions.keySet(), actual.executions.keySet());
+        assertEquals(Arrays.toString(expected.statements), Arrays.toString(actual.statements));
+        for (String id : expected.executions.keySet()) {
+            Execution e = expected.executions.get(id);
+            Execution a = actual.executions.get(id);
+            assertEquals(e.prefix, a.prefix);
+            assertEquals(e.next, a.next);
+            assertEquals(Arrays.toString(e.statements), Arrays.toString(a.statements));
+            assertEquals(e.reactions, a.reactions);
+            assertEquals(e.messages, a.messages);
+        }
+    }
+
+    @Test
+    void roundTripsResources() throws IOException {
+        for (String name : new String[] { "program.aero", "fancytypes.aero", "reactions.aero", "test.aero", "test2.aero" }) {
+            Path file = resources.resolve(name);
+            Interpreter interpreter = newInterpreter();
+            Execution program = build(file, interpreter);
+            assertSameProgram(program, roundTrip(program, MissionCache.hash(file), newInterpreter()));
+        }
+    }
+
+    @Test
+    void rebuildsVariables() throws IOException {
+        Path file = resources.resolve("reactions.aero");
+        Interpreter interpreter = newInterpreter();
+        Execution program = roundTrip(build(file, newInterpreter()), MissionCache.hash(file), interpreter);
+
+        interpreter.runProgramREPL(program);
+        interpreter.receiveMessage("go_short");
+        interpreter.receiveMessage("go_short");
+        assertEquals(40f, interpreter.getCurrentPosition().getX());
+        assertEquals(40f, interpreter.getAltitude());
+        interpreter.receiveMessage("go_home"); // return to base
+        assertEquals(0f, interpreter.getCurrentPosition().getX());
+        assertEquals(0f, interpreter.getCurrentPosition().getY());
+    }
+
+    @Test
+    void rejectsStaleHash() throws IOException {
+        Path file = resources.resolve("program.aero");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MissionCache.write(build(file, newInterpreter()), MissionCache.hash(file), out);
+        byte[] otherHash = MissionCache.hash("-> A { ascend by 1 }".getBytes());
+        assertNull(MissionCache.read(new ByteArrayInputStream(out.toByteArray()), otherHash, newInterpreter()));
+    }
+
+    @Test
+    void storesNextToSource() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        Path file = dir.resolve("mission.aero");
+        Files.copy(resources.resolve("test.aero"), file);
+        try {
+            assertNull(MissionCache.load(file, newInterpreter()));
+            MissionCache.store(file, build(file, newInterpreter()));
+            assertTrue(Files.exists(dir.resolve("mission.aeroc")));
+            assertNotNull(MissionCache.load(file, newInterpreter()));
+
+            Files.writeString(file, "-> Changed { ascend by 1 }");
+            assertNull(MissionCache.load(file, newInterpreter()));
+        } finally {
+            Files.deleteIfExists(dir.resolve("mission.aeroc"));
+            Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+
+    // Bad counts and ordinals past the hash are a miss too, not a crash
+    @Test
+    void ignoresDamage() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        Path file = dir.resolve("mission.aero");
+        Path cache = dir.resolve("mission.aeroc");
+        Files.writeString(file, "-> A { ascend by 1 }");
+        try {
+            MissionCache.store(file, build(file, newInterpreter()));
+            byte[] good = Files.readAllBytes(cache);
+            // Header is 38 bytes, then the execution count, "A", prefix, no next, the action count,
+            // the action type, and the node type and its checked type
+            int[][] damage = { { 38, -1 }, { 38, 0x7f }, { 47, -1 }, { 47, 0x7f }, { 51, 100 }, { 52, -3 }, { 53, 77 } };
+            for (int[] d : damage) {
+                byte[] bad = good.clone();
+                bad[d[0]] = (byte) d[1];
+                Files.write(cache, bad);
+                assertNull(MissionCache.load(file, newInterpreter()), d[0] + " = " + d[1]);
+            }
+            Files.write(cache, good);
+            assertNotNull(MissionCache.load(file, newInterpreter()));
+        } finally {
+            Files.deleteIfExists(cache);
+            Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package no.uio.aeroscript.compiletime;
+
+import no.uio.aeroscript.antlr.AeroScriptParser;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.runtime.Interpreter;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceLoaderTest {
+    private static final Path programAero = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources", "program.aero");
+
+    @Test
+    void matchesStringStream() throws IOException {
+        CharStream mapped = SourceLoader.load(programAero);
+        CharStream string = CharStreams.fromString(Files.readString(programAero));
+        assertEquals(string.size(), mapped.size());
+        for (int i = 0; i <= string.size(); i++) {
+            assertEquals(string.LA(1), mapped.LA(1));
+            if (mapped.LA(1) != IntStream.EOF) {
+                mapped.consume();
+                string.consume();
+            }
+        }
+        assertEquals(string.getText(Interval.of(3, 12)), mapped.getText(Interval.of(3, 12)));
+    }
+
+    @Test
+    void fallsBackForNonAscii() throws IOException {
+        Path file = Files.createTempFile("nonascii", ".aero");
+        try {
+            Files.writeString(file, "// F\u00f8rste tur\n-> A { ascend by 2 }");
+            CharStream stream = SourceLoader.load(file);
+            assertEquals('F', stream.LA(4));
+            assertEquals('\u00f8', stream.LA(5));
+            assertEquals(1, new TwoStageParser().parseProgram(stream).execution().size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void unbufferedBuildsSameProgram() throws IOException {
+        TwoStageParser parser = new TwoStageParser();
+        Execution buffered = new ASTBuilder(new Interpreter(null)).visitProgram(parser.parseProgram(SourceLoader.load(programAero)));
+
+        parser.setUnbuffered(true);
+        AeroScriptParser.ProgramContext ctx = parser.parseProgram(SourceLoader.load(programAero));
+        assertEquals(TwoStageParser.Stage.SLL, parser.getLastStage());
+        Execution unbuffered = new ASTBuilder(new Interpreter(null)).visitProgram(ctx);
+
+        assertEquals(buffered.executions.keySet(), unbuffered.executions.keySet());
+        for (String id : buffered.executions.keySet()) {
+            assertEquals(buffered.executions.get(id).statements.length, unbuffered.executions.get(id).statements.length);
+        }
+    }
+}
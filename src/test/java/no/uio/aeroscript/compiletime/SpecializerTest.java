@@ -0,0 +1,104 @@
+package no.uio.aeroscript.compiletime;
+
+import no.uio.aeroscript.ast.expr.BinaryNode;
+import no.uio.aeroscript.ast.expr.Node;
+import no.uio.aeroscript.ast.expr.Specialized;
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.expr.Variable;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.runtime.Interpreter;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Point;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpecializerTest {
+    private final TwoStageParser parser = new TwoStageParser();
+    private final Interpreter interpreter = new Interpreter(null); // Only for random
+    private final ASTBuilder astBuilder = new ASTBuilder(interpreter);
+
+    private static final String[] expressions = {
+        "2 + (14 - (-- 3 + 5))",
+        "point (10*3, 5+5) - 2",
+        "point (--random[0, 100], random[0, 100]) * (2 * 1)",
+        "--point (3+51, 9+random[77, 100])",
+        "point (1, 2) * point (3, random[4, 5]) + point (random, 1)",
+        "point (random[2, 3], 1) * random",
+    };
+
+    private Node expression(String source) {
+        Node node = astBuilder.visitExpression(parser.parseExpression(CharStreams.fromString(source)));
+        new TypeChecker().walk(node);
+        return node;
+    }
+
+    @Test
+    void evaluatesLikeGeneric() {
+        float[] generic = new float[2];
+        float[] special = new float[2];
+        for (String source : expressions) {
+            Node node = expression(source);
+            Node specialized = new Specializer().specialize(expression(source));
+            assertNotSame(BinaryNode.class, specialized.getClass(), source);
+
+            for (int i = 0; i < 100; i++) {
+                interpreter.random.setSeed(i);
+                Object expected = node.evaluate();
+                interpreter.random.setSeed(i);
+                assertEquals(expected.toString(), specialized.evaluate().toString(), source);
+
+                interpreter.random.setSeed(i);
+                if (node.resultType == ExpressionType.POINT) node.evaluatePoint(generic);
+                else generic[0] = node.evaluateFloat();
+                interpreter.random.setSeed(i);
+                if (node.resultType == ExpressionType.POINT) specialized.evaluatePoint(special);
+                else special[0] = specialized.evaluateFloat();
+                assertArrayEquals(generic, special, source);
+            }
+        }
+    }
+
+    @Test
+    void picksVariants() {
+        Node node = new Specializer().specialize(expression("point (2, random[0, 1]) * 2"));
+        assertInstanceOf(Specialized.PointFloatArithmetic.class, node);
+        assertEquals(ExpressionType.TIMES, node.type);
+        BinaryNode times = (BinaryNode) node;
+        assertInstanceOf(Specialized.PointOf.class, times.left);
+        assertInstanceOf(Specialized.FloatLiteral.class, times.right);
+        assertInstanceOf(Specialized.FloatRandom.class, ((BinaryNode) times.left).right);
+
+        assertInstanceOf(Specialized.PointPointArithmetic.class, new Specializer().specialize(expression("point (1, 2) - point (3, 4)")));
+        assertInstanceOf(Specialized.PointNeg.class, new Specializer().specialize(expression("--point (1, 2)")));
+    }
+
+    @Test
+    void keepsUncheckedNodes() {
+        Node node = astBuilder.visitExpression(parser.parseExpression(CharStreams.fromString("1 + 2")));
+        assertSame(node, new Specializer().specialize(node));
+
+        Node variable = new UnaryNode(ExpressionType.VARIABLE, new Variable(null, "initial position"));
+        new TypeChecker().walk(variable);
+        assertInstanceOf(Specialized.PointVariable.class, new Specializer().specialize(variable));
+    }
+
+    @Test
+    void specializesProgram() throws IOException {
+        Execution program = astBuilder.visitProgram(parser.parseProgram(SourceLoader.load(Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources", "fancytypes.aero"))));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        Specializer specializer = new Specializer();
+        specializer.specialize(program);
+        assertTrue(specializer.getSpecializedCount() > 0);
+
+        Action move = (Action) program.executions.get("TakeOff").statements[1];
+        assertInstanceOf(Specialized.PointLiteral.class, move.data);
+        assertEquals(20f, ((Point) move.data.evaluate()).getX());
+    }
+}
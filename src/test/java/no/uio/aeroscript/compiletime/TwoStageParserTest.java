@@ -0,0 +1,51 @@
+package no.uio.aeroscript.compiletime;
+
+import no.uio.aeroscript.antlr.AeroScriptParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TwoStageParserTest {
+    private static final String programAero = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources", "program.aero").toString();
+    private static final String reactionsAero = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources", "reactions.aero").toString();
+
+    @Test
+    void parsesInSLL() throws IOException {
+        TwoStageParser parser = new TwoStageParser();
+        AeroScriptParser.ProgramContext ctx = parser.parseProgram(CharStreams.fromString(Files.readString(Paths.get(programAero))));
+        assertEquals(TwoStageParser.Stage.SLL, parser.getLastStage());
+        assertEquals(5, ctx.execution().size());
+    }
+
+    @Test
+    void reusesAcrossFiles() throws IOException {
+        TwoStageParser parser = new TwoStageParser();
+        assertEquals(5, parser.parseProgram(CharStreams.fromString(Files.readString(Paths.get(programAero)))).execution().size());
+        assertEquals(6, parser.parseProgram(CharStreams.fromString(Files.readString(Paths.get(reactionsAero)))).execution().size());
+        assertEquals(5, parser.parseProgram(CharStreams.fromString(Files.readString(Paths.get(programAero)))).execution().size());
+        assertEquals(3, parser.getSLLCount());
+    }
+
+    @Test
+    void reportsErrorsAfterFallback() {
+        TwoStageParser parser = new TwoStageParser();
+        assertThrows(ParseCancellationException.class, () -> parser.parseProgram(CharStreams.fromString("-> A { move to } B {")));
+        assertThrows(ParseCancellationException.class, () -> parser.parseProgram(CharStreams.fromString("-> A { ascend by 2 $ }")));
+        // The parser is still usable after a failure
+        assertEquals(1, parser.parseProgram(CharStreams.fromString("-> A { ascend by 2 }")).execution().size());
+    }
+
+    @Test
+    void parsesExpressions() {
+        TwoStageParser parser = new TwoStageParser();
+        ASTBuilder astBuilder = new ASTBuilder(null);
+        assertEquals(5.0f, astBuilder.visitExpression(parser.parseExpression(CharStreams.fromString("2 + 3"))).evaluate());
+        assertEquals(6.0f, astBuilder.visitExpression(parser.parseExpression(CharStreams.fromString("2 * 3"))).evaluate());
+    }
+}
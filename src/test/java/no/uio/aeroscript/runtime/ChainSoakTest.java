@@ -0,0 +1,134 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.expr.UnaryNode;
+import no.uio.aeroscript.ast.stmt.Action;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.ast.stmt.Statement;
+import no.uio.aeroscript.compiletime.Lowering;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.ActionType;
+import no.uio.aeroscript.type.ExpressionType;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Stack;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs "-> Patrol { turn by 1, count } -> Patrol" for millions of laps and checks nothing grows
+@ExtendWith(QuietTrace.class) // Millions of lines otherwise
+class ChainSoakTest {
+    private static final int LAPS = 2_000_000;
+
+    // Counts laps, watches the stacks, and pauses the interpreter once it has seen enough
+    private static class Lap extends Statement {
+        private final Interpreter interpreter;
+        int laps = 0;
+        int maxStack = 0;
+        int maxModes = 0;
+        long usedEarly;
+        long usedLate;
+
+        Lap(Interpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public void execute() {
+            laps++;
+            maxStack = Math.max(maxStack, interpreter.getStackDepth());
+            maxModes = Math.max(maxModes, interpreter.getModeDepth());
+            if (laps == LAPS / 10) usedEarly = used();
+            if (laps == LAPS) {
+                usedLate = used();
+                interpreter.pause();
+            }
+        }
+    }
+
+    private static long used() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private Interpreter newInterpreter() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", 1e9f);
+        vars.put("battery level", 1e9f); // Too big for a turn to make a dent
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        Interpreter interpreter = new Interpreter(heap);
+        interpreter.setTailChaining(true);
+        return interpreter;
+    }
+
+    private Execution patrol(Interpreter interpreter, Lap lap) {
+        UnaryNode one = new UnaryNode(ExpressionType.NUMBER, 1f);
+        UnaryNode zero = new UnaryNode(ExpressionType.NUMBER, 0f);
+        Action turn = new Action(interpreter, ActionType.TURN, one, zero, zero);
+        Execution patrol = new Execution(interpreter, "Patrol", new Statement[] { turn, lap }, true, "Patrol");
+        Execution program = new Execution(interpreter, "program", new Statement[] { patrol }, false, null);
+        program.executions.put("Patrol", patrol);
+        new TypeChecker().walk(turn);
+        return program;
+    }
+
+    private void assertFlat(Interpreter interpreter, Lap lap, ArrayList<Execution> history) {
+        assertEquals(LAPS, lap.laps);
+        assertEquals(LAPS, interpreter.getExecutedCount());
+        assertTrue(history.size() <= Interpreter.CHAINED_HISTORY, "History kept " + history.size());
+        assertEquals(2, lap.maxModes); // The program and Patrol
+        assertTrue(lap.usedLate - lap.usedEarly < 4 << 20, "Grew by " + (lap.usedLate - lap.usedEarly) + " bytes");
+    }
+
+    @Test
+    void stackStaysFlat() {
+        Interpreter interpreter = newInterpreter();
+        Lap lap = new Lap(interpreter);
+        ArrayList<Execution> history = interpreter.runProgram(patrol(interpreter, lap));
+        assertFlat(interpreter, lap, history);
+        assertTrue(lap.maxStack <= 3, "Stack was " + lap.maxStack); // The program's exit, and Patrol's exit and chain
+    }
+
+    @Test
+    void vmStaysFlat() {
+        Interpreter interpreter = newInterpreter();
+        Lap lap = new Lap(interpreter);
+        ArrayList<Execution> history = interpreter.runProgram(Lowering.lower(patrol(interpreter, lap)));
+        assertFlat(interpreter, lap, history);
+        assertEquals(0, lap.maxStack); // Never touches it
+    }
+
+    @Test
+    void chainsLikeBefore() {
+        // Same order of executions as without chaining, just fewer of them kept
+        for (boolean chaining : new boolean[] { false, true }) {
+            Interpreter interpreter = newInterpreter();
+            interpreter.setTailChaining(chaining);
+            UnaryNode one = new UnaryNode(ExpressionType.NUMBER, 1f);
+            Action up = new Action(interpreter, ActionType.SCEND, one, one, one);
+            Execution a = new Execution(interpreter, "A", new Statement[] { up }, true, "B");
+            Execution b = new Execution(interpreter, "B", new Statement[] { up }, false, "C");
+            Execution c = new Execution(interpreter, "C", new Statement[] { up }, false, null);
+            Execution d = new Execution(interpreter, "D", new Statement[] { up, up }, true, null);
+            Execution program = new Execution(interpreter, "program", new Statement[] { a, d }, false, null);
+            for (Execution execution : new Execution[] { a, b, c, d }) program.executions.put(execution.id, execution);
+            new TypeChecker().walk(up);
+
+            assertEquals("[Execution A, Execution B, Execution C, Execution D]", interpreter.runProgram(program).toString());
+            assertEquals(5f, interpreter.getAltitude());
+            assertEquals(0, interpreter.getStackDepth());
+            assertEquals(0, interpreter.getModeDepth());
+        }
+    }
+}
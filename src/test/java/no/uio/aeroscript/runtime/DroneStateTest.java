@@ -0,0 +1,76 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.expr.Variable;
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DroneStateTest {
+    private HashMap<String, Object> vars() {
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(1f, 2f));
+        vars.put("current position", new Point(1f, 2f));
+        vars.put("altitude", 5f);
+        vars.put("initial battery level", 1000f);
+        vars.put("battery level", 1000f);
+        vars.put("distance travelled", 0f);
+        vars.put("battery low", false);
+        return vars;
+    }
+
+    @Test
+    void readsHeap() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        heap.put(Memory.VARIABLES, vars());
+        Interpreter interpreter = new Interpreter(heap);
+        assertEquals(1f, interpreter.state.x);
+        assertEquals(2f, interpreter.state.initialY);
+        assertEquals(5f, interpreter.state.altitude);
+        assertEquals(1000f, interpreter.state.batteryLevel);
+
+        // Without a heap it starts at zero
+        assertEquals(0f, new Interpreter(null).state.batteryLevel);
+    }
+
+    @Test
+    void writesHeapAfterRunning() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = vars();
+        heap.put(Memory.VARIABLES, vars);
+        Interpreter interpreter = new Interpreter(heap);
+        Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString("-> A { ascend by 10 move to point (4, 6) return to base }")));
+        new TypeChecker().walk(program);
+        interpreter.runProgram(program);
+
+        assertEquals(15f, vars.get("altitude"));
+        assertEquals(interpreter.getBatteryLevel(), vars.get("battery level"));
+        assertEquals(10f, (Float) vars.get("distance travelled"));
+        assertEquals("(1.0, 2.0)", vars.get("current position").toString());
+        assertEquals(false, vars.get("battery low")); // Other variables are left alone
+    }
+
+    @Test
+    void variablesReadSlots() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        heap.put(Memory.VARIABLES, vars());
+        Interpreter interpreter = new Interpreter(heap);
+        interpreter.state.altitude = 12f;
+        interpreter.state.initialX = 7f;
+
+        assertEquals(12f, new Variable(interpreter, "altitude").getFloat());
+        float[] point = new float[2];
+        new Variable(interpreter, "initial position").getPoint(point);
+        assertArrayEquals(new float[] { 7f, 2f }, point);
+        assertEquals("(7.0, 2.0)", new Variable(interpreter, "initial position").get().toString());
+        assertEquals(false, new Variable(interpreter, "battery low").get());
+    }
+}
@@ -0,0 +1,135 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.SourceLoader;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class FleetTest {
+    private final Path resources = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources");
+
+    private Fleet.Mission mission(String name) throws IOException {
+        Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(SourceLoader.load(resources.resolve(name))));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        return new Fleet.Mission(program);
+    }
+
+    private List<Fleet.Drone> drones(Fleet.Mission mission, int count, float batteryLevel) {
+        List<Fleet.Drone> drones = new ArrayList<>();
+        for (int i = 0; i < count; i++) drones.add(new Fleet.Drone(i, mission, new Point((float) i, (float) -i), batteryLevel, i % 7, i));
+        return drones;
+    }
+
+    private List<String> fly(Fleet fleet, List<Fleet.Drone> drones, ExecutorService pool) throws InterruptedException {
+        try {
+            fleet.fly(drones, pool);
+        } finally {
+            pool.shutdown();
+        }
+        List<String> states = new ArrayList<>();
+        for (Fleet.Drone drone : drones) states.add(drone.toString());
+        return states;
+    }
+
+    @Test
+    void concurrentMatchesSequential() throws Exception {
+        // Every drone draws from its own seeded random, so threads can't change anyone's numbers
+        Fleet.Mission mission = mission("program.aero");
+        for (boolean vm : new boolean[] { false, true }) {
+            Fleet fleet = new Fleet();
+            fleet.setVM(vm);
+            List<String> sequential = fly(fleet, drones(mission, 2000, 10000f), Executors.newSingleThreadExecutor());
+            List<String> concurrent = fly(fleet, drones(mission, 2000, 10000f), Fleet.workStealingPool(4));
+            assertEquals(sequential, concurrent);
+            assertTrue(fleet.getMissionsPerSecond() > 0);
+        }
+    }
+
+    @Test
+    void dronesAreSeparate() throws Exception {
+        Fleet.Mission mission = mission("program.aero");
+        List<Fleet.Drone> drones = drones(mission, 3, 10000f);
+        fly(new Fleet(), drones, Fleet.workStealingPool(2));
+        for (Fleet.Drone drone : drones) {
+            assertNull(drone.failure);
+            assertEquals(drone.position.getX(), drone.state.x); // All of them return to their own base
+            assertEquals(drone.position.getY(), drone.state.y);
+            assertEquals(5, drone.executed);
+        }
+        assertNotEquals(drones.get(0).state.distanceTravelled, drones.get(1).state.distanceTravelled); // Different seeds
+    }
+
+    @Test
+    void keepsFailures() throws Exception {
+        Fleet.Mission mission = mission("program.aero");
+        List<Fleet.Drone> drones = drones(mission, 4, 10000f);
+        drones.set(2, new Fleet.Drone(2, mission, new Point(0f, 0f), 30f, 0f, 2));
+        fly(new Fleet(), drones, Fleet.workStealingPool(2));
+        assertEquals("Not enough battery to perform action.", drones.get(2).failure);
+        assertNull(drones.get(3).failure);
+        assertTrue(drones.get(2).toString().endsWith("failed: Not enough battery to perform action."));
+    }
+
+    // A pilot flown again, after a failure too, ends up where a new one would have
+    @Test
+    void reusedPilotsMatchNew() throws Exception {
+        Fleet.Mission mission = mission("program.aero");
+        for (boolean vm : new boolean[] { false, true }) {
+            for (boolean compiled : new boolean[] { false, true }) {
+                Fleet fleet = new Fleet();
+                fleet.setVM(vm);
+                fleet.setCompiled(compiled);
+                fleet.setRandomBatch(16);
+                List<Fleet.Drone> fresh = drones(mission, 20, 10000f);
+                List<Fleet.Drone> reused = drones(mission, 20, 10000f);
+                fresh.set(5, new Fleet.Drone(5, mission, new Point(0f, 0f), 30f, 0f, 5));
+                reused.set(5, new Fleet.Drone(5, mission, new Point(0f, 0f), 30f, 0f, 5));
+                Fleet.Pilots pilots = new Fleet.Pilots();
+                for (int i = 0; i < fresh.size(); i++) {
+                    fleet.fly(fresh.get(i));
+                    fleet.fly(reused.get(i), pilots);
+                    assertEquals(fresh.get(i).toString(), reused.get(i).toString(), vm + " " + compiled);
+                    assertEquals(fresh.get(i).executed, reused.get(i).executed);
+                }
+                assertEquals(1, pilots.size());
+                assertNotNull(reused.get(5).failure);
+            }
+        }
+    }
+
+    // Classes and code are made once per mission, however many drones fly it
+    @Test
+    void sharesMissionWork() throws Exception {
+        Fleet.Mission mission = mission("program.aero");
+        Fleet fleet = new Fleet();
+        fleet.setVM(true);
+        fleet.setCompiled(true);
+        Fleet.Pilot first = fleet.pilot(drones(mission, 1, 10000f).get(0));
+        int classes = mission.classes.size();
+        assertTrue(classes > 0);
+        fly(fleet, drones(mission, 200, 10000f), Fleet.workStealingPool(4));
+        Fleet.Pilot second = fleet.pilot(drones(mission, 1, 10000f).get(0));
+        assertEquals(classes, mission.classes.size());
+        assertSame(first.code.code, second.code.code);
+        assertSame(first.code.constants, second.code.constants);
+        assertNotSame(first.code.statements[0], second.code.statements[0]); // Each on its own interpreter
+    }
+}
@@ -0,0 +1,137 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.ActionType;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static no.uio.aeroscript.runtime.Missions.mission;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class FlightRecorderTest {
+    @Test
+    void recordsAFleet(@TempDir Path dir) throws Exception {
+        Fleet.Mission mission = mission("-> Up { ascend by 10 move by 20 } -> Round\nRound { turn by 90 move to point (5, 5) at speed 2 descend by 10 for 3 seconds }");
+        for (boolean vm : new boolean[] { false, true }) {
+            Path recording = dir.resolve(vm ? "vm" : "stack");
+            List<Fleet.Drone> drones = new ArrayList<>();
+            for (int i = 0; i < 50; i++) drones.add(new Fleet.Drone(i, mission, new Point((float) i, 0f), 1000f, 0f, i));
+            FlightRecorder recorder = new FlightRecorder(recording, 16); // Small, so it rotates
+            Fleet fleet = new Fleet();
+            fleet.setVM(vm);
+            fleet.setRecorder(recorder);
+            ExecutorService pool = Fleet.workStealingPool(4);
+            fleet.fly(drones, pool);
+            pool.shutdown();
+            assertEquals(1, recorder.getMappedCount()); // The full ones are flushed and let go as they fill
+            recorder.close();
+            assertEquals(250, recorder.getRecorded());
+            assertEquals(16, recorder.getSegmentCount()); // 250 / 16, rounded up
+
+            int[] next = new int[drones.size()];
+            int count = 0;
+            try (FlightReader reader = new FlightReader(recording)) {
+                while (reader.next()) {
+                    count++;
+                    int drone = reader.getDrone();
+                    assertEquals(next[drone]++, reader.getSequence(), "In order per drone");
+                    ActionType[] expected = { ActionType.SCEND, ActionType.MOVE, ActionType.TURN, ActionType.MOVE, ActionType.SCEND };
+                    assertEquals(expected[reader.getSequence()], reader.getAction());
+                    assertEquals(reader.getSequence() < 2 ? "Up" : "Round", reader.getMode());
+                    if (reader.getSequence() == 3) { // move to point (5, 5) at speed 2
+                        assertEquals(5f, reader.getX());
+                        assertEquals(2f, reader.getSpeed());
+                    }
+                    if (reader.getSequence() == 4) {
+                        Fleet.Drone flown = drones.get(drone);
+                        assertEquals(flown.state.x, reader.getX());
+                        assertEquals(flown.state.altitude, reader.getAltitude());
+                        assertEquals(flown.state.batteryLevel, reader.getBatteryLevel());
+                        assertEquals(flown.state.distanceTravelled, reader.getDistance());
+                        assertEquals(3f, reader.getDuration());
+                        assertEquals(10f, reader.getAmount());
+                    }
+                }
+                assertEquals(0, reader.getSkipped());
+                assertThrows(IllegalStateException.class, reader::getX); // Past the end
+            }
+            assertEquals(250, count);
+        }
+    }
+
+    @Test
+    void manyWriters(@TempDir Path dir) throws Exception {
+        DroneState state = new DroneState();
+        int threads = 4;
+        int each = 20_000;
+        FlightRecorder recorder = new FlightRecorder(dir, 1000);
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int drone = t;
+            writers[t] = new Thread(() -> {
+                DroneState mine = new DroneState();
+                for (int i = 0; i < each; i++) {
+                    mine.x = i;
+                    recorder.record(drone, i, ActionType.MOVE, "M" + drone % 2, mine, 1, 0, 0);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) writer.join();
+        assertEquals(1, recorder.getMappedCount());
+        recorder.close();
+        recorder.record(0, 0, ActionType.TURN, null, state, 0, 0, 0); // Too late
+        assertEquals(1, recorder.getDropped());
+
+        boolean[][] seen = new boolean[threads][each];
+        try (FlightReader reader = new FlightReader(dir)) {
+            while (reader.next()) {
+                int drone = reader.getDrone();
+                int sequence = reader.getSequence();
+                assertFalse(seen[drone][sequence]);
+                seen[drone][sequence] = true;
+                assertEquals((float) sequence, reader.getX());
+                assertEquals("M" + drone % 2, reader.getMode());
+            }
+        }
+        for (boolean[] drone : seen) {
+            for (boolean record : drone) assertTrue(record);
+        }
+    }
+
+    @Test
+    void readsUnclosed(@TempDir Path dir) throws IOException {
+        FlightRecorder recorder = new FlightRecorder(dir, 100);
+        DroneState state = new DroneState();
+        for (int i = 0; i < 7; i++) {
+            state.altitude = i;
+            recorder.record(1, i, ActionType.SCEND, null, state, 1, 0, 0);
+        }
+        // Never closed, like after a crash. The reader looks through the whole segment
+        try (FlightReader reader = new FlightReader(dir)) {
+            int count = 0;
+            while (reader.next()) {
+                assertEquals((float) count++, reader.getAltitude());
+                assertNull(reader.getMode());
+            }
+            assertEquals(7, count);
+            assertEquals(93, reader.getSkipped());
+        }
+        recorder.close();
+
+        assertThrows(IOException.class, () -> new FlightRecorder(dir)); // Won't write over it
+        Path bad = Files.createDirectories(dir.resolve("bad"));
+        Files.write(FlightRecorder.segmentPath(bad, 0), new byte[FlightRecorder.HEADER_SIZE]); // No magic
+        assertThrows(IOException.class, () -> new FlightReader(bad).next());
+    }
+}
@@ -0,0 +1,160 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.GeofenceChecker;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.error.GeofenceError;
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Point;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class GeofenceTest {
+    private static Geofence field() {
+        Geofence geofence = new Geofence();
+        geofence.addAllowed(0, 0, 100, 0, 100, 100, 0, 100);
+        geofence.addNoFly(40, 40, 60, 40, 60, 60, 40, 60);
+        return geofence.build();
+    }
+
+    @Test
+    void zones() {
+        Geofence geofence = field();
+        assertNull(geofence.check(10, 10, 90, 10));
+        assertNull(geofence.check(10, 10, 10, 10)); // Staying put
+        assertEquals("leaves the allowed area", geofence.check(10, 10, 150, 10));
+        assertEquals("leaves the allowed area", geofence.check(150, 10, 160, 10)); // Never was inside
+        assertEquals("enters a no-fly zone", geofence.check(10, 50, 90, 50));
+        assertEquals("enters a no-fly zone", geofence.check(10, 40, 90, 40)); // Along its edge
+        assertEquals("enters a no-fly zone", geofence.check(45, 45, 50, 50)); // Already in it
+        assertNull(geofence.checkPoint(10, 10));
+        assertEquals("is in a no-fly zone", geofence.checkPoint(50, 50));
+        assertEquals("is outside the allowed area", geofence.checkPoint(150, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Geofence().addNoFly(0, 0, 1, 1));
+        assertThrows(IllegalStateException.class, () -> new Geofence().check(0, 0, 1, 1));
+
+        // Without allowed areas, anywhere outside the no-fly zones is fine
+        Geofence open = new Geofence();
+        open.addNoFly(40, 40, 60, 40, 60, 60, 40, 60);
+        open.build();
+        assertNull(open.check(-1000, -1000, 1000, -1000));
+        assertNotNull(open.check(-1000, -1000, 1000, 1000));
+    }
+
+    @Test
+    void shapesOfAllowed() {
+        // A U: both ends inside, but the straight way between the arms is not
+        Geofence u = new Geofence();
+        u.addAllowed(0, 0, 30, 0, 30, 100, 20, 100, 20, 10, 10, 10, 10, 100, 0, 100);
+        u.build();
+        assertNull(u.check(5, 50, 5, 5));
+        assertEquals("leaves the allowed area", u.check(5, 50, 25, 50));
+        assertNull(u.check(5, 5, 25, 5)); // Along the bottom
+
+        // Two overlapping areas are one, whichever way round they go
+        Geofence two = new Geofence();
+        two.addAllowed(0, 0, 100, 0, 100, 100, 0, 100);
+        two.addAllowed(80, 0, 80, 100, 200, 100, 200, 0);
+        two.build();
+        assertNull(two.check(10, 10, 190, 90));
+        assertNull(two.checkPoint(90, 50));
+        assertEquals("leaves the allowed area", two.check(10, 10, 250, 10));
+    }
+
+    @Test
+    void manyEdges() {
+        // A circle with 10000 edges, so the grid has plenty of cells
+        int n = 10_000;
+        float[] circle = new float[2 * n];
+        for (int i = 0; i < n; i++) {
+            circle[2 * i] = (float) (1000 * Math.cos(2 * Math.PI * i / n));
+            circle[2 * i + 1] = (float) (1000 * Math.sin(2 * Math.PI * i / n));
+        }
+        Geofence geofence = new Geofence();
+        geofence.addAllowed(circle);
+        geofence.build();
+
+        SplittableRandom random = new SplittableRandom(5);
+        for (int q = 0; q < 5000; q++) {
+            float x0 = (float) random.nextDouble(-1200, 1200), y0 = (float) random.nextDouble(-1200, 1200);
+            float x1 = (float) random.nextDouble(-1200, 1200), y1 = (float) random.nextDouble(-1200, 1200);
+            double r0 = Math.hypot(x0, y0), r1 = Math.hypot(x1, y1);
+            if (Math.abs(r0 - 1000) < 1 || Math.abs(r1 - 1000) < 1) continue; // Too close to tell the polygon from the circle
+            assertEquals(r1 < 1000, geofence.checkPoint(x1, y1) == null, x1 + ", " + y1);
+            // A chord of a circle stays inside it
+            if (r0 < 999 && r1 < 999) assertNull(geofence.check(x0, y0, x1, y1));
+            if (r0 > 1001 || r1 > 1001) assertEquals("leaves the allowed area", geofence.check(x0, y0, x1, y1));
+        }
+    }
+
+    @Test
+    void loads(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("fence.txt");
+        Files.writeString(file, "# The field\nallowed 0 0 100 0 100 100 0 100\nnofly 40 40 60 40 60 60 40 60 # the barn\n");
+        Geofence geofence = Geofence.load(file);
+        assertEquals(1, geofence.getAllowedCount());
+        assertEquals(1, geofence.getNoFlyCount());
+        assertEquals("enters a no-fly zone", geofence.check(10, 50, 90, 50));
+
+        Files.writeString(file, "nofly 1 2 3 4\n");
+        IOException e = assertThrows(IOException.class, () -> Geofence.load(file));
+        assertTrue(e.getMessage().endsWith(":1: A zone needs at least three x, y pairs"), e.getMessage());
+    }
+
+    private Execution program(String source) {
+        Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        return program;
+    }
+
+    @Test
+    void whileFlying() {
+        Fleet.Mission diverting = new Fleet.Mission(program("-> Out { move to point (150, 10) on message [geofence] -> Back }\nBack { move to point (10, 90) }"));
+        Fleet.Mission straying = new Fleet.Mission(program("-> Out { move by 20 move by 200 }"));
+        Geofence geofence = field();
+
+        for (int backend = 0; backend < 3; backend++) {
+            Fleet fleet = new Fleet();
+            fleet.setCompiled(backend == 1);
+            fleet.setVM(backend == 2);
+            fleet.setGeofence(geofence);
+
+            Fleet.Drone drone = fleet.fly(new Fleet.Drone(0, diverting, new Point(10f, 10f), 1000f, 0f, 0));
+            assertNull(drone.failure);
+            assertEquals(10f, drone.state.x);
+            assertEquals(90f, drone.state.y);
+
+            drone = fleet.fly(new Fleet.Drone(0, straying, new Point(10f, 10f), 1000f, 0f, 0));
+            assertEquals("Move from (30.0, 10.0) to (230.0, 10.0) leaves the allowed area in Out", drone.failure);
+            assertEquals(30f, drone.state.x); // The first one was fine
+        }
+    }
+
+    @Test
+    void beforeFlying() {
+        Execution program = program("-> A { move to point (50, 10) move to point (2 * 25, 50) move to point (150, 0) move by 500 } -> B\n"
+            + "B { move to point (random [10, 20], 10) }");
+        GeofenceChecker checker = new GeofenceChecker(field());
+        GeofenceError error = assertThrows(GeofenceError.class, () -> checker.check(program));
+        assertEquals("Move to (50.0, 50.0) in A is in a no-fly zone.\nMove to (150.0, 0.0) in A is outside the allowed area.", error.getMessage());
+        assertEquals(3, checker.getCheckedCount()); // Not the move by, or the random one
+
+        GeofenceChecker fine = new GeofenceChecker(field());
+        fine.check(program("-> A { move to point (50, 10) move to point (90, 90) }"));
+        assertEquals(2, fine.getCheckedCount());
+    }
+}
@@ -8,7 +8,6 @@ import no.uio.aeroscript.ast.expr.UnaryNode;
 import no.uio.aeroscript.ast.expr.BinaryNode;
 import no.uio.aeroscript.ast.stmt.Action;
 import no.uio.aeroscript.ast.stmt.Execution;
-import no.uio.aeroscript.ast.stmt.Statement;
 import no.uio.aeroscript.compiletime.ASTBuilder;
 import no.uio.aeroscript.compiletime.TypeChecker;
 import no.uio.aeroscript.error.TypeError;
@@ -22,14 +21,12 @@ import java.util.ArrayList;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashMap;
-import java.util.Stack;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 // This code isn't great, but I never considered it a high priority
 class InterpreterTest {
     private HashMap<Memory, Object> heap;
-    private Stack<Statement> stack;
 
     private static final String programAero = "src\\test\\java\\no\\uio\\aeroscript\\resources\\program.aero";
     private static final String recursetocrashAero = "src\\test\\java\\no\\uio\\aeroscript\\resources\\recursetocrash.aero";
@@ -39,7 +36,6 @@ class InterpreterTest {
 
     private void initInterpreter() {
         this.heap = new HashMap<>();
-        this.stack = new Stack<>();
         HashMap<Memory, HashMap<String, Object>> variables = new HashMap<>();
         variables.put(Memory.VARIABLES, new HashMap<>());
         HashMap<String, Object> vars = variables.get(Memory.VARIABLES);
@@ -102,7 +98,7 @@ class InterpreterTest {
     @Test
     void getFirstExecution() {
         initInterpreter();
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         parseProgram(interpreter, programAero);
         @SuppressWarnings("unchecked")
         HashMap<String, Object> variables = (HashMap<String, Object>) interpreter.heap.get(Memory.VARIABLES);
@@ -113,7 +109,7 @@ class InterpreterTest {
     @Test
     void getPosition() {
         initInterpreter();
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         Point current = interpreter.getCurrentPosition();
         assertEquals(0f, current.getX());
         assertEquals(0f, current.getY());
@@ -122,21 +118,21 @@ class InterpreterTest {
     @Test
     void getDistanceTravelled() {
         initInterpreter();
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         assertEquals(0f, interpreter.getDistanceTravelled());
     }
 
     @Test
     void getBatteryLevel() {
         initInterpreter();
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         assertEquals(10000, interpreter.getBatteryLevel());
     }
 
     @Test
     void visitProgram() {
         initInterpreter();
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         // Implement the test, read a file and parse it, then ensure you have the first execution, and that the number
         // of exeuctions is correct (in the program.aero file there are 9 executions)
         ArrayList<Execution> executions = parseProgram(interpreter, programAero);
@@ -147,7 +143,7 @@ class InterpreterTest {
     @Test
     void crashProgram() {
         initInterpreter();
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         assertThrows(RuntimeException.class, () -> interpreter.runProgram(getProgram(recursetocrashAero, interpreter)));
         // We have no infinite loop detection, but we don't need one, because it fails by running out of battery instead of looping forever. The exception it gets is the one for running out of battery.
     }
@@ -155,7 +151,7 @@ class InterpreterTest {
     @Test
     void reactionsProgram() {
         initInterpreter();
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
 
         try {
             interpreter.runProgramREPL(getProgram(reactionsAero, interpreter));
@@ -176,7 +172,7 @@ class InterpreterTest {
 
     @Test
     void buildAST() {
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         Execution program = getProgram(programAero, interpreter);
         System.out.println(program);
         // I haven't thought of what exactly to test here yet
@@ -185,14 +181,14 @@ class InterpreterTest {
 
     @Test
     void typeTest1() {
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         TypeChecker typeChecker = new TypeChecker();
         typeChecker.walk(getProgram(fancyTypes, interpreter));
     }
 
     @Test
     void typeTest2() {
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         TypeChecker typeChecker = new TypeChecker();
         assertThrows(TypeError.class, () -> typeChecker.walk(getProgram(wrongType, interpreter)));
 
@@ -216,7 +212,7 @@ class InterpreterTest {
 
     @Test
     void visitExpression() {
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         ASTBuilder astBuilder = new ASTBuilder(interpreter);
 
         assertEquals(5.0f, Float.parseFloat(astBuilder.visitExpression(parseExpression("2 + 3")).evaluate().toString()));
@@ -227,7 +223,7 @@ class InterpreterTest {
 
     @Test
     void faultyExpressions() {
-        Interpreter interpreter = new Interpreter(this.heap, this.stack);
+        Interpreter interpreter = new Interpreter(this.heap);
         ASTBuilder astBuilder = new ASTBuilder(interpreter);
 
         assertEquals(5.0f, Float.parseFloat(astBuilder.visitExpression(parseExpression("---5")).evaluate().toString()));
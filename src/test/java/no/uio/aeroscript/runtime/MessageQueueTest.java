@@ -0,0 +1,219 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.Lowering;
+import no.uio.aeroscript.compiletime.SourceLoader;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class MessageQueueTest {
+    @Test
+    void manyProducers() throws InterruptedException {
+        MessageQueue queue = new MessageQueue(64, false);
+        int producers = 4;
+        int each = 20_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < each; i++) assertTrue(queue.post(id + ":" + i, 10, TimeUnit.SECONDS));
+            });
+            threads[p].start();
+        }
+
+        Set<String> seen = new HashSet<>();
+        int[] last = { -1, -1, -1, -1 };
+        while (seen.size() < producers * each) {
+            String message = queue.poll();
+            if (message == null) continue;
+            assertTrue(seen.add(message), "Twice: " + message);
+            String[] parts = message.split(":");
+            int producer = Integer.parseInt(parts[0]);
+            int index = Integer.parseInt(parts[1]);
+            assertTrue(index > last[producer], "Out of order: " + message); // In order per producer
+            last[producer] = index;
+        }
+        for (Thread thread : threads) thread.join();
+        assertTrue(queue.isEmpty());
+        assertEquals(producers * each, queue.getPosted());
+        assertEquals(producers * each, queue.getDrained());
+        assertEquals(0, queue.getRejected());
+        assertTrue(queue.getMaxLatencyNanos() > 0);
+    }
+
+    @Test
+    void coalesces() {
+        MessageQueue queue = new MessageQueue(8);
+        assertTrue(queue.offer("go"));
+        assertTrue(queue.offer("go"));
+        assertTrue(queue.offer("stop"));
+        assertTrue(queue.offer("go"));
+        assertEquals(2, queue.getDepth());
+        assertEquals(2, queue.getCoalesced());
+        assertEquals("go", queue.poll());
+        assertTrue(queue.offer("go")); // It's been taken, so this one is new
+        assertEquals("stop", queue.poll());
+        assertEquals("go", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    // The same message from many threads into a full ring: none of them got a slot, so none may say yes
+    @Test
+    void coalescesOnlyOnQueued() throws InterruptedException {
+        MessageQueue queue = new MessageQueue(4);
+        for (String filler : new String[] { "a", "b", "c", "d" }) assertTrue(queue.offer(filler));
+        int producers = 8;
+        int each = 50_000;
+        AtomicInteger accepted = new AtomicInteger();
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < each; i++) if (queue.offer("x")) accepted.incrementAndGet();
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(0, accepted.get());
+        assertEquals(0, queue.getCoalesced());
+        assertEquals(producers * each, queue.getRejected());
+
+        for (String filler : new String[] { "a", "b", "c", "d" }) assertEquals(filler, queue.poll());
+        assertTrue(queue.offer("x")); // Nothing left behind marked as waiting
+        assertEquals(1, queue.getDepth());
+        assertEquals("x", queue.poll());
+    }
+
+    @Test
+    void backpressure() {
+        MessageQueue queue = new MessageQueue(2, false);
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertFalse(queue.offer("c"));
+        assertFalse(queue.post("c", 5, TimeUnit.MILLISECONDS));
+        assertEquals(2, queue.getRejected());
+        assertEquals(2, queue.getDepth());
+
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.poll();
+        });
+        consumer.start();
+        assertTrue(queue.post("c", 10, TimeUnit.SECONDS)); // Waits for the consumer to make room
+        assertEquals("b", queue.poll());
+        assertEquals("c", queue.poll());
+
+        queue.close();
+        assertFalse(queue.offer("d"));
+        assertNull(queue.take());
+        assertThrows(IllegalArgumentException.class, () -> new MessageQueue(3));
+    }
+
+    private Interpreter newInterpreter() {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", 1e9f);
+        vars.put("battery level", 1e9f);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        return new Interpreter(heap);
+    }
+
+    private Execution build(CharStream source, Interpreter interpreter) {
+        Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(source));
+        new TypeChecker().walk(program);
+        return program;
+    }
+
+    @Test
+    void stopsEndlessPatrol() {
+        // Never ends by itself, only a message from another thread gets it out
+        String source = "-> Patrol { turn by 1 on message [stop] -> Land } -> Patrol\nLand { ascend by 50 }";
+        for (boolean vm : new boolean[] { false, true }) {
+            Interpreter interpreter = newInterpreter();
+            interpreter.setTailChaining(true);
+            MessageQueue queue = new MessageQueue(16);
+            interpreter.setMessageQueue(queue);
+            Execution program = build(CharStreams.fromString(source), interpreter);
+
+            for (int i = 0; i < 100; i++) queue.offer("unknown"); // One of them is dropped, the patrol goes on
+            Thread groundControl = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.offer("stop");
+            });
+            groundControl.start();
+            assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+                if (vm) interpreter.runProgram(Lowering.lower(program));
+                else interpreter.runProgram(program);
+            });
+
+            assertEquals(50f, interpreter.getAltitude(), vm ? "vm" : "stack");
+            assertTrue(interpreter.getExecutedCount() > 2); // It went round a few times first
+            assertEquals(2, queue.getDrained());
+            assertEquals(1, queue.getUnmatched());
+            assertEquals(99, queue.getCoalesced());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    private String state(Interpreter interpreter) {
+        return interpreter.getCurrentPosition() + " " + interpreter.getAltitude() + " " + interpreter.getBatteryLevel();
+    }
+
+    @Test
+    void servesWaitingMission() throws IOException {
+        CharStream source = SourceLoader.load(Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources", "test.aero"));
+        Interpreter direct = newInterpreter();
+        direct.runProgramREPL(build(source, direct));
+        direct.receiveMessage("launch");
+
+        Interpreter interpreter = newInterpreter();
+        MessageQueue queue = new MessageQueue(16);
+        interpreter.setMessageQueue(queue);
+        source.seek(0);
+        interpreter.runProgramREPL(build(source, interpreter)); // Waits in MissionControl
+
+        Thread groundControl = new Thread(() -> {
+            queue.offer("nonsense");
+            queue.offer("launch");
+            queue.close();
+        });
+        groundControl.start();
+        assertTimeoutPreemptively(Duration.ofSeconds(20), interpreter::serveMessages);
+
+        assertEquals(state(direct), state(interpreter)); // Same as sending it from the REPL
+        assertEquals(20f, interpreter.getAltitude());
+        assertEquals(1, queue.getUnmatched());
+        assertEquals(2, queue.getDrained());
+    }
+}
@@ -0,0 +1,18 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import org.antlr.v4.runtime.CharStreams;
+
+// Missions for the tests that fly fleets, type-checked like Main does but not folded
+final class Missions {
+    private Missions() {}
+
+    static Fleet.Mission mission(String source) {
+        Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(source)));
+        new TypeChecker().walk(program);
+        return new Fleet.Mission(program);
+    }
+}
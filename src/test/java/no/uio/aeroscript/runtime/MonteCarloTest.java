@@ -0,0 +1,73 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.SourceLoader;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class MonteCarloTest {
+    private final Path resources = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources");
+
+    private MonteCarlo monteCarlo(String name, float batteryLevel) throws IOException {
+        Execution program = new ASTBuilder(new Interpreter(null)).visitProgram(new TwoStageParser().parseProgram(SourceLoader.load(resources.resolve(name))));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        return new MonteCarlo(new Fleet.Mission(program), new Point(0f, 0f), batteryLevel, 0f);
+    }
+
+    @Test
+    void reproducible() throws IOException {
+        // program.aero costs about 1000 battery, depending on where random sends it, so some of these fail
+        MonteCarlo monteCarlo = monteCarlo("program.aero", 1040f);
+        MonteCarlo.Report one = monteCarlo.run(500, 12, 1);
+        MonteCarlo.Report four = monteCarlo.run(500, 12, 4);
+        assertEquals(one.summary(), four.summary()); // However the work was split
+        assertEquals(one.summary(), monteCarlo.run(500, 12, 3).summary());
+        assertNotEquals(one.summary(), monteCarlo.run(500, 13, 4).summary());
+
+        assertTrue(one.failed > 0 && one.failed < 500, "Failed " + one.failed);
+        assertEquals(one.failed, one.failures.get("Not enough battery to perform action."));
+        assertEquals(one.failed / 500.0, one.getFailureRate());
+    }
+
+    @Test
+    void distributions() throws IOException {
+        MonteCarlo.Report report = monteCarlo("program.aero", 10000f).run(300, 1, 2);
+        assertEquals(0, report.failed);
+        assertTrue(report.failures.isEmpty());
+        MonteCarlo.Distribution battery = report.battery;
+        assertTrue(battery.min() <= battery.percentile(5));
+        assertTrue(battery.percentile(5) <= battery.percentile(50));
+        assertTrue(battery.percentile(50) <= battery.percentile(95));
+        assertTrue(battery.percentile(95) <= battery.max());
+        assertTrue(battery.min() < battery.max()); // Random moved them to different places
+        assertTrue(battery.stddev > 0);
+        assertTrue(battery.mean > battery.min() && battery.mean < battery.max());
+
+        // Everyone climbs 100 and descends 50, whatever random does
+        assertEquals(50f, report.altitude.min());
+        assertEquals(50f, report.altitude.max());
+        assertEquals(0, report.altitude.stddev);
+    }
+
+    @Test
+    void alwaysCrashes() throws IOException {
+        // Explores until the battery runs out
+        MonteCarlo.Report report = monteCarlo("recursetocrash.aero", 2000f).run(64, 5, 2);
+        assertEquals(1.0, report.getFailureRate());
+        assertTrue(report.battery.max() < 2000f);
+    }
+}
@@ -0,0 +1,118 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static no.uio.aeroscript.runtime.Missions.mission;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class ObstacleMapTest {
+    @Test
+    void shapes() {
+        ObstacleMap map = new ObstacleMap();
+        map.addPoint(50, 0, 1);
+        map.addPolygon(0, 20, 10, 20); // Wall
+        map.addPolygon(100, 100, 120, 100, 120, 120, 100, 120); // Square
+        map.build();
+
+        assertTrue(map.blocks(0, 0, 100, 0));
+        assertTrue(map.blocks(50, -5, 50.5f, 5));
+        assertFalse(map.blocks(0, 1.5f, 100, 1.5f)); // Passes the point
+        assertFalse(map.blocks(0, 0, 48, 0)); // Stops short
+        assertTrue(map.blocks(5, 10, 5, 30)); // Through the wall
+        assertTrue(map.blocks(10, 10, 10, 20)); // Ends on it
+        assertFalse(map.blocks(11, 10, 11, 30));
+        assertTrue(map.blocks(90, 110, 130, 110));
+        assertTrue(map.blocks(105, 105, 115, 115)); // All inside
+        assertFalse(map.blocks(90, 90, 130, 90));
+        assertFalse(map.blocks(-500, -500, -400, -400)); // Off the grid
+        assertFalse(map.blocks(-500, 500, 500, 500));
+        assertThrows(IllegalStateException.class, () -> map.addPoint(0, 0, 0));
+        assertThrows(IllegalStateException.class, () -> new ObstacleMap().blocks(0, 0, 1, 1));
+        assertFalse(new ObstacleMap().build().blocks(0, 0, 1, 1));
+    }
+
+    @Test
+    void sameAsLookingAtAll() {
+        SplittableRandom random = new SplittableRandom(7);
+        ObstacleMap grid = new ObstacleMap();
+        ObstacleMap all = new ObstacleMap();
+        for (int i = 0; i < 2000; i++) {
+            float x = (float) random.nextDouble(1000), y = (float) random.nextDouble(1000);
+            if (i % 3 == 0) {
+                float r = (float) random.nextDouble(3);
+                grid.addPoint(x, y, r);
+                all.addPoint(x, y, r);
+            } else {
+                float[] vertices = new float[2 * (2 + i % 4)];
+                for (int v = 0; v < vertices.length; v += 2) {
+                    vertices[v] = x + (float) random.nextDouble(-8, 8);
+                    vertices[v + 1] = y + (float) random.nextDouble(-8, 8);
+                }
+                grid.addPolygon(vertices);
+                all.addPolygon(vertices);
+            }
+        }
+        grid.build();
+        all.build(1e6f); // One cell, so every obstacle is looked at
+        assertTrue(grid.getCellCount() > 100);
+        assertEquals(1, all.getCellCount());
+
+        int hits = 0;
+        for (int q = 0; q < 5000; q++) {
+            float x0 = (float) random.nextDouble(-100, 1100), y0 = (float) random.nextDouble(-100, 1100);
+            float length = q % 2 == 0 ? 30 : 400;
+            float x1 = x0 + (float) random.nextDouble(-length, length), y1 = y0 + (float) random.nextDouble(-length, length);
+            boolean expected = all.blocks(x0, y0, x1, y1);
+            assertEquals(expected, grid.blocks(x0, y0, x1, y1), "(" + x0 + ", " + y0 + ") -> (" + x1 + ", " + y1 + ")");
+            if (expected) hits++;
+        }
+        assertTrue(hits > 500 && hits < 4500); // Both kinds came up
+    }
+
+    @Test
+    void loads(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("obstacles.txt");
+        Files.writeString(file, "# A tower and a fence\npoint 50 0 2\n\npolygon 0 20 10 20  # fence\n");
+        ObstacleMap map = ObstacleMap.load(file);
+        assertEquals(2, map.size());
+        assertTrue(map.blocks(0, 0, 100, 0));
+
+        Files.writeString(file, "point 1 2\ntree 1 2\n");
+        IOException e = assertThrows(IOException.class, () -> ObstacleMap.load(file));
+        assertTrue(e.getMessage().endsWith(":2: Unknown obstacle tree"), e.getMessage());
+    }
+
+    @Test
+    void reactsOnMove() {
+        ObstacleMap map = new ObstacleMap();
+        map.addPoint(50, 0, 1);
+        map.build();
+        Fleet.Mission reacting = mission("-> Out { move to point (100, 0) on obstacle -> Over }\nOver { ascend by 5 move by 20 }");
+        Fleet.Mission ignoring = mission("-> Out { move to point (100, 0) }");
+
+        for (int backend = 0; backend < 3; backend++) {
+            Fleet fleet = new Fleet();
+            fleet.setCompiled(backend == 1);
+            fleet.setVM(backend == 2);
+            fleet.setObstacleMap(map);
+
+            Fleet.Drone drone = fleet.fly(new Fleet.Drone(0, reacting, new Point(0f, 0f), 1000f, 0f, 0));
+            assertNull(drone.failure);
+            assertEquals(20f, drone.state.x); // Never went, then moved by 20 short of it
+            assertEquals(5f, drone.state.altitude);
+
+            drone = fleet.fly(new Fleet.Drone(0, ignoring, new Point(0f, 0f), 1000f, 0f, 0));
+            assertEquals(100f, drone.state.x); // No reaction, so it flies on
+        }
+    }
+}
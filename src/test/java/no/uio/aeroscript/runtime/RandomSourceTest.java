@@ -0,0 +1,102 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.trace.NullSink;
+import no.uio.aeroscript.trace.Trace;
+import no.uio.aeroscript.trace.TraceSink;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RandomSourceTest {
+    private static final float[][] bounds = { { 0f, 1f }, { -5f, 5f }, { 77f, 100f }, { 0f, 10.12122f }, { 1e-3f, 2e-3f } };
+
+    @Test
+    void batchedMatchesUnbatched() {
+        for (int size : new int[] { 1, 7, 256 }) {
+            RandomSource plain = new RandomSource(new SplittableRandom(99));
+            RandomSource batched = new RandomSource(new SplittableRandom(99));
+            batched.setBatch(size);
+            for (int i = 0; i < 1000; i++) {
+                float[] range = bounds[i % bounds.length];
+                float value = plain.nextFloat(range[0], range[1]);
+                assertEquals(value, batched.nextFloat(range[0], range[1]), "Batch " + size + ", draw " + i);
+                assertTrue(value >= range[0] && value < range[1]);
+            }
+        }
+    }
+
+    @Test
+    void seedsRepeat() {
+        RandomSource source = new RandomSource();
+        source.setBatch(16);
+        source.setSeed(5);
+        float first = source.nextFloat(0f, 100f);
+        source.nextFloat(0f, 100f);
+        source.setSeed(5); // Throws away the rest of the batch too
+        assertEquals(first, source.nextFloat(0f, 100f));
+        assertEquals(16, source.getBatch());
+        source.setBatch(0);
+        assertEquals(0, source.getBatch());
+    }
+
+    @Test
+    void pluggable() {
+        RandomSource source = new RandomSource(new Random(3));
+        Random same = new Random(3);
+        for (int i = 0; i < 100; i++) assertEquals(same.nextFloat(2f, 4f), source.nextFloat(2f, 4f));
+        assertInstanceOf(Random.class, source.getGenerator());
+    }
+
+    @Test
+    void checksBounds() {
+        RandomSource source = new RandomSource();
+        assertThrows(IllegalArgumentException.class, () -> source.nextFloat(3f, 3f));
+        source.setBatch(4);
+        assertThrows(IllegalArgumentException.class, () -> source.nextFloat(3f, 3f)); // Same as without batching
+        assertThrows(IllegalArgumentException.class, () -> source.nextFloat(5f, 1f));
+        assertThrows(IllegalArgumentException.class, () -> source.setBatch(-1));
+    }
+
+    private String run(long seed, int batch) {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", 10000f);
+        vars.put("battery level", 10000f);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        Interpreter interpreter = new Interpreter(heap);
+        interpreter.random.setSeed(seed);
+        interpreter.random.setBatch(batch);
+        Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(CharStreams.fromString(
+            "-> A { move to point (random[0, 100], random[0, 100]) descend by random[1, 2] move by random }")));
+        new TypeChecker().walk(program);
+        TraceSink old = Trace.setSink(new NullSink());
+        try {
+            interpreter.runProgram(program);
+        } finally {
+            Trace.setSink(old);
+        }
+        return interpreter.getCurrentPosition() + " " + interpreter.getAltitude() + " " + interpreter.getBatteryLevel();
+    }
+
+    @Test
+    void interpretersRepeatRuns() {
+        assertEquals(run(11, 0), run(11, 0));
+        assertEquals(run(11, 0), run(11, 64));
+        assertNotEquals(run(11, 0), run(12, 0));
+    }
+}
@@ -0,0 +1,142 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static no.uio.aeroscript.runtime.Missions.mission;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class ReplayTest {
+    // Random legs, messages, low battery and drones getting in each other's way
+    private static final String PATROL = "-> Out { move by random [5, 15] turn by random [10, 90] move by random [5, 15] ascend by 5 "
+        + "move by 30 at speed 2 move by 30 at speed 2 on message [abort] -> Home on obstacle -> Dodge on low battery -> Land } -> Back\n"
+        + "Back { turn by 180 move by 50 }\n"
+        + "Home { descend to ground }\n"
+        + "Dodge { ascend by random [5, 10] move by 20 }\n"
+        + "Land { descend to ground }";
+
+    private Simulator recorded(Fleet.Mission mission, EventLog log) {
+        Simulator simulator = new Simulator(new Fleet());
+        simulator.setEventLog(log);
+        simulator.setSeparation(new SeparationMonitor(4), 0.5);
+        for (int i = 0; i < 30; i++) simulator.add(new Fleet.Drone(i, mission, new Point(10f * i, 0f), 50f + 3 * i, 0f, 100 + i), 0.25 * i);
+        for (int i = 0; i < 30; i += 4) simulator.post(6 + i, simulator.getFlights().get(i), "abort");
+        simulator.run();
+        return simulator;
+    }
+
+    private static List<String> outcome(List<Simulator.Flight> flights) {
+        List<String> outcome = new ArrayList<>();
+        for (Simulator.Flight flight : flights) {
+            outcome.add(flight.drone + " at " + flight.finishedAt + " after " + flight.actions + " actions, " + flight.interrupted + " interrupted");
+        }
+        return outcome;
+    }
+
+    @Test
+    void sameAsRecorded(@TempDir Path dir) throws IOException {
+        Fleet.Mission mission = mission(PATROL);
+        EventLog log = new EventLog();
+        List<String> expected = outcome(recorded(mission, log).getFlights());
+        assertTrue(log.size() > 30, "Not much happened: " + log.size());
+        String kinds = "";
+        for (int i = 0; i < log.size(); i++) kinds += log.getMessage(i) + ",";
+        assertTrue(kinds.contains("abort") && kinds.contains("obstacle") && kinds.contains("low battery"), kinds);
+
+        Path file = dir.resolve("events.log");
+        log.save(file);
+        EventLog loaded = EventLog.load(file);
+        assertEquals(log.size(), loaded.size());
+        assertEquals(30, loaded.getDrones().size());
+
+        for (int backend = 0; backend < 3; backend++) {
+            Fleet fleet = new Fleet();
+            fleet.setCompiled(backend == 1);
+            fleet.setVM(backend == 2);
+            Replay replay = new Replay(fleet, mission, loaded, 5);
+            replay.run();
+            assertTrue(replay.isFinished());
+            assertEquals(expected, outcome(replay.getFlights()));
+        }
+    }
+
+    @Test
+    void seeks() {
+        Fleet.Mission mission = mission(PATROL);
+        EventLog log = new EventLog();
+        recorded(mission, log);
+
+        for (boolean vm : new boolean[] { false, true }) {
+            Fleet fleet = new Fleet();
+            fleet.setVM(vm);
+            // What it looks like going straight there, without snapshots in the way
+            double[] times = { 3.3, 17, 9.75, 40, 0.5, 28 };
+            List<List<String>> straight = new ArrayList<>();
+            for (double time : times) {
+                Replay plain = new Replay(fleet, mission, log, 1e9);
+                plain.seek(time);
+                straight.add(positions(plain));
+            }
+
+            Replay replay = new Replay(fleet, mission, log, 2);
+            for (int i = 0; i < times.length; i++) {
+                replay.seek(times[i]);
+                assertEquals(times[i], replay.getTime());
+                assertEquals(straight.get(i), positions(replay), "At " + times[i]);
+            }
+            assertEquals(4, replay.getRestores()); // Every time it went back
+            assertTrue(replay.getSnapshotCount() > 10);
+
+            replay.seek(1000);
+            Replay plain = new Replay(fleet, mission, log, 1e9);
+            plain.run();
+            assertEquals(outcome(plain.getFlights()), outcome(replay.getFlights()));
+        }
+    }
+
+    private static List<String> positions(Replay replay) {
+        List<String> positions = new ArrayList<>();
+        for (Simulator.Flight flight : replay.getFlights()) {
+            DroneState state = flight.position();
+            positions.add(state.x + " " + state.y + " " + state.altitude + " " + state.batteryLevel + " " + flight.actions + " " + flight.finished);
+        }
+        return positions;
+    }
+
+    @Test
+    void randomComesBack() {
+        RandomSource random = new RandomSource();
+        assertThrows(IllegalStateException.class, random::mark);
+        for (int batch : new int[] { 0, 7 }) {
+            random.setSeed(42);
+            random.setBatch(batch);
+            for (int i = 0; i < 100; i++) random.nextFloat(0, 1);
+            RandomSource.Mark mark = random.mark();
+            float[] after = new float[50];
+            for (int i = 0; i < after.length; i++) after[i] = random.nextFloat(-5, 5);
+            random.reset(mark);
+            for (float expected : after) assertEquals(expected, random.nextFloat(-5, 5));
+        }
+    }
+
+    @Test
+    void badLogs(@TempDir Path dir) throws IOException {
+        EventLog log = new EventLog();
+        assertThrows(IllegalArgumentException.class, () -> log.add(1, 0, "abort")); // No drones yet
+        Path file = dir.resolve("events.log");
+        Files.writeString(file, "drone 0 0.0 0.0 100.0 0.0 1 0.0\n2.0 0 abort\n1.0 0 abort\n");
+        IOException e = assertThrows(IOException.class, () -> EventLog.load(file));
+        assertTrue(e.getMessage().endsWith(":3: Events go in time order: 1.0 after 2.0"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> new Replay(new Fleet(), null, new EventLog(), 0));
+    }
+}
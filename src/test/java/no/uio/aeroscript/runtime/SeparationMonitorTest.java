@@ -0,0 +1,97 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static no.uio.aeroscript.runtime.Missions.mission;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class SeparationMonitorTest {
+    private static Set<Long> everyPair(float[][] drones, boolean[] gone, float separation) {
+        Set<Long> pairs = new HashSet<>();
+        for (int a = 0; a < drones.length; a++) {
+            for (int b = a + 1; b < drones.length; b++) {
+                if (gone[a] || gone[b]) continue;
+                float ex = drones[a][0] - drones[b][0], ey = drones[a][1] - drones[b][1], ez = drones[a][2] - drones[b][2];
+                if (ex * ex + ey * ey + ez * ez < separation * separation) pairs.add(((long) a << 32) | b);
+            }
+        }
+        return pairs;
+    }
+
+    @Test
+    void sameAsEveryPair() {
+        SplittableRandom random = new SplittableRandom(3);
+        SeparationMonitor monitor = new SeparationMonitor(5);
+        float[][] drones = new float[1500][3];
+        boolean[] gone = new boolean[drones.length];
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < drones.length; i++) {
+                if (round == 0) {
+                    drones[i][0] = (float) random.nextDouble(-200, 200);
+                    drones[i][1] = (float) random.nextDouble(-200, 200);
+                } else { // Small steps, so most stay in their cell
+                    drones[i][0] += (float) random.nextDouble(-2, 2);
+                    drones[i][1] += (float) random.nextDouble(-2, 2);
+                }
+                drones[i][2] = (float) random.nextDouble(3);
+                if (round == 10 && i % 4 == 0) {
+                    gone[i] = true;
+                    monitor.remove(i);
+                }
+                if (!gone[i]) monitor.update(i, drones[i][0], drones[i][1], drones[i][2]);
+            }
+            Set<Long> found = new HashSet<>();
+            int count = monitor.check((a, b, distance) -> {
+                assertTrue(a < b);
+                assertTrue(distance < 5);
+                assertTrue(found.add(((long) a << 32) | b), "Twice: " + a + ", " + b);
+            });
+            assertEquals(everyPair(drones, gone, 5), found);
+            assertEquals(found.size(), count);
+        }
+        assertEquals(drones.length - drones.length / 4, monitor.getCount());
+        assertTrue(monitor.getMoves() < monitor.getUpdates() / 2);
+        assertTrue(monitor.getConflicts() > 0);
+        assertThrows(IllegalArgumentException.class, () -> new SeparationMonitor(0));
+    }
+
+    @Test
+    void headOn() {
+        Fleet.Mission east = mission("-> Go { move by 100 on obstacle -> Up }\nUp { ascend by 50 }");
+        Fleet.Mission west = mission("-> Go { move by -100 }");
+        for (boolean vm : new boolean[] { false, true }) {
+            Fleet fleet = new Fleet();
+            fleet.setVM(vm);
+            Simulator simulator = new Simulator(fleet);
+            SeparationMonitor monitor = new SeparationMonitor(10);
+            simulator.setSeparation(monitor, 0.5);
+            Simulator.Flight a = simulator.add(new Fleet.Drone(0, east, new Point(0f, 0f), 1000f, 0f, 0));
+            Simulator.Flight b = simulator.add(new Fleet.Drone(1, west, new Point(100f, 0f), 1000f, 0f, 1));
+            Simulator.Flight far = simulator.add(new Fleet.Drone(2, east, new Point(0f, 500f), 1000f, 0f, 2));
+            simulator.run();
+
+            // Closing at 10 a second, so they're under 10 apart at the first tick after 9 seconds
+            assertEquals(1, a.interrupted);
+            assertEquals(47.5f, a.drone.state.x, 1e-4);
+            assertEquals(50f, a.drone.state.altitude);
+            assertEquals(9.5 + 10, a.finishedAt, 1e-6);
+            assertEquals(1, a.conflicts); // Still close on the next ticks, but only told once
+            assertEquals(1, b.conflicts);
+            assertEquals(0, b.interrupted); // Has no reaction, so flies on
+            assertEquals(0f, b.drone.state.x);
+            assertEquals(0, far.conflicts);
+            assertEquals(100f, far.drone.state.x);
+            assertTrue(monitor.getConflicts() > 1);
+            assertEquals(0, monitor.getCount()); // All landed
+            assertTrue(simulator.isIdle()); // The ticks stop with them
+        }
+    }
+}
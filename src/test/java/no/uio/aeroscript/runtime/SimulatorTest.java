@@ -0,0 +1,104 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static no.uio.aeroscript.runtime.Missions.mission;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class SimulatorTest {
+    private Simulator simulator(boolean vm) {
+        Fleet fleet = new Fleet();
+        fleet.setVM(vm);
+        return new Simulator(fleet);
+    }
+
+    @Test
+    void actionsTakeTime() {
+        Fleet.Mission mission = mission("-> A { ascend by 10 move by 20 at speed 4 turn by 90 descend by 10 for 3 seconds }");
+        for (boolean vm : new boolean[] { false, true }) {
+            Simulator simulator = simulator(vm);
+            Simulator.Flight flight = simulator.add(new Fleet.Drone(0, mission, new Point(0f, 0f), 1000f, 0f, 0));
+
+            simulator.run(1); // Halfway up
+            assertEquals(5f, flight.position().altitude, 1e-4);
+            assertFalse(flight.finished);
+
+            simulator.run();
+            // 10 at cruise speed, 20 at 4, 90 degrees at the turn rate, then 3 seconds
+            assertEquals(2 + 5 + 2 + 3, flight.finishedAt, 1e-6);
+            assertEquals(4, flight.actions);
+            assertNull(flight.failure);
+
+            // Ends where an untimed run ends
+            Fleet.Drone plain = new Fleet().fly(new Fleet.Drone(0, mission, new Point(0f, 0f), 1000f, 0f, 0));
+            assertEquals(plain.toString(), flight.drone.toString());
+        }
+    }
+
+    @Test
+    void messagesInterruptMidFlight() {
+        Fleet.Mission mission = mission("-> Out { move to point (100, 0) on message [abort] -> Home }\nHome { ascend by 5 }");
+        for (boolean vm : new boolean[] { false, true }) {
+            Simulator simulator = simulator(vm);
+            Simulator.Flight flight = simulator.add(new Fleet.Drone(0, mission, new Point(0f, 0f), 1000f, 0f, 0));
+            simulator.post(8, flight, "abort");
+            simulator.post(3, flight, "nonsense"); // Not for this mode, so it changes nothing
+            simulator.run();
+
+            assertEquals(1, flight.interrupted);
+            assertEquals(9, flight.finishedAt, 1e-6); // 8 seconds out, then 1 up
+            assertEquals(40f, flight.drone.state.x, 1e-3);
+            assertEquals(40f, flight.drone.state.distanceTravelled, 1e-3);
+            assertEquals(5f, flight.drone.state.altitude);
+            assertEquals(1000f - 0.7f * 40f - 0.6f * 5f, flight.drone.state.batteryLevel, 1e-2); // Only paid for the way it went
+        }
+    }
+
+    @Test
+    void lowBatteryMidFlight() {
+        Fleet.Mission mission = mission("-> Out { move to point (1000, 0) on low battery -> Land }\nLand { descend to ground }");
+        for (boolean vm : new boolean[] { false, true }) {
+            Simulator simulator = simulator(vm);
+            Simulator.Flight flight = simulator.add(new Fleet.Drone(0, mission, new Point(0f, 0f), 710f, 10f, 0));
+            simulator.run();
+
+            // 700 for the whole way, so it drops below 20 after 690 of it
+            assertNull(flight.failure);
+            assertEquals(1, flight.interrupted);
+            assertEquals(690f / 0.7f, flight.drone.state.x, 1e-1);
+            assertEquals(0f, flight.drone.state.altitude);
+            assertEquals(690f / 0.7f / 5 + 10f / 5, flight.finishedAt, 1e-3);
+        }
+    }
+
+    @Test
+    void manyDrones() {
+        Fleet.Mission mission = mission("-> A { move by 10 turn by 45 } -> B\nB { move by 5 at speed 1 }");
+        Simulator simulator = simulator(true);
+        for (int i = 0; i < 2000; i++) simulator.add(new Fleet.Drone(i, mission, new Point(0f, 0f), 1000f, 0f, i), i * 0.5);
+        simulator.run();
+
+        double last = 0;
+        for (Simulator.Flight flight : simulator.getFlights()) {
+            assertTrue(flight.finished);
+            assertEquals(flight.drone.id * 0.5 + 2 + 1 + 5, flight.finishedAt, 1e-6);
+            last = Math.max(last, flight.finishedAt);
+        }
+        assertEquals(last, simulator.getTime());
+        assertTrue(simulator.isIdle());
+    }
+
+    @Test
+    void keepsFailures() {
+        Fleet.Mission mission = mission("-> A { ascend by 10 move by 1000 }");
+        Simulator simulator = simulator(false);
+        Simulator.Flight flight = simulator.add(new Fleet.Drone(0, mission, new Point(0f, 0f), 100f, 0f, 0));
+        simulator.run();
+        assertEquals("Not enough battery to perform action.", flight.failure);
+        assertEquals(2, flight.finishedAt, 1e-6); // Failed when it got to the move
+    }
+}
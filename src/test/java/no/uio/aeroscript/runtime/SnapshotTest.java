@@ -0,0 +1,163 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.Lowering;
+import no.uio.aeroscript.trace.QuietTrace;
+import no.uio.aeroscript.type.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static no.uio.aeroscript.runtime.Missions.mission;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(QuietTrace.class)
+class SnapshotTest {
+    private static final String MISSION = "-> Out { ascend by 10 move by random [5, 15] turn by random [0, 90] move by random [5, 15] "
+        + "on message [abort] -> Home on message [detour] -> Detour } -> Back\n"
+        + "Back { move by 7 descend by random [1, 5] } -> Last\n"
+        + "Last { move by 1 }\n"
+        + "Home { descend to ground }\n"
+        + "Detour { move by 50 turn by 180 move by 50 } -> Back";
+
+    // One drone, paused after every action so the tests can step it
+    private static class Stepper {
+        final Interpreter interpreter;
+        final Execution program;
+        final Code code;
+
+        Stepper(Fleet fleet, Fleet.Drone drone, boolean vm) {
+            interpreter = fleet.newInterpreter(drone);
+            program = fleet.instantiate(drone, interpreter);
+            code = vm ? Lowering.lower(program) : null;
+            interpreter.setActionListener((action, amount, speed, duration) -> interpreter.pause());
+        }
+
+        void start() {
+            if (code != null) interpreter.runProgram(code);
+            else interpreter.runProgram(program);
+        }
+
+        void step() {
+            interpreter.resume();
+            interpreter.executeStack();
+        }
+
+        boolean done() {
+            return interpreter.running; // Nothing paused it
+        }
+
+        String finish() {
+            while (!done()) step();
+            return describe(interpreter);
+        }
+
+        void send(String message) {
+            assertTrue(interpreter.react(message), message);
+            step();
+        }
+    }
+
+    private static String describe(Interpreter interpreter) {
+        DroneState s = interpreter.state;
+        return s.x + " " + s.y + " " + s.altitude + " " + s.batteryLevel + " " + s.distanceTravelled + " " + interpreter.getExecutedCount();
+    }
+
+    private static Fleet fleet(int backend, boolean chaining) {
+        Fleet fleet = new Fleet();
+        fleet.setCompiled(backend == 1);
+        fleet.setVM(backend == 2);
+        fleet.setTailChaining(chaining);
+        return fleet;
+    }
+
+    @Test
+    void forks() {
+        Fleet.Mission mission = mission(MISSION);
+        for (int backend = 0; backend < 3; backend++) {
+            for (boolean chaining : new boolean[] { false, true }) {
+                Fleet fleet = fleet(backend, chaining);
+                Fleet.Drone drone = new Fleet.Drone(0, mission, new Point(0f, 0f), 1000f, 0f, 7);
+                Stepper plain = new Stepper(fleet, drone, backend == 2);
+                plain.start();
+                String straight = plain.finish();
+
+                Stepper stepper = new Stepper(fleet, drone, backend == 2);
+                stepper.start();
+                stepper.step(); // Up, and the first random move
+                Interpreter.Snapshot fork = stepper.interpreter.snapshot();
+                assertEquals(2, fork.getModeDepth()); // The program and Out
+
+                // What if it was told to abort now, or to take the detour
+                stepper.send("abort");
+                String aborted = stepper.finish();
+                assertEquals(0f, stepper.interpreter.state.altitude);
+                stepper.interpreter.restore(fork);
+                stepper.send("detour");
+                String detoured = stepper.finish();
+                assertNotEquals(aborted, detoured);
+
+                // Running on from a snapshot doesn't change it, and nothing is told anything here
+                stepper.interpreter.restore(fork);
+                assertEquals(straight, stepper.finish());
+                stepper.interpreter.restore(fork);
+                stepper.send("abort");
+                assertEquals(aborted, stepper.finish());
+                stepper.interpreter.restore(fork);
+                stepper.send("detour");
+                assertEquals(detoured, stepper.finish(), "backend " + backend + (chaining ? ", chaining" : ""));
+            }
+        }
+    }
+
+    @Test
+    void resumesFromBytes() throws IOException {
+        Fleet.Mission mission = mission(MISSION);
+        for (int backend = 0; backend < 3; backend++) {
+            for (boolean chaining : new boolean[] { false, true }) {
+                Fleet fleet = fleet(backend, chaining);
+                fleet.setRandomBatch(backend == 1 ? 4 : 0);
+                Fleet.Drone drone = new Fleet.Drone(0, mission, new Point(3f, 4f), 1000f, 0f, 11);
+                for (int steps = 0; steps < 8; steps++) {
+                    Stepper first = new Stepper(fleet, drone, backend == 2);
+                    first.start();
+                    for (int i = 0; i < steps && !first.done(); i++) first.step();
+                    if (steps == 2) first.send("detour");
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    first.interpreter.writeSnapshot(first.interpreter.snapshot(), out);
+                    assertTrue(out.size() < 200, out.size() + " bytes");
+                    String expected = first.finish();
+
+                    // Another copy of the mission, which hasn't run at all
+                    Stepper second = new Stepper(fleet, drone, backend == 2);
+                    if (second.code != null) second.interpreter.load(second.code);
+                    else second.interpreter.load(second.program);
+                    second.interpreter.restore(second.interpreter.readSnapshot(new ByteArrayInputStream(out.toByteArray())));
+                    second.step();
+                    assertEquals(expected, second.finish(), "backend " + backend + ", " + steps + " steps" + (chaining ? ", chaining" : ""));
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsOtherBytes() throws IOException {
+        Fleet fleet = new Fleet();
+        Fleet.Drone drone = new Fleet.Drone(0, mission(MISSION), new Point(0f, 0f), 1000f, 0f, 1);
+        Stepper stepper = new Stepper(fleet, drone, false);
+        assertThrows(IllegalStateException.class, () -> stepper.interpreter.writeSnapshot(stepper.interpreter.snapshot(), new ByteArrayOutputStream()));
+        stepper.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stepper.interpreter.writeSnapshot(stepper.interpreter.snapshot(), out);
+
+        Fleet.Drone other = new Fleet.Drone(0, mission("-> A { ascend by 1 }"), new Point(0f, 0f), 1000f, 0f, 1);
+        Stepper elsewhere = new Stepper(fleet, other, false);
+        elsewhere.interpreter.load(elsewhere.program);
+        IOException e = assertThrows(IOException.class, () -> elsewhere.interpreter.readSnapshot(new ByteArrayInputStream(out.toByteArray())));
+        assertTrue(e.getMessage().startsWith("Snapshot is of a program with"), e.getMessage());
+        assertThrows(IOException.class, () -> elsewhere.interpreter.readSnapshot(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6 })));
+    }
+}
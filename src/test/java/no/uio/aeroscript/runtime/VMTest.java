@@ -0,0 +1,138 @@
+package no.uio.aeroscript.runtime;
+
+import no.uio.aeroscript.ast.stmt.Execution;
+import no.uio.aeroscript.compiletime.ASTBuilder;
+import no.uio.aeroscript.compiletime.BytecodeCompiler;
+import no.uio.aeroscript.compiletime.ConstantFolder;
+import no.uio.aeroscript.compiletime.Lowering;
+import no.uio.aeroscript.compiletime.SourceLoader;
+import no.uio.aeroscript.compiletime.TwoStageParser;
+import no.uio.aeroscript.compiletime.TypeChecker;
+import no.uio.aeroscript.type.Memory;
+import no.uio.aeroscript.type.Point;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EmptyStackException;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VMTest {
+    private static final Path resources = Paths.get("src", "test", "java", "no", "uio", "aeroscript", "resources");
+    private static final String lowBattery = "-> Up { ascend by 10 on low battery -> Land } -> Up\nLand { return to base }";
+
+    private enum Backend { TREE, VM, COMPILED_VM }
+
+    private Interpreter newInterpreter(float battery) {
+        HashMap<Memory, Object> heap = new HashMap<>();
+        HashMap<String, Object> vars = new HashMap<>();
+        vars.put("initial position", new Point(0f, 0f));
+        vars.put("current position", new Point(0f, 0f));
+        vars.put("altitude", 0f);
+        vars.put("initial battery level", battery);
+        vars.put("battery level", battery);
+        vars.put("distance travelled", 0f);
+        heap.put(Memory.VARIABLES, vars);
+        return new Interpreter(heap);
+    }
+
+    private Execution build(CharStream source, Interpreter interpreter) {
+        Execution program = new ASTBuilder(interpreter).visitProgram(new TwoStageParser().parseProgram(source));
+        new TypeChecker().walk(program);
+        new ConstantFolder().fold(program);
+        return program;
+    }
+
+    private String run(CharStream source, float battery, Backend backend, String... messages) {
+        Interpreter interpreter = newInterpreter(battery);
+        Execution program = build(source, interpreter);
+        if (backend == Backend.COMPILED_VM) new BytecodeCompiler().compile(program);
+        Code code = backend == Backend.TREE ? null : Lowering.lower(program);
+
+        interpreter.random.setSeed(7);
+        String failure = "";
+        try {
+            if (messages.length == 0) {
+                if (code == null) interpreter.runProgram(program);
+                else interpreter.runProgram(code);
+            } else {
+                if (code == null) interpreter.runProgramREPL(program);
+                else interpreter.runProgramREPL(code);
+                for (String message : messages) interpreter.receiveMessage(message);
+            }
+        } catch (RuntimeException e) {
+            failure = e.getMessage();
+        }
+        return interpreter.getCurrentPosition() + " " + interpreter.getAltitude() + " " + interpreter.getBatteryLevel() + " "
+            + interpreter.getDistanceTravelled() + " " + interpreter.getFirstExecution() + " " + failure;
+    }
+
+    private void assertSameResult(String name, String... messages) throws IOException {
+        String expected = run(SourceLoader.load(resources.resolve(name)), 10000f, Backend.TREE, messages);
+        assertEquals(expected, run(SourceLoader.load(resources.resolve(name)), 10000f, Backend.VM, messages), name);
+        assertEquals(expected, run(SourceLoader.load(resources.resolve(name)), 10000f, Backend.COMPILED_VM, messages), name);
+    }
+
+    @Test
+    void matchesTreeWalker() throws IOException {
+        assertSameResult("program.aero");
+        assertSameResult("fancytypes.aero");
+        assertSameResult("recursetocrash.aero");
+        assertSameResult("reactions.aero", "go_short", "go_short", "go_home");
+        assertSameResult("test.aero", "launch");
+        assertSameResult("test2.aero", "start_tour", "end_tour");
+    }
+
+    @Test
+    void reactsToLowBattery() {
+        String expected = run(CharStreams.fromString(lowBattery), 500f, Backend.TREE);
+        assertEquals(expected, run(CharStreams.fromString(lowBattery), 500f, Backend.VM));
+        assertTrue(expected.endsWith("Execution Up "), expected); // Reacted instead of running out
+    }
+
+    @Test
+    void lowersLiterals() {
+        Code code = Lowering.lower(build(CharStreams.fromString(lowBattery), newInterpreter(500f)));
+        assertEquals(3, code.executions.length);
+        assertEquals("program", code.executions[0].id);
+
+        int up = code.indexOf(code.executions[0].executions.get("Up"));
+        int pc = code.entries[up];
+        assertEquals(Code.ENTER, code.code[pc]);
+        pc += Code.length(Code.ENTER);
+        assertEquals(Code.SCEND, code.code[pc]);
+        assertEquals(10f, code.constants[code.code[pc + 2]]);
+        pc += Code.length(Code.SCEND);
+        assertEquals(Code.EXIT, code.code[pc]);
+        assertEquals(Code.CHAIN, code.code[pc + 1]);
+        assertEquals(up, code.code[pc + 2]);
+
+        int land = code.indexOf(code.executions[0].executions.get("Land"));
+        assertEquals(Code.ACTION, code.code[code.entries[land] + Code.length(Code.ENTER)]); // Reads the initial position
+    }
+
+    @Test
+    void keepsModeStackFlat() {
+        Interpreter interpreter = newInterpreter(30f);
+        Code code = Lowering.lower(build(CharStreams.fromString("-> A { turn by 1 } -> B\nB { turn by 1 } -> A"), interpreter));
+
+        // Chains until the battery runs out, about a hundred executions in
+        assertThrows(RuntimeException.class, () -> interpreter.runProgram(code));
+        assertTrue(interpreter.getBatteryLevel() < 1f);
+        int depth = 0;
+        while (true) {
+            try {
+                interpreter.popMode();
+                depth++;
+            } catch (EmptyStackException e) {
+                break;
+            }
+        }
+        assertEquals(2, depth); // The program and the last execution
+    }
+}
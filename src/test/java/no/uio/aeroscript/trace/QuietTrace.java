@@ -0,0 +1,21 @@
+package no.uio.aeroscript.trace;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+// For tests that fly whole missions: the trace goes to a NullSink during each test, and back to
+// whatever it was after. Use it with @ExtendWith(QuietTrace.class)
+public class QuietTrace implements BeforeEachCallback, AfterEachCallback {
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(QuietTrace.class);
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        context.getStore(NAMESPACE).put("old", Trace.setSink(new NullSink()));
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        Trace.setSink(context.getStore(NAMESPACE).remove("old", TraceSink.class));
+    }
+}
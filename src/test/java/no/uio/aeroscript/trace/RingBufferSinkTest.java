@@ -0,0 +1,79 @@
+package no.uio.aeroscript.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferSinkTest {
+    @Test
+    void writesInOrder() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RingBufferSink sink = new RingBufferSink(out, 1 << 12);
+        for (int i = 0; i < 1000; i++) sink.write("line " + i);
+        sink.close();
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+        assertEquals(1000, lines.length);
+        for (int i = 0; i < 1000; i++) assertEquals("line " + i, lines[i]);
+        assertEquals(0, sink.getDropped());
+    }
+
+    @Test
+    void takesManyWriters() throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RingBufferSink sink = new RingBufferSink(out, 1 << 16);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 5000; i++) sink.write(thread + ":" + i);
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        sink.flush();
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+        assertEquals(20000 - sink.getDropped(), lines.length);
+        assertEquals(lines.length, new HashSet<>(List.of(lines)).size());
+        sink.close();
+    }
+
+    @Test
+    void dropsWhenFull() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        OutputStream stuck = new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void flush() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        RingBufferSink sink = new RingBufferSink(stuck, 4);
+        // The writer flushes as soon as it is idle, and gets stuck there
+        Thread.sleep(50);
+        for (int i = 0; i < 100; i++) sink.write("line " + i);
+        assertTrue(sink.getDropped() >= 90, "Dropped " + sink.getDropped());
+        blocked.countDown();
+        sink.close();
+    }
+
+    @Test
+    void rejectsOddCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBufferSink(new ByteArrayOutputStream(), 100));
+    }
+}
@@ -0,0 +1,38 @@
+package no.uio.aeroscript.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceTest {
+    @Test
+    void defaultsToEverything() {
+        assertEquals(Trace.Level.DEBUG, Trace.LEVEL);
+        assertTrue(Trace.INFO && Trace.ACTION && Trace.DEBUG);
+        assertInstanceOf(ConsoleSink.class, Trace.getSink());
+    }
+
+    @Test
+    void parsesLevels() {
+        assertEquals(Trace.Level.OFF, Trace.Level.parse("off"));
+        assertEquals(Trace.Level.ACTION, Trace.Level.parse(" Action "));
+        assertThrows(IllegalArgumentException.class, () -> Trace.Level.parse("loud"));
+        assertInstanceOf(NullSink.class, Trace.sink("none"));
+        assertThrows(IllegalArgumentException.class, () -> Trace.sink("printer"));
+    }
+
+    @Test
+    void swapsSinks() {
+        List<String> lines = new ArrayList<>();
+        TraceSink old = Trace.setSink(lines::add);
+        try {
+            Trace.log("hello");
+        } finally {
+            Trace.setSink(old);
+        }
+        assertEquals(List.of("hello"), lines);
+    }
+}